@@ -0,0 +1,23 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.consumer.cao;
+
+import java.util.Iterator;
+
+import ru.kfu.itis.issst.uima.consumer.cao.impl.AnnotationDTO;
+
+/**
+ * Forward-only iterator over annotations fetched from a storage. It holds
+ * storage resources until it is closed.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public interface AnnotationCursor extends Iterator<AnnotationDTO> {
+
+	/**
+	 * Release storage resources. Subsequent invocations have no effect.
+	 */
+	void close();
+}
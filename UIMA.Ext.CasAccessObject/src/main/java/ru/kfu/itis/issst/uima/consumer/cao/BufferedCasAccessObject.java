@@ -0,0 +1,41 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.consumer.cao;
+
+/**
+ * {@link CasAccessObject} that may defer writing of persisted spans,
+ * annotations and features. Their ids are returned immediately.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public interface BufferedCasAccessObject extends CasAccessObject {
+
+	/**
+	 * Hand over rows buffered by the calling thread for writing. This may
+	 * block if there are too many rows waiting to be written.
+	 */
+	void flush();
+
+	/**
+	 * Drop rows buffered by the calling thread that have not been handed over
+	 * yet, e.g., rows of a document that failed in the middle.
+	 */
+	void discard();
+
+	/**
+	 * Flush and wait until all handed over rows are written.
+	 * 
+	 * @throws IllegalStateException
+	 *             if rows could not be written
+	 */
+	void awaitCompletion();
+
+	/**
+	 * Write rows that have been handed over and release writing threads.
+	 * Subsequent invocations of this method have no effect, subsequent
+	 * {@link #flush()} of non-empty buffers fails.
+	 */
+	void close();
+}
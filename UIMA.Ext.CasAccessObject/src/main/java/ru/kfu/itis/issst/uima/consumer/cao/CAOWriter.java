@@ -129,8 +129,17 @@ public class CAOWriter extends CasAnnotator_ImplBase {
 	public void process(CAS cas) throws AnalysisEngineProcessException {
 		try {
 			process(cas.getJCas());
+			if (dao instanceof BufferedCasAccessObject) {
+				// returns as soon as rows are handed over to the writer
+				((BufferedCasAccessObject) dao).flush();
+			}
 		} catch (CASException e) {
+			discardBufferedRows();
 			throw new AnalysisEngineProcessException(e);
+		} catch (RuntimeException e) {
+			// do not let rows of a failed document get into the next flush
+			discardBufferedRows();
+			throw e;
 		} finally {
 			// clear state
 			persistenceContext = null;
@@ -138,6 +147,37 @@ public class CAOWriter extends CasAnnotator_ImplBase {
 		}
 	}
 
+	@Override
+	public void collectionProcessComplete() throws AnalysisEngineProcessException {
+		super.collectionProcessComplete();
+		if (dao instanceof BufferedCasAccessObject) {
+			long timeBefore = currentTimeMillis();
+			try {
+				((BufferedCasAccessObject) dao).awaitCompletion();
+			} catch (IllegalStateException e) {
+				throw new AnalysisEngineProcessException(e);
+			} finally {
+				((BufferedCasAccessObject) dao).close();
+			}
+			info("Buffered rows have been written in %s ms", currentTimeMillis() - timeBefore);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (dao instanceof BufferedCasAccessObject) {
+			// in case the collection processing has not been completed
+			((BufferedCasAccessObject) dao).close();
+		}
+		super.destroy();
+	}
+
+	private void discardBufferedRows() {
+		if (dao instanceof BufferedCasAccessObject) {
+			((BufferedCasAccessObject) dao).discard();
+		}
+	}
+
 	private void process(JCas cas) {
 		long timeBefore = currentTimeMillis();
 
@@ -32,4 +32,14 @@ public interface CasAccessObject extends SharedResourceObject {
 
 	List<AnnotationDTO> getTopAnnotationsByLaunch(Set<Integer> launchIds,
 			Set<String> topAnnoTypes);
+
+	/**
+	 * @return cursor over the same annotations as
+	 *         {@link #getTopAnnotationsByLaunch(Set, Set)} returns, ordered by
+	 *         document URI (in the order of {@link String#compareTo(String)}).
+	 *         Annotations of a document may go in any order. A caller must
+	 *         close it.
+	 */
+	AnnotationCursor openTopAnnotationsCursor(Set<Integer> launchIds,
+			Set<String> topAnnoTypes);
 }
\ No newline at end of file
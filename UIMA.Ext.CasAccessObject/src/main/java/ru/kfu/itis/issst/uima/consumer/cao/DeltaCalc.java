@@ -5,7 +5,10 @@ package ru.kfu.itis.issst.uima.consumer.cao;
 
 import static java.lang.Math.min;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EventListener;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -15,6 +18,10 @@ import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.ObjectUtils;
@@ -22,6 +29,9 @@ import org.apache.commons.lang3.event.EventListenerSupport;
 
 import ru.kfu.itis.issst.uima.consumer.cao.impl.AnnotationDTO;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
 /**
  * @author Rinat Gareev (Kazan Federal University)
  * 
@@ -37,13 +47,11 @@ public class DeltaCalc {
 	private Set<Integer> pastLaunchIds;
 	private Set<Integer> newLaunchIds;
 	private Set<String> topAnnoTypes;
+	private int threadCount = 1;
 
 	// state fields
 	private EventListenerSupport<DeltaListener> deltaListenerSupport = EventListenerSupport
 			.create(DeltaListener.class);
-	private AnnoIndex pastIndex;
-
-	// private AnnoIndex newIndex;
 
 	public DeltaCalc(CasAccessObject cao) {
 		this.cao = cao;
@@ -65,19 +73,85 @@ public class DeltaCalc {
 		deltaListenerSupport.addListener(listener);
 	}
 
+	/**
+	 * Set the number of threads that compare documents in
+	 * {@link #runStreaming()}. Listeners are never invoked concurrently, but
+	 * with several threads documents are reported in an arbitrary order.
+	 */
+	public void setThreadCount(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("threadCount = " + threadCount);
+		}
+		this.threadCount = threadCount;
+	}
+
 	public void run() {
 		List<AnnotationDTO> pastAnnotations = cao.getTopAnnotationsByLaunch(pastLaunchIds,
 				topAnnoTypes);
 		List<AnnotationDTO> newAnnotations = cao.getTopAnnotationsByLaunch(newLaunchIds,
 				topAnnoTypes);
-		pastIndex = new AnnoIndex(pastAnnotations);
-		// newIndex = new AnnoIndex(newAnnotations);
+		calcDelta(pastAnnotations, newAnnotations, deltaListenerSupport.fire());
+	}
+
+	/**
+	 * Calculate the same delta as {@link #run()} but read annotations of both
+	 * launch sets through cursors ordered by document URI and compare them
+	 * document by document. So only annotations of the documents being
+	 * compared are kept in memory. Annotations of a document are sorted by id
+	 * as {@link #run()} gets them, so events of a document are fired in the
+	 * same order.
+	 */
+	public void runStreaming() {
+		AnnotationCursor pastCursor = cao.openTopAnnotationsCursor(pastLaunchIds, topAnnoTypes);
+		AnnotationCursor newCursor = null;
+		DocumentDeltaExecutor executor = new DocumentDeltaExecutor();
+		try {
+			newCursor = cao.openTopAnnotationsCursor(newLaunchIds, topAnnoTypes);
+			DocumentReader pastDocs = new DocumentReader(pastCursor);
+			DocumentReader newDocs = new DocumentReader(newCursor);
+			List<AnnotationDTO> pastDoc = pastDocs.next();
+			List<AnnotationDTO> newDoc = newDocs.next();
+			while (pastDoc != null || newDoc != null) {
+				int cmp;
+				if (pastDoc == null) {
+					cmp = 1;
+				} else if (newDoc == null) {
+					cmp = -1;
+				} else {
+					cmp = getDocUri(pastDoc).compareTo(getDocUri(newDoc));
+				}
+				if (cmp < 0) {
+					// document is absent in new launches
+					executor.submit(pastDoc, Collections.<AnnotationDTO> emptyList());
+					pastDoc = pastDocs.next();
+				} else if (cmp > 0) {
+					// document is absent in past launches
+					executor.submit(Collections.<AnnotationDTO> emptyList(), newDoc);
+					newDoc = newDocs.next();
+				} else {
+					executor.submit(pastDoc, newDoc);
+					pastDoc = pastDocs.next();
+					newDoc = newDocs.next();
+				}
+			}
+			executor.finish();
+		} finally {
+			executor.shutdown();
+			pastCursor.close();
+			if (newCursor != null) {
+				newCursor.close();
+			}
+		}
+	}
 
+	private void calcDelta(List<AnnotationDTO> pastAnnotations,
+			List<AnnotationDTO> newAnnotations, DeltaListener target) {
+		AnnoIndex pastIndex = new AnnoIndex(pastAnnotations);
 		Set<Long> handledPastAnnotations = new HashSet<Long>();
 		for (AnnotationDTO newAnno : newAnnotations) {
 			AnnotationDTO pastAnno = pastIndex.getClosestOverlappingOfSameType(newAnno);
 			if (pastAnno == null) {
-				fireNewAnnotation(newAnno);
+				target.onNewAnnotation(newAnno);
 				continue;
 			}
 			// sanityCheck
@@ -90,34 +164,202 @@ public class DeltaCalc {
 			if (newAnno.getStartOffset() == pastAnno.getStartOffset()
 					&& newAnno.getEndOffset() == pastAnno.getEndOffset()) {
 				// TODO it's place to check features
-				fireSavedAnnotation(pastAnno, newAnno);
+				target.onSavedAnnotation(pastAnno, newAnno);
 			} else {
-				fireChangedAnnotation(pastAnno, newAnno);
+				target.onChangedAnnotation(pastAnno, newAnno);
 			}
 		}
 
 		// catch all lost annotations
 		for (AnnotationDTO oldAnno : pastAnnotations) {
 			if (!handledPastAnnotations.contains(oldAnno.getId())) {
-				fireLostAnnotation(oldAnno);
+				target.onLostAnnotation(oldAnno);
+			}
+		}
+	}
+
+	private static final Comparator<AnnotationDTO> ID_ORDER = new Comparator<AnnotationDTO>() {
+		@Override
+		public int compare(AnnotationDTO first, AnnotationDTO second) {
+			return first.getId() < second.getId() ? -1
+					: (first.getId() == second.getId() ? 0 : 1);
+		}
+	};
+
+	private static String getDocUri(List<AnnotationDTO> docAnnotations) {
+		return docAnnotations.get(0).getDocUri();
+	}
+
+	/**
+	 * Splits a cursor ordered by document URI into lists of document
+	 * annotations.
+	 */
+	private static class DocumentReader {
+		private final PeekingIterator<AnnotationDTO> cursor;
+		private String lastDocUri;
+
+		DocumentReader(AnnotationCursor cursor) {
+			this.cursor = Iterators.peekingIterator(cursor);
+		}
+
+		/**
+		 * @return annotations of the next document or null if the cursor is
+		 *         exhausted
+		 */
+		List<AnnotationDTO> next() {
+			if (!cursor.hasNext()) {
+				return null;
+			}
+			String docUri = cursor.peek().getDocUri();
+			if (lastDocUri != null && lastDocUri.compareTo(docUri) >= 0) {
+				throw new IllegalStateException(String.format(
+						"Annotations are not ordered by document URI: %s goes after %s",
+						docUri, lastDocUri));
 			}
+			lastDocUri = docUri;
+			List<AnnotationDTO> result = new ArrayList<AnnotationDTO>();
+			while (cursor.hasNext() && docUri.equals(cursor.peek().getDocUri())) {
+				result.add(cursor.next());
+			}
+			Collections.sort(result, ID_ORDER);
+			return result;
 		}
 	}
 
-	private void fireNewAnnotation(AnnotationDTO anno) {
-		deltaListenerSupport.fire().onNewAnnotation(anno);
+	/**
+	 * Calculates delta of documents in the calling thread or in a pool of
+	 * worker threads. In the latter case delta events of a document are
+	 * collected and fired at once.
+	 */
+	private class DocumentDeltaExecutor {
+		private final ExecutorService workers;
+		private final Semaphore inFlight;
+		private volatile Throwable failure;
+
+		DocumentDeltaExecutor() {
+			if (threadCount > 1) {
+				workers = Executors.newFixedThreadPool(threadCount);
+				// bounds the memory held by pending documents
+				inFlight = new Semaphore(threadCount * 2);
+			} else {
+				workers = null;
+				inFlight = null;
+			}
+		}
+
+		void submit(final List<AnnotationDTO> pastDoc, final List<AnnotationDTO> newDoc) {
+			if (workers == null) {
+				calcDelta(pastDoc, newDoc, deltaListenerSupport.fire());
+				return;
+			}
+			checkFailure();
+			inFlight.acquireUninterruptibly();
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						DeltaEventRecorder recorder = new DeltaEventRecorder();
+						calcDelta(pastDoc, newDoc, recorder);
+						synchronized (deltaListenerSupport) {
+							recorder.replay(deltaListenerSupport.fire());
+						}
+					} catch (Throwable e) {
+						failure = e;
+					} finally {
+						inFlight.release();
+					}
+				}
+			});
+		}
+
+		void finish() {
+			if (workers == null) {
+				return;
+			}
+			workers.shutdown();
+			try {
+				while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+					log.fine("Waiting for document delta workers...");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			checkFailure();
+		}
+
+		void shutdown() {
+			if (workers != null) {
+				workers.shutdownNow();
+			}
+		}
+
+		private void checkFailure() {
+			if (failure != null) {
+				throw new IllegalStateException("Document delta calculation failed", failure);
+			}
+		}
 	}
 
-	private void fireLostAnnotation(AnnotationDTO anno) {
-		deltaListenerSupport.fire().onLostAnnotation(anno);
+	private static class DeltaEventRecorder implements DeltaListener {
+		private final List<DeltaEvent> events = new ArrayList<DeltaEvent>();
+
+		@Override
+		public void onNewAnnotation(AnnotationDTO anno) {
+			events.add(new DeltaEvent(DeltaEventType.NEW, null, anno));
+		}
+
+		@Override
+		public void onChangedAnnotation(AnnotationDTO oldAnno, AnnotationDTO newAnno) {
+			events.add(new DeltaEvent(DeltaEventType.CHANGED, oldAnno, newAnno));
+		}
+
+		@Override
+		public void onLostAnnotation(AnnotationDTO anno) {
+			events.add(new DeltaEvent(DeltaEventType.LOST, anno, null));
+		}
+
+		@Override
+		public void onSavedAnnotation(AnnotationDTO oldAnno, AnnotationDTO newAnno) {
+			events.add(new DeltaEvent(DeltaEventType.SAVED, oldAnno, newAnno));
+		}
+
+		void replay(DeltaListener target) {
+			for (DeltaEvent e : events) {
+				switch (e.type) {
+				case NEW:
+					target.onNewAnnotation(e.newAnno);
+					break;
+				case CHANGED:
+					target.onChangedAnnotation(e.oldAnno, e.newAnno);
+					break;
+				case LOST:
+					target.onLostAnnotation(e.oldAnno);
+					break;
+				case SAVED:
+					target.onSavedAnnotation(e.oldAnno, e.newAnno);
+					break;
+				default:
+					throw new IllegalStateException();
+				}
+			}
+		}
 	}
 
-	private void fireChangedAnnotation(AnnotationDTO oldAnno, AnnotationDTO newAnno) {
-		deltaListenerSupport.fire().onChangedAnnotation(oldAnno, newAnno);
+	private enum DeltaEventType {
+		NEW, CHANGED, LOST, SAVED
 	}
 
-	private void fireSavedAnnotation(AnnotationDTO oldAnno, AnnotationDTO newAnno) {
-		deltaListenerSupport.fire().onSavedAnnotation(oldAnno, newAnno);
+	private static class DeltaEvent {
+		private final DeltaEventType type;
+		private final AnnotationDTO oldAnno;
+		private final AnnotationDTO newAnno;
+
+		DeltaEvent(DeltaEventType type, AnnotationDTO oldAnno, AnnotationDTO newAnno) {
+			this.type = type;
+			this.oldAnno = oldAnno;
+			this.newAnno = newAnno;
+		}
 	}
 
 	class AnnoIndex {
@@ -32,9 +32,10 @@ import ru.kfu.itis.issst.uima.consumer.cao.impl.MysqlJdbcCasAccessObject;
 public class DeltaCalcLauncher {
 
 	public static void main(String[] args) throws IOException {
-		if (args.length != 5) {
+		if (args.length != 5 && args.length != 6) {
 			System.err.println("Usage:\n <cao-ds.properties> <annoType,annoType...> " +
-					"<oldLaunchId,oldLaunchId,...> <newLaunchId,newLaunchId,...> <outputDir>");
+					"<oldLaunchId,oldLaunchId,...> <newLaunchId,newLaunchId,...> <outputDir> " +
+					"[<streaming thread count>]");
 			return;
 		}
 		File caoDsConfigFile = new File(args[0]);
@@ -74,6 +75,17 @@ public class DeltaCalcLauncher {
 			return;
 		}
 
+		// null means that all annotations are loaded in memory
+		Integer threadCount = null;
+		if (args.length > 5) {
+			try {
+				threadCount = Integer.valueOf(args[5]);
+			} catch (NumberFormatException e) {
+				System.err.println("thread count argument is incorrect: " + args[5]);
+				return;
+			}
+		}
+
 		File outputDir = new File(args[4]);
 		if (outputDir.exists()) {
 			if (outputDir.isFile()) {
@@ -104,7 +116,12 @@ public class DeltaCalcLauncher {
 		try {
 			listener = new FileWritingDeltaListener(outputDir);
 			calc.addListener(listener);
-			calc.run();
+			if (threadCount == null) {
+				calc.run();
+			} else {
+				calc.setThreadCount(threadCount);
+				calc.runStreaming();
+			}
 		} finally {
 			if (listener != null) {
 				listener.close();
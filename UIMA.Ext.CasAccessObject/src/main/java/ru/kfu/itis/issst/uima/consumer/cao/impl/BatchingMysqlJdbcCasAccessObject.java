@@ -0,0 +1,444 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.consumer.cao.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+
+import ru.kfu.itis.issst.uima.consumer.cao.BufferedCasAccessObject;
+
+import com.google.common.collect.Lists;
+
+/**
+ * {@link MysqlJdbcCasAccessObject} that buffers spans, annotations and
+ * features and writes them by JDBC batches from a dedicated writer thread.
+ * <p>
+ * Ids of spans and annotations are allocated on the client side from blocks
+ * that are reserved in the table ID_SEQUENCE (see cas-access-db.sql). A
+ * sequence is initialized by the maximal id of its table, but it is not
+ * synchronized with AUTO_INCREMENT values of the table, so the instances of
+ * {@link MysqlJdbcCasAccessObject} should not write into the same database
+ * concurrently.
+ * </p>
+ * <p>
+ * Each processing thread collects rows in its own buffer. {@link #flush()}
+ * puts the buffer into a bounded queue of the writer thread and blocks while
+ * the queue is full. The writer joins queued buffers into batches and runs
+ * until {@link #close()} is invoked. For MySQL Connector/J it is recommended
+ * to set <code>connectionProperties=rewriteBatchedStatements=true</code> in
+ * the data source configuration, so batches are sent as multi-row inserts.
+ * </p>
+ * <p>
+ * Besides the data source properties the configuration may contain:
+ * <ul>
+ * <li>{@value #PROP_BATCH_SIZE} - maximal number of rows in a batch;</li>
+ * <li>{@value #PROP_QUEUE_CAPACITY} - number of flushed buffers that may wait
+ * for the writer;</li>
+ * <li>{@value #PROP_ID_BLOCK_SIZE} - number of ids that are reserved at a
+ * time.</li>
+ * </ul>
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class BatchingMysqlJdbcCasAccessObject extends MysqlJdbcCasAccessObject
+		implements BufferedCasAccessObject {
+
+	public static final String PROP_BATCH_SIZE = "cao.batchSize";
+	public static final String PROP_QUEUE_CAPACITY = "cao.queueCapacity";
+	public static final String PROP_ID_BLOCK_SIZE = "cao.idBlockSize";
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+	public static final int DEFAULT_ID_BLOCK_SIZE = 10000;
+
+	private static final String INSERT_SPAN =
+			"INSERT INTO SPAN (id, doc_id, txt) VALUES (?, ?, ?)";
+	private static final String INSERT_ANNOTATION =
+			"INSERT INTO ANNOTATION (id, anno_type, span_id, txt, start_offset, end_offset) " +
+					"VALUES (?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_FEATURE =
+			"INSERT INTO FEATURE (owner_anno_id, value_anno_id, feature_name) " +
+					"VALUES (?, ?, ?)";
+	private static final String INIT_SEQUENCE =
+			"INSERT INTO ID_SEQUENCE (name, next_id) " +
+					"SELECT '%1$s', COALESCE(MAX(id), 0) + 1 FROM %1$s";
+	private static final String GET_NEXT_ID = "SELECT next_id FROM ID_SEQUENCE WHERE name = ?";
+	private static final String RESERVE_IDS =
+			"UPDATE ID_SEQUENCE SET next_id = ? WHERE name = ? AND next_id = ?";
+	// marks the end of writer input
+	private static final Object STOP = new Object();
+
+	private static final Logger log = Logger.getLogger(BatchingMysqlJdbcCasAccessObject.class
+			.getSimpleName());
+
+	// config fields
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int idBlockSize = DEFAULT_ID_BLOCK_SIZE;
+	// state fields
+	private IdBlockAllocator spanIds;
+	private IdBlockAllocator annoIds;
+	private BlockingQueue<Object> writerQueue;
+	private volatile Thread writer;
+	private volatile Throwable writerFailure;
+	private final ThreadLocal<RowBuffer> threadBuffer = new ThreadLocal<RowBuffer>() {
+		@Override
+		protected RowBuffer initialValue() {
+			return new RowBuffer();
+		}
+	};
+
+	@Override
+	public void load(Properties configProps) {
+		batchSize = getIntProperty(configProps, PROP_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+		int queueCapacity = getIntProperty(configProps, PROP_QUEUE_CAPACITY,
+				DEFAULT_QUEUE_CAPACITY);
+		idBlockSize = getIntProperty(configProps, PROP_ID_BLOCK_SIZE, DEFAULT_ID_BLOCK_SIZE);
+		super.load(configProps);
+		spanIds = new IdBlockAllocator("SPAN");
+		annoIds = new IdBlockAllocator("ANNOTATION");
+		writerQueue = new ArrayBlockingQueue<Object>(queueCapacity);
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runWriter();
+			}
+		}, "cao-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public long persistSpan(long docId, String coveredText) {
+		long id = spanIds.next();
+		threadBuffer.get().spans.add(new SpanRow(id, docId,
+				truncateString(coveredText, 512)));
+		return id;
+	}
+
+	@Override
+	public long persistAnnotation(String type, long spanId, String coveredText,
+			int startOffset, int endOffset) {
+		long id = annoIds.next();
+		threadBuffer.get().annotations.add(new AnnotationRow(id, type, spanId,
+				truncateString(coveredText, 512), startOffset, endOffset));
+		return id;
+	}
+
+	@Override
+	public void persistFeature(long ownerAnnoId, String featureName, long valueAnnoId) {
+		threadBuffer.get().features.add(new FeatureRow(ownerAnnoId, valueAnnoId, featureName));
+	}
+
+	@Override
+	public void flush() {
+		RowBuffer buf = threadBuffer.get();
+		if (buf.isEmpty()) {
+			return;
+		}
+		threadBuffer.remove();
+		enqueue(buf);
+	}
+
+	@Override
+	public void discard() {
+		threadBuffer.remove();
+	}
+
+	@Override
+	public void awaitCompletion() {
+		flush();
+		if (writer == null) {
+			// closed, all handed over rows have been written
+			return;
+		}
+		CountDownLatch completion = new CountDownLatch(1);
+		enqueue(completion);
+		try {
+			while (!completion.await(100, TimeUnit.MILLISECONDS)) {
+				checkWriter();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		checkWriter();
+	}
+
+	@Override
+	public synchronized void close() {
+		Thread w = writer;
+		if (w == null) {
+			return;
+		}
+		writer = null;
+		try {
+			// the writer has gone if it failed
+			while (w.isAlive() && !writerQueue.offer(STOP, 100, TimeUnit.MILLISECONDS)) {
+				// the queue is full
+			}
+			w.join();
+		} catch (InterruptedException e) {
+			w.interrupt();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void enqueue(Object item) {
+		checkWriter();
+		try {
+			while (!writerQueue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+				checkWriter();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		checkWriter();
+	}
+
+	private void checkWriter() {
+		Throwable failure = writerFailure;
+		if (failure != null) {
+			throw new IllegalStateException("CAS access object writer failed", failure);
+		}
+		if (writer == null) {
+			throw new IllegalStateException("CAS access object is closed");
+		}
+	}
+
+	private void runWriter() {
+		RowBuffer pending = new RowBuffer();
+		try {
+			while (true) {
+				Object item = pending.isEmpty() ? writerQueue.take() : writerQueue.poll();
+				if (item instanceof RowBuffer) {
+					pending.addAll((RowBuffer) item);
+					if (pending.size() >= batchSize) {
+						write(pending);
+					}
+				} else {
+					// the queue is drained, a completion is awaited or the writer is stopped
+					write(pending);
+					if (item == STOP) {
+						return;
+					}
+					if (item != null) {
+						((CountDownLatch) item).countDown();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// exit
+		} catch (Throwable e) {
+			log.log(Level.SEVERE, "CAS access object writer failed", e);
+			writerFailure = e;
+		}
+	}
+
+	private void write(RowBuffer rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		// spans and annotations go first to keep the referential integrity
+		for (List<SpanRow> batch : Lists.partition(rows.spans, batchSize)) {
+			writeSpans(batch);
+		}
+		for (List<AnnotationRow> batch : Lists.partition(rows.annotations, batchSize)) {
+			writeAnnotations(batch);
+		}
+		for (List<FeatureRow> batch : Lists.partition(rows.features, batchSize)) {
+			writeFeatures(batch);
+		}
+		rows.clear();
+	}
+
+	private void writeSpans(final List<SpanRow> batch) {
+		getJdbcTemplate().batchUpdate(INSERT_SPAN, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				SpanRow row = batch.get(i);
+				ps.setLong(1, row.id);
+				ps.setLong(2, row.docId);
+				ps.setString(3, row.txt);
+			}
+
+			@Override
+			public int getBatchSize() {
+				return batch.size();
+			}
+		});
+	}
+
+	private void writeAnnotations(final List<AnnotationRow> batch) {
+		getJdbcTemplate().batchUpdate(INSERT_ANNOTATION, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				AnnotationRow row = batch.get(i);
+				ps.setLong(1, row.id);
+				ps.setString(2, row.type);
+				ps.setLong(3, row.spanId);
+				ps.setString(4, row.txt);
+				ps.setInt(5, row.startOffset);
+				ps.setInt(6, row.endOffset);
+			}
+
+			@Override
+			public int getBatchSize() {
+				return batch.size();
+			}
+		});
+	}
+
+	private void writeFeatures(final List<FeatureRow> batch) {
+		getJdbcTemplate().batchUpdate(INSERT_FEATURE, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				FeatureRow row = batch.get(i);
+				ps.setLong(1, row.ownerAnnoId);
+				ps.setLong(2, row.valueAnnoId);
+				ps.setString(3, row.name);
+			}
+
+			@Override
+			public int getBatchSize() {
+				return batch.size();
+			}
+		});
+	}
+
+	private static int getIntProperty(Properties props, String key, int defaultValue) {
+		String valStr = props.getProperty(key);
+		if (valStr == null) {
+			return defaultValue;
+		}
+		int result = Integer.parseInt(valStr.trim());
+		if (result <= 0) {
+			throw new IllegalStateException(String.format(
+					"Illegal value of %s: %s", key, valStr));
+		}
+		return result;
+	}
+
+	/**
+	 * Hands out ids from blocks reserved in ID_SEQUENCE.
+	 */
+	private class IdBlockAllocator {
+		private final String tableName;
+		private long nextId;
+		private long blockEnd;
+
+		IdBlockAllocator(String tableName) {
+			this.tableName = tableName;
+			if (getJdbcTemplate().queryForList(GET_NEXT_ID, Long.class, tableName).isEmpty()) {
+				try {
+					getJdbcTemplate().update(String.format(INIT_SEQUENCE, tableName));
+				} catch (DuplicateKeyException e) {
+					// initialized concurrently
+				}
+			}
+		}
+
+		synchronized long next() {
+			if (nextId == blockEnd) {
+				reserveBlock();
+			}
+			return nextId++;
+		}
+
+		private void reserveBlock() {
+			// compare-and-set does not need transactions, so it works for MyISAM tables
+			while (true) {
+				long blockStart = getJdbcTemplate().queryForObject(GET_NEXT_ID, Long.class,
+						tableName);
+				if (getJdbcTemplate().update(RESERVE_IDS,
+						blockStart + idBlockSize, tableName, blockStart) == 1) {
+					nextId = blockStart;
+					blockEnd = blockStart + idBlockSize;
+					return;
+				}
+			}
+		}
+	}
+
+	private static class RowBuffer {
+		private final List<SpanRow> spans = Lists.newArrayList();
+		private final List<AnnotationRow> annotations = Lists.newArrayList();
+		private final List<FeatureRow> features = Lists.newArrayList();
+
+		boolean isEmpty() {
+			return size() == 0;
+		}
+
+		int size() {
+			return spans.size() + annotations.size() + features.size();
+		}
+
+		void addAll(RowBuffer other) {
+			spans.addAll(other.spans);
+			annotations.addAll(other.annotations);
+			features.addAll(other.features);
+		}
+
+		void clear() {
+			spans.clear();
+			annotations.clear();
+			features.clear();
+		}
+	}
+
+	private static class SpanRow {
+		private final long id;
+		private final long docId;
+		private final String txt;
+
+		SpanRow(long id, long docId, String txt) {
+			this.id = id;
+			this.docId = docId;
+			this.txt = txt;
+		}
+	}
+
+	private static class AnnotationRow {
+		private final long id;
+		private final String type;
+		private final long spanId;
+		private final String txt;
+		private final int startOffset;
+		private final int endOffset;
+
+		AnnotationRow(long id, String type, long spanId, String txt,
+				int startOffset, int endOffset) {
+			this.id = id;
+			this.type = type;
+			this.spanId = spanId;
+			this.txt = txt;
+			this.startOffset = startOffset;
+			this.endOffset = endOffset;
+		}
+	}
+
+	private static class FeatureRow {
+		private final long ownerAnnoId;
+		private final long valueAnnoId;
+		private final String name;
+
+		FeatureRow(long ownerAnnoId, long valueAnnoId, String name) {
+			this.ownerAnnoId = ownerAnnoId;
+			this.valueAnnoId = valueAnnoId;
+			this.name = name;
+		}
+	}
+}
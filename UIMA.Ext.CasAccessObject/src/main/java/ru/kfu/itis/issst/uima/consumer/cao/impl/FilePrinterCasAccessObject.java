@@ -21,6 +21,7 @@ import java.util.logging.Logger;
 import org.apache.uima.resource.DataResource;
 import org.apache.uima.resource.ResourceInitializationException;
 
+import ru.kfu.itis.issst.uima.consumer.cao.AnnotationCursor;
 import ru.kfu.itis.issst.uima.consumer.cao.CasAccessObject;
 
 /**
@@ -130,6 +131,12 @@ public class FilePrinterCasAccessObject implements CasAccessObject {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public AnnotationCursor openTopAnnotationsCursor(Set<Integer> launchIds,
+			Set<String> topAnnoTypes) {
+		throw new UnsupportedOperationException();
+	}
+
 	private void print(String str, Object... args) {
 		printer.println(String.format(str, args));
 	}
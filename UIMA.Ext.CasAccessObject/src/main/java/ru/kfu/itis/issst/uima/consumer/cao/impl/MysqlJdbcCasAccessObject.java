@@ -4,12 +4,16 @@
 package ru.kfu.itis.issst.uima.consumer.cao.impl;
 
 import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Set;
 
@@ -21,8 +25,10 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.KeyHolder;
 
+import ru.kfu.itis.issst.uima.consumer.cao.AnnotationCursor;
 import ru.kfu.itis.issst.uima.consumer.cao.CasAccessObject;
 
 /**
@@ -55,6 +61,22 @@ public class MysqlJdbcCasAccessObject extends NamedParameterJdbcDaoSupport
 					"WHERE anno_type IN (:types) " +
 					"AND doc.launch_id IN (:launchIds)" +
 					"ORDER BY an.id";
+	// document.uri has a binary collation, so the order is the one of String#compareTo.
+	// STRAIGHT_JOIN makes documents the first table, so they can be read in the
+	// order of idx_document_uri and joined by idx_span_doc and idx_annotation_span
+	// without a filesort of annotations. EXPLAIN of this query is expected to show
+	// 'index' access of doc by idx_document_uri and no 'Using filesort'.
+	// Annotations of a document are not ordered, see the cursor contract.
+	private static final String GET_TOP_ANNOS_BY_LAUNCH_AND_TYPE_ORDERED_BY_DOC =
+			"SELECT STRAIGHT_JOIN an.id AS annoId, an.anno_type AS annoType, " +
+					"an.txt AS annoTxt, an.start_offset AS annoStartOffset, " +
+					"an.end_offset AS annoEndOffset, doc.uri AS docURI " +
+					"FROM document doc " +
+					"JOIN span sp ON sp.doc_id=doc.id " +
+					"JOIN annotation an ON an.span_id=sp.id " +
+					"WHERE an.anno_type IN (%s) " +
+					"AND doc.launch_id IN (%s) " +
+					"ORDER BY doc.uri";
 
 	@Override
 	public void load(DataResource data) throws ResourceInitializationException {
@@ -171,11 +193,60 @@ public class MysqlJdbcCasAccessObject extends NamedParameterJdbcDaoSupport
 				params, new AnnotationDTORowMapper());
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Rows are streamed by MySQL Connector/J, so the cursor holds a connection
+	 * exclusively until it is closed.
+	 * </p>
+	 */
+	@Override
+	public AnnotationCursor openTopAnnotationsCursor(Set<Integer> launchIds,
+			Set<String> topAnnoTypes) {
+		if (launchIds.isEmpty() || topAnnoTypes.isEmpty()) {
+			return new ResultSetAnnotationCursor(null, null, null);
+		}
+		String sql = String.format(GET_TOP_ANNOS_BY_LAUNCH_AND_TYPE_ORDERED_BY_DOC,
+				placeholders(topAnnoTypes.size()), placeholders(launchIds.size()));
+		Connection con = null;
+		PreparedStatement ps = null;
+		try {
+			con = getDataSource().getConnection();
+			ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			// makes Connector/J stream rows instead of reading the whole result
+			ps.setFetchSize(Integer.MIN_VALUE);
+			int paramIdx = 1;
+			for (String type : topAnnoTypes) {
+				ps.setString(paramIdx++, type);
+			}
+			for (Integer launchId : launchIds) {
+				ps.setInt(paramIdx++, launchId);
+			}
+			return new ResultSetAnnotationCursor(con, ps, ps.executeQuery());
+		} catch (SQLException e) {
+			JdbcUtils.closeStatement(ps);
+			JdbcUtils.closeConnection(con);
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append('?');
+		}
+		return sb.toString();
+	}
+
 	private MapSqlParameterSource mapSource(Map<String, Object> paramsMap) {
 		return new MapSqlParameterSource(paramsMap);
 	}
 
-	private String truncateString(String src, int maxLength) {
+	protected String truncateString(String src, int maxLength) {
 		if (src.length() > maxLength) {
 			src = src.substring(0, maxLength - TRUNCATED_STRING_PREFIX.length());
 			src = TRUNCATED_STRING_PREFIX + src;
@@ -189,7 +260,64 @@ public class MysqlJdbcCasAccessObject extends NamedParameterJdbcDaoSupport
 
 	private static final String TRUNCATED_STRING_PREFIX = "%tr%";
 
-	private class AnnotationDTORowMapper implements RowMapper<AnnotationDTO> {
+	private static class ResultSetAnnotationCursor implements AnnotationCursor {
+		private Connection con;
+		private Statement stmt;
+		private ResultSet rs;
+		private AnnotationDTORowMapper rowMapper = new AnnotationDTORowMapper();
+		private AnnotationDTO next;
+		private int rowNum;
+
+		ResultSetAnnotationCursor(Connection con, Statement stmt, ResultSet rs) {
+			this.con = con;
+			this.stmt = stmt;
+			this.rs = rs;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && rs != null) {
+				try {
+					if (rs.next()) {
+						next = rowMapper.mapRow(rs, rowNum++);
+					} else {
+						close();
+					}
+				} catch (SQLException e) {
+					close();
+					throw new IllegalStateException(e);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public AnnotationDTO next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			AnnotationDTO result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(stmt);
+			JdbcUtils.closeConnection(con);
+			rs = null;
+			stmt = null;
+			con = null;
+		}
+	}
+
+	private static class AnnotationDTORowMapper implements RowMapper<AnnotationDTO> {
 		@Override
 		public AnnotationDTO mapRow(ResultSet rs, int rowNum) throws SQLException {
 			AnnotationDTO result = new AnnotationDTO();
@@ -5,18 +5,21 @@ started TIMESTAMP NOT NULL
 
 CREATE TABLE DOCUMENT (
 id INT AUTO_INCREMENT PRIMARY KEY,
-uri VARCHAR(256) NOT NULL,
+-- the binary collation gives the order of Java String#compareTo for the annotation cursor
+uri VARCHAR(256) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL,
 size INT,
 processing_time BIGINT,
 launch_id INT NOT NULL,
-CONSTRAINT document2launch FOREIGN KEY (launch_id) REFERENCES LAUNCH (id) ON DELETE CASCADE ON UPDATE RESTRICT
+CONSTRAINT document2launch FOREIGN KEY (launch_id) REFERENCES LAUNCH (id) ON DELETE CASCADE ON UPDATE RESTRICT,
+INDEX idx_document_uri (uri)
 ) ENGINE = MYISAM;
 
 CREATE TABLE SPAN (
 id INT AUTO_INCREMENT PRIMARY KEY,
 doc_id INT NOT NULL,
 txt VARCHAR(512) NOT NULL,
-CONSTRAINT span2document FOREIGN KEY (doc_id) REFERENCES DOCUMENT (id) ON DELETE CASCADE ON UPDATE RESTRICT
+CONSTRAINT span2document FOREIGN KEY (doc_id) REFERENCES DOCUMENT (id) ON DELETE CASCADE ON UPDATE RESTRICT,
+INDEX idx_span_doc (doc_id)
 ) ENGINE = MYISAM;
 
 CREATE TABLE ANNOTATION (
@@ -26,7 +29,8 @@ span_id INT NOT NULL,
 txt VARCHAR(512),
 start_offset INT NOT NULL,
 end_offset INT NOT NULL,
-CONSTRAINT annotation2span FOREIGN KEY (span_id) REFERENCES SPAN (id) ON DELETE CASCADE ON UPDATE RESTRICT
+CONSTRAINT annotation2span FOREIGN KEY (span_id) REFERENCES SPAN (id) ON DELETE CASCADE ON UPDATE RESTRICT,
+INDEX idx_annotation_span (span_id)
 ) ENGINE = MYISAM;
 
 CREATE TABLE FEATURE (
@@ -36,4 +40,15 @@ feature_name VARCHAR(32) NOT NULL,
 CONSTRAINT feature2annotation_owner FOREIGN KEY (owner_anno_id) REFERENCES ANNOTATION(id) ON DELETE CASCADE ON UPDATE RESTRICT,
 CONSTRAINT feature2annotation_value FOREIGN KEY (value_anno_id) REFERENCES ANNOTATION(id) ON DELETE CASCADE ON UPDATE RESTRICT,
 INDEX idx_owner_feature (owner_anno_id, feature_name)
-) ENGINE = MYISAM;
\ No newline at end of file
+) ENGINE = MYISAM;
+
+CREATE TABLE ID_SEQUENCE (
+name VARCHAR(32) PRIMARY KEY,
+next_id BIGINT NOT NULL
+) ENGINE = MYISAM;
+
+-- Existing databases are migrated by:
+-- ALTER TABLE DOCUMENT MODIFY uri VARCHAR(256) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL,
+--   ADD INDEX idx_document_uri (uri);
+-- ALTER TABLE SPAN ADD INDEX idx_span_doc (doc_id);
+-- ALTER TABLE ANNOTATION ADD INDEX idx_annotation_span (span_id);
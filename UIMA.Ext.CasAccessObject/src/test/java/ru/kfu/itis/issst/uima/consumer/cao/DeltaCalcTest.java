@@ -0,0 +1,224 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.consumer.cao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.uima.resource.DataResource;
+import org.junit.Test;
+
+import ru.kfu.itis.issst.uima.consumer.cao.impl.AnnotationDTO;
+import ru.kfu.itis.issst.uima.consumer.cao.impl.AnnotationDTOs;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class DeltaCalcTest {
+
+	@Test
+	public void streamingShouldGiveTheSameEvents() {
+		InMemoryCasAccessObject cao = new InMemoryCasAccessObject(new Random(42));
+		Map<String, List<String>> expected = calcDelta(cao, 0);
+		String allEvents = expected.values().toString();
+		for (String eventType : new String[] { "N", "C", "L", "S" }) {
+			assertTrue(allEvents.contains(eventType));
+		}
+		// events of each document are fired in the same order
+		assertEquals(expected, calcDelta(cao, 1));
+		assertEquals(expected, calcDelta(cao, 4));
+	}
+
+	@Test
+	public void streamingShouldFailOnUnorderedDocuments() {
+		InMemoryCasAccessObject cao = new InMemoryCasAccessObject(new Random(42));
+		cao.cursorOrder = Collections.reverseOrder(cao.cursorOrder);
+		for (int threadCount : new int[] { 1, 4 }) {
+			try {
+				calcDelta(cao, threadCount);
+				fail("Unordered documents are not detected");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * @param threadCount
+	 *            0 to use {@link DeltaCalc#run()}
+	 * @return document URI => delta events of the document
+	 */
+	private static Map<String, List<String>> calcDelta(CasAccessObject cao, int threadCount) {
+		DeltaCalc dc = new DeltaCalc(cao);
+		dc.setPastLaunchIds(ImmutableSet.of(1));
+		dc.setNewLaunchIds(ImmutableSet.of(2, 3));
+		dc.setTopAnnoTypes(ImmutableSet.of("A", "B"));
+		final Map<String, List<String>> result = Maps.newHashMap();
+		dc.addListener(new DeltaCalc.DeltaListener() {
+			@Override
+			public void onNewAnnotation(AnnotationDTO anno) {
+				add(anno.getDocUri(), "N" + anno.getId());
+			}
+
+			@Override
+			public void onChangedAnnotation(AnnotationDTO oldAnno, AnnotationDTO newAnno) {
+				add(newAnno.getDocUri(), "C" + oldAnno.getId() + "/" + newAnno.getId());
+			}
+
+			@Override
+			public void onLostAnnotation(AnnotationDTO anno) {
+				add(anno.getDocUri(), "L" + anno.getId());
+			}
+
+			@Override
+			public void onSavedAnnotation(AnnotationDTO oldAnno, AnnotationDTO newAnno) {
+				add(newAnno.getDocUri(), "S" + oldAnno.getId() + "/" + newAnno.getId());
+			}
+
+			private void add(String docUri, String event) {
+				List<String> docEvents = result.get(docUri);
+				if (docEvents == null) {
+					docEvents = Lists.newArrayList();
+					result.put(docUri, docEvents);
+				}
+				docEvents.add(event);
+			}
+		});
+		if (threadCount == 0) {
+			dc.run();
+		} else {
+			dc.setThreadCount(threadCount);
+			dc.runStreaming();
+		}
+		return result;
+	}
+
+	private static class InMemoryCasAccessObject implements CasAccessObject {
+		// launch id => annotations
+		private final Map<Integer, List<AnnotationDTO>> launches = Maps.newHashMap();
+		// by URI, annotations of a document go from right to left
+		private Comparator<AnnotationDTO> cursorOrder = new Comparator<AnnotationDTO>() {
+			@Override
+			public int compare(AnnotationDTO first, AnnotationDTO second) {
+				int result = first.getDocUri().compareTo(second.getDocUri());
+				if (result == 0) {
+					result = second.getStartOffset() - first.getStartOffset();
+				}
+				return result;
+			}
+		};
+
+		InMemoryCasAccessObject(Random rand) {
+			long id = 1;
+			for (int launchId = 1; launchId <= 3; launchId++) {
+				List<AnnotationDTO> annos = Lists.newArrayList();
+				for (int d = 0; d < 300; d++) {
+					// a document is absent in some launches
+					if (rand.nextInt(10) == 0) {
+						continue;
+					}
+					int offset = 0;
+					for (int i = rand.nextInt(20); i > 0; i--) {
+						// annotations of the same type may start at the same offset
+						offset += rand.nextInt(5);
+						int length = 1 + rand.nextInt(6);
+						annos.add(AnnotationDTOs.create(id++, "doc" + d,
+								rand.nextBoolean() ? "A" : "B", offset, offset + length));
+						offset += length / 2;
+					}
+				}
+				launches.put(launchId, annos);
+			}
+		}
+
+		@Override
+		public List<AnnotationDTO> getTopAnnotationsByLaunch(Set<Integer> launchIds,
+				Set<String> topAnnoTypes) {
+			// ids grow with launch ids, so the result is ordered by id
+			List<AnnotationDTO> result = Lists.newArrayList();
+			for (Integer launchId : launchIds) {
+				for (AnnotationDTO anno : launches.get(launchId)) {
+					if (topAnnoTypes.contains(anno.getType())) {
+						result.add(anno);
+					}
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public AnnotationCursor openTopAnnotationsCursor(Set<Integer> launchIds,
+				Set<String> topAnnoTypes) {
+			List<AnnotationDTO> annos = getTopAnnotationsByLaunch(launchIds, topAnnoTypes);
+			Collections.sort(annos, cursorOrder);
+			final Iterator<AnnotationDTO> iter = annos.iterator();
+			return new AnnotationCursor() {
+				@Override
+				public boolean hasNext() {
+					return iter.hasNext();
+				}
+
+				@Override
+				public AnnotationDTO next() {
+					return iter.next();
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		@Override
+		public void load(DataResource data) {
+		}
+
+		@Override
+		public long persistAnnotation(String type, long spanId, String coveredText,
+				int startOffset, int endOffset) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void persistFeature(long ownerAnnoId, String featureName, long valueAnnoId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long persistLaunch(Date startedTime) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long persistDocument(long launchId, String docURI, Long size,
+				Long processingTime) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long persistSpan(long docId, String coveredText) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.consumer.cao.impl;
+
+/**
+ * Creates {@link AnnotationDTO}s for tests outside of this package.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class AnnotationDTOs {
+
+	public static AnnotationDTO create(long id, String docUri, String type,
+			int startOffset, int endOffset) {
+		AnnotationDTO result = new AnnotationDTO();
+		result.setId(id);
+		result.setDocUri(docUri);
+		result.setType(type);
+		result.setStartOffset(startOffset);
+		result.setEndOffset(endOffset);
+		return result;
+	}
+
+	private AnnotationDTOs() {
+	}
+}
@@ -0,0 +1,247 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.consumer.cao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.google.common.collect.Lists;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class BatchingMysqlJdbcCasAccessObjectTest {
+
+	private static final AtomicInteger dbCounter = new AtomicInteger();
+
+	private BatchingMysqlJdbcCasAccessObject dao;
+	private JdbcTemplate jdbc;
+	private long docId;
+
+	@Before
+	public void setUp() {
+		Properties props = new Properties();
+		props.setProperty("driverClassName", "org.hsqldb.jdbc.JDBCDriver");
+		props.setProperty("url", "jdbc:hsqldb:mem:batching-cao-test-" + dbCounter.incrementAndGet());
+		props.setProperty("username", "SA");
+		props.setProperty("password", "");
+		props.setProperty(BatchingMysqlJdbcCasAccessObject.PROP_BATCH_SIZE, "4");
+		props.setProperty(BatchingMysqlJdbcCasAccessObject.PROP_QUEUE_CAPACITY, "2");
+		props.setProperty(BatchingMysqlJdbcCasAccessObject.PROP_ID_BLOCK_SIZE, "3");
+		// the schema is created through the plain DAO
+		MysqlJdbcCasAccessObject schemaDao = new MysqlJdbcCasAccessObject();
+		schemaDao.load(props);
+		jdbc = schemaDao.getJdbcTemplate();
+		createSchema(jdbc);
+		long launchId = schemaDao.persistLaunch(new Date());
+		docId = schemaDao.persistDocument(launchId, "file:/test.txt", null, null);
+		// ids of spans written before should not be reused
+		jdbc.update("INSERT INTO SPAN (id, doc_id, txt) VALUES (7, ?, 'old')", docId);
+		dao = new BatchingMysqlJdbcCasAccessObject();
+		dao.load(props);
+	}
+
+	@After
+	public void tearDown() {
+		dao.close();
+		jdbc.execute("SHUTDOWN");
+	}
+
+	@Test
+	public void shouldWriteRowsWithIdsFromSequence() {
+		List<Long> spanIds = Lists.newArrayList();
+		List<Long> annoIds = Lists.newArrayList();
+		for (int s = 0; s < 5; s++) {
+			long spanId = dao.persistSpan(docId, "span " + s);
+			spanIds.add(spanId);
+			for (int a = 0; a < 2; a++) {
+				long annoId = dao.persistAnnotation("Word", spanId, "word " + a, a, a + 1);
+				if (a > 0) {
+					dao.persistFeature(annoId, "prev", annoIds.get(annoIds.size() - 1));
+				}
+				annoIds.add(annoId);
+			}
+			dao.flush();
+		}
+		dao.awaitCompletion();
+		// span ids go after the max id, annotation ids start from 1
+		assertEquals(Lists.newArrayList(8L, 9L, 10L, 11L, 12L), spanIds);
+		for (int i = 0; i < annoIds.size(); i++) {
+			assertEquals(Long.valueOf(i + 1), annoIds.get(i));
+		}
+		// blocks of 3 ids are reserved
+		assertEquals(Long.valueOf(14), jdbc.queryForObject(
+				"SELECT next_id FROM ID_SEQUENCE WHERE name = 'SPAN'", Long.class));
+		assertEquals(Long.valueOf(13), jdbc.queryForObject(
+				"SELECT next_id FROM ID_SEQUENCE WHERE name = 'ANNOTATION'", Long.class));
+		assertEquals(spanIds, jdbc.queryForList(
+				"SELECT id FROM SPAN WHERE id > 7 ORDER BY id", Long.class));
+		assertEquals(annoIds, jdbc.queryForList(
+				"SELECT id FROM ANNOTATION ORDER BY id", Long.class));
+		Map<String, Object> anno = jdbc.queryForMap("SELECT * FROM ANNOTATION WHERE id = 4");
+		assertEquals("Word", anno.get("ANNO_TYPE"));
+		assertEquals(9, ((Number) anno.get("SPAN_ID")).intValue());
+		assertEquals("word 1", anno.get("TXT"));
+		assertEquals(1, ((Number) anno.get("START_OFFSET")).intValue());
+		assertEquals(2, ((Number) anno.get("END_OFFSET")).intValue());
+		assertEquals(5, countRows("FEATURE"));
+		assertEquals(1, countRows("FEATURE WHERE owner_anno_id = 4 AND value_anno_id = 3"));
+	}
+
+	@Test
+	public void shouldWriteOnlyFlushedRows() throws Exception {
+		long spanId = dao.persistSpan(docId, "flushed");
+		dao.persistAnnotation("Word", spanId, "flushed", 0, 1);
+		dao.flush();
+		// rows of another thread are not flushed by awaitCompletion
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					dao.persistSpan(docId, "not flushed");
+				}
+			}).get();
+			dao.awaitCompletion();
+			assertEquals(1, countRows("SPAN WHERE id > 7"));
+			assertEquals(1, countRows("ANNOTATION"));
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					dao.flush();
+				}
+			}).get();
+		} finally {
+			executor.shutdown();
+		}
+		// discarded rows are not written
+		dao.persistSpan(docId, "discarded");
+		dao.discard();
+		dao.awaitCompletion();
+		assertEquals(Lists.newArrayList("flushed", "not flushed"), jdbc.queryForList(
+				"SELECT txt FROM SPAN WHERE id > 7 ORDER BY id", String.class));
+	}
+
+	@Test
+	public void shouldWriteFromSeveralThreads() throws Exception {
+		final int docNum = 50;
+		int threadNum = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+		try {
+			List<Future<?>> futures = Lists.newArrayList();
+			for (int t = 0; t < threadNum; t++) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int d = 0; d < docNum; d++) {
+							long spanId = dao.persistSpan(docId, "span");
+							long annoId = dao.persistAnnotation("Word", spanId, "w1", 0, 1);
+							long annoId2 = dao.persistAnnotation("Word", spanId, "w2", 1, 2);
+							dao.persistFeature(annoId2, "prev", annoId);
+							dao.flush();
+						}
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		dao.awaitCompletion();
+		assertEquals(threadNum * docNum, countRows("SPAN WHERE id > 7"));
+		assertEquals(threadNum * docNum * 2, countRows("ANNOTATION"));
+		assertEquals(threadNum * docNum, countRows("FEATURE"));
+		// ids are unique and taken from the reserved blocks
+		assertEquals(threadNum * docNum * 2, countRows(
+				"(SELECT DISTINCT id FROM ANNOTATION) AS ids"));
+		assertTrue(jdbc.queryForObject("SELECT MAX(id) FROM ANNOTATION", Long.class)
+				< jdbc.queryForObject(
+						"SELECT next_id FROM ID_SEQUENCE WHERE name = 'ANNOTATION'", Long.class));
+	}
+
+	@Test
+	public void shouldPropagateWriterFailure() {
+		dao.persistAnnotation("Word", 1000, "no such span", 0, 1);
+		dao.flush();
+		try {
+			dao.awaitCompletion();
+			fail("Writer failure is not propagated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		dao.persistSpan(docId, "after failure");
+		try {
+			dao.flush();
+			fail("Writer failure is not propagated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void shouldWriteHandedOverRowsOnClose() {
+		dao.persistSpan(docId, "span");
+		dao.flush();
+		dao.close();
+		assertEquals(1, countRows("SPAN WHERE id > 7"));
+		// nothing to wait for
+		dao.awaitCompletion();
+		dao.close();
+		dao.persistSpan(docId, "after close");
+		try {
+			dao.flush();
+			fail("Flush after close");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private int countRows(String from) {
+		return jdbc.queryForObject("SELECT COUNT(*) FROM " + from, Integer.class);
+	}
+
+	// HSQLDB counterpart of src/main/sql/mysql/cas-access-db.sql
+	private static void createSchema(JdbcTemplate jdbc) {
+		jdbc.execute("CREATE TABLE LAUNCH (" +
+				"id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+				"started TIMESTAMP NOT NULL)");
+		jdbc.execute("CREATE TABLE DOCUMENT (" +
+				"id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+				"uri VARCHAR(256) NOT NULL, size INT, processing_time BIGINT, " +
+				"launch_id INT NOT NULL REFERENCES LAUNCH (id))");
+		jdbc.execute("CREATE TABLE SPAN (" +
+				"id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+				"doc_id INT NOT NULL REFERENCES DOCUMENT (id), " +
+				"txt VARCHAR(512) NOT NULL)");
+		jdbc.execute("CREATE TABLE ANNOTATION (" +
+				"id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+				"anno_type VARCHAR(64) NOT NULL, " +
+				"span_id INT NOT NULL REFERENCES SPAN (id), " +
+				"txt VARCHAR(512), start_offset INT NOT NULL, end_offset INT NOT NULL)");
+		jdbc.execute("CREATE TABLE FEATURE (" +
+				"owner_anno_id INT NOT NULL REFERENCES ANNOTATION (id), " +
+				"value_anno_id INT REFERENCES ANNOTATION (id), " +
+				"feature_name VARCHAR(32) NOT NULL)");
+		jdbc.execute("CREATE TABLE ID_SEQUENCE (" +
+				"name VARCHAR(32) PRIMARY KEY, next_id BIGINT NOT NULL)");
+	}
+}
@@ -241,7 +241,35 @@ public class AnnotationUtils {
 	}
 
 	public static <A extends AnnotationFS> OverlapIndex<A> createOverlapIndex(Iterator<A> srcIter) {
-		return TreeMapOverlapIndex.from(srcIter);
+		return createOverlapIndex(srcIter, OverlapIndexImpl.SORTED_ARRAY);
+	}
+
+	public static <A extends AnnotationFS> OverlapIndex<A> createOverlapIndex(Iterator<A> srcIter,
+			OverlapIndexImpl impl) {
+		switch (impl) {
+		case SORTED_ARRAY:
+			return SortedArrayOverlapIndex.from(srcIter);
+		case TREE_MAP:
+			return TreeMapOverlapIndex.from(srcIter);
+		default:
+			throw new UnsupportedOperationException(String.valueOf(impl));
+		}
+	}
+
+	/**
+	 * Implementations of {@link OverlapIndex}. They give the same results.
+	 */
+	public static enum OverlapIndexImpl {
+		/**
+		 * Primitive offset arrays with a max-end tree, see
+		 * {@link SortedArrayOverlapIndex}. This is the default.
+		 */
+		SORTED_ARRAY,
+		/**
+		 * Tree maps from offsets to annotation sets, see
+		 * {@link TreeMapOverlapIndex}.
+		 */
+		TREE_MAP
 	}
 
 	private static final Function<AnnotationFS, String> coveredTextFunction = new Function<AnnotationFS, String>() {
@@ -3,6 +3,7 @@
  */
 package ru.kfu.itis.cll.uima.cas;
 
+import java.util.Iterator;
 import java.util.Set;
 
 import org.apache.uima.cas.text.AnnotationFS;
@@ -29,4 +30,14 @@ public interface OverlapIndex<A extends AnnotationFS> {
 	 */
 	Set<A> getOverlapping(int begin, int end);
 
+	/**
+	 * @param begin
+	 * @param end
+	 * @return iterator over the same annotations and in the same order as
+	 *         {@link #getOverlapping(int, int)} does. Implementations may
+	 *         compute them lazily, so prefer this method if the result is
+	 *         traversed only once.
+	 */
+	Iterator<A> overlappingIterator(int begin, int end);
+
 }
\ No newline at end of file
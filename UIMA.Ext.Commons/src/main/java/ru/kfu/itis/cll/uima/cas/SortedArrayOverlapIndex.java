@@ -0,0 +1,181 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.cas;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.uima.cas.text.AnnotationFS;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * {@link OverlapIndex} on primitive arrays of offsets. Annotations are sorted
+ * by offsets as in {@link AnnotationOffsetComparator} (stable, so source
+ * iterator ordering is kept for equal offsets). A static max-end tree over the
+ * sorted array finds annotations that begin before a query and end inside it.
+ * <p>
+ * Results are the same as of {@link TreeMapOverlapIndex}: an annotation is
+ * returned if its begin is in [begin, end) or its end is in (begin, end].
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class SortedArrayOverlapIndex<A extends AnnotationFS> implements OverlapIndex<A> {
+	// factory methods
+	static <A extends AnnotationFS> SortedArrayOverlapIndex<A> from(Iterator<A> srcIter) {
+		return new SortedArrayOverlapIndex<A>(srcIter);
+	}
+
+	// IMPL START
+	private final Object[] annos;
+	private final int[] begins;
+	private final int[] ends;
+	// the complete binary tree of max ends, leaves start at treeLeafOffset
+	private final int[] maxEnds;
+	private final int treeLeafOffset;
+
+	private SortedArrayOverlapIndex(Iterator<A> srcIter) {
+		List<A> srcList = Lists.newArrayList(srcIter);
+		annos = srcList.toArray();
+		// Arrays.sort on objects is stable
+		Arrays.sort(annos, offsetComp);
+		int size = annos.length;
+		begins = new int[size];
+		ends = new int[size];
+		for (int i = 0; i < size; i++) {
+			AnnotationFS anno = (AnnotationFS) annos[i];
+			begins[i] = anno.getBegin();
+			ends[i] = anno.getEnd();
+		}
+		int leafOffset = 1;
+		while (leafOffset < size) {
+			leafOffset <<= 1;
+		}
+		treeLeafOffset = leafOffset;
+		maxEnds = new int[2 * leafOffset];
+		Arrays.fill(maxEnds, Integer.MIN_VALUE);
+		System.arraycopy(ends, 0, maxEnds, leafOffset, size);
+		for (int node = leafOffset - 1; node > 0; node--) {
+			maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+		}
+	}
+
+	@Override
+	public Set<A> getOverlapping(int begin, int end) {
+		Set<A> result = Sets.newLinkedHashSet();
+		Iterator<A> iter = overlappingIterator(begin, end);
+		while (iter.hasNext()) {
+			result.add(iter.next());
+		}
+		return result;
+	}
+
+	@Override
+	public Iterator<A> overlappingIterator(final int begin, final int end) {
+		// the first annotation that does not begin before the query
+		final int beginIdx = lowerBound(begin);
+		return new AbstractIterator<A>() {
+			// index of the last returned annotation
+			private int cur = -1;
+
+			@Override
+			protected A computeNext() {
+				// annotations that begin before the query and end inside it
+				while (cur < beginIdx) {
+					cur = findFirstEndingAfter(cur + 1, beginIdx, begin);
+					if (cur < 0) {
+						cur = beginIdx - 1;
+						break;
+					}
+					if (ends[cur] <= end) {
+						return get(cur);
+					}
+				}
+				// annotations that begin inside the query
+				cur++;
+				if (cur < begins.length && begins[cur] < end) {
+					return get(cur);
+				}
+				// empty annotations at the query end
+				while (cur < begins.length && begins[cur] == end && begin < end) {
+					if (ends[cur] == end) {
+						return get(cur);
+					}
+					cur++;
+				}
+				return endOfData();
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private A get(int i) {
+		return (A) annos[i];
+	}
+
+	/**
+	 * @return the first index in the sorted array whose begin is not less than
+	 *         the given offset
+	 */
+	private int lowerBound(int offset) {
+		int low = 0;
+		int high = begins.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (begins[mid] < offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the first index in [from, limit) whose end is greater than the
+	 *         given offset, or -1 if there is no such index
+	 */
+	private int findFirstEndingAfter(int from, int limit, int offset) {
+		if (from >= limit) {
+			return -1;
+		}
+		int node = treeLeafOffset + from;
+		while (maxEnds[node] <= offset) {
+			// go to the next subtree on the right
+			while ((node & 1) == 1) {
+				node >>= 1;
+			}
+			if (node == 0) {
+				return -1;
+			}
+			node++;
+		}
+		// descend to the leftmost satisfying leaf
+		while (node < treeLeafOffset) {
+			node <<= 1;
+			if (maxEnds[node] <= offset) {
+				node++;
+			}
+		}
+		int result = node - treeLeafOffset;
+		return result < limit ? result : -1;
+	}
+
+	private static final Comparator<Object> offsetComp = new Comparator<Object>() {
+		private final Comparator<AnnotationFS> annoComp = AnnotationOffsetComparator
+				.instance(AnnotationFS.class);
+
+		@Override
+		public int compare(Object o1, Object o2) {
+			return annoComp.compare((AnnotationFS) o1, (AnnotationFS) o2);
+		}
+	};
+}
@@ -88,6 +88,11 @@ class TreeMapOverlapIndex<A extends AnnotationFS> implements OverlapIndex<A> {
 		return result;
 	}
 
+	@Override
+	public Iterator<A> overlappingIterator(int begin, int end) {
+		return getOverlapping(begin, end).iterator();
+	}
+
 	private final Comparator<AnnotationFS> offsetComp = AnnotationOffsetComparator
 			.instance(AnnotationFS.class);
 	private final Comparator<A> innerComparator = new Comparator<A>() {
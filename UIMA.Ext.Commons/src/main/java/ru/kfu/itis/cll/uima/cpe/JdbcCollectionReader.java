@@ -3,7 +3,6 @@
  */
 package ru.kfu.itis.cll.uima.cpe;
 
-import static com.google.common.collect.Lists.newLinkedList;
 import static ru.kfu.itis.cll.uima.util.AnnotatorUtils.requireParam;
 import static ru.kfu.itis.cll.uima.util.AnnotatorUtils.requireParams;
 
@@ -16,9 +15,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.uima.UimaContext;
@@ -35,8 +35,28 @@ import ru.kfu.itis.cll.uima.commons.DocumentMetadata;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 
 /**
+ * Reads documents from a database table by batches.
+ * <p>
+ * The query can be paginated in one of two modes:
+ * <ul>
+ * <li>offset mode - the query has parameters for an offset and a limit, e.g.,
+ * <code>SELECT url, txt FROM doc ORDER BY id OFFSET ? LIMIT ?</code>;</li>
+ * <li>keyset mode (when {@link #PARAM_KEY_COLUMN} is set) - the query has
+ * parameters for the last read key value and a limit, e.g.,
+ * <code>SELECT id, url, txt FROM doc WHERE id > ? ORDER BY id LIMIT ?</code>.
+ * The key column must be of an integer type, its values must be greater than
+ * {@link Integer#MIN_VALUE} and the query must be ordered by it. Unlike the
+ * offset mode, the cost of a batch query does not depend on the number of
+ * rows before it.</li>
+ * </ul>
+ * If {@link #PARAM_PREFETCH_BATCHES} is positive, batches are fetched by a
+ * background thread that keeps up to the given number of batches ahead.
+ * </p>
+ * 
  * @author Rinat Gareev (Kazan Federal University)
  * 
  */
@@ -52,8 +72,11 @@ public class JdbcCollectionReader extends CasCollectionReader_ImplBase {
 	public static final String PARAM_LIMIT_PARAM_INDEX = "limitParamIndex";
 	public static final String PARAM_TEXT_COLUMN = "textColumn";
 	public static final String PARAM_DOCUMENT_URL_COLUMN = "documentUrlColumn";
+	public static final String PARAM_KEY_COLUMN = "keyColumn";
+	public static final String PARAM_KEY_PARAM_INDEX = "keyParamIndex";
 	
 	public static final String PARAM_BATCH_SIZE = "batchSize";
+	public static final String PARAM_PREFETCH_BATCHES = "prefetchBatches";
 	
 	public static final String PARAM_COUNT_QUERY = "countQuery";
 	
@@ -71,18 +94,26 @@ public class JdbcCollectionReader extends CasCollectionReader_ImplBase {
 	private String countQuery;
 	@ConfigurationParameter(name = PARAM_LIMIT_PARAM_INDEX, mandatory = true)
 	private Integer limitParamIndex;
-	@ConfigurationParameter(name = PARAM_OFFSET_PARAM_INDEX, mandatory = true)
+	@ConfigurationParameter(name = PARAM_OFFSET_PARAM_INDEX)
 	private Integer offsetParamIndex;
+	@ConfigurationParameter(name = PARAM_KEY_COLUMN)
+	private String keyColumn;
+	@ConfigurationParameter(name = PARAM_KEY_PARAM_INDEX)
+	private Integer keyParamIndex;
 	@ConfigurationParameter(name = PARAM_DOCUMENT_URL_COLUMN)
 	private String documentUrlColumn;
 	@ConfigurationParameter(name = PARAM_TEXT_COLUMN, mandatory = true)
 	private String textColumn;
 	@ConfigurationParameter(name = PARAM_BATCH_SIZE, defaultValue = "20")
 	private Integer batchSize;
+	@ConfigurationParameter(name = PARAM_PREFETCH_BATCHES, defaultValue = "0")
+	private Integer prefetchBatches;
 
 	// state fields
 	private Connection dbConnection;
 	private PreparedStatement queryStatement;
+	private Iterator<DbTuple> dbIterator;
+	private BatchPrefetcher prefetcher;
 
 	private Integer expectedTotalCount;
 	private int consumedCount = 0;
@@ -92,11 +123,16 @@ public class JdbcCollectionReader extends CasCollectionReader_ImplBase {
 		super.initialize(ctx);
 		// check parameters
 		requireParam(batchSize > 0, PARAM_BATCH_SIZE, batchSize);
-		requireParams(limitParamIndex != offsetParamIndex
+		requireParam(prefetchBatches >= 0, PARAM_PREFETCH_BATCHES, prefetchBatches);
+		// index of the parameter that is set to an offset or to a last key value
+		Integer posParamIndex = isKeysetMode() ? keyParamIndex : offsetParamIndex;
+		requireParams(posParamIndex != null
+				&& !limitParamIndex.equals(posParamIndex)
 				&& limitParamIndex > 0 && limitParamIndex < 3
-				&& offsetParamIndex > 0 && offsetParamIndex < 3,
-				new String[] { PARAM_LIMIT_PARAM_INDEX, PARAM_OFFSET_PARAM_INDEX },
-				new Object[] { limitParamIndex, offsetParamIndex });
+				&& posParamIndex > 0 && posParamIndex < 3,
+				new String[] { PARAM_LIMIT_PARAM_INDEX, PARAM_OFFSET_PARAM_INDEX,
+						PARAM_KEY_PARAM_INDEX },
+				new Object[] { limitParamIndex, offsetParamIndex, keyParamIndex });
 
 		// initialize db connection && prepare statement
 		try {
@@ -108,10 +144,25 @@ public class JdbcCollectionReader extends CasCollectionReader_ImplBase {
 			closeQuietly(dbConnection);
 			throw new ResourceInitializationException(e);
 		}
+		if (prefetchBatches > 0) {
+			prefetcher = new BatchPrefetcher();
+			dbIterator = Iterators.concat(prefetcher);
+		} else {
+			dbIterator = Iterators.concat(new AbstractIterator<Iterator<DbTuple>>() {
+				@Override
+				protected Iterator<DbTuple> computeNext() {
+					List<DbTuple> batch = nextBatch();
+					return batch == null ? endOfData() : batch.iterator();
+				}
+			});
+		}
 	}
 
 	@Override
 	public void close() throws IOException {
+		if (prefetcher != null) {
+			prefetcher.stop();
+		}
 		try {
 			queryStatement.close();
 		} catch (SQLException e) {
@@ -121,54 +172,54 @@ public class JdbcCollectionReader extends CasCollectionReader_ImplBase {
 		super.close();
 	}
 
-	private Iterator<DbTuple> dbIterator = new AbstractIterator<DbTuple>() {
-		private int curOffset;
-		private boolean lastBatchFetched = false;
-		private Iterator<DbTuple> batchIterator;
+	private boolean isKeysetMode() {
+		return keyColumn != null;
+	}
 
-		@Override
-		protected DbTuple computeNext() {
-			if (batchIterator == null) {
-				makeNextBatchIterator();
-			}
-			if (batchIterator.hasNext()) {
-				return batchIterator.next();
-			} else if (lastBatchFetched) {
-				return endOfData();
+	// pagination state
+	private int curOffset;
+	// the least value that can be set for an INTEGER column
+	private long lastKey = Integer.MIN_VALUE;
+	private boolean lastBatchFetched;
+
+	/**
+	 * @return next non-empty batch or null if there are no more rows
+	 */
+	private List<DbTuple> nextBatch() {
+		if (lastBatchFetched) {
+			return null;
+		}
+		List<DbTuple> batch;
+		try {
+			if (isKeysetMode()) {
+				queryStatement.setLong(keyParamIndex, lastKey);
 			} else {
-				makeNextBatchIterator();
-				return computeNext();
+				queryStatement.setInt(offsetParamIndex, curOffset);
 			}
+			batch = queryBatch(batchSize);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
 		}
-
-		private void makeNextBatchIterator() {
-			try {
-				List<DbTuple> batchList = queryBatch(curOffset, batchSize);
-				curOffset += batchSize;
-				if (batchList.isEmpty()) {
-					lastBatchFetched = true;
-				}
-				batchIterator = batchList.iterator();
-			} catch (Exception e) {
-				throw new IllegalStateException(e);
-			}
-			// assertions
-			if (batchIterator == null) {
-				throw new IllegalStateException();
-			}
+		curOffset += batch.size();
+		if (!batch.isEmpty()) {
+			lastKey = batch.get(batch.size() - 1).key;
 		}
-	};
+		// a short batch is the last one
+		if (batch.size() < batchSize) {
+			lastBatchFetched = true;
+		}
+		return batch.isEmpty() ? null : batch;
+	}
 
-	private List<DbTuple> queryBatch(int offset, int limit) throws SQLException, IOException {
-		queryStatement.setInt(offsetParamIndex, offset);
+	private List<DbTuple> queryBatch(int limit) throws SQLException, IOException {
 		queryStatement.setInt(limitParamIndex, limit);
 		ResultSet rs = queryStatement.executeQuery();
 		try {
-			LinkedList<DbTuple> result = newLinkedList();
+			List<DbTuple> result = Lists.newArrayListWithCapacity(limit);
 			while (rs.next()) {
 				result.add(toTuple(rs));
 			}
-			return ImmutableList.copyOf(result);
+			return result;
 		} finally {
 			rs.close();
 		}
@@ -176,19 +227,40 @@ public class JdbcCollectionReader extends CasCollectionReader_ImplBase {
 
 	private DbTuple toTuple(ResultSet rs) throws SQLException, IOException {
 		String url = rs.getString(documentUrlColumn);
+		long key = isKeysetMode() ? rs.getLong(keyColumn) : 0;
 		String text = null;
 		Clob textClob = rs.getClob(textColumn);
 		if (textClob != null) {
-			Reader textReader = null;
 			try {
-				textReader = textClob.getCharacterStream();
-				text = IOUtils.toString(textReader);
+				text = readClob(textClob);
 			} finally {
-				IOUtils.closeQuietly(textReader);
 				textClob.free();
 			}
 		}
-		return new DbTuple(url, text);
+		return new DbTuple(key, url, text);
+	}
+
+	/**
+	 * Read the clob content into a buffer of the exact size, so the text is
+	 * copied only once more when the string is created.
+	 */
+	private static String readClob(Clob clob) throws SQLException, IOException {
+		long length = clob.length();
+		if (length > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too long text: " + length);
+		}
+		char[] buf = new char[(int) length];
+		Reader textReader = clob.getCharacterStream();
+		try {
+			int read = IOUtils.read(textReader, buf);
+			if (read != buf.length) {
+				throw new IllegalStateException(String.format(
+						"Clob of length %s has been read partially: %s", length, read));
+			}
+		} finally {
+			IOUtils.closeQuietly(textReader);
+		}
+		return new String(buf);
 	}
 
 	/**
@@ -242,12 +314,80 @@ public class JdbcCollectionReader extends CasCollectionReader_ImplBase {
 		}
 	}
 
-	private class DbTuple {
-		DbTuple(String url, String text) {
+	/**
+	 * Fetches batches in a background thread. The connection is used only by
+	 * this thread after it has been started.
+	 */
+	private class BatchPrefetcher extends AbstractIterator<Iterator<DbTuple>> implements Runnable {
+		private final BlockingQueue<List<DbTuple>> queue =
+				new ArrayBlockingQueue<List<DbTuple>>(prefetchBatches);
+		private final Thread thread;
+		private volatile Throwable failure;
+
+		BatchPrefetcher() {
+			thread = new Thread(this, "jdbc-collection-reader-prefetch");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				List<DbTuple> batch;
+				while ((batch = nextBatch()) != null) {
+					queue.put(batch);
+				}
+			} catch (InterruptedException e) {
+				// stopped
+				return;
+			} catch (Throwable e) {
+				failure = e;
+			}
+			try {
+				queue.put(END_OF_BATCHES);
+			} catch (InterruptedException e) {
+				// stopped
+			}
+		}
+
+		@Override
+		protected Iterator<DbTuple> computeNext() {
+			List<DbTuple> batch;
+			try {
+				batch = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			if (batch == END_OF_BATCHES) {
+				if (failure != null) {
+					throw new IllegalStateException("Batch prefetching failed", failure);
+				}
+				return endOfData();
+			}
+			return batch.iterator();
+		}
+
+		void stop() {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static final List<DbTuple> END_OF_BATCHES = ImmutableList.of();
+
+	private static class DbTuple {
+		DbTuple(long key, String url, String text) {
+			this.key = key;
 			this.url = url;
 			this.text = text;
 		}
 
+		private final long key;
 		private final String url;
 		private final String text;
 	}
@@ -0,0 +1,376 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.cpe;
+
+import static java.lang.System.nanoTime;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.resource.CasDefinition;
+import org.apache.uima.resource.ResourceManager;
+import org.apache.uima.resource.metadata.ProcessingResourceMetaData;
+import org.apache.uima.util.CasPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Runs a collection reader and a sequence of analysis engine stages in the
+ * current JVM without CPE descriptors.
+ * <p>
+ * Each stage is instantiated as many times as its thread count and every
+ * instance is driven by its own thread. So a stage with a thread-safe
+ * implementation (and thread-safe shared resources) can be replicated,
+ * while a stage that must see all CASes (e.g., a writer) should be left
+ * with a single thread. Stages are connected by queues of CASes. All
+ * instances share the same {@link ResourceManager}, so external resources,
+ * e.g., a morphological dictionary, are loaded once.
+ * </p>
+ * <p>
+ * The CAS pool size is derived from the stage layout: a CAS for every stage
+ * thread, a CAS waiting in every stage queue and a CAS for the reader. When
+ * the pool is exhausted the reader waits, so the memory is bounded.
+ * </p>
+ * <p>
+ * An instance can be run only once. The first failure stops the reading and
+ * is rethrown from {@link #run()} after all stage threads have finished. In
+ * this case <code>collectionProcessComplete</code> is not invoked.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class ParallelPipelineRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelPipelineRunner.class);
+
+	private static final Object END_OF_COLLECTION = new Object();
+
+	// config fields
+	private final CollectionReaderDescription readerDesc;
+	private final List<Stage> stages = Lists.newArrayList();
+	private int reportIntervalSeconds = 60;
+	// state fields
+	private CasPool casPool;
+	private volatile Throwable failure;
+	private long startTime;
+	private final AtomicLong readCounter = new AtomicLong();
+
+	public ParallelPipelineRunner(CollectionReaderDescription readerDesc) {
+		this.readerDesc = readerDesc;
+	}
+
+	/**
+	 * Add a stage that is run by a single thread.
+	 */
+	public ParallelPipelineRunner addStage(String name, AnalysisEngineDescription aeDesc) {
+		return addStage(name, aeDesc, 1);
+	}
+
+	public ParallelPipelineRunner addStage(String name, AnalysisEngineDescription aeDesc,
+			int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("threadCount = " + threadCount);
+		}
+		stages.add(new Stage(name, aeDesc, threadCount));
+		return this;
+	}
+
+	/**
+	 * @param reportIntervalSeconds
+	 *            interval of stage statistics logging, 0 disables periodic
+	 *            reports. The final report is always logged.
+	 */
+	public void setReportInterval(int reportIntervalSeconds) {
+		this.reportIntervalSeconds = reportIntervalSeconds;
+	}
+
+	public int getCasPoolSize() {
+		int result = 1;
+		for (Stage stage : stages) {
+			result += stage.threadCount + 1;
+		}
+		return result;
+	}
+
+	public void run() throws UIMAException, IOException {
+		if (stages.isEmpty()) {
+			throw new IllegalStateException("No stages");
+		}
+		if (startTime != 0) {
+			throw new IllegalStateException("The pipeline has been already run");
+		}
+		ResourceManager resMgr = UIMAFramework.newDefaultResourceManager();
+		CollectionReader reader = null;
+		ScheduledExecutorService reporter = null;
+		try {
+			reader = UIMAFramework.produceCollectionReader(readerDesc, resMgr, null);
+			List<ProcessingResourceMetaData> metaData = Lists.newArrayList();
+			metaData.add(reader.getProcessingResourceMetaData());
+			for (Stage stage : stages) {
+				stage.initialize(resMgr);
+				metaData.add(stage.engines.get(0).getProcessingResourceMetaData());
+			}
+			casPool = new CasPool(getCasPoolSize(), new CasDefinition(metaData, resMgr), null);
+			log.info("Pipeline has been initialized. CAS pool size: {}", getCasPoolSize());
+			//
+			startTime = nanoTime();
+			for (int i = 0; i < stages.size(); i++) {
+				Stage next = i + 1 < stages.size() ? stages.get(i + 1) : null;
+				stages.get(i).start(next);
+			}
+			if (reportIntervalSeconds > 0) {
+				reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread result = new Thread(r, "pipeline-reporter");
+						result.setDaemon(true);
+						return result;
+					}
+				});
+				reporter.scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						report();
+					}
+				}, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+			}
+			read(reader);
+			for (Stage stage : stages) {
+				stage.join();
+			}
+			if (reporter != null) {
+				reporter.shutdownNow();
+			}
+			report();
+			checkFailure();
+			for (Stage stage : stages) {
+				for (AnalysisEngine ae : stage.engines) {
+					ae.collectionProcessComplete();
+				}
+			}
+		} finally {
+			if (reporter != null) {
+				reporter.shutdownNow();
+			}
+			for (Stage stage : stages) {
+				stage.destroy();
+			}
+			if (reader != null) {
+				reader.close();
+				reader.destroy();
+			}
+			casPool = null;
+		}
+	}
+
+	private void read(CollectionReader reader) {
+		Stage first = stages.get(0);
+		try {
+			while (failure == null && reader.hasNext()) {
+				CAS cas = casPool.getCas(0);
+				try {
+					reader.getNext(cas);
+				} catch (Throwable e) {
+					casPool.releaseCas(cas);
+					throw e;
+				}
+				readCounter.incrementAndGet();
+				first.enqueue(cas);
+			}
+		} catch (Throwable e) {
+			fail("reader", e);
+		} finally {
+			first.enqueueEnd();
+		}
+	}
+
+	private void fail(String stageName, Throwable e) {
+		log.error(String.format("%s failed", stageName), e);
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	private void checkFailure() throws UIMAException, IOException {
+		Throwable e = failure;
+		if (e == null) {
+			return;
+		}
+		if (e instanceof UIMAException) {
+			throw (UIMAException) e;
+		}
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new IllegalStateException(e);
+	}
+
+	private void report() {
+		double elapsedSec = (nanoTime() - startTime) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Read %s documents in %.1f s", readCounter.get(), elapsedSec));
+		for (Stage stage : stages) {
+			long processed = stage.processedCounter.get();
+			sb.append(String.format(
+					"\n%s (%s threads): %s docs, %.1f docs/s, %.1f ms/doc in a thread, "
+							+ "queue: %s (max %s)",
+					stage.name, stage.threadCount, processed,
+					elapsedSec > 0 ? processed / elapsedSec : 0,
+					processed > 0 ? stage.busyNanos.get() / 1e6 / processed : 0,
+					stage.queue.size(), stage.maxQueueSize.get()));
+		}
+		log.info(sb.toString());
+	}
+
+	private class Stage {
+		// config fields
+		private final String name;
+		private final AnalysisEngineDescription aeDesc;
+		private int threadCount;
+		// state fields
+		private final List<AnalysisEngine> engines = Lists.newArrayList();
+		private final List<Thread> threads = Lists.newArrayList();
+		private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+		private final AtomicInteger activeThreads = new AtomicInteger();
+		// stats
+		private final AtomicLong processedCounter = new AtomicLong();
+		private final AtomicLong busyNanos = new AtomicLong();
+		private final AtomicInteger maxQueueSize = new AtomicInteger();
+
+		Stage(String name, AnalysisEngineDescription aeDesc, int threadCount) {
+			this.name = name;
+			this.aeDesc = aeDesc;
+			this.threadCount = threadCount;
+		}
+
+		void initialize(ResourceManager resMgr) throws UIMAException {
+			AnalysisEngine firstEngine = UIMAFramework.produceAnalysisEngine(aeDesc, resMgr, null);
+			engines.add(firstEngine);
+			if (threadCount > 1 && !firstEngine.getAnalysisEngineMetaData()
+					.getOperationalProperties().isMultipleDeploymentAllowed()) {
+				log.warn("{} does not allow multiple deployment, it will be run by a single thread",
+						name);
+				threadCount = 1;
+			}
+			while (engines.size() < threadCount) {
+				engines.add(UIMAFramework.produceAnalysisEngine(aeDesc, resMgr, null));
+			}
+		}
+
+		void start(final Stage next) {
+			activeThreads.set(threadCount);
+			for (int i = 0; i < threadCount; i++) {
+				final AnalysisEngine ae = engines.get(i);
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							runWorker(ae, next);
+						} finally {
+							if (activeThreads.decrementAndGet() == 0 && next != null) {
+								next.enqueueEnd();
+							}
+						}
+					}
+				}, String.format("%s-%s", name, i + 1));
+				threads.add(thread);
+				thread.start();
+			}
+		}
+
+		private void runWorker(AnalysisEngine ae, Stage next) {
+			while (true) {
+				Object item;
+				try {
+					item = queue.take();
+				} catch (InterruptedException e) {
+					fail(name, e);
+					return;
+				}
+				if (item == END_OF_COLLECTION) {
+					return;
+				}
+				CAS cas = (CAS) item;
+				if (failure != null) {
+					// drain
+					casPool.releaseCas(cas);
+					continue;
+				}
+				long timeBefore = nanoTime();
+				try {
+					ae.process(cas);
+				} catch (Throwable e) {
+					fail(name, e);
+					casPool.releaseCas(cas);
+					continue;
+				}
+				busyNanos.addAndGet(nanoTime() - timeBefore);
+				processedCounter.incrementAndGet();
+				if (next == null) {
+					casPool.releaseCas(cas);
+				} else {
+					next.enqueue(cas);
+				}
+			}
+		}
+
+		void enqueue(CAS cas) {
+			// the queue is unbounded, its size is limited by the CAS pool
+			queue.add(cas);
+			int size = queue.size();
+			int max = maxQueueSize.get();
+			while (size > max && !maxQueueSize.compareAndSet(max, size)) {
+				max = maxQueueSize.get();
+			}
+		}
+
+		void enqueueEnd() {
+			for (int i = 0; i < threadCount; i++) {
+				queue.add(END_OF_COLLECTION);
+			}
+		}
+
+		void join() {
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+
+		void destroy() {
+			for (AnalysisEngine ae : engines) {
+				ae.destroy();
+			}
+			engines.clear();
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.wfstore;
+
+import static org.apache.commons.io.FileUtils.openOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * {@link WordformStore} that is read in place from a byte buffer, usually a
+ * memory-mapped file, so loading does not depend on the number of wordforms.
+ * <p>
+ * Wordforms are sorted and front-coded in blocks of {@link #BLOCK_SIZE}: the
+ * first key of a block is stored in full, the others as the length of the
+ * prefix shared with the previous key plus the remaining chars. A lookup is a
+ * binary search over the first keys of blocks and a scan of a single block.
+ * Tags of wordforms are stored as indices into a deduplicated tag table. The
+ * tag table and the properties are small, they are stored with Java
+ * serialization.
+ * </p>
+ * <p>
+ * Instances are created by {@link CompactWordformStoreBuilder} or by
+ * {@link #load(File)}.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CompactWordformStore<TagType> implements WordformStore<TagType> {
+
+	static final int MAGIC = 0x57465354;
+	static final int VERSION = 1;
+	static final int BLOCK_SIZE = 16;
+	// magic, version, key count, max key length, tag index width, tables length
+	private static final int HEADER_LENGTH = 6 * 4;
+
+	/**
+	 * @param file
+	 * @return true if the file starts with the header of this format
+	 * @throws IOException
+	 */
+	public static boolean isCompactFormat(File file) throws IOException {
+		if (file.length() < 4) {
+			return false;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return raf.readInt() == MAGIC;
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+	}
+
+	/**
+	 * Map the given file into memory.
+	 */
+	public static <TagType> CompactWordformStore<TagType> load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			// the mapping stays valid after the channel is closed
+			return new CompactWordformStore<TagType>(ch.map(MapMode.READ_ONLY, 0, ch.size()));
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+	}
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	// config fields
+	private final ByteBuffer buf;
+	// derived
+	private final int keyCount;
+	private final int maxKeyLength;
+	private final int tagIndexWidth;
+	private final int blockCount;
+	// positions of sections in buf
+	private final int tablesEnd;
+	private final int blockOffsetsPos;
+	private final int tagIndicesPos;
+	private final int keyDataPos;
+	// state fields
+	private final List<TagType> tagTable;
+	private Map<String, Object> metadataMap;
+
+	@SuppressWarnings("unchecked")
+	CompactWordformStore(ByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.getInt(0) != MAGIC) {
+			throw new IllegalStateException("The buffer does not contain a compact wordform store");
+		}
+		int version = buf.getInt(4);
+		if (version != VERSION) {
+			throw new IllegalStateException(String.format(
+					"Unsupported version of the compact wordform store: %s", version));
+		}
+		keyCount = buf.getInt(8);
+		maxKeyLength = buf.getInt(12);
+		tagIndexWidth = buf.getInt(16);
+		int tablesLength = buf.getInt(20);
+		// read tables
+		byte[] tablesBytes = new byte[tablesLength];
+		ByteBuffer tablesBuf = buf.duplicate();
+		tablesBuf.position(HEADER_LENGTH);
+		tablesBuf.get(tablesBytes);
+		ObjectInputStream tablesIn = new ObjectInputStream(new ByteArrayInputStream(tablesBytes));
+		try {
+			tagTable = (List<TagType>) tablesIn.readObject();
+			metadataMap = (Map<String, Object>) tablesIn.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			IOUtils.closeQuietly(tablesIn);
+		}
+		tablesEnd = HEADER_LENGTH + tablesLength;
+		blockCount = buf.getInt(tablesEnd);
+		blockOffsetsPos = tablesEnd + 4;
+		tagIndicesPos = blockOffsetsPos + 4 * blockCount;
+		keyDataPos = tagIndicesPos + tagIndexWidth * keyCount + 4;
+	}
+
+	@Override
+	public TagType getTag(String wf) {
+		int block = findBlock(wf);
+		if (block < 0) {
+			return null;
+		}
+		char[] key = new char[maxKeyLength];
+		int pos = keyDataPos + buf.getInt(blockOffsetsPos + 4 * block);
+		int keyIdx = block * BLOCK_SIZE;
+		int keyIdxEnd = Math.min(keyIdx + BLOCK_SIZE, keyCount);
+		int keyLength = 0;
+		for (; keyIdx < keyIdxEnd; keyIdx++) {
+			int prefixLength = 0;
+			if (keyIdx % BLOCK_SIZE != 0) {
+				prefixLength = readVarInt(pos);
+				pos += varIntLength(prefixLength);
+			}
+			int suffixLength = readVarInt(pos);
+			pos += varIntLength(suffixLength);
+			for (int i = 0; i < suffixLength; i++) {
+				key[prefixLength + i] = buf.getChar(pos);
+				pos += 2;
+			}
+			keyLength = prefixLength + suffixLength;
+			int cmp = compare(key, keyLength, wf);
+			if (cmp == 0) {
+				return tagTable.get(readTagIndex(keyIdx));
+			}
+			if (cmp > 0) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return keyCount;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T getProperty(String key, Class<T> valueClass) {
+		return (T) metadataMap.get(key);
+	}
+
+	@Override
+	public void setProperty(String key, Object value) {
+		metadataMap.put(key, value);
+	}
+
+	@Override
+	public void persist(File outFile) throws Exception {
+		OutputStream os = new BufferedOutputStream(openOutputStream(outFile));
+		try {
+			write(os, tagTable, metadataMap, keyCount, maxKeyLength, tagIndexWidth);
+			// copy index sections as is
+			ByteBuffer indexBuf = buf.duplicate();
+			indexBuf.position(tablesEnd);
+			byte[] chunk = new byte[64 * 1024];
+			while (indexBuf.hasRemaining()) {
+				int chunkLength = Math.min(chunk.length, indexBuf.remaining());
+				indexBuf.get(chunk, 0, chunkLength);
+				os.write(chunk, 0, chunkLength);
+			}
+		} finally {
+			IOUtils.closeQuietly(os);
+		}
+		log.info("Succesfully written to {}, size = {} bytes",
+				outFile, outFile.length());
+	}
+
+	/**
+	 * @return iterator over wordforms and their tags in the wordform order
+	 */
+	Iterator<Map.Entry<String, TagType>> entryIterator() {
+		return new Iterator<Map.Entry<String, TagType>>() {
+			private char[] key = new char[maxKeyLength];
+			private int keyIdx = 0;
+			private int pos = keyDataPos;
+
+			@Override
+			public boolean hasNext() {
+				return keyIdx < keyCount;
+			}
+
+			@Override
+			public Map.Entry<String, TagType> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int prefixLength = 0;
+				if (keyIdx % BLOCK_SIZE != 0) {
+					prefixLength = readVarInt(pos);
+					pos += varIntLength(prefixLength);
+				}
+				int suffixLength = readVarInt(pos);
+				pos += varIntLength(suffixLength);
+				for (int i = 0; i < suffixLength; i++) {
+					key[prefixLength + i] = buf.getChar(pos);
+					pos += 2;
+				}
+				String wf = new String(key, 0, prefixLength + suffixLength);
+				TagType tag = tagTable.get(readTagIndex(keyIdx));
+				keyIdx++;
+				return Maps.immutableEntry(wf, tag);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return the last block whose first key is not greater than the given
+	 *         one, or -1
+	 */
+	private int findBlock(String wf) {
+		int low = 0;
+		int high = blockCount - 1;
+		int result = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int pos = keyDataPos + buf.getInt(blockOffsetsPos + 4 * mid);
+			int length = readVarInt(pos);
+			int cmp = compare(pos + varIntLength(length), length, wf);
+			if (cmp == 0) {
+				return mid;
+			} else if (cmp < 0) {
+				result = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return result;
+	}
+
+	private int compare(int charsPos, int length, String wf) {
+		int minLength = Math.min(length, wf.length());
+		for (int i = 0; i < minLength; i++) {
+			char c = buf.getChar(charsPos + 2 * i);
+			char wc = wf.charAt(i);
+			if (c != wc) {
+				return c - wc;
+			}
+		}
+		return length - wf.length();
+	}
+
+	private static int compare(char[] key, int length, String wf) {
+		int minLength = Math.min(length, wf.length());
+		for (int i = 0; i < minLength; i++) {
+			char c = key[i];
+			char wc = wf.charAt(i);
+			if (c != wc) {
+				return c - wc;
+			}
+		}
+		return length - wf.length();
+	}
+
+	private int readTagIndex(int keyIdx) {
+		int pos = tagIndicesPos + tagIndexWidth * keyIdx;
+		switch (tagIndexWidth) {
+		case 1:
+			return buf.get(pos) & 0xFF;
+		case 2:
+			return buf.getChar(pos);
+		default:
+			return buf.getInt(pos);
+		}
+	}
+
+	private int readVarInt(int pos) {
+		int result = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buf.get(pos++);
+			result |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return result;
+	}
+
+	static int varIntLength(int value) {
+		int result = 1;
+		while ((value >>>= 7) != 0) {
+			result++;
+		}
+		return result;
+	}
+
+	static void writeVarInt(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static int getTagIndexWidth(int tagCount) {
+		if (tagCount <= 0x100) {
+			return 1;
+		} else if (tagCount <= 0x10000) {
+			return 2;
+		} else {
+			return 4;
+		}
+	}
+
+	/**
+	 * Write the header and the tables section.
+	 */
+	static void write(OutputStream os, List<?> tagTable, Map<String, Object> metadataMap,
+			int keyCount, int maxKeyLength, int tagIndexWidth) throws IOException {
+		ByteArrayOutputStream tablesBytes = new ByteArrayOutputStream();
+		ObjectOutputStream tablesOut = new ObjectOutputStream(tablesBytes);
+		tablesOut.writeObject(tagTable);
+		tablesOut.writeObject(new HashMap<String, Object>(metadataMap));
+		tablesOut.close();
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(keyCount);
+		out.writeInt(maxKeyLength);
+		out.writeInt(tagIndexWidth);
+		out.writeInt(tablesBytes.size());
+		tablesBytes.writeTo(out);
+		out.flush();
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.wfstore;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Counts tags the same way as {@link DefaultWordformStoreBuilder} does but
+ * builds {@link CompactWordformStore}.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CompactWordformStoreBuilder<TagType> implements WordformStoreBuilder<TagType> {
+
+	// state
+	private DefaultWordformStoreBuilder<TagType> counter = new DefaultWordformStoreBuilder<TagType>();
+
+	@Override
+	public void increment(String wordString, TagType tag) {
+		counter.increment(wordString, tag);
+	}
+
+	@Override
+	public CompactWordformStore<TagType> build() {
+		Map<String, TagType> strKeyMap = counter.build().strKeyMap;
+		List<String> wordforms = Lists.newArrayList(strKeyMap.keySet());
+		Collections.sort(wordforms);
+		try {
+			CompactWordformStoreWriter<TagType> writer = new CompactWordformStoreWriter<TagType>();
+			for (String wf : wordforms) {
+				writer.add(wf, strKeyMap.get(wf));
+			}
+			return writer.build(Collections.<String, Object> emptyMap());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.wfstore;
+
+import static org.apache.commons.io.FileUtils.openOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Encodes wordforms and their tags into the format of
+ * {@link CompactWordformStore}. Wordforms must be added in the ascending order
+ * of {@link String#compareTo(String)}.
+ * <p>
+ * Block offsets, tag indices and key data are appended to separate sections
+ * as wordforms are added. The sections are kept in the heap or, if the writer
+ * is created with a temporary directory, in temporary files, so only the tag
+ * table stays in the heap. {@link #writeTo(OutputStream, Map)} concatenates
+ * the header and the sections. {@link #dispose()} deletes temporary files.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class CompactWordformStoreWriter<TagType> {
+
+	// state fields
+	private List<TagType> tagTable = Lists.newArrayList();
+	private Map<TagType, Integer> tagIds = Maps.newHashMap();
+	private final Section blockOffsets;
+	// tag indices are written as ints as the width is known only in the end
+	private final Section tagIndices;
+	private final Section keyData;
+	private int keyCount;
+	private int maxKeyLength;
+	private String lastKey;
+
+	/**
+	 * Create a writer that keeps sections in the heap.
+	 */
+	CompactWordformStoreWriter() throws IOException {
+		this(false, null);
+	}
+
+	/**
+	 * Create a writer that keeps sections in temporary files.
+	 * 
+	 * @param tempDir
+	 *            directory for section files, or null to use the default
+	 *            temporary-file directory
+	 */
+	CompactWordformStoreWriter(File tempDir) throws IOException {
+		this(true, tempDir);
+	}
+
+	private CompactWordformStoreWriter(boolean useFiles, File tempDir) throws IOException {
+		blockOffsets = new Section(useFiles, tempDir);
+		tagIndices = new Section(useFiles, tempDir);
+		keyData = new Section(useFiles, tempDir);
+	}
+
+	void add(String wf, TagType tag) throws IOException {
+		if (lastKey != null && lastKey.compareTo(wf) >= 0) {
+			throw new IllegalStateException(String.format(
+					"Wordforms are not in the ascending order: '%s', '%s'", lastKey, wf));
+		}
+		if (tag == null) {
+			throw new NullPointerException("tag");
+		}
+		if (keyCount % CompactWordformStore.BLOCK_SIZE == 0) {
+			blockOffsets.out.writeInt(keyData.out.size());
+			writeChars(wf, 0);
+		} else {
+			int prefixLength = commonPrefixLength(lastKey, wf);
+			CompactWordformStore.writeVarInt(keyData.out, prefixLength);
+			writeChars(wf, prefixLength);
+		}
+		// DataOutputStream.size() stops at Integer.MAX_VALUE
+		if (keyData.out.size() == Integer.MAX_VALUE) {
+			throw new IllegalStateException("Key data of the compact wordform store exceed 2GB");
+		}
+		Integer tagId = tagIds.get(tag);
+		if (tagId == null) {
+			tagId = tagTable.size();
+			tagTable.add(tag);
+			tagIds.put(tag, tagId);
+		}
+		tagIndices.out.writeInt(tagId);
+		keyCount++;
+		maxKeyLength = Math.max(maxKeyLength, wf.length());
+		lastKey = wf;
+	}
+
+	int size() {
+		return keyCount;
+	}
+
+	void writeTo(OutputStream os, Map<String, Object> metadataMap) throws IOException {
+		int tagIndexWidth = CompactWordformStore.getTagIndexWidth(tagTable.size());
+		CompactWordformStore.write(os, tagTable, metadataMap,
+				keyCount, maxKeyLength, tagIndexWidth);
+		DataOutputStream out = new DataOutputStream(os);
+		int blockCount = (keyCount + CompactWordformStore.BLOCK_SIZE - 1)
+				/ CompactWordformStore.BLOCK_SIZE;
+		out.writeInt(blockCount);
+		blockOffsets.copyTo(out);
+		DataInputStream tagIndicesIn = new DataInputStream(tagIndices.openInputStream());
+		try {
+			for (int i = 0; i < keyCount; i++) {
+				int tagIndex = tagIndicesIn.readInt();
+				switch (tagIndexWidth) {
+				case 1:
+					out.writeByte(tagIndex);
+					break;
+				case 2:
+					out.writeChar(tagIndex);
+					break;
+				default:
+					out.writeInt(tagIndex);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(tagIndicesIn);
+		}
+		out.writeInt(keyData.out.size());
+		keyData.copyTo(out);
+		out.flush();
+	}
+
+	CompactWordformStore<TagType> build(Map<String, Object> metadataMap) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeTo(bytes, metadataMap);
+		return new CompactWordformStore<TagType>(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Delete temporary files of sections. The writer can not be used after
+	 * this.
+	 */
+	void dispose() {
+		blockOffsets.dispose();
+		tagIndices.dispose();
+		keyData.dispose();
+	}
+
+	private void writeChars(String wf, int from) throws IOException {
+		CompactWordformStore.writeVarInt(keyData.out, wf.length() - from);
+		for (int i = from; i < wf.length(); i++) {
+			keyData.out.writeChar(wf.charAt(i));
+		}
+	}
+
+	private static int commonPrefixLength(String a, String b) {
+		int minLength = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < minLength && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Append-only byte sequence backed by a byte array or a temporary file.
+	 */
+	private static class Section {
+		// null if bytes are kept in the heap
+		private final File file;
+		private final ByteArrayOutputStream bytes;
+		final DataOutputStream out;
+
+		Section(boolean useFile, File tempDir) throws IOException {
+			if (useFile) {
+				file = File.createTempFile("wfstore-section", ".bin", tempDir);
+				file.deleteOnExit();
+				bytes = null;
+				out = new DataOutputStream(new BufferedOutputStream(openOutputStream(file)));
+			} else {
+				file = null;
+				bytes = new ByteArrayOutputStream();
+				out = new DataOutputStream(bytes);
+			}
+		}
+
+		InputStream openInputStream() throws IOException {
+			out.flush();
+			if (file == null) {
+				return new ByteArrayInputStream(bytes.toByteArray());
+			}
+			return new BufferedInputStream(new FileInputStream(file));
+		}
+
+		void copyTo(OutputStream os) throws IOException {
+			out.flush();
+			if (file == null) {
+				bytes.writeTo(os);
+			} else {
+				FileUtils.copyFile(file, os);
+			}
+		}
+
+		void dispose() {
+			IOUtils.closeQuietly(out);
+			if (file != null) {
+				FileUtils.deleteQuietly(file);
+			}
+		}
+	}
+}
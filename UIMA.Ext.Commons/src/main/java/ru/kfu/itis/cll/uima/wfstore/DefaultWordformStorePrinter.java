@@ -14,6 +14,7 @@ import java.io.File;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.Iterator;
 import java.util.Map;
 
 import com.beust.jcommander.JCommander;
@@ -39,9 +40,15 @@ public class DefaultWordformStorePrinter {
 	private File outFile;
 
 	private void run() throws Exception {
-		// deserialize
-		DefaultWordformStore<?> ws = (DefaultWordformStore<?>) deserialize(toBufferedInputStream(
-				openInputStream(serFile)));
+		Iterator<? extends Map.Entry<String, ?>> entryIter;
+		if (CompactWordformStore.isCompactFormat(serFile)) {
+			entryIter = CompactWordformStore.load(serFile).entryIterator();
+		} else {
+			// deserialize
+			DefaultWordformStore<?> ws = (DefaultWordformStore<?>) deserialize(
+					toBufferedInputStream(openInputStream(serFile)));
+			entryIter = ws.strKeyMap.entrySet().iterator();
+		}
 		// print
 		PrintWriter out;
 		boolean closeOut;
@@ -55,7 +62,8 @@ public class DefaultWordformStorePrinter {
 			closeOut = true;
 		}
 		try {
-			for (Map.Entry<String, ?> e : ws.strKeyMap.entrySet()) {
+			while (entryIter.hasNext()) {
+				Map.Entry<String, ?> e = entryIter.next();
 				out.print(escapeTabs(e.getKey()));
 				out.print('\t');
 				out.print(e.getValue());
@@ -0,0 +1,431 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.wfstore;
+
+import static org.apache.commons.io.FileUtils.openOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * {@link WordformStoreBuilder} for corpora whose wordform counts do not fit
+ * into the heap. Wordforms are hash-partitioned into shards, each shard has its
+ * own lock, so {@link #increment(String, Object)} can be called from several
+ * threads concurrently. Tag counts of a wordform are kept in an int array.
+ * When a shard exceeds its part of the memory budget, its counts are written
+ * to a temporary file as a run sorted by wordforms.
+ * <p>
+ * {@link #build()} merges the runs and streams wordforms with their most
+ * frequent tags into {@link CompactWordformStore} that is mapped from a
+ * temporary file, so the merge result is not kept in the heap either. If
+ * several tags of a wordform have the same count then the tag that was seen
+ * first in the corpus is chosen. {@link #build()} must not be called
+ * concurrently with {@link #increment(String, Object)}, it releases all counts
+ * of the builder.
+ * </p>
+ * <p>
+ * Concurrent increments pay off only if a single builder instance is fed by
+ * several threads. The learners that use this builder keep it in an annotator
+ * instance field and do not allow multiple deployment, as each deployed
+ * instance would write its own store, so there it is fed by one thread.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class ShardedWordformStoreBuilder<TagType> implements WordformStoreBuilder<TagType> {
+
+	// rough per-entry overhead of a String, its char array, a HashMap entry and an int array
+	private static final int ENTRY_OVERHEAD = 112;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	// config fields
+	private final File tempDir;
+	// derived
+	private final long shardMemoryBudget;
+	// state fields
+	private final List<Shard> shards;
+	private final ConcurrentMap<TagType, Integer> tagIds = Maps.newConcurrentMap();
+	// guarded by itself
+	private final List<TagType> tagTable = Lists.newArrayList();
+
+	/**
+	 * @param memoryBudget
+	 *            approximate heap size in bytes for wordform counts of all
+	 *            shards
+	 */
+	public ShardedWordformStoreBuilder(long memoryBudget) {
+		this(Runtime.getRuntime().availableProcessors(), memoryBudget, null);
+	}
+
+	/**
+	 * @param shardCount
+	 * @param memoryBudget
+	 *            approximate heap size in bytes for wordform counts of all
+	 *            shards
+	 * @param tempDir
+	 *            directory for runs and the resulting store, or null to use
+	 *            the default temporary-file directory
+	 */
+	public ShardedWordformStoreBuilder(int shardCount, long memoryBudget, File tempDir) {
+		if (shardCount <= 0) {
+			throw new IllegalArgumentException("shardCount: " + shardCount);
+		}
+		this.tempDir = tempDir;
+		this.shardMemoryBudget = memoryBudget / shardCount;
+		shards = Lists.newArrayListWithCapacity(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			shards.add(new Shard(i));
+		}
+	}
+
+	@Override
+	public void increment(String wordString, TagType tag) {
+		int tagId = getTagId(tag);
+		Shard shard = shards.get((wordString.hashCode() & Integer.MAX_VALUE) % shards.size());
+		synchronized (shard) {
+			shard.increment(wordString, tagId);
+			if (shard.memoryUsage > shardMemoryBudget) {
+				try {
+					shard.spill();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public CompactWordformStore<TagType> build() {
+		List<TagType> tags;
+		synchronized (tagTable) {
+			tags = Lists.newArrayList(tagTable);
+		}
+		List<RunCursor> shardCursors = Lists.newArrayListWithCapacity(shards.size());
+		PriorityQueue<RunCursor> shardQueue = new PriorityQueue<RunCursor>();
+		CompactWordformStoreWriter<TagType> writer = null;
+		File storeFile = null;
+		try {
+			for (Shard shard : shards) {
+				RunCursor shardCursor = new MergingCursor(shard.openRuns(), tags.size());
+				shardCursors.add(shardCursor);
+				if (shardCursor.advance()) {
+					shardQueue.add(shardCursor);
+				}
+			}
+			// shards have disjoint wordforms, so it is enough to merge them in order
+			writer = new CompactWordformStoreWriter<TagType>(tempDir);
+			while (!shardQueue.isEmpty()) {
+				RunCursor cursor = shardQueue.poll();
+				writer.add(cursor.key, tags.get(cursor.getMostFrequentTag()));
+				if (cursor.advance()) {
+					shardQueue.add(cursor);
+				}
+			}
+			storeFile = File.createTempFile("wfstore", ".bin", tempDir);
+			storeFile.deleteOnExit();
+			OutputStream out = new BufferedOutputStream(openOutputStream(storeFile));
+			try {
+				writer.writeTo(out, Collections.<String, Object> emptyMap());
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+			log.info("Merged {} wordforms into {}", writer.size(), storeFile);
+			return CompactWordformStore.load(storeFile);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			for (RunCursor cursor : shardCursors) {
+				cursor.close();
+			}
+			if (writer != null) {
+				writer.dispose();
+			}
+			for (Shard shard : shards) {
+				shard.deleteRuns();
+			}
+		}
+	}
+
+	private int getTagId(TagType tag) {
+		Integer result = tagIds.get(tag);
+		if (result == null) {
+			synchronized (tagTable) {
+				result = tagIds.get(tag);
+				if (result == null) {
+					result = tagTable.size();
+					tagTable.add(tag);
+					tagIds.put(tag, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	private class Shard {
+		private final int index;
+		// wordform -> (tag id, count) pairs
+		private Map<String, int[]> counts = Maps.newHashMap();
+		private long memoryUsage;
+		private List<File> runFiles = Lists.newArrayList();
+
+		Shard(int index) {
+			this.index = index;
+		}
+
+		void increment(String wf, int tagId) {
+			int[] pairs = counts.get(wf);
+			if (pairs == null) {
+				counts.put(wf, new int[] { tagId, 1 });
+				memoryUsage += ENTRY_OVERHEAD + 2 * wf.length();
+				return;
+			}
+			for (int i = 0; i < pairs.length; i += 2) {
+				if (pairs[i] == tagId) {
+					pairs[i + 1]++;
+					return;
+				}
+			}
+			pairs = Arrays.copyOf(pairs, pairs.length + 2);
+			pairs[pairs.length - 2] = tagId;
+			pairs[pairs.length - 1] = 1;
+			counts.put(wf, pairs);
+			memoryUsage += 8;
+		}
+
+		void spill() throws IOException {
+			if (counts.isEmpty()) {
+				return;
+			}
+			List<String> wordforms = Lists.newArrayList(counts.keySet());
+			Collections.sort(wordforms);
+			File runFile = File.createTempFile("wfstore-run", ".bin", tempDir);
+			runFile.deleteOnExit();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					openOutputStream(runFile)));
+			try {
+				out.writeInt(wordforms.size());
+				for (String wf : wordforms) {
+					int[] pairs = counts.get(wf);
+					out.writeUTF(wf);
+					out.writeInt(pairs.length);
+					for (int p : pairs) {
+						out.writeInt(p);
+					}
+				}
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+			runFiles.add(runFile);
+			log.debug("Shard {} spilled {} wordforms to {}",
+					new Object[] { index, wordforms.size(), runFile });
+			counts = Maps.newHashMap();
+			memoryUsage = 0;
+		}
+
+		List<RunCursor> openRuns() throws IOException {
+			List<RunCursor> result = Lists.newArrayListWithCapacity(runFiles.size() + 1);
+			try {
+				for (File runFile : runFiles) {
+					result.add(new FileRunCursor(runFile));
+				}
+			} catch (IOException e) {
+				for (RunCursor run : result) {
+					run.close();
+				}
+				throw e;
+			}
+			if (!counts.isEmpty()) {
+				result.add(new MemoryRunCursor(counts));
+			}
+			return result;
+		}
+
+		void deleteRuns() {
+			for (File runFile : runFiles) {
+				FileUtils.deleteQuietly(runFile);
+			}
+			runFiles.clear();
+			counts = Maps.newHashMap();
+			memoryUsage = 0;
+		}
+	}
+
+	/**
+	 * Sorted sequence of wordforms with their (tag id, count) pairs.
+	 */
+	private static abstract class RunCursor implements Comparable<RunCursor> {
+		String key;
+		int[] pairs;
+
+		/**
+		 * @return false if there are no more wordforms
+		 */
+		abstract boolean advance() throws IOException;
+
+		void close() {
+		}
+
+		int getMostFrequentTag() {
+			int result = -1;
+			int max = 0;
+			for (int i = 0; i < pairs.length; i += 2) {
+				if (pairs[i + 1] > max || (pairs[i + 1] == max && pairs[i] < result)) {
+					max = pairs[i + 1];
+					result = pairs[i];
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public int compareTo(RunCursor o) {
+			return key.compareTo(o.key);
+		}
+	}
+
+	private static class MemoryRunCursor extends RunCursor {
+		private final Map<String, int[]> counts;
+		private final Iterator<String> keyIter;
+
+		MemoryRunCursor(Map<String, int[]> counts) {
+			this.counts = counts;
+			List<String> wordforms = Lists.newArrayList(counts.keySet());
+			Collections.sort(wordforms);
+			keyIter = wordforms.iterator();
+		}
+
+		@Override
+		boolean advance() {
+			if (!keyIter.hasNext()) {
+				return false;
+			}
+			key = keyIter.next();
+			pairs = counts.get(key);
+			return true;
+		}
+	}
+
+	private static class FileRunCursor extends RunCursor {
+		private final DataInputStream in;
+		private int remaining;
+
+		FileRunCursor(File runFile) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile)));
+			try {
+				remaining = in.readInt();
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				close();
+				return false;
+			}
+			remaining--;
+			key = in.readUTF();
+			pairs = new int[in.readInt()];
+			for (int i = 0; i < pairs.length; i++) {
+				pairs[i] = in.readInt();
+			}
+			return true;
+		}
+
+		@Override
+		void close() {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Merges runs of a shard summing counts of the same wordform.
+	 */
+	private static class MergingCursor extends RunCursor {
+		private final PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>();
+		// count by tag id
+		private final int[] tagCounts;
+		private int[] touchedTags = new int[8];
+
+		MergingCursor(List<RunCursor> runs, int tagCount) throws IOException {
+			tagCounts = new int[tagCount];
+			try {
+				for (RunCursor run : runs) {
+					if (run.advance()) {
+						queue.add(run);
+					}
+				}
+			} catch (IOException e) {
+				for (RunCursor run : runs) {
+					run.close();
+				}
+				throw e;
+			}
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			if (queue.isEmpty()) {
+				return false;
+			}
+			key = queue.peek().key;
+			int touchedCount = 0;
+			while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+				RunCursor run = queue.poll();
+				for (int i = 0; i < run.pairs.length; i += 2) {
+					int tagId = run.pairs[i];
+					if (tagCounts[tagId] == 0) {
+						if (touchedCount == touchedTags.length) {
+							touchedTags = Arrays.copyOf(touchedTags, touchedCount * 2);
+						}
+						touchedTags[touchedCount++] = tagId;
+					}
+					tagCounts[tagId] += run.pairs[i + 1];
+				}
+				if (run.advance()) {
+					queue.add(run);
+				}
+			}
+			pairs = new int[2 * touchedCount];
+			for (int i = 0; i < touchedCount; i++) {
+				int tagId = touchedTags[i];
+				pairs[2 * i] = tagId;
+				pairs[2 * i + 1] = tagCounts[tagId];
+				tagCounts[tagId] = 0;
+			}
+			return true;
+		}
+
+		@Override
+		void close() {
+			for (RunCursor run : queue) {
+				run.close();
+			}
+		}
+	}
+}
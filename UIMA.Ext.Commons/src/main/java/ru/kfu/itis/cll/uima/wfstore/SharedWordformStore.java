@@ -0,0 +1,95 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.wfstore;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+/**
+ * Shared resource that loads both {@link CompactWordformStore} and serialized
+ * {@link DefaultWordformStore} files. A compact store in a local file is
+ * memory-mapped, otherwise it is read into the heap.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class SharedWordformStore<TagType> implements WordformStore<TagType>,
+		SharedResourceObject {
+
+	// state fields
+	private WordformStore<TagType> delegate;
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void load(DataResource dr) throws ResourceInitializationException {
+		try {
+			File file = toFile(dr.getUri());
+			if (file != null) {
+				if (CompactWordformStore.isCompactFormat(file)) {
+					delegate = CompactWordformStore.load(file);
+				} else {
+					delegate = (DefaultWordformStore<TagType>) SerializationUtils.deserialize(
+							new BufferedInputStream(dr.getInputStream()));
+				}
+			} else {
+				// e.g., a jar entry
+				byte[] bytes = readBytes(dr);
+				if (bytes.length >= 4
+						&& ByteBuffer.wrap(bytes).getInt() == CompactWordformStore.MAGIC) {
+					delegate = new CompactWordformStore<TagType>(ByteBuffer.wrap(bytes));
+				} else {
+					delegate = (DefaultWordformStore<TagType>) SerializationUtils.deserialize(bytes);
+				}
+			}
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	@Override
+	public TagType getTag(String wf) {
+		return delegate.getTag(wf);
+	}
+
+	@Override
+	public <T> T getProperty(String key, Class<T> valueClass) {
+		return delegate.getProperty(key, valueClass);
+	}
+
+	@Override
+	public void setProperty(String key, Object value) {
+		delegate.setProperty(key, value);
+	}
+
+	@Override
+	public void persist(File outFile) throws Exception {
+		delegate.persist(outFile);
+	}
+
+	private static File toFile(URI uri) {
+		if (uri == null || !"file".equals(uri.getScheme())) {
+			return null;
+		}
+		return new File(uri);
+	}
+
+	private static byte[] readBytes(DataResource dr) throws IOException {
+		InputStream is = dr.getInputStream();
+		try {
+			return IOUtils.toByteArray(is);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.cas;
+
+import static java.lang.System.nanoTime;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+
+import ru.kfu.itis.cll.uima.cas.AnnotationUtils.OverlapIndexImpl;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compares {@link OverlapIndex} implementations on a sparse layer
+ * (token-like annotations that do not overlap each other) and on a dense layer
+ * (randomly placed annotations of random length). Each annotation of a layer
+ * is used as a query, as in overlap matching of evaluation.
+ * <p>
+ * Usage: <code>OverlapIndexBenchmark [annotations per layer] [iterations]</code>
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class OverlapIndexBenchmark {
+
+	public static void main(String[] args) throws ResourceInitializationException {
+		int layerSize = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		CAS cas = CasCreationUtils.createCas((TypeSystemDescription) null, null, null);
+		Type annoType = cas.getAnnotationType();
+		Random rand = new Random(13);
+		List<AnnotationFS> sparse = Lists.newArrayListWithCapacity(layerSize);
+		for (int i = 0; i < layerSize; i++) {
+			int begin = i * 8;
+			sparse.add(cas.createAnnotation(annoType, begin, begin + 1 + rand.nextInt(6)));
+		}
+		List<AnnotationFS> dense = Lists.newArrayListWithCapacity(layerSize);
+		for (int i = 0; i < layerSize; i++) {
+			int begin = rand.nextInt(layerSize * 2);
+			dense.add(cas.createAnnotation(annoType, begin, begin + 1 + rand.nextInt(40)));
+		}
+		for (OverlapIndexImpl impl : OverlapIndexImpl.values()) {
+			run("sparse", sparse, impl, iterations);
+			run("dense", dense, impl, iterations);
+		}
+	}
+
+	private static void run(String layerName, List<AnnotationFS> layer, OverlapIndexImpl impl,
+			int iterations) {
+		// warm-up
+		for (int i = 0; i < 3; i++) {
+			query(AnnotationUtils.createOverlapIndex(layer.iterator(), impl), layer);
+		}
+		long buildTime = 0;
+		long queryTime = 0;
+		long resultSize = 0;
+		for (int i = 0; i < iterations; i++) {
+			long timeBefore = nanoTime();
+			OverlapIndex<AnnotationFS> idx = AnnotationUtils.createOverlapIndex(
+					layer.iterator(), impl);
+			long timeBuilt = nanoTime();
+			resultSize = query(idx, layer);
+			queryTime += nanoTime() - timeBuilt;
+			buildTime += timeBuilt - timeBefore;
+		}
+		System.out.println(String.format(
+				"%s, %s: build %.2f ms, queries %.2f ms (%.0f ns per query), %s results",
+				layerName, impl,
+				buildTime / 1e6 / iterations, queryTime / 1e6 / iterations,
+				(double) queryTime / iterations / layer.size(), resultSize));
+	}
+
+	private static long query(OverlapIndex<AnnotationFS> idx, List<AnnotationFS> queries) {
+		long result = 0;
+		for (AnnotationFS q : queries) {
+			result += idx.getOverlapping(q.getBegin(), q.getEnd()).size();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.cas;
+
+import static org.junit.Assert.assertEquals;
+import static ru.kfu.itis.cll.uima.cas.AnnotationUtils.OverlapIndexImpl.SORTED_ARRAY;
+import static ru.kfu.itis.cll.uima.cas.AnnotationUtils.OverlapIndexImpl.TREE_MAP;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class OverlapIndexTest {
+
+	@Test
+	public void testSimple() throws ResourceInitializationException {
+		CAS cas = CasCreationUtils.createCas((TypeSystemDescription) null, null, null);
+		Type annoType = cas.getAnnotationType();
+		AnnotationFS a0_10 = cas.createAnnotation(annoType, 0, 10);
+		AnnotationFS a2_4 = cas.createAnnotation(annoType, 2, 4);
+		AnnotationFS a4_4 = cas.createAnnotation(annoType, 4, 4);
+		AnnotationFS a4_8 = cas.createAnnotation(annoType, 4, 8);
+		AnnotationFS a8_12 = cas.createAnnotation(annoType, 8, 12);
+		List<AnnotationFS> annos = Lists.newArrayList(a8_12, a4_4, a0_10, a4_8, a2_4);
+		for (AnnotationUtils.OverlapIndexImpl impl : AnnotationUtils.OverlapIndexImpl.values()) {
+			OverlapIndex<AnnotationFS> idx = AnnotationUtils.createOverlapIndex(
+					annos.iterator(), impl);
+			assertEquals(Lists.newArrayList(a2_4, a4_8, a4_4),
+					Lists.newArrayList(idx.getOverlapping(3, 6)));
+			assertEquals(Lists.newArrayList(a0_10, a2_4, a4_8, a4_4),
+					Lists.newArrayList(idx.overlappingIterator(0, 8)));
+			// a covering annotation is not returned
+			assertEquals(Lists.newArrayList(a2_4, a4_4),
+					Lists.newArrayList(idx.getOverlapping(3, 4)));
+			assertEquals(Lists.newArrayList(),
+					Lists.newArrayList(idx.getOverlapping(5, 6)));
+			assertEquals(Lists.newArrayList(a8_12),
+					Lists.newArrayList(idx.getOverlapping(10, 20)));
+		}
+	}
+
+	@Test
+	public void implementationsShouldGiveTheSameResults() throws ResourceInitializationException {
+		CAS cas = CasCreationUtils.createCas((TypeSystemDescription) null, null, null);
+		Type annoType = cas.getAnnotationType();
+		Random rand = new Random(7);
+		for (int round = 0; round < 200; round++) {
+			int textLength = 1 + rand.nextInt(50);
+			int maxAnnoLength = round % 2 == 0 ? 5 : textLength;
+			List<AnnotationFS> annos = Lists.newArrayList();
+			int annoNum = rand.nextInt(60);
+			for (int i = 0; i < annoNum; i++) {
+				int begin = rand.nextInt(textLength);
+				int end = rand.nextInt(4) == 0 ? begin : begin + rand.nextInt(maxAnnoLength);
+				annos.add(cas.createAnnotation(annoType, begin, end));
+			}
+			Collections.shuffle(annos, rand);
+			OverlapIndex<AnnotationFS> treeMapIdx = AnnotationUtils.createOverlapIndex(
+					annos.iterator(), TREE_MAP);
+			OverlapIndex<AnnotationFS> sortedArrayIdx = AnnotationUtils.createOverlapIndex(
+					annos.iterator(), SORTED_ARRAY);
+			for (int begin = -1; begin < textLength + maxAnnoLength; begin++) {
+				for (int end = begin; end <= textLength + maxAnnoLength; end++) {
+					List<AnnotationFS> expected = Lists.newArrayList(
+							treeMapIdx.getOverlapping(begin, end));
+					assertEquals(expected, Lists.newArrayList(
+							sortedArrayIdx.getOverlapping(begin, end)));
+					Iterator<AnnotationFS> iter = sortedArrayIdx.overlappingIterator(begin, end);
+					assertEquals(expected, Lists.newArrayList(iter));
+				}
+			}
+		}
+	}
+}
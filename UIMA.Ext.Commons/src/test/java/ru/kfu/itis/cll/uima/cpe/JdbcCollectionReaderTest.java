@@ -3,17 +3,23 @@
  */
 package ru.kfu.itis.cll.uima.cpe;
 
+import static org.junit.Assert.assertEquals;
 import static org.uimafit.factory.AnalysisEngineFactory.createPrimitiveDescription;
+import static org.uimafit.factory.CollectionReaderFactory.createCollectionReader;
 import static org.uimafit.factory.CollectionReaderFactory.createDescription;
 import static org.uimafit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.uimafit.util.JCasUtil.selectSingle;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_BATCH_SIZE;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_COUNT_QUERY;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_DATABASE_URL;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_DOCUMENT_URL_COLUMN;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_DRIVER_CLASS;
+import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_KEY_COLUMN;
+import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_KEY_PARAM_INDEX;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_LIMIT_PARAM_INDEX;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_OFFSET_PARAM_INDEX;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_PASSWORD;
+import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_PREFETCH_BATCHES;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_QUERY;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_TEXT_COLUMN;
 import static ru.kfu.itis.cll.uima.cpe.JdbcCollectionReader.PARAM_USERNAME;
@@ -30,15 +36,20 @@ import java.util.Random;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.uimafit.pipeline.SimplePipeline;
 
 import ru.kfu.itis.cll.uima.annotator.AnnotationLogger;
+import ru.kfu.itis.cll.uima.commons.DocumentMetadata;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 /**
  * @author Rinat Gareev (Kazan Federal University)
@@ -102,6 +113,41 @@ public class JdbcCollectionReaderTest {
 		SimplePipeline.runPipeline(readerDesc, aeDesc);
 	}
 
+	@Test
+	public void testKeysetPaginationWithPrefetch() throws UIMAException, IOException {
+		TypeSystemDescription tsDesc = createTypeSystemDescription("ru.kfu.itis.cll.uima.commons.Commons-TypeSystem");
+		CollectionReaderDescription readerDesc =
+				createDescription(JdbcCollectionReader.class, tsDesc,
+						PARAM_DATABASE_URL,
+						"jdbc:hsqldb:mem:jdbc-collection-reader-test;ifexists=true",
+						PARAM_USERNAME, "SA",
+						PARAM_PASSWORD, "",
+						PARAM_DRIVER_CLASS, "org.hsqldb.jdbc.JDBCDriver",
+						PARAM_QUERY, "SELECT id, url, txt FROM doc WHERE id > ? ORDER BY id LIMIT ?",
+						PARAM_KEY_COLUMN, "id",
+						PARAM_KEY_PARAM_INDEX, 1,
+						PARAM_LIMIT_PARAM_INDEX, 2,
+						PARAM_DOCUMENT_URL_COLUMN, "url",
+						PARAM_TEXT_COLUMN, "txt",
+						PARAM_BATCH_SIZE, 2,
+						PARAM_PREFETCH_BATCHES, 1);
+		CollectionReader reader = createCollectionReader(readerDesc);
+		CAS cas = CasCreationUtils.createCas(tsDesc, null, null);
+		List<String> urls = Lists.newArrayList();
+		try {
+			while (reader.hasNext()) {
+				cas.reset();
+				reader.getNext(cas);
+				assertEquals(200, cas.getDocumentText().length());
+				urls.add(selectSingle(cas.getJCas(), DocumentMetadata.class).getSourceUri());
+			}
+		} finally {
+			reader.close();
+		}
+		assertEquals(ImmutableList.of("http://example.com/01", "file://test/test.txt",
+				"ftp://test.com/02434523"), urls);
+	}
+
 	// TODO move to TestUtils or smth like that
 	private static final List<Character> ALPHABET;
 	static {
@@ -0,0 +1,108 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.cpe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitiveDescription;
+import static org.uimafit.factory.CollectionReaderFactory.createDescription;
+import static org.uimafit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.OperationalProperties;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class ParallelPipelineRunnerTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Test
+	public void testReplicatedStage() throws Exception {
+		List<String> lines = Lists.newArrayList();
+		for (int i = 0; i < 200; i++) {
+			lines.add("line " + i);
+		}
+		File inputFile = tempFolder.newFile("lines.txt");
+		FileUtils.writeLines(inputFile, "utf-8", lines);
+		TypeSystemDescription tsDesc = createTypeSystemDescription(
+				"ru.kfu.itis.cll.uima.commons.Commons-TypeSystem");
+
+		ParallelPipelineRunner runner = new ParallelPipelineRunner(
+				createDescription(LinesCollectionReader.class, tsDesc,
+						"inputFile", inputFile.getPath()));
+		runner.addStage("replicated", createPrimitiveDescription(SlowAnnotator.class), 4);
+		runner.addStage("consumer", createPrimitiveDescription(CollectingConsumer.class));
+		runner.setReportInterval(0);
+		assertEquals(1 + 5 + 2, runner.getCasPoolSize());
+		runner.run();
+
+		assertEquals(200, SlowAnnotator.processedCounter.get());
+		assertTrue(SlowAnnotator.maxConcurrency.get() > 1);
+		assertEquals(Sets.newHashSet(lines), CollectingConsumer.texts);
+		assertEquals(200, CollectingConsumer.processedCounter);
+		assertTrue(CollectingConsumer.completed);
+	}
+
+	public static class SlowAnnotator extends JCasAnnotator_ImplBase {
+		static final AtomicInteger processedCounter = new AtomicInteger();
+		static final AtomicInteger maxConcurrency = new AtomicInteger();
+		private static final AtomicInteger concurrency = new AtomicInteger();
+
+		@Override
+		public void process(JCas jCas) throws AnalysisEngineProcessException {
+			int cur = concurrency.incrementAndGet();
+			int max = maxConcurrency.get();
+			while (cur > max && !maxConcurrency.compareAndSet(max, cur)) {
+				max = maxConcurrency.get();
+			}
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+				throw new AnalysisEngineProcessException(e);
+			} finally {
+				concurrency.decrementAndGet();
+			}
+			processedCounter.incrementAndGet();
+		}
+	}
+
+	@OperationalProperties(multipleDeploymentAllowed = false)
+	public static class CollectingConsumer extends JCasAnnotator_ImplBase {
+		// accessed by a single thread
+		static Set<String> texts = Sets.newHashSet();
+		static int processedCounter;
+		static volatile boolean completed;
+
+		@Override
+		public void process(JCas jCas) throws AnalysisEngineProcessException {
+			texts.add(jCas.getDocumentText());
+			processedCounter++;
+		}
+
+		@Override
+		public void collectionProcessComplete() throws AnalysisEngineProcessException {
+			super.collectionProcessComplete();
+			completed = true;
+		}
+	}
+}
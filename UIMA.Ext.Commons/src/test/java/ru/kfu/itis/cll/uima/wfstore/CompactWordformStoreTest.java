@@ -0,0 +1,117 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.wfstore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CompactWordformStoreTest {
+
+	private File storeFile = new File("target/CompactWordformStoreTest.bin");
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(storeFile);
+	}
+
+	@Test
+	public void shouldGiveTheSameTagsAsDefaultStore() throws Exception {
+		Random rand = new Random(3);
+		DefaultWordformStoreBuilder<String> defaultBuilder = new DefaultWordformStoreBuilder<String>();
+		CompactWordformStoreBuilder<String> compactBuilder = new CompactWordformStoreBuilder<String>();
+		for (int i = 0; i < 20000; i++) {
+			String wf = randomWord(rand);
+			String tag = "T" + rand.nextInt(rand.nextBoolean() ? 3 : 300);
+			defaultBuilder.increment(wf, tag);
+			compactBuilder.increment(wf, tag);
+		}
+		DefaultWordformStore<String> defaultStore = defaultBuilder.build();
+		CompactWordformStore<String> compactStore = compactBuilder.build();
+		compactStore.setProperty("suffixLength", 3);
+		compactStore.persist(storeFile);
+		assertTrue(CompactWordformStore.isCompactFormat(storeFile));
+		CompactWordformStore<String> loadedStore = CompactWordformStore.load(storeFile);
+		assertEquals(Integer.valueOf(3), loadedStore.getProperty("suffixLength", Integer.class));
+		assertEquals(defaultStore.strKeyMap.size(), loadedStore.size());
+		for (Map.Entry<String, String> e : defaultStore.strKeyMap.entrySet()) {
+			assertEquals(e.getValue(), compactStore.getTag(e.getKey()));
+			assertEquals(e.getValue(), loadedStore.getTag(e.getKey()));
+		}
+		for (int i = 0; i < 20000; i++) {
+			String wf = randomWord(rand);
+			assertEquals(defaultStore.getTag(wf), loadedStore.getTag(wf));
+		}
+		assertNull(loadedStore.getTag(""));
+		assertNull(loadedStore.getTag("\uffff"));
+		// entries are iterated in the wordform order
+		Iterator<Map.Entry<String, String>> entryIter = loadedStore.entryIterator();
+		String lastWf = null;
+		int entryCount = 0;
+		while (entryIter.hasNext()) {
+			Map.Entry<String, String> e = entryIter.next();
+			assertTrue(lastWf == null || lastWf.compareTo(e.getKey()) < 0);
+			assertEquals(defaultStore.getTag(e.getKey()), e.getValue());
+			lastWf = e.getKey();
+			entryCount++;
+		}
+		assertEquals(defaultStore.strKeyMap.size(), entryCount);
+	}
+
+	@Test
+	public void shouldStoreBitSetTags() throws Exception {
+		CompactWordformStoreBuilder<BitSet> builder = new CompactWordformStoreBuilder<BitSet>();
+		BitSet noun = new BitSet();
+		noun.set(1);
+		BitSet verb = new BitSet();
+		verb.set(2);
+		verb.set(5);
+		builder.increment("стали", noun);
+		builder.increment("стали", verb);
+		builder.increment("стали", verb);
+		builder.increment("сталь", noun);
+		CompactWordformStore<BitSet> store = builder.build();
+		store.setProperty("targetPosCategories", new String[] { "POST" });
+		store.persist(storeFile);
+		store = CompactWordformStore.load(storeFile);
+		assertEquals(verb, store.getTag("стали"));
+		assertEquals(noun, store.getTag("сталь"));
+		assertNull(store.getTag("стал"));
+		assertArrayEquals(new String[] { "POST" },
+				store.getProperty("targetPosCategories", String[].class));
+	}
+
+	@Test
+	public void shouldHandleEmptyStore() throws Exception {
+		CompactWordformStore<String> store = new CompactWordformStoreBuilder<String>().build();
+		store.persist(storeFile);
+		store = CompactWordformStore.load(storeFile);
+		assertEquals(0, store.size());
+		assertNull(store.getTag("word"));
+	}
+
+	private static String randomWord(Random rand) {
+		int length = 1 + rand.nextInt(8);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('а' + rand.nextInt(6)));
+		}
+		return sb.toString();
+	}
+}
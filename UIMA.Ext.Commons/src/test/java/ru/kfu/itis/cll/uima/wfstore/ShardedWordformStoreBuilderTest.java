@@ -0,0 +1,100 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.wfstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class ShardedWordformStoreBuilderTest {
+
+	private static final int WORD_NUM = 30000;
+
+	@Test
+	public void shouldSpillAndMerge() throws Exception {
+		File tempDir = new File("target/sharded-wfstore-test");
+		FileUtils.deleteQuietly(tempDir);
+		FileUtils.forceMkdir(tempDir);
+		// a small budget makes shards spill many runs
+		final ShardedWordformStoreBuilder<String> builder =
+				new ShardedWordformStoreBuilder<String>(4, 200 * 1024, tempDir);
+		// word i gets tag T(i%7) three times, T((i+1)%7) twice and T((i+2)%7) once
+		List<String[]> increments = Lists.newArrayList();
+		for (int i = 0; i < WORD_NUM; i++) {
+			String wf = "w" + i;
+			for (int t = 0; t < 3; t++) {
+				for (int c = 0; c < 3 - t; c++) {
+					increments.add(new String[] { wf, "T" + (i + t) % 7 });
+				}
+			}
+		}
+		Collections.shuffle(increments, new Random(5));
+		int threadNum = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+		try {
+			List<Future<?>> futures = Lists.newArrayList();
+			for (int t = 0; t < threadNum; t++) {
+				final List<String[]> part = increments.subList(
+						t * increments.size() / threadNum,
+						(t + 1) * increments.size() / threadNum);
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (String[] inc : part) {
+							builder.increment(inc[0], inc[1]);
+						}
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		CompactWordformStore<String> store = builder.build();
+		assertEquals(WORD_NUM, store.size());
+		for (int i = 0; i < WORD_NUM; i++) {
+			assertEquals("T" + i % 7, store.getTag("w" + i));
+		}
+		assertNull(store.getTag("w" + WORD_NUM));
+		// runs and sections of the writer are deleted, only the store is left
+		String[] tempFiles = tempDir.list();
+		assertEquals(Arrays.toString(tempFiles), 1, tempFiles.length);
+		assertTrue(tempFiles[0].startsWith("wfstore") && tempFiles[0].endsWith(".bin")
+				&& !tempFiles[0].startsWith("wfstore-"));
+	}
+
+	@Test
+	public void shouldBuildInMemory() throws Exception {
+		ShardedWordformStoreBuilder<String> builder =
+				new ShardedWordformStoreBuilder<String>(64 * 1024 * 1024);
+		builder.increment("стали", "VERB");
+		builder.increment("стали", "NOUN");
+		builder.increment("стали", "VERB");
+		builder.increment("сталь", "NOUN");
+		CompactWordformStore<String> store = builder.build();
+		assertEquals(2, store.size());
+		assertEquals("VERB", store.getTag("стали"));
+		assertEquals("NOUN", store.getTag("сталь"));
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.depparser.mst;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import mstparser.Alphabet;
+import mstparser.DependencyDecoder;
+import mstparser.DependencyDecoder2O;
+import mstparser.DependencyInstance;
+import mstparser.DependencyPipe;
+import mstparser.DependencyPipe2O;
+import mstparser.FeatureVector;
+import mstparser.Parameters;
+import mstparser.ParserOptions;
+
+import org.apache.commons.io.IOUtils;
+
+import ru.kfu.itis.cll.uima.io.IoUtils;
+
+/**
+ * Trained MSTParser model that parses sentences given as lists of forms and
+ * tags in memory. It does the same as {@link mstparser.DependencyParser} in
+ * the test mode but without reading an input file: instances are built in the
+ * same way as {@link mstparser.io.MSTReader} does, i.e., with the artificial
+ * root token, normalized numbers, 5-char 'lemmas' and 1-char coarse tags.
+ * <p>
+ * After loading the model parameters and alphabets are not changed, and each
+ * {@link #parse(List, List)} invocation allocates its own feature vectors and
+ * decoder charts. So a single instance can be shared by several threads.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MSTModel {
+
+	public static final String MODEL_PROPERTIES_FILE_EXTENSION = ".props";
+	public static final String MODEL_PROP_ORDER = "order";
+
+	public static MSTModel load(File modelFile) throws IOException {
+		Properties modelProperties = readModelProperties(modelFile);
+		// configure parser options
+		ParserOptions options = new ParserOptions(new String[0]);
+		options.test = true;
+		options.train = false;
+		options.eval = false;
+		options.format = "MST";
+		options.secondOrder = "2".equals(modelProperties.get(MODEL_PROP_ORDER));
+		MSTModel result = new MSTModel(options);
+		// the same as DependencyParser#loadModel
+		ObjectInputStream in = new ObjectInputStream(
+				new BufferedInputStream(new FileInputStream(modelFile)));
+		try {
+			result.params.parameters = (double[]) in.readObject();
+			result.pipe.dataAlphabet = (Alphabet) in.readObject();
+			result.pipe.typeAlphabet = (Alphabet) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		result.pipe.closeAlphabets();
+		return result;
+	}
+
+	private static Properties readModelProperties(File modelFile) throws IOException {
+		File modelDir = modelFile.getParentFile();
+		String propsFileName = modelFile.getName() + MODEL_PROPERTIES_FILE_EXTENSION;
+		File propsFile = new File(modelDir, propsFileName);
+		return IoUtils.readProperties(propsFile);
+	}
+
+	// config fields
+	private final ParserOptions options;
+	private final DependencyPipe pipe;
+	private final DependencyDecoder decoder;
+	private final Parameters params;
+
+	private MSTModel(ParserOptions options) throws IOException {
+		this.options = options;
+		if (options.secondOrder) {
+			pipe = new DependencyPipe2O(options);
+			decoder = new DependencyDecoder2O(pipe);
+		} else {
+			pipe = new DependencyPipe(options);
+			decoder = new DependencyDecoder(pipe);
+		}
+		params = new Parameters(0);
+	}
+
+	public boolean isSecondOrder() {
+		return options.secondOrder;
+	}
+
+	/**
+	 * @param forms
+	 *            token strings of a sentence
+	 * @param tags
+	 *            token tags, null elements are allowed
+	 * @return heads of the given tokens: 0 for the root, otherwise 1-based
+	 *         index of the head token
+	 */
+	public int[] parse(List<String> forms, List<String> tags) {
+		if (forms.size() != tags.size()) {
+			throw new IllegalArgumentException(String.format(
+					"Sizes of forms (%s) and tags (%s) differ", forms.size(), tags.size()));
+		}
+		if (forms.isEmpty()) {
+			return new int[0];
+		}
+		DependencyInstance instance = toInstance(forms, tags);
+		int length = instance.length();
+		int typeNum = pipe.types.length;
+		FeatureVector[][][] fvs = new FeatureVector[length][length][2];
+		double[][][] probs = new double[length][length][2];
+		FeatureVector[][][][] ntFvs = new FeatureVector[length][typeNum][2][2];
+		double[][][][] ntProbs = new double[length][typeNum][2][2];
+		boolean proj = "proj".equals(options.decodeType);
+		Object[][] d;
+		if (options.secondOrder) {
+			FeatureVector[][][] fvsTrips = new FeatureVector[length][length][length];
+			double[][][] probsTrips = new double[length][length][length];
+			FeatureVector[][][] fvsSibs = new FeatureVector[length][length][2];
+			double[][][] probsSibs = new double[length][length][2];
+			((DependencyPipe2O) pipe).fillFeatureVectors(instance, fvs, probs,
+					fvsTrips, probsTrips, fvsSibs, probsSibs, ntFvs, ntProbs, params);
+			DependencyDecoder2O decoder2O = (DependencyDecoder2O) decoder;
+			d = proj
+					? decoder2O.decodeProjective(instance, fvs, probs,
+							fvsTrips, probsTrips, fvsSibs, probsSibs, ntFvs, ntProbs, 1)
+					: decoder2O.decodeNonProjective(instance, fvs, probs,
+							fvsTrips, probsTrips, fvsSibs, probsSibs, ntFvs, ntProbs, 1);
+		} else {
+			pipe.fillFeatureVectors(instance, fvs, probs, ntFvs, ntProbs, params);
+			d = proj
+					? decoder.decodeProjective(instance, fvs, probs, ntFvs, ntProbs, 1)
+					: decoder.decodeNonProjective(instance, fvs, probs, ntFvs, ntProbs, 1);
+		}
+		// the best parse is a space-separated list of 'head|child:type' triples
+		// in the order of children
+		String parse = (String) d[0][1];
+		int[] heads = new int[forms.size()];
+		int tripleStart = 0;
+		for (int i = 0; i < heads.length; i++) {
+			int headEnd = parse.indexOf('|', tripleStart);
+			heads[i] = Integer.parseInt(parse.substring(tripleStart, headEnd));
+			tripleStart = parse.indexOf(' ', headEnd) + 1;
+		}
+		return heads;
+	}
+
+	private static DependencyInstance toInstance(List<String> forms, List<String> tags) {
+		int length = forms.size() + 1;
+		String[] instForms = new String[length];
+		String[] instTags = new String[length];
+		String[] instCTags = new String[length];
+		String[] instLemmas = new String[length];
+		String[] instLabels = new String[length];
+		int[] instHeads = new int[length];
+		instForms[0] = "<root>";
+		instTags[0] = "<root-POS>";
+		instCTags[0] = "<root-CPOS>";
+		instLemmas[0] = "<root-LEMMA>";
+		instLabels[0] = "<no-type>";
+		instHeads[0] = -1;
+		for (int i = 1; i < length; i++) {
+			String form = normalize(forms.get(i - 1));
+			// MSTFormat writes null tags as 'null'
+			String tag = String.valueOf(tags.get(i - 1));
+			instForms[i] = form;
+			instTags[i] = tag;
+			instCTags[i] = tag.isEmpty() ? tag : tag.substring(0, 1);
+			instLemmas[i] = form.length() > 5 ? form.substring(0, 5) : form;
+			instLabels[i] = "<no-type>";
+		}
+		DependencyInstance result = new DependencyInstance(
+				instForms, instTags, instLabels, instHeads);
+		result.cpostags = instCTags;
+		result.lemmas = instLemmas;
+		result.feats = new String[0][0];
+		return result;
+	}
+
+	private static String normalize(String form) {
+		if (NUMBER_PATTERN.matcher(form).matches()) {
+			return "<num>";
+		}
+		return form;
+	}
+
+	// the same as in mstparser.io.DependencyReader
+	private static final Pattern NUMBER_PATTERN = Pattern.compile(
+			"[0-9]+|[0-9]+\\.[0-9]+|[0-9]+[0-9,]+");
+}
@@ -0,0 +1,47 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.depparser.mst;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+/**
+ * Shared resource that loads a {@link MSTModel} once for all annotators bound
+ * to it. A model file must be accessible through a 'file:' URI because model
+ * properties are read from the sibling file.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MSTModelHolder implements SharedResourceObject {
+
+	// state
+	private MSTModel model;
+
+	@Override
+	public void load(DataResource dr) throws ResourceInitializationException {
+		if (model != null) {
+			throw new IllegalStateException();
+		}
+		URI modelUri = dr.getUri();
+		if (modelUri == null || !"file".equals(modelUri.getScheme())) {
+			throw new IllegalStateException(String.format(
+					"MST model must be a file: %s", modelUri));
+		}
+		try {
+			model = MSTModel.load(new File(modelUri));
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	public MSTModel getModel() {
+		return model;
+	}
+}
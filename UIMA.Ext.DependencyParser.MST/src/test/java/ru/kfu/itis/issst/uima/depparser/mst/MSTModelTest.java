@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.depparser.mst;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import mstparser.DependencyInstance;
+import mstparser.DependencyParser;
+import mstparser.DependencyPipe;
+import mstparser.ParserOptions;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ru.kfu.itis.cll.uima.io.IoUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MSTModelTest {
+
+	private static final File trainFile = new File("src/test/resources/mst-example.txt");
+	private static final File modelFile = new File("target/mst-test/example.model");
+	private static final File testFile = new File("target/mst-test/test.txt");
+
+	@BeforeClass
+	public static void trainModel() throws Exception {
+		FileUtils.forceMkdir(modelFile.getParentFile());
+		// the same as DependencyParser#main in the training mode
+		ParserOptions options = new ParserOptions(new String[] {
+				"train",
+				"train-file:" + trainFile.getPath(),
+				"model-name:" + modelFile.getPath(),
+				"training-iterations:2",
+				"order:1",
+				"format:MST" });
+		DependencyPipe pipe = new DependencyPipe(options);
+		int[] instanceLengths = pipe.createInstances(options.trainfile, options.trainforest);
+		pipe.closeAlphabets();
+		DependencyParser dp = new DependencyParser(pipe, options);
+		dp.train(instanceLengths, options.trainfile, options.trainforest);
+		dp.saveModel(options.modelName);
+		FileUtils.writeStringToFile(
+				new File(modelFile.getPath() + MSTModel.MODEL_PROPERTIES_FILE_EXTENSION),
+				MSTModel.MODEL_PROP_ORDER + "=1\n", "UTF-8");
+		// training sentences and ones with numbers, unknown words and null tags
+		FileUtils.copyFile(trainFile, testFile);
+		BufferedWriter out = IoUtils.openBufferedWriter(testFile, "UTF-8", true);
+		try {
+			writeSentence(out, asList("В", "2013", "году", "нашли", "тоннель"),
+					asList("[PR]", "[NUM]", "[S ЕД МУЖ ПР НЕОД]",
+							"[V СОВ ИЗЪЯВ ПРОШ МН]", "[S ЕД МУЖ ВИН НЕОД]"));
+			writeSentence(out, asList("Он", "есть", "1,5"),
+					asList("[S ЕД МУЖ ИМ ОД]", null, "[NUM]"));
+			writeSentence(out, asList("тоннель"), asList("[S ЕД МУЖ ИМ НЕОД]"));
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	@Test
+	public void shouldGiveTheSameHeadsAsDependencyParser() throws Exception {
+		List<DependencyInstance> expected = parseByDependencyParser(testFile);
+		List<DependencyInstance> input = readInstances(testFile);
+		assertEquals(input.size(), expected.size());
+		MSTModel model = MSTModel.load(modelFile);
+		for (int i = 0; i < input.size(); i++) {
+			DependencyInstance inst = input.get(i);
+			int[] actualHeads = model.parse(asList(inst.forms), asList(inst.postags));
+			assertArrayEquals(expected.get(i).heads, actualHeads);
+		}
+		assertArrayEquals(new int[0], model.parse(
+				Collections.<String> emptyList(), Collections.<String> emptyList()));
+	}
+
+	// the same as MSTParsingAnnotator did before it used MSTModel
+	private static List<DependencyInstance> parseByDependencyParser(File inputFile)
+			throws IOException {
+		ParserOptions options = new ParserOptions(new String[0]);
+		options.test = true;
+		options.train = false;
+		options.eval = false;
+		options.format = "MST";
+		options.secondOrder = false;
+		DependencyPipe pipe = new DependencyPipe(options);
+		DependencyParser parser = new DependencyParser(pipe, options);
+		InputStream modelStream = new BufferedInputStream(new FileInputStream(modelFile));
+		try {
+			parser.loadModel(modelStream);
+		} finally {
+			IOUtils.closeQuietly(modelStream);
+		}
+		parser.options.testfile = inputFile.getPath();
+		return parser.getParses();
+	}
+
+	private static List<DependencyInstance> readInstances(File file) throws IOException {
+		MSTDependencyInstanceIterator iter = new MSTDependencyInstanceIterator(file);
+		try {
+			return Lists.newArrayList(iter);
+		} finally {
+			IOUtils.closeQuietly(iter);
+		}
+	}
+
+	private static void writeSentence(BufferedWriter out, List<String> forms, List<String> tags)
+			throws IOException {
+		List<Integer> dummyHeads = Lists.newArrayList();
+		for (int i = 0; i < forms.size(); i++) {
+			dummyHeads.add(0);
+		}
+		MSTFormat.writeInstance(out, forms, tags, dummyHeads);
+	}
+}
@@ -22,6 +22,7 @@ public class ConfigurationKeys {
 	public static final String PREFIX_LISTENER_PROPERTY = "listenerProperty.";
 	public static final String KEY_MATCHING_CONFIGURATION_TARGET_TYPE = "check.targetTypes";
 	public static final String PREFIX_MATCHING_CONFIGURATION = "check.";
+	public static final String KEY_EVALUATION_THREADS = "evaluation.threads";
 
 	// public static final String 
 
@@ -9,27 +9,55 @@ import static com.google.common.collect.Sets.newLinkedHashSet;
 import static java.lang.System.currentTimeMillis;
 
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.annotation.Resource;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.util.CasCreationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 import ru.kfu.itis.cll.uima.eval.anno.AnnotationExtractor;
 import ru.kfu.itis.cll.uima.eval.anno.DocumentMetaExtractor;
 import ru.kfu.itis.cll.uima.eval.anno.MatchingStrategy;
 import ru.kfu.itis.cll.uima.eval.cas.CasDirectory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 /**
  * TODO Complete annotation duplicates (by offsets & type) are ignored. Check
  * consistency.
+ * <p>
+ * If '{@value ConfigurationKeys#KEY_EVALUATION_THREADS}' is greater than 1
+ * then documents are matched concurrently. Each worker thread owns a pair of
+ * CASes that are reused for its documents and its own instance of the
+ * {@link MatchingStrategy}, so the strategy bean must be prototype-scoped, as
+ * in the default application context. Match results are reported to listeners by the
+ * thread that invoked {@link #run()} in the document order, so listeners
+ * receive the same events as in the sequential mode. CASes of a document are
+ * reused after its events are reported, so listeners must not access
+ * annotations of a document after {@code onDocumentChange(null)}.
+ * </p>
  * 
  * @author Rinat Gareev (Kazan Federal University)
  * 
@@ -46,15 +74,30 @@ public class GoldStandardBasedEvaluation {
 	private AnnotationExtractor annotationExtractor;
 	@Autowired
 	private DocumentMetaExtractor docMetaExtractor;
+	// a new instance per invocation if the bean is prototype-scoped
 	@Autowired
-	private MatchingStrategy matchingStrategy;
+	private ObjectFactory<MatchingStrategy> matchingStrategyFactory;
 	@Autowired
 	private EvaluationContext evalCtx;
+	@Autowired
+	private TypeSystem typeSystem;
+	@Value("${" + ConfigurationKeys.KEY_EVALUATION_THREADS + ":1}")
+	private int threadCount = 1;
 
 	public void run() throws Exception {
+		if (threadCount > 1) {
+			runParallel();
+		} else {
+			runSequential();
+		}
+		evalCtx.reportEvaluationComplete();
+	}
+
+	private void runSequential() throws Exception {
 		Iterator<CAS> iter = goldStandardDir.iterator();
 		int processedCasCounter = 0;
 		final int casDirSize = goldStandardDir.size();
+		MatchingStrategy matchingStrategy = matchingStrategyFactory.getObject();
 		while (iter.hasNext()) {
 			CAS goldCas = iter.next();
 			final String docUri = docMetaExtractor.getDocumentUri(goldCas);
@@ -66,7 +109,7 @@ public class GoldStandardBasedEvaluation {
 			evalCtx.setCurrentDocUri(docUri);
 			final long timeBeforeCas = currentTimeMillis();
 			try {
-				evaluate(goldCas, sysCas);
+				evaluate(goldCas, sysCas, matchingStrategy).report(evalCtx);
 			} finally {
 				// reset uri
 				evalCtx.setCurrentDocUri(null);
@@ -77,10 +120,126 @@ public class GoldStandardBasedEvaluation {
 						currentTimeMillis() - timeBeforeCas });
 			}
 		}
-		evalCtx.reportEvaluationComplete();
 	}
 
-	private void evaluate(CAS goldCas, CAS sysCas) {
+	private void runParallel() throws Exception {
+		final int casDirSize = goldStandardDir.size();
+		if (casDirSize < 0) {
+			throw new IllegalStateException("Parallel evaluation requires the size of gold CAS directory");
+		}
+		BlockingQueue<Worker> freeWorkers = new LinkedBlockingQueue<Worker>();
+		Set<MatchingStrategy> workerStrategies = Sets.newSetFromMap(
+				new IdentityHashMap<MatchingStrategy, Boolean>());
+		for (int i = 0; i < threadCount; i++) {
+			Worker worker = new Worker();
+			if (!workerStrategies.add(worker.workerMatchingStrategy)) {
+				throw new IllegalStateException(String.format(
+						"Parallel evaluation requires a prototype-scoped bean of %s",
+						MatchingStrategy.class.getName()));
+			}
+			freeWorkers.add(worker);
+		}
+		// FS constraints (e.g., of the annotation extractor) are compiled on the first match,
+		// do it here to avoid a race between workers
+		CAS warmUpCas = freeWorkers.peek().goldCas;
+		warmUpCas.setDocumentText("");
+		annotationExtractor.extract(warmUpCas).hasNext();
+		warmUpCas.reset();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		// results that are not reported yet, in the document order
+		LinkedList<Future<DocumentResult>> pending = Lists.newLinkedList();
+		int processedCasCounter = 0;
+		try {
+			for (int i = 0; i < casDirSize; i++) {
+				// a worker is assigned to a document here, so documents get workers in order
+				Worker worker;
+				while ((worker = freeWorkers.poll()) == null) {
+					report(pending.removeFirst(), freeWorkers, ++processedCasCounter, casDirSize);
+				}
+				final Worker docWorker = worker;
+				final int docIndex = i;
+				pending.addLast(executor.submit(new Callable<DocumentResult>() {
+					@Override
+					public DocumentResult call() throws Exception {
+						return docWorker.process(docIndex);
+					}
+				}));
+			}
+			while (!pending.isEmpty()) {
+				report(pending.removeFirst(), freeWorkers, ++processedCasCounter, casDirSize);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void report(Future<DocumentResult> resultFuture, BlockingQueue<Worker> freeWorkers,
+			int processedCasCounter, int casDirSize) throws Exception {
+		DocumentResult result;
+		try {
+			result = resultFuture.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+		evalCtx.setCurrentDocUri(result.docUri);
+		try {
+			result.matches.report(evalCtx);
+		} finally {
+			evalCtx.setCurrentDocUri(null);
+		}
+		log.info("[{}/{}] {} has been processed in {}ms", new Object[] {
+				processedCasCounter, casDirSize, result.docUri, result.time });
+		// listeners have done with annotations of this document
+		freeWorkers.add(result.worker);
+	}
+
+	private class Worker {
+		private final CAS goldCas;
+		private final CAS sysCas;
+		private final MatchingStrategy workerMatchingStrategy;
+
+		Worker() throws Exception {
+			goldCas = CasCreationUtils.createCas(typeSystem, null, null, null);
+			sysCas = CasCreationUtils.createCas(typeSystem, null, null, null);
+			workerMatchingStrategy = matchingStrategyFactory.getObject();
+		}
+
+		DocumentResult process(int docIndex) throws Exception {
+			final long timeBefore = currentTimeMillis();
+			goldCas.reset();
+			sysCas.reset();
+			goldStandardDir.getCas(docIndex, goldCas);
+			String docUri = docMetaExtractor.getDocumentUri(goldCas);
+			systemOutputDir.getCas(docUri, sysCas);
+			workerMatchingStrategy.changeCas(sysCas);
+			try {
+				DocumentMatches matches = evaluate(goldCas, sysCas, workerMatchingStrategy);
+				return new DocumentResult(this, docUri, matches, currentTimeMillis() - timeBefore);
+			} finally {
+				workerMatchingStrategy.changeCas(null);
+			}
+		}
+	}
+
+	private static class DocumentResult {
+		private final Worker worker;
+		private final String docUri;
+		private final DocumentMatches matches;
+		private final long time;
+
+		DocumentResult(Worker worker, String docUri, DocumentMatches matches, long time) {
+			this.worker = worker;
+			this.docUri = docUri;
+			this.matches = matches;
+			this.time = time;
+		}
+	}
+
+	private DocumentMatches evaluate(CAS goldCas, CAS sysCas, MatchingStrategy strategy) {
 		FSIterator<AnnotationFS> goldAnnoIter = annotationExtractor.extract(goldCas);
 		Set<AnnotationFS> goldProcessed = new HashSet<AnnotationFS>();
 		// system annotations that exactly match a gold one
@@ -96,10 +255,10 @@ public class GoldStandardBasedEvaluation {
 			matchesMap.put(goldAnno, mi);
 
 			Set<AnnotationFS> candidates = newLinkedHashSet(
-					matchingStrategy.searchCandidates(goldAnno));
+					strategy.searchCandidates(goldAnno));
 
 			candidates.removeAll(sysMatched);
-			AnnotationFS exactSys = matchingStrategy.searchExactMatch(goldAnno, candidates);
+			AnnotationFS exactSys = strategy.searchExactMatch(goldAnno, candidates);
 			if (exactSys != null) {
 				// sanity check
 				assert candidates.contains(exactSys);
@@ -116,19 +275,20 @@ public class GoldStandardBasedEvaluation {
 			mi.partialSet.removeAll(sysMatched);
 		}
 
+		DocumentMatches result = new DocumentMatches();
 		// report for each gold anno
 		for (AnnotationFS goldAnno : matchesMap.keySet()) {
 			// assert order declared in EvaluationListener javadoc
 			MatchInfo mi = matchesMap.get(goldAnno);
 			boolean matchedExactly = mi.exact != null;
 			if (matchedExactly) {
-				evalCtx.reportExactMatch(goldAnno, mi.exact);
+				result.exactMatch(goldAnno, mi.exact);
 			}
 			for (AnnotationFS partialSys : mi.partialSet) {
-				evalCtx.reportPartialMatch(goldAnno, partialSys);
+				result.partialMatch(goldAnno, partialSys);
 			}
 			if (!matchedExactly) {
-				evalCtx.reportMissing(goldAnno);
+				result.missing(goldAnno);
 			}
 		}
 
@@ -137,13 +297,71 @@ public class GoldStandardBasedEvaluation {
 		while (sysAnnoIter.hasNext()) {
 			AnnotationFS sysAnno = sysAnnoIter.next();
 			if (!sysMatched.contains(sysAnno)) {
-				evalCtx.reportSpurious(sysAnno);
+				result.spurious(sysAnno);
 			}
 		}
+		return result;
 	}
 }
 
 class MatchInfo {
 	AnnotationFS exact;
 	Set<AnnotationFS> partialSet = newLinkedHashSet();
-}
\ No newline at end of file
+}
+/**
+ * Match results of a document recorded in the order they must be reported.
+ */
+class DocumentMatches {
+	private static final byte EXACT = 0;
+	private static final byte PARTIAL = 1;
+	private static final byte MISSING = 2;
+	private static final byte SPURIOUS = 3;
+
+	private final List<Byte> kinds = Lists.newArrayList();
+	// gold annotations (or system ones for spurious) and matched system annotations
+	private final List<AnnotationFS> annos = Lists.newArrayList();
+	private final List<AnnotationFS> sysAnnos = Lists.newArrayList();
+
+	void exactMatch(AnnotationFS goldAnno, AnnotationFS sysAnno) {
+		add(EXACT, goldAnno, sysAnno);
+	}
+
+	void partialMatch(AnnotationFS goldAnno, AnnotationFS sysAnno) {
+		add(PARTIAL, goldAnno, sysAnno);
+	}
+
+	void missing(AnnotationFS goldAnno) {
+		add(MISSING, goldAnno, null);
+	}
+
+	void spurious(AnnotationFS sysAnno) {
+		add(SPURIOUS, sysAnno, null);
+	}
+
+	void report(EvaluationContext evalCtx) {
+		for (int i = 0; i < kinds.size(); i++) {
+			switch (kinds.get(i)) {
+			case EXACT:
+				evalCtx.reportExactMatch(annos.get(i), sysAnnos.get(i));
+				break;
+			case PARTIAL:
+				evalCtx.reportPartialMatch(annos.get(i), sysAnnos.get(i));
+				break;
+			case MISSING:
+				evalCtx.reportMissing(annos.get(i));
+				break;
+			case SPURIOUS:
+				evalCtx.reportSpurious(annos.get(i));
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+	private void add(byte kind, AnnotationFS anno, AnnotationFS sysAnno) {
+		kinds.add(kind);
+		annos.add(anno);
+		sysAnnos.add(sysAnno);
+	}
+}
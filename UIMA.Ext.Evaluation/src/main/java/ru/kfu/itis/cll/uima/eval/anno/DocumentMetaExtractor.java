@@ -45,6 +45,14 @@ public class DocumentMetaExtractor {
 		}
 	}
 
+	public String getDocumentMetaTypeName() {
+		return docUriAnnotationType;
+	}
+
+	public String getDocumentUriFeatureName() {
+		return docUriFeatureName;
+	}
+
 	public String getDocumentUri(CAS cas) {
 		String uri = AnnotationUtils.getStringValue(cas, docMetaType, docUriFeature);
 		if (uri == null) {
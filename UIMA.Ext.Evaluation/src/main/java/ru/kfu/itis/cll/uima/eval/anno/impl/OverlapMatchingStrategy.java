@@ -15,6 +15,8 @@ import ru.kfu.itis.cll.uima.cas.OverlapIndex;
 import ru.kfu.itis.cll.uima.eval.anno.AnnotationExtractor;
 import ru.kfu.itis.cll.uima.eval.anno.MatchingStrategy;
 
+import com.google.common.collect.Sets;
+
 /**
  * 
  * @author Rinat Gareev
@@ -44,13 +46,14 @@ public abstract class OverlapMatchingStrategy implements MatchingStrategy {
 
 	@Override
 	public Set<AnnotationFS> searchCandidates(AnnotationFS goldAnno) {
-		Set<AnnotationFS> result = sysOverlapIdx.getOverlapping(
+		Set<AnnotationFS> result = Sets.newLinkedHashSet();
+		Iterator<AnnotationFS> overlappingIter = sysOverlapIdx.overlappingIterator(
 				goldAnno.getBegin(),
 				goldAnno.getEnd());
-		Iterator<AnnotationFS> resultIter = result.iterator();
-		while (resultIter.hasNext()) {
-			if (!isCandidate(goldAnno, resultIter.next())) {
-				resultIter.remove();
+		while (overlappingIter.hasNext()) {
+			AnnotationFS sysAnno = overlappingIter.next();
+			if (isCandidate(goldAnno, sysAnno)) {
+				result.add(sysAnno);
 			}
 		}
 		return result;
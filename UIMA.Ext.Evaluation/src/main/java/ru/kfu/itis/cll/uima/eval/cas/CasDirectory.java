@@ -15,6 +15,26 @@ import org.apache.uima.cas.TypeSystem;
 public interface CasDirectory {
 	CAS getCas(String docUri) throws Exception;
 
+	/**
+	 * Deserialize a CAS with the given document URI into the given one. It
+	 * can be invoked concurrently with different target CASes.
+	 * 
+	 * @param targetCas
+	 *            an empty (e.g., just reset) CAS
+	 */
+	void getCas(String docUri, CAS targetCas) throws Exception;
+
+	/**
+	 * Deserialize a CAS into the given one. It can be invoked concurrently
+	 * with different target CASes.
+	 * 
+	 * @param index
+	 *            index of a CAS in the order of {@link #iterator()}
+	 * @param targetCas
+	 *            an empty (e.g., just reset) CAS
+	 */
+	void getCas(int index, CAS targetCas) throws Exception;
+
 	Iterator<CAS> iterator();
 
 	/**
@@ -11,8 +11,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.PostConstruct;
@@ -36,6 +36,7 @@ import org.xml.sax.SAXException;
 import ru.kfu.itis.cll.uima.eval.anno.DocumentMetaExtractor;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 
@@ -47,6 +48,11 @@ public class FSCasDirectory implements CasDirectory, BeanNameAware {
 
 	protected String beanName;
 	protected File dir;
+	/**
+	 * if not null then document URIs of XMI files are read from (and saved
+	 * to) an index file in this directory, see {@link XmiUriIndex}
+	 */
+	protected File uriIndexDir;
 	@Autowired
 	protected TypeSystem ts;
 	@Autowired
@@ -60,6 +66,10 @@ public class FSCasDirectory implements CasDirectory, BeanNameAware {
 		this.ts = ts;
 	}
 
+	public void setUriIndexDir(File uriIndexDir) {
+		this.uriIndexDir = uriIndexDir;
+	}
+
 	public void setDir(File dir) {
 		this.dir = dir;
 		if (!dir.isDirectory()) {
@@ -80,6 +90,7 @@ public class FSCasDirectory implements CasDirectory, BeanNameAware {
 			throw new IllegalStateException(String.format(
 					"'dir' value is not specified for %s", beanName));
 		}
+		uriIndexDir = env.getProperty(beanName + ".uriIndexDir", File.class);
 	}
 
 	/**
@@ -87,6 +98,28 @@ public class FSCasDirectory implements CasDirectory, BeanNameAware {
 	 */
 	@Override
 	public CAS getCas(String docUriStr) throws Exception {
+		return deserialize(getXmiFile(docUriStr));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void getCas(String docUriStr, CAS targetCas) throws Exception {
+		deserialize(getXmiFile(docUriStr), targetCas);
+		postProcessCAS(targetCas);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void getCas(int index, CAS targetCas) throws Exception {
+		deserialize(getXmiFiles().get(index), targetCas);
+		postProcessCAS(targetCas);
+	}
+
+	private File getXmiFile(String docUriStr) throws Exception {
 		File xmiFile = getUriToXmiFileMap().get(docUriStr);
 		if (xmiFile == null) {
 			throw new IllegalArgumentException(String.format(
@@ -96,7 +129,7 @@ public class FSCasDirectory implements CasDirectory, BeanNameAware {
 		if (!xmiFile.isFile()) {
 			throw new IllegalStateException("Not a file: " + xmiFile);
 		}
-		return deserialize(xmiFile);
+		return xmiFile;
 	}
 
 	/**
@@ -135,27 +168,42 @@ public class FSCasDirectory implements CasDirectory, BeanNameAware {
 		return suffixFileFilter(".xmi");
 	}
 
-	private Collection<File> xmiFiles;
+	private List<File> xmiFiles;
 
-	private Collection<File> getXmiFiles() {
+	private synchronized List<File> getXmiFiles() {
 		if (xmiFiles == null) {
 			IOFileFilter sourceFileFilter = getSourceFileFilter();
-			xmiFiles = FileUtils.listFiles(dir, sourceFileFilter, trueFileFilter());
+			xmiFiles = ImmutableList.copyOf(
+					FileUtils.listFiles(dir, sourceFileFilter, trueFileFilter()));
 		}
 		return xmiFiles;
 	}
 
 	private Map<String, File> uriToXmiFileMap;
 
-	private Map<String, File> getUriToXmiFileMap()
+	private synchronized Map<String, File> getUriToXmiFileMap()
 			throws ResourceInitializationException, IOException, SAXException {
 		if (uriToXmiFileMap == null) {
 			log.info("Scanning {} XMIs for document URIs...", dir);
 			uriToXmiFileMap = Maps.newHashMap();
-			CAS wrkCas = createCas();
+			XmiUriIndex uriIndex = null;
+			if (uriIndexDir != null) {
+				uriIndex = new XmiUriIndex(uriIndexDir, dir,
+						docMetaExtractor.getDocumentMetaTypeName(),
+						docMetaExtractor.getDocumentUriFeatureName());
+			}
+			CAS wrkCas = null;
 			for (final File xmiFile : getXmiFiles()) {
-				deserialize(xmiFile, wrkCas);
-				String docURI = docMetaExtractor.getDocumentUri(wrkCas);
+				String docURI = uriIndex == null ? null : uriIndex.getDocumentUri(xmiFile);
+				if (docURI == null) {
+					// fall back to the full deserialization
+					if (wrkCas == null) {
+						wrkCas = createCas();
+					}
+					deserialize(xmiFile, wrkCas);
+					docURI = docMetaExtractor.getDocumentUri(wrkCas);
+					wrkCas.reset();
+				}
 				final File prevFile;
 				if ((prevFile = uriToXmiFileMap.put(docURI, xmiFile)) != null) {
 					throw new IllegalStateException(
@@ -163,7 +211,9 @@ public class FSCasDirectory implements CasDirectory, BeanNameAware {
 									"There are at least 2 files which metadata has the same URI '%s':\n%s\n%s",
 									docURI, prevFile, xmiFile));
 				}
-				wrkCas.reset();
+			}
+			if (uriIndex != null) {
+				uriIndex.save();
 			}
 			log.info("Scanning {} XMIs for document URIs is finished", dir);
 		}
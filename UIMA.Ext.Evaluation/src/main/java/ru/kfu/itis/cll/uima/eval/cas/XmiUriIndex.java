@@ -0,0 +1,240 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.eval.cas;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Document URIs of XMI files of a directory, persisted in a file of the given
+ * index directory. The index file name is derived from the canonical path of
+ * the indexed directory, so several directories can share the same index
+ * directory. Entries are keyed by canonical paths of XMI files. An entry is
+ * valid while the size and the modification time of its file are the same as
+ * at the time of indexing. URIs of new and changed files are read by a
+ * streaming pass over XMI that stops at the first element of the document
+ * metadata type.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class XmiUriIndex {
+
+	static final String INDEX_FILENAME_PREFIX = "xmi-uri-index-";
+
+	private static final Logger log = LoggerFactory.getLogger(XmiUriIndex.class);
+
+	// config fields
+	private final File dir;
+	private final File indexFile;
+	private final String metaNamespaceUri;
+	private final String metaLocalName;
+	private final String uriFeatureName;
+	// state fields
+	// canonical path -> entry
+	private final Map<String, Entry> entries = Maps.newHashMap();
+	private boolean changed;
+
+	/**
+	 * @param indexDir
+	 *            directory to keep the index file in
+	 * @param dir
+	 *            directory of XMI files
+	 * @param metaTypeName
+	 *            name of the document metadata type
+	 * @param uriFeatureName
+	 *            base name of the document URI feature
+	 */
+	XmiUriIndex(File indexDir, File dir, String metaTypeName, String uriFeatureName) {
+		this.dir = dir;
+		this.indexFile = new File(indexDir, INDEX_FILENAME_PREFIX
+				+ Hashing.md5().hashString(canonicalPath(dir), Charsets.UTF_8));
+		// the same as in XmiCasSerializer
+		int lastDot = metaTypeName.lastIndexOf('.');
+		if (lastDot < 0) {
+			metaNamespaceUri = "http:///uima/noNamespace.ecore";
+		} else {
+			metaNamespaceUri = "http:///"
+					+ metaTypeName.substring(0, lastDot).replace('.', '/') + ".ecore";
+		}
+		this.metaLocalName = metaTypeName.substring(lastDot + 1);
+		this.uriFeatureName = uriFeatureName;
+		load();
+	}
+
+	/**
+	 * @return document URI of the given file if it is indexed and not
+	 *         changed since, otherwise the URI of the first element of the
+	 *         metadata type in the file, or null if there is no such element.
+	 */
+	String getDocumentUri(File xmiFile) {
+		String path = canonicalPath(xmiFile);
+		long size = xmiFile.length();
+		long lastModified = xmiFile.lastModified();
+		Entry e = entries.get(path);
+		if (e != null && e.size == size && e.lastModified == lastModified) {
+			return e.uri;
+		}
+		String uri = readDocumentUri(xmiFile);
+		if (uri != null && uri.indexOf('\t') < 0 && uri.indexOf('\n') < 0
+				&& uri.indexOf('\r') < 0) {
+			entries.put(path, new Entry(size, lastModified, uri));
+			changed = true;
+		} else if (entries.remove(path) != null) {
+			changed = true;
+		}
+		return uri;
+	}
+
+	/**
+	 * Remove entries of deleted files and write the index if it has been
+	 * changed.
+	 */
+	void save() {
+		Iterator<String> pathIter = entries.keySet().iterator();
+		while (pathIter.hasNext()) {
+			if (!new File(pathIter.next()).isFile()) {
+				pathIter.remove();
+				changed = true;
+			}
+		}
+		if (!changed) {
+			return;
+		}
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		Writer out = null;
+		try {
+			FileUtils.forceMkdir(indexFile.getParentFile());
+			out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(tempFile), "utf-8"));
+			for (Map.Entry<String, Entry> me : entries.entrySet()) {
+				Entry e = me.getValue();
+				out.write(me.getKey() + '\t' + e.size + '\t' + e.lastModified + '\t' + e.uri + '\n');
+			}
+			out.close();
+			out = null;
+			FileUtils.deleteQuietly(indexFile);
+			if (!tempFile.renameTo(indexFile)) {
+				throw new IOException("Can't rename " + tempFile + " to " + indexFile);
+			}
+			changed = false;
+		} catch (IOException e) {
+			// the index is an optimization, so failures are not fatal
+			log.warn("Can't write document URI index of {}: {}", dir, e.getMessage());
+			FileUtils.deleteQuietly(tempFile);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	File getIndexFile() {
+		return indexFile;
+	}
+
+	private void load() {
+		if (!indexFile.isFile()) {
+			return;
+		}
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "utf-8"));
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = Iterables.toArray(tabSplitter.split(line), String.class);
+				if (fields.length != 4) {
+					throw new IOException("Illegal line: " + line);
+				}
+				entries.put(fields[0], new Entry(
+						Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+			}
+		} catch (Exception e) {
+			log.warn("Can't read document URI index {}, it will be rebuilt: {}",
+					indexFile, e.getMessage());
+			entries.clear();
+			changed = true;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private String readDocumentUri(File xmiFile) {
+		InputStream is = null;
+		XMLStreamReader reader = null;
+		try {
+			is = new BufferedInputStream(new FileInputStream(xmiFile));
+			reader = xmlInputFactory.createXMLStreamReader(is);
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT
+						&& metaLocalName.equals(reader.getLocalName())
+						&& metaNamespaceUri.equals(reader.getNamespaceURI())) {
+					return reader.getAttributeValue(null, uriFeatureName);
+				}
+			}
+			return null;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Can't parse " + xmiFile, e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// ignore
+				}
+			}
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	private static String canonicalPath(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class Entry {
+		private final long size;
+		private final long lastModified;
+		private final String uri;
+
+		Entry(long size, long lastModified, String uri) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.uri = uri;
+		}
+	}
+
+	private static final Splitter tabSplitter = Splitter.on('\t');
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+}
@@ -0,0 +1,78 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.eval.cas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class XmiUriIndexTest {
+
+	private static final String META_TYPE = "ru.kfu.itis.cll.uima.commons.DocumentMetadata";
+	private static final String URI_FEATURE = "sourceUri";
+	private static final String URI_PREFIX = "file:/D:/projects/uima-ext/UIMA.Ext.Evaluation/data/test-src/";
+
+	private File dir;
+	private File indexDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = new File("target/XmiUriIndexTest/xmi");
+		indexDir = new File("target/XmiUriIndexTest/index");
+		FileUtils.deleteQuietly(dir.getParentFile());
+		FileUtils.copyDirectory(new File("data/test-gold"), dir);
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(dir.getParentFile());
+	}
+
+	@Test
+	public void testIndex() throws Exception {
+		File xmi1 = new File(dir, "test1.txt.xmi");
+		File xmi2 = new File(dir, "test2.txt.xmi");
+		XmiUriIndex idx = new XmiUriIndex(indexDir, dir, META_TYPE, URI_FEATURE);
+		assertEquals(URI_PREFIX + "test1.txt", idx.getDocumentUri(xmi1));
+		assertEquals(URI_PREFIX + "test2.txt", idx.getDocumentUri(xmi2));
+		idx.save();
+		File indexFile = idx.getIndexFile();
+		assertTrue(indexFile.isFile());
+		// nothing must be written into the indexed directory
+		assertEquals(2, dir.list().length);
+		// a URI of an unchanged file must be taken from the index
+		String indexContent = FileUtils.readFileToString(indexFile, "utf-8");
+		FileUtils.write(indexFile, indexContent.replace("test1.txt\n", "indexed.txt\n"), "utf-8");
+		idx = new XmiUriIndex(indexDir, dir, META_TYPE, URI_FEATURE);
+		assertEquals(URI_PREFIX + "indexed.txt", idx.getDocumentUri(xmi1));
+		// a changed file must be re-read
+		xmi1.setLastModified(xmi1.lastModified() - 10000);
+		assertEquals(URI_PREFIX + "test1.txt", idx.getDocumentUri(xmi1));
+		// an entry of a deleted file must be dropped
+		FileUtils.forceDelete(xmi2);
+		idx.save();
+		assertEquals(1, FileUtils.readLines(indexFile, "utf-8").size());
+	}
+
+	@Test
+	public void testNoMetadata() throws Exception {
+		File xmi = new File(dir, "no-meta.xmi");
+		FileUtils.write(xmi, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<xmi:XMI xmlns:xmi=\"http://www.omg.org/XMI\" xmi:version=\"2.0\"/>",
+				"utf-8");
+		XmiUriIndex idx = new XmiUriIndex(indexDir, dir, META_TYPE, URI_FEATURE);
+		assertNull(idx.getDocumentUri(xmi));
+	}
+}
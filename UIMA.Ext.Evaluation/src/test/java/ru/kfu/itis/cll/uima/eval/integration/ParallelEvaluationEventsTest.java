@@ -0,0 +1,156 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.eval.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportResource;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.MapPropertySource;
+
+import ru.kfu.itis.cll.uima.eval.ConfigurationKeys;
+import ru.kfu.itis.cll.uima.eval.GoldStandardBasedEvaluation;
+import ru.kfu.itis.cll.uima.eval.event.EvaluationListener;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Checks that listeners receive the same events in the same order whether
+ * documents are matched sequentially or by several threads. Documents of
+ * 'data/test-gold' and 'data/test-sysout' are copied under different URIs,
+ * so there are many more documents than workers.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class ParallelEvaluationEventsTest {
+
+	private static final File baseDir = new File("target/ParallelEvaluationEventsTest");
+	private static final File goldDir = new File(baseDir, "gold");
+	private static final File sysDir = new File(baseDir, "sysout");
+	private static final String[] srcFileNames = { "test1.txt", "test2.txt" };
+	private static final int COPIES = 30;
+
+	@BeforeClass
+	public static void createDocuments() throws Exception {
+		FileUtils.deleteQuietly(baseDir);
+		copyDocuments(new File("data/test-gold"), goldDir);
+		copyDocuments(new File("data/test-sysout"), sysDir);
+	}
+
+	@AfterClass
+	public static void deleteDocuments() {
+		FileUtils.deleteQuietly(baseDir);
+	}
+
+	private static void copyDocuments(File srcDir, File targetDir) throws Exception {
+		for (String srcFileName : srcFileNames) {
+			String xmi = FileUtils.readFileToString(new File(srcDir, srcFileName + ".xmi"), "utf-8");
+			for (int i = 0; i < COPIES; i++) {
+				String fileName = i + "-" + srcFileName;
+				// the only occurrence is the document URI
+				FileUtils.write(new File(targetDir, fileName + ".xmi"),
+						xmi.replace("/" + srcFileName + "\"", "/" + fileName + "\""), "utf-8");
+			}
+		}
+	}
+
+	@Test
+	public void parallelEvaluationShouldRaiseTheSameEvents() throws Exception {
+		List<String> sequentialEvents = runEvaluation(1);
+		// every document is reported
+		int docCount = 0;
+		for (String e : sequentialEvents) {
+			if (e.startsWith("DocumentChange\tfile:")) {
+				docCount++;
+			}
+		}
+		assertEquals(srcFileNames.length * COPIES, docCount);
+		assertTrue(sequentialEvents.contains("EvaluationComplete"));
+		assertEquals(sequentialEvents, runEvaluation(4));
+	}
+
+	private static List<String> runEvaluation(int threadCount) throws Exception {
+		Map<String, Object> props = Maps.newHashMap();
+		props.put(ConfigurationKeys.KEY_EVALUATION_THREADS, String.valueOf(threadCount));
+		props.put("goldCasDirectory.dir", goldDir.getPath());
+		props.put("systemCasDirectory.dir", sysDir.getPath());
+		AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+		try {
+			ctx.getEnvironment().getPropertySources().addFirst(
+					new MapPropertySource("testProperties", props));
+			ctx.register(AppContext.class);
+			ctx.refresh();
+			ctx.getBean(GoldStandardBasedEvaluation.class).run();
+			return ctx.getBean(RecordingListener.class).events;
+		} finally {
+			ctx.close();
+		}
+	}
+
+	@PropertySource("classpath:GSBasedEvalTest.properties")
+	@Configuration
+	@ImportResource("classpath:ru/kfu/itis/cll/uima/eval/app-context.xml")
+	public static class AppContext {
+		@Bean
+		public RecordingListener recordingListener() {
+			return new RecordingListener();
+		}
+	}
+
+	static class RecordingListener implements EvaluationListener {
+
+		private final List<String> events = Lists.newArrayList();
+
+		@Override
+		public void onDocumentChange(String docUri) {
+			events.add("DocumentChange\t" + docUri);
+		}
+
+		@Override
+		public void onMissing(AnnotationFS goldAnno) {
+			events.add("Missing\t" + toString(goldAnno));
+		}
+
+		@Override
+		public void onExactMatch(AnnotationFS goldAnno, AnnotationFS sysAnno) {
+			events.add("Exact\t" + toString(goldAnno) + "\t" + toString(sysAnno));
+		}
+
+		@Override
+		public void onPartialMatch(AnnotationFS goldAnno, AnnotationFS sysAnno) {
+			events.add("Partial\t" + toString(goldAnno) + "\t" + toString(sysAnno));
+		}
+
+		@Override
+		public void onSpurious(AnnotationFS sysAnno) {
+			events.add("Spurious\t" + toString(sysAnno));
+		}
+
+		@Override
+		public void onEvaluationComplete() {
+			events.add("EvaluationComplete");
+		}
+
+		// annotations must be printed at once as CASes are reused by workers
+		private static String toString(AnnotationFS anno) {
+			return String.format("%s[%s,%s]'%s'", anno.getType().getName(),
+					anno.getBegin(), anno.getEnd(), anno.getCoveredText());
+		}
+	}
+}
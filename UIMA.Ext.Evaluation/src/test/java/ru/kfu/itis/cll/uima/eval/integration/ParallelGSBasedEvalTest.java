@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package ru.kfu.itis.cll.uima.eval.integration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * The same checks as in {@link GSBasedEvalTest} but documents are matched by
+ * several threads.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+@ContextConfiguration(classes = ParallelGSBasedEvalTest.AppContext.class, inheritLocations = false)
+public class ParallelGSBasedEvalTest extends GSBasedEvalTest {
+
+	@PropertySource("classpath:ParallelGSBasedEvalTest.properties")
+	@Configuration
+	public static class AppContext extends GSBasedEvalTest.AppContext {
+	}
+}
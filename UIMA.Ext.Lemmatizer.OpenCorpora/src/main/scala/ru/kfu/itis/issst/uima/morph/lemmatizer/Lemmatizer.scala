@@ -1,13 +1,15 @@
 package ru.kfu.itis.issst.uima.morph.lemmatizer
 
 import scala.collection.JavaConversions._
+import scala.collection.mutable
+import java.util.BitSet
 import org.apache.uima.jcas.JCas
 import org.uimafit.util.JCasUtil.select
 import org.opencorpora.cas.{ Word, Wordform }
 import ru.kfu.itis.issst.uima.morph.model.{ Wordform => DictWordform }
 import org.apache.uima.cas.FeatureStructure
-import org.uimafit.descriptor.ExternalResource
-import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionaryHolder
+import org.uimafit.descriptor.{ ConfigurationParameter, ExternalResource }
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.{ GramModel, MorphDictionaryHolder }
 import ru.kfu.itis.issst.uima.morph.dictionary.WordUtils
 import org.uimafit.factory.AnalysisEngineFactory
 
@@ -18,6 +20,15 @@ class Lemmatizer extends org.uimafit.component.JCasAnnotator_ImplBase {
   // TODO how to assign a scala val to a Java annotation attribute?
   @ExternalResource(key = "morphDictionary", mandatory = true)
   private var dictHolder: MorphDictionaryHolder = null
+  /*
+   * If true then candidates are scored on grammeme bits of dictionary wordforms,
+   * and lemmas are memoized per document by (form, tag).
+   * Otherwise grammemes are compared as string sets. Results are the same.
+   */
+  @ConfigurationParameter(name = "gramBitsScoring", defaultValue = Array("true"))
+  private var gramBitsScoring: Boolean = true
+  // per-CAS memo of the bits-based scoring
+  private val lemmaMemo = mutable.HashMap.empty[LemmaKey, String]
 
   def jaccardCoef(first: Set[String], second: Set[String]) = {
     (first & second).size.toDouble / (first | second).size
@@ -30,34 +41,98 @@ class Lemmatizer extends org.uimafit.component.JCasAnnotator_ImplBase {
     val targetGrammems = wordform.getGrammems
 
     if (entries.size > 0 && targetGrammems != null) {
-      val lemmaId = dict.getEntries(wordText).maxBy((dictWf: DictWordform) => {
+      val lemmaId = entries.maxBy((dictWf: DictWordform) => {
         val wfGrammems: Set[String] = dict.getGramModel().toGramSet(dictWf.getGrammems).toSet
         jaccardCoef(targetGrammems.toArray.toSet, wfGrammems)
       }).getLemmaId
 
-      dictHolder.getDictionary.getLemma(lemmaId).getString
+      dict.getLemma(lemmaId).getString
     } else {
       wordText
     }
   }
 
-  def process(aJCAS: JCas) {
-    select(aJCAS, classOf[Word]).foreach((word: Word) => {
-      word.getWordforms.toArray.foreach((wordformFS: FeatureStructure) => {
-        val wordform = wordformFS.asInstanceOf[Wordform]
-        try {
-          val lemma = findLemma(wordform)
-          wordform.setLemma(lemma)
-        } catch {
-          case e: IndexOutOfBoundsException => {}
+  /**
+   * The same as [[findLemma]] but the Jaccard coefficient is computed on
+   * grammeme bits, without conversion of dictionary wordform grammemes to strings.
+   */
+  def findLemmaByGramBits(wordform: Wordform): String = {
+    val wordText = WordUtils.normalizeToDictionaryForm(wordform.getWord.getCoveredText)
+    val targetGrammems = wordform.getGrammems
+    if (targetGrammems == null) {
+      wordText
+    } else {
+      val key = Lemmatizer.toLemmaKey(dictHolder.getDictionary.getGramModel, wordText,
+        targetGrammems.toArray)
+      lemmaMemo.getOrElseUpdate(key, findLemmaByKey(key))
+    }
+  }
+
+  private def findLemmaByKey(key: LemmaKey): String = {
+    val dict = dictHolder.getDictionary
+    val entries = dict.getEntries(key.wordText)
+    if (entries.size > 0) {
+      val targetCard = key.gramBits.cardinality
+      val lemmaId = entries.maxBy((dictWf: DictWordform) => {
+        val wfBits = dictWf.getGrammems
+        var intersection = 0
+        var i = key.gramBits.nextSetBit(0)
+        while (i >= 0) {
+          if (wfBits.get(i)) intersection += 1
+          i = key.gramBits.nextSetBit(i + 1)
         }
+        val union = targetCard + wfBits.cardinality - intersection + key.unknownGramCount
+        intersection.toDouble / union
+      }).getLemmaId
+
+      dict.getLemma(lemmaId).getString
+    } else {
+      key.wordText
+    }
+  }
+
+  def process(aJCAS: JCas) {
+    try {
+      select(aJCAS, classOf[Word]).foreach((word: Word) => {
+        word.getWordforms.toArray.foreach((wordformFS: FeatureStructure) => {
+          val wordform = wordformFS.asInstanceOf[Wordform]
+          try {
+            val lemma = if (gramBitsScoring) findLemmaByGramBits(wordform) else findLemma(wordform)
+            wordform.setLemma(lemma)
+          } catch {
+            case e: IndexOutOfBoundsException => {}
+          }
+        })
       })
-    })
+    } finally {
+      lemmaMemo.clear()
+    }
   }
 }
 
+/**
+ * @param gramBits bits of target grammemes that are known to the gram model
+ * @param unknownGramCount the number of distinct target grammemes that are
+ * unknown to the gram model
+ */
+private[lemmatizer] case class LemmaKey(wordText: String, gramBits: BitSet, unknownGramCount: Int)
+
 object Lemmatizer {
   val ResourceKeyDictionary = "morphDictionary"
+  val ParamGramBitsScoring = "gramBitsScoring"
+
   def createDescription() = AnalysisEngineFactory.createPrimitiveDescription(classOf[Lemmatizer],
     LemmatizerAPI.getTypeSystemDescription)
-}
\ No newline at end of file
+
+  private[lemmatizer] def toLemmaKey(gramModel: GramModel, wordText: String,
+    grammems: Array[String]): LemmaKey = {
+    val gramBits = new BitSet(gramModel.getGrammemMaxNumId)
+    val unknownGrams = mutable.HashSet.empty[String]
+    for (gr <- grammems) {
+      val grammeme = gramModel.getGrammem(gr)
+      if (grammeme == null) unknownGrams += gr
+      else gramBits.set(grammeme.getNumId)
+    }
+    LemmaKey(wordText, gramBits, unknownGrams.size)
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ *
+ */
+package ru.kfu.itis.issst.uima.morph.lemmatizer
+
+import scala.collection.JavaConversions._
+import java.io.File
+import org.apache.commons.io.FileUtils
+import org.apache.uima.analysis_engine.AnalysisEngineDescription
+import org.apache.uima.cas.FeatureStructure
+import org.apache.uima.jcas.JCas
+import org.apache.uima.resource.metadata.MetaDataObject
+import org.apache.uima.util.CasCreationUtils
+import org.opencorpora.cas.{ Word, Wordform }
+import org.uimafit.factory.{ AnalysisEngineFactory, ExternalResourceFactory }
+import org.uimafit.util.JCasUtil.select
+import ru.kfu.itis.cll.uima.util.PipelineDescriptorUtils
+import ru.kfu.itis.issst.uima.morph.dictionary.MorphDictionaryAPIFactory
+import ru.kfu.itis.issst.uima.postagger.PosTaggerAPI
+import ru.kfu.itis.issst.uima.segmentation.SentenceSplitterAPI
+import ru.kfu.itis.issst.uima.tokenizer.TokenizerAPI
+
+/**
+ * Compares throughput of the string-set and the grammeme bits scoring of
+ * [[Lemmatizer]]. Input texts are tokenized and PoS-tagged once, then each
+ * mode lemmatizes all of them the given number of times. Lemmas of both modes
+ * are checked to be the same.
+ *
+ * Usage: LemmatizerBenchmark <dir with *.txt files> [rounds]
+ *
+ * @author Rinat Gareev (Kazan Federal University)
+ *
+ */
+object LemmatizerBenchmark {
+
+  def main(args: Array[String]): Unit = {
+    if (args.length < 1) {
+      System.err.println("Usage: <dir with *.txt files> [rounds]")
+      sys.exit(1)
+    }
+    val inputFiles = FileUtils.listFiles(new File(args(0)), Array("txt"), true).toList
+    val rounds = if (args.length > 1) args(1).toInt else 5
+    //
+    val preprocessingDesc = withDictionary(PipelineDescriptorUtils.createAggregateDescription(
+      List[MetaDataObject](TokenizerAPI.getAEImport(), SentenceSplitterAPI.getAEImport(), PosTaggerAPI.getAEImport()),
+      "tokenizer" :: "sentence-splitter" :: "pos-tagger" :: Nil))
+    val preprocessor = AnalysisEngineFactory.createAggregate(preprocessingDesc)
+    val docs = inputFiles.map(f => {
+      val jCas = CasCreationUtils.createCas(preprocessingDesc).getJCas
+      jCas.setDocumentText(FileUtils.readFileToString(f, "utf-8"))
+      preprocessor.process(jCas)
+      jCas
+    })
+    val wordCount = docs.map(select(_, classOf[Word]).size).sum
+    println("Documents: %s, words: %s".format(docs.size, wordCount))
+    //
+    val stringSetLemmas = run("string sets", false, docs, wordCount, rounds)
+    val gramBitsLemmas = run("grammeme bits", true, docs, wordCount, rounds)
+    if (stringSetLemmas != gramBitsLemmas) {
+      System.err.println("Lemmas of the modes differ!")
+      sys.exit(2)
+    }
+  }
+
+  private def run(modeName: String, gramBitsScoring: Boolean, docs: List[JCas],
+    wordCount: Int, rounds: Int): List[String] = {
+    val lemmatizerDesc = AnalysisEngineFactory.createPrimitiveDescription(classOf[Lemmatizer],
+      LemmatizerAPI.getTypeSystemDescription,
+      Lemmatizer.ParamGramBitsScoring, java.lang.Boolean.valueOf(gramBitsScoring))
+    val lemmatizer = AnalysisEngineFactory.createAggregate(withDictionary(
+      PipelineDescriptorUtils.createAggregateDescription(
+        List[MetaDataObject](lemmatizerDesc), "lemmatizer" :: Nil),
+      "lemmatizer/" + Lemmatizer.ResourceKeyDictionary))
+    try {
+      // warm-up
+      docs.foreach(lemmatizer.process(_))
+      val startTime = System.currentTimeMillis
+      for (i <- 1 to rounds) {
+        docs.foreach(lemmatizer.process(_))
+      }
+      val time = System.currentTimeMillis - startTime
+      println("%s: %s ms per round, %.0f words/s".format(modeName, time / rounds,
+        wordCount.toDouble * rounds * 1000 / math.max(time, 1)))
+      docs.flatMap(jCas => select(jCas, classOf[Word]).flatMap((word: Word) => {
+        word.getWordforms.toArray.map((wordformFS: FeatureStructure) => {
+          wordformFS.asInstanceOf[Wordform].getLemma
+        })
+      }))
+    } finally {
+      lemmatizer.destroy()
+    }
+  }
+
+  private def withDictionary(aggregateDesc: AnalysisEngineDescription,
+    dictionaryKeys: String*): AnalysisEngineDescription = {
+    val extDictDesc = MorphDictionaryAPIFactory.getMorphDictionaryAPI.getResourceDescriptionForCachedInstance
+    extDictDesc.setName(PosTaggerAPI.MORPH_DICTIONARY_RESOURCE_NAME)
+    PipelineDescriptorUtils.getResourceManagerConfiguration(aggregateDesc).addExternalResource(extDictDesc)
+    dictionaryKeys.foreach(key =>
+      ExternalResourceFactory.bindExternalResource(aggregateDesc, key, PosTaggerAPI.MORPH_DICTIONARY_RESOURCE_NAME))
+    aggregateDesc
+  }
+}
@@ -17,6 +17,10 @@ import ru.kfu.itis.issst.uima.tokenizer.TokenizerAPI
 import ru.kfu.itis.issst.uima.segmentation.SentenceSplitterAPI
 import ru.kfu.itis.issst.uima.postagger.PosTaggerAPI
 import org.uimafit.factory.ExternalResourceFactory
+import org.apache.uima.analysis_engine.AnalysisEngineDescription
+import org.apache.uima.jcas.JCas
+import org.apache.uima.resource.metadata.MetaDataObject
+import ru.kfu.itis.cll.uima.cas.FSUtils
 
 /**
  * Created by fsqcds on 07/05/14.
@@ -47,4 +51,53 @@ class LemmatizerSpec extends FlatSpec with Matchers {
     })
     lemmas should be(List("душа", "мой", "озарён", "неземной", "радость", "oracle", "купил", "sun"))
   }
+
+  it should "give the same lemmas with grammeme bits scoring and with string sets" in {
+    val preprocessingDesc = withDictionary(PipelineDescriptorUtils.createAggregateDescription(
+      List[MetaDataObject](TokenizerAPI.getAEImport(), SentenceSplitterAPI.getAEImport(), PosTaggerAPI.getAEImport()),
+      "tokenizer" :: "sentence-splitter" :: "pos-tagger" :: Nil))
+    val jCas = CasCreationUtils.createCas(preprocessingDesc).getJCas
+    // repeated words check the per-document memo of the bits scoring
+    jCas.setDocumentText("Душа моя озарена неземной радостью. Oracle купил Sun. " +
+      "Стали стали крепче, мы стали сталью. Душа стали моя.")
+    SimplePipeline.runPipeline(jCas, preprocessingDesc)
+    // add a grammeme that is unknown to the gram model to every other wordform
+    val wordforms = select(jCas, classOf[Word]).toList.flatMap(
+      _.getWordforms.toArray.map(_.asInstanceOf[Wordform]))
+    var unknownGramCount = 0
+    for ((wf, i) <- wordforms.zipWithIndex if i % 2 == 0 && wf.getGrammems != null) {
+      val grammems = FSUtils.toList(wf.getGrammems).toList :+ "UnknownGr"
+      wf.setGrammems(FSUtils.toStringArray(jCas, grammems: _*))
+      unknownGramCount += 1
+    }
+    unknownGramCount should be > 0
+    val gramBitsLemmas = lemmatize(jCas, true)
+    gramBitsLemmas.size should be(wordforms.size)
+    gramBitsLemmas should be(lemmatize(jCas, false))
+  }
+
+  private def lemmatize(jCas: JCas, gramBitsScoring: Boolean): List[String] = {
+    val lemmatizerDesc = AnalysisEngineFactory.createPrimitiveDescription(classOf[Lemmatizer],
+      LemmatizerAPI.getTypeSystemDescription,
+      Lemmatizer.ParamGramBitsScoring, java.lang.Boolean.valueOf(gramBitsScoring))
+    val aggregateDesc = withDictionary(PipelineDescriptorUtils.createAggregateDescription(
+      List[MetaDataObject](lemmatizerDesc), "lemmatizer" :: Nil),
+      "lemmatizer/" + Lemmatizer.ResourceKeyDictionary)
+    SimplePipeline.runPipeline(jCas, aggregateDesc)
+    select(jCas, classOf[Word]).toList.flatMap((word: Word) => {
+      word.getWordforms.toArray.map((wordformFS: FeatureStructure) => {
+        wordformFS.asInstanceOf[Wordform].getLemma
+      })
+    })
+  }
+
+  private def withDictionary(aggregateDesc: AnalysisEngineDescription,
+    dictionaryKeys: String*): AnalysisEngineDescription = {
+    val extDictDesc = MorphDictionaryAPIFactory.getMorphDictionaryAPI.getResourceDescriptionForCachedInstance
+    extDictDesc.setName(PosTaggerAPI.MORPH_DICTIONARY_RESOURCE_NAME)
+    PipelineDescriptorUtils.getResourceManagerConfiguration(aggregateDesc).addExternalResource(extDictDesc)
+    dictionaryKeys.foreach(key =>
+      ExternalResourceFactory.bindExternalResource(aggregateDesc, key, PosTaggerAPI.MORPH_DICTIONARY_RESOURCE_NAME))
+    aggregateDesc
+  }
 }
@@ -51,6 +51,10 @@ public abstract class GenericJarClassifierFactory<CLASSIFIER_TYPE> implements In
 		this.classifierJarPath = classifierJarPath;
 	}
 
+	public void setAdditionalSearchPaths(String[] additionalSearchPaths) {
+		this.additionalSearchPaths = additionalSearchPaths;
+	}
+
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		ConfigurationParameterInitializer.initialize(this, context);
 	}
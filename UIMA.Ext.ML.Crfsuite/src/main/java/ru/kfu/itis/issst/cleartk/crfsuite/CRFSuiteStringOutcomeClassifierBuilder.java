@@ -15,6 +15,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 
@@ -23,12 +25,17 @@ import org.apache.commons.io.IOUtils;
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
+import org.cleartk.classifier.SequenceClassifier;
 import org.cleartk.classifier.encoder.features.NameNumber;
 import org.cleartk.classifier.jar.JarStreams;
 import org.cleartk.classifier.jar.SequenceClassifierBuilder_ImplBase;
 
 import ru.kfu.itis.issst.crfsuite4j.CrfSuiteTraining;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
 /**
  * @author Rinat Gareev (Kazan Federal University)
  *         <p>
@@ -36,10 +43,21 @@ import ru.kfu.itis.issst.crfsuite4j.CrfSuiteTraining;
  *         {@link org.cleartk.classifier.crfsuite.CRFSuiteStringOutcomeClassifierBuilder}
  *         implementation.
  *         </p>
+ *         <p>
+ *         By default a built classifier delegates to the native CRFSuite
+ *         library. If the system property {@value #SYSPROP_TAGGER} is set to
+ *         '{@value #TAGGER_JAVA}' then {@link JavaCRFSuiteStringOutcomeClassifier}
+ *         is built instead. Classifiers of the latter kind share a model
+ *         instance if they are loaded from the same model.
+ *         </p>
  */
 public class CRFSuiteStringOutcomeClassifierBuilder
 		extends
-		SequenceClassifierBuilder_ImplBase<CRFSuiteStringOutcomeClassifier, List<NameNumber>, String, String> {
+		SequenceClassifierBuilder_ImplBase<SequenceClassifier<String>, List<NameNumber>, String, String> {
+
+	public static final String SYSPROP_TAGGER = "crfsuite.tagger";
+	public static final String TAGGER_NATIVE = "native";
+	public static final String TAGGER_JAVA = "java";
 
 	// config fields
 	// TODO
@@ -110,6 +128,7 @@ public class CRFSuiteStringOutcomeClassifierBuilder
 	}
 
 	private File modelFile = null;
+	private CrfSuiteModel model = null;
 
 	/**
 	 * As the filename of the model is not known the only solution is to write
@@ -119,6 +138,10 @@ public class CRFSuiteStringOutcomeClassifierBuilder
 	protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
 		super.unpackageClassifier(modelStream);
 		JarStreams.getNextJarEntry(modelStream, getModelFileName(trainingDataKey));
+		if (isJavaTagger()) {
+			model = getSharedModel(IOUtils.toByteArray(modelStream));
+			return;
+		}
 		this.modelFile = File.createTempFile("model", ".crfsuite");
 		this.modelFile.deleteOnExit();
 		logger.log(Level.INFO, "Start writing model to " + modelFile.getAbsolutePath());
@@ -137,13 +160,49 @@ public class CRFSuiteStringOutcomeClassifierBuilder
 	}
 
 	@Override
-	protected CRFSuiteStringOutcomeClassifier newClassifier() {
+	protected SequenceClassifier<String> newClassifier() {
+		if (model != null) {
+			return new JavaCRFSuiteStringOutcomeClassifier(
+					this.model,
+					this.featuresEncoder,
+					this.outcomeEncoder);
+		}
 		return new CRFSuiteStringOutcomeClassifier(
 				this.modelFile,
 				this.featuresEncoder,
 				this.outcomeEncoder);
 	}
 
+	private static boolean isJavaTagger() {
+		String tagger = System.getProperty(SYSPROP_TAGGER, TAGGER_NATIVE);
+		if (TAGGER_JAVA.equals(tagger)) {
+			return true;
+		} else if (TAGGER_NATIVE.equals(tagger)) {
+			return false;
+		} else {
+			throw new IllegalStateException(String.format(
+					"Unknown value of system property %s: %s", SYSPROP_TAGGER, tagger));
+		}
+	}
+
+	// models are shared while there are classifiers that use them
+	private static final Cache<String, CrfSuiteModel> sharedModels = CacheBuilder.newBuilder()
+			.weakValues().build();
+
+	private static CrfSuiteModel getSharedModel(final byte[] modelBytes) throws IOException {
+		String modelKey = Hashing.md5().hashBytes(modelBytes).toString();
+		try {
+			return sharedModels.get(modelKey, new Callable<CrfSuiteModel>() {
+				@Override
+				public CrfSuiteModel call() throws Exception {
+					return CrfSuiteModel.read(modelBytes);
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
 	private static final String TRAINING_DATA_FILE_EXTENSION = ".training";
 	private static final String MODEL_FILE_EXTENSION = ".model";
 
@@ -0,0 +1,264 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Immutable in-memory representation of a CRFSuite 1st-order CRF model file
+ * (crf1d). Instances are thread-safe and can be shared by any number of
+ * {@link CrfSuiteViterbiDecoder}s.
+ * <p>
+ * State features are kept as a sparse matrix in CSR layout: features of
+ * attribute <code>a</code> occupy the range
+ * <code>[attrFeatureStart[a], attrFeatureStart[a+1])</code> of
+ * {@link #stateFeatureLabels} and {@link #stateFeatureWeights}. Transition
+ * weights are kept in a dense <code>labelCount x labelCount</code> matrix.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CrfSuiteModel {
+
+	public static CrfSuiteModel read(File modelFile) throws IOException {
+		return read(FileUtils.readFileToByteArray(modelFile));
+	}
+
+	/**
+	 * Read a model from the given stream. The stream is not closed by this
+	 * method.
+	 */
+	public static CrfSuiteModel read(InputStream in) throws IOException {
+		return read(IOUtils.toByteArray(in));
+	}
+
+	public static CrfSuiteModel read(byte[] modelBytes) {
+		if (modelBytes.length < HEADER_SIZE) {
+			throw new IllegalStateException(String.format(
+					"Not a CRFSuite model: %s bytes only", modelBytes.length));
+		}
+		ByteBuffer buf = ByteBuffer.wrap(modelBytes).order(ByteOrder.LITTLE_ENDIAN);
+		checkChunkId(buf, 0, FILE_MAGIC);
+		checkChunkId(buf, 8, MODEL_TYPE);
+		int version = buf.getInt(12);
+		if (version != VERSION_NUMBER) {
+			throw new IllegalStateException(String.format(
+					"Unsupported CRFSuite model version: %s", version));
+		}
+		int featureCount = buf.getInt(16);
+		int labelCount = buf.getInt(20);
+		int attrCount = buf.getInt(24);
+		int featuresOffset = buf.getInt(28);
+		int labelsOffset = buf.getInt(32);
+		int attrsOffset = buf.getInt(36);
+		//
+		String[] labels = readStringDatabase(buf, labelsOffset, labelCount);
+		String[] attrs = readStringDatabase(buf, attrsOffset, attrCount);
+		// read features
+		checkChunkId(buf, featuresOffset, CHUNK_FEATURE);
+		if (buf.getInt(featuresOffset + 8) != featureCount) {
+			throw new IllegalStateException("Inconsistent feature count in the model header");
+		}
+		int[] featType = new int[featureCount];
+		int[] featSrc = new int[featureCount];
+		int[] featDst = new int[featureCount];
+		double[] featWeight = new double[featureCount];
+		int[] attrFeatureStart = new int[attrCount + 1];
+		int stateFeatureCount = 0;
+		for (int f = 0; f < featureCount; f++) {
+			int off = featuresOffset + CHUNK_SIZE + f * FEATURE_SIZE;
+			featType[f] = buf.getInt(off);
+			featSrc[f] = buf.getInt(off + 4);
+			featDst[f] = buf.getInt(off + 8);
+			featWeight[f] = buf.getDouble(off + 12);
+			checkId(featDst[f], labelCount);
+			if (featType[f] == FT_STATE) {
+				checkId(featSrc[f], attrCount);
+				attrFeatureStart[featSrc[f] + 1]++;
+				stateFeatureCount++;
+			} else if (featType[f] == FT_TRANS) {
+				checkId(featSrc[f], labelCount);
+			} else {
+				throw new IllegalStateException(String.format(
+						"Unknown feature type %s", featType[f]));
+			}
+		}
+		// fill CSR arrays and the transition matrix
+		for (int a = 0; a < attrCount; a++) {
+			attrFeatureStart[a + 1] += attrFeatureStart[a];
+		}
+		int[] stateFeatureLabels = new int[stateFeatureCount];
+		double[] stateFeatureWeights = new double[stateFeatureCount];
+		double[] transWeights = new double[labelCount * labelCount];
+		int[] attrFill = Arrays.copyOf(attrFeatureStart, attrCount);
+		for (int f = 0; f < featureCount; f++) {
+			if (featType[f] == FT_STATE) {
+				int pos = attrFill[featSrc[f]]++;
+				stateFeatureLabels[pos] = featDst[f];
+				stateFeatureWeights[pos] = featWeight[f];
+			} else {
+				transWeights[featSrc[f] * labelCount + featDst[f]] += featWeight[f];
+			}
+		}
+		return new CrfSuiteModel(labels, new StringIdMap(attrs), attrFeatureStart,
+				stateFeatureLabels, stateFeatureWeights, transWeights);
+	}
+
+	// config fields
+	private final String[] labels;
+	private final StringIdMap attrIds;
+	private final int[] attrFeatureStart;
+	private final int[] stateFeatureLabels;
+	private final double[] stateFeatureWeights;
+	// from label => to label
+	private final double[] transWeights;
+
+	private CrfSuiteModel(String[] labels, StringIdMap attrIds, int[] attrFeatureStart,
+			int[] stateFeatureLabels, double[] stateFeatureWeights, double[] transWeights) {
+		this.labels = labels;
+		this.attrIds = attrIds;
+		this.attrFeatureStart = attrFeatureStart;
+		this.stateFeatureLabels = stateFeatureLabels;
+		this.stateFeatureWeights = stateFeatureWeights;
+		this.transWeights = transWeights;
+	}
+
+	public int getLabelCount() {
+		return labels.length;
+	}
+
+	public String getLabel(int labelId) {
+		return labels[labelId];
+	}
+
+	public int getAttributeCount() {
+		return attrFeatureStart.length - 1;
+	}
+
+	/**
+	 * @return id of the given attribute or -1 if the model does not know it
+	 */
+	public int getAttributeId(String attr) {
+		return attrIds.get(attr);
+	}
+
+	/**
+	 * Add weights of state features of the given attribute to the given label
+	 * score vector.
+	 */
+	void addStateScores(int attrId, double attrValue, double[] scores, int scoresOffset) {
+		for (int i = attrFeatureStart[attrId]; i < attrFeatureStart[attrId + 1]; i++) {
+			scores[scoresOffset + stateFeatureLabels[i]] += stateFeatureWeights[i] * attrValue;
+		}
+	}
+
+	double getTransitionWeight(int fromLabel, int toLabel) {
+		return transWeights[fromLabel * labels.length + toLabel];
+	}
+
+	private static String[] readStringDatabase(ByteBuffer buf, int dbOffset, int expectedSize) {
+		checkChunkId(buf, dbOffset, CHUNK_CQDB);
+		if (buf.getInt(dbOffset + 12) != CQDB_BYTEORDER_CHECK) {
+			throw new IllegalStateException("Unexpected byte order of a model string database");
+		}
+		int bwdSize = buf.getInt(dbOffset + 16);
+		int bwdOffset = buf.getInt(dbOffset + 20);
+		if (bwdSize < expectedSize) {
+			throw new IllegalStateException(String.format(
+					"Model string database contains %s entries, expected %s",
+					bwdSize, expectedSize));
+		}
+		String[] result = new String[expectedSize];
+		for (int id = 0; id < expectedSize; id++) {
+			int recOffset = buf.getInt(dbOffset + bwdOffset + id * 4);
+			if (recOffset == 0) {
+				throw new IllegalStateException(String.format(
+						"No string for id %s in a model string database", id));
+			}
+			int recStart = dbOffset + recOffset;
+			// skip the record id
+			// size includes the terminating zero
+			int strSize = buf.getInt(recStart + 4);
+			result[id] = new String(buf.array(), recStart + 8, strSize - 1, UTF8);
+		}
+		return result;
+	}
+
+	private static void checkChunkId(ByteBuffer buf, int offset, String expected) {
+		for (int i = 0; i < expected.length(); i++) {
+			if (buf.get(offset + i) != expected.charAt(i)) {
+				throw new IllegalStateException(String.format(
+						"Not a CRFSuite model: no chunk '%s' at %s", expected, offset));
+			}
+		}
+	}
+
+	private static void checkId(int id, int bound) {
+		if (id < 0 || id >= bound) {
+			throw new IllegalStateException(String.format(
+					"Illegal id %s in the model, upper bound: %s", id, bound));
+		}
+	}
+
+	/**
+	 * Open addressing hash table from strings to their indexes in the source
+	 * array.
+	 */
+	private static class StringIdMap {
+		private final String[] keys;
+		private final int[] ids;
+		private final int mask;
+
+		StringIdMap(String[] strings) {
+			int capacity = Integer.highestOneBit(Math.max(strings.length, 1) * 2) * 2;
+			keys = new String[capacity];
+			ids = new int[capacity];
+			mask = capacity - 1;
+			for (int id = 0; id < strings.length; id++) {
+				int slot = strings[id].hashCode() & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = strings[id];
+				ids[slot] = id;
+			}
+		}
+
+		int get(String key) {
+			int slot = key.hashCode() & mask;
+			String slotKey;
+			while ((slotKey = keys[slot]) != null) {
+				if (slotKey.equals(key)) {
+					return ids[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+	}
+
+	// format constants, see crf1dm.c and cqdb.c of CRFSuite
+	private static final String FILE_MAGIC = "lCRF";
+	private static final String MODEL_TYPE = "FOMC";
+	private static final int VERSION_NUMBER = 100;
+	private static final int HEADER_SIZE = 48;
+	private static final String CHUNK_FEATURE = "FEAT";
+	private static final String CHUNK_CQDB = "CQDB";
+	private static final int CQDB_BYTEORDER_CHECK = 0x62445371;
+	private static final int CHUNK_SIZE = 12;
+	private static final int FEATURE_SIZE = 20;
+	private static final int FT_STATE = 0;
+	private static final int FT_TRANS = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+}
@@ -0,0 +1,166 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Finds the most probable label sequence for an item sequence using a
+ * {@link CrfSuiteModel}. It reproduces the Viterbi implementation of CRFSuite
+ * (crf1dc_viterbi), including tie breaking, so it yields the same labels as
+ * the native tagger.
+ * <p>
+ * Instances are thread-safe. Score lattices are kept in per-thread buffers
+ * that are reused by subsequent invocations.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CrfSuiteViterbiDecoder {
+
+	// config fields
+	private final CrfSuiteModel model;
+	// state fields
+	private final ThreadLocal<Lattice> latticeHolder = new ThreadLocal<Lattice>() {
+		@Override
+		protected Lattice initialValue() {
+			return new Lattice();
+		}
+	};
+
+	public CrfSuiteViterbiDecoder(CrfSuiteModel model) {
+		this.model = model;
+	}
+
+	public CrfSuiteModel getModel() {
+		return model;
+	}
+
+	/**
+	 * @param items
+	 *            sequence of items, each item is a list of attribute names.
+	 *            Attributes that are unknown to the model are ignored.
+	 * @return label sequence
+	 */
+	public List<String> tag(List<? extends Iterable<String>> items) {
+		int[][] itemAttrIds = new int[items.size()][];
+		int t = 0;
+		for (Iterable<String> item : items) {
+			itemAttrIds[t++] = toAttributeIds(item);
+		}
+		int[] labelIds = decode(itemAttrIds);
+		List<String> result = Lists.newArrayListWithCapacity(labelIds.length);
+		for (int labelId : labelIds) {
+			result.add(model.getLabel(labelId));
+		}
+		return result;
+	}
+
+	/**
+	 * @param itemAttrIds
+	 *            sequence of items, each item is an array of model attribute
+	 *            ids. Values of all attributes are 1.
+	 * @return label id sequence
+	 */
+	public int[] decode(int[][] itemAttrIds) {
+		final int itemCount = itemAttrIds.length;
+		final int labelCount = model.getLabelCount();
+		int[] result = new int[itemCount];
+		if (itemCount == 0) {
+			return result;
+		}
+		Lattice lattice = latticeHolder.get();
+		lattice.ensureCapacity(itemCount * labelCount);
+		double[] state = lattice.state;
+		double[] alpha = lattice.alpha;
+		int[] back = lattice.back;
+		// compute state scores
+		for (int t = 0; t < itemCount; t++) {
+			int off = t * labelCount;
+			for (int j = 0; j < labelCount; j++) {
+				state[off + j] = 0;
+			}
+			for (int attrId : itemAttrIds[t]) {
+				model.addStateScores(attrId, 1, state, off);
+			}
+		}
+		// forward pass
+		for (int j = 0; j < labelCount; j++) {
+			alpha[j] = state[j];
+		}
+		for (int t = 1; t < itemCount; t++) {
+			int prevOff = (t - 1) * labelCount;
+			int curOff = t * labelCount;
+			for (int j = 0; j < labelCount; j++) {
+				double maxScore = -Double.MAX_VALUE;
+				int argMax = -1;
+				for (int i = 0; i < labelCount; i++) {
+					double score = alpha[prevOff + i] + model.getTransitionWeight(i, j);
+					if (maxScore < score) {
+						maxScore = score;
+						argMax = i;
+					}
+				}
+				back[curOff + j] = argMax < 0 ? 0 : argMax;
+				alpha[curOff + j] = maxScore + state[curOff + j];
+			}
+		}
+		// find the best last label
+		int lastOff = (itemCount - 1) * labelCount;
+		double maxScore = -Double.MAX_VALUE;
+		result[itemCount - 1] = 0;
+		for (int i = 0; i < labelCount; i++) {
+			if (maxScore < alpha[lastOff + i]) {
+				maxScore = alpha[lastOff + i];
+				result[itemCount - 1] = i;
+			}
+		}
+		// backtrack
+		for (int t = itemCount - 1; t > 0; t--) {
+			result[t - 1] = back[t * labelCount + result[t]];
+		}
+		return result;
+	}
+
+	private int[] toAttributeIds(Iterable<String> attrs) {
+		int[] buf = new int[16];
+		int size = 0;
+		for (String attr : attrs) {
+			int attrId = model.getAttributeId(attr);
+			if (attrId < 0) {
+				continue;
+			}
+			if (size == buf.length) {
+				int[] newBuf = new int[size * 2];
+				System.arraycopy(buf, 0, newBuf, 0, size);
+				buf = newBuf;
+			}
+			buf[size++] = attrId;
+		}
+		if (size == buf.length) {
+			return buf;
+		}
+		int[] result = new int[size];
+		System.arraycopy(buf, 0, result, 0, size);
+		return result;
+	}
+
+	private static class Lattice {
+		private double[] state = new double[0];
+		private double[] alpha = new double[0];
+		private int[] back = new int[0];
+
+		void ensureCapacity(int size) {
+			if (state.length < size) {
+				int newSize = Math.max(size, state.length * 2);
+				state = new double[newSize];
+				alpha = new double[newSize];
+				back = new int[newSize];
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.encoder.CleartkEncoderException;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.features.NameNumber;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Resolves ClearTK features to attribute ids of a {@link CrfSuiteModel}.
+ * <p>
+ * An attribute string of a feature is built by the given features encoder
+ * only when the feature name-value pair is seen for the first time. The
+ * result (possibly empty if the model does not know the attribute) is cached
+ * by the feature name and value, so subsequent lookups do not create strings.
+ * The number of cached pairs that are unknown to the model is limited by
+ * {@link #MAX_UNKNOWN_ENTRIES}.
+ * </p>
+ * <p>
+ * Instances are thread-safe.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class FeatureAttributeResolver {
+
+	public static final int MAX_UNKNOWN_ENTRIES = 1 << 18;
+
+	// config fields
+	private final CrfSuiteModel model;
+	private final FeaturesEncoder<List<NameNumber>> featuresEncoder;
+	// state fields
+	// feature name => feature value => attribute ids
+	private final ConcurrentMap<String, ConcurrentMap<Object, int[]>> cache = Maps
+			.newConcurrentMap();
+	// feature value => attribute ids for features without name
+	private final ConcurrentMap<Object, int[]> noNameCache = Maps.newConcurrentMap();
+	private final AtomicInteger unknownEntriesCounter = new AtomicInteger();
+
+	public FeatureAttributeResolver(CrfSuiteModel model,
+			FeaturesEncoder<List<NameNumber>> featuresEncoder) {
+		this.model = model;
+		this.featuresEncoder = featuresEncoder;
+	}
+
+	/**
+	 * @return ids of model attributes that correspond to the given features.
+	 *         Features that are unknown to the model are omitted.
+	 */
+	public int[] resolve(List<Feature> features) throws CleartkEncoderException {
+		int[] buf = null;
+		int size = 0;
+		for (Feature feature : features) {
+			int[] featAttrIds = resolve(feature);
+			if (featAttrIds.length == 0) {
+				continue;
+			}
+			if (buf == null) {
+				buf = new int[Math.max(features.size(), featAttrIds.length)];
+			} else if (size + featAttrIds.length > buf.length) {
+				int[] newBuf = new int[Math.max(size + featAttrIds.length, buf.length * 2)];
+				System.arraycopy(buf, 0, newBuf, 0, size);
+				buf = newBuf;
+			}
+			System.arraycopy(featAttrIds, 0, buf, size, featAttrIds.length);
+			size += featAttrIds.length;
+		}
+		if (buf == null) {
+			return EMPTY_IDS;
+		}
+		if (size == buf.length) {
+			return buf;
+		}
+		int[] result = new int[size];
+		System.arraycopy(buf, 0, result, 0, size);
+		return result;
+	}
+
+	private int[] resolve(Feature feature) throws CleartkEncoderException {
+		Object value = feature.getValue();
+		if (value == null) {
+			// let the encoder decide
+			return encode(feature);
+		}
+		ConcurrentMap<Object, int[]> valueMap = getValueMap(feature.getName());
+		int[] result = valueMap.get(value);
+		if (result == null) {
+			result = encode(feature);
+			if (result.length > 0) {
+				valueMap.put(value, result);
+			} else if (unknownEntriesCounter.get() < MAX_UNKNOWN_ENTRIES
+					&& valueMap.putIfAbsent(value, result) == null) {
+				unknownEntriesCounter.incrementAndGet();
+			}
+		}
+		return result;
+	}
+
+	private ConcurrentMap<Object, int[]> getValueMap(String featureName) {
+		if (featureName == null) {
+			return noNameCache;
+		}
+		ConcurrentMap<Object, int[]> valueMap = cache.get(featureName);
+		if (valueMap == null) {
+			valueMap = Maps.newConcurrentMap();
+			ConcurrentMap<Object, int[]> prevMap = cache.putIfAbsent(featureName, valueMap);
+			if (prevMap != null) {
+				valueMap = prevMap;
+			}
+		}
+		return valueMap;
+	}
+
+	private int[] encode(Feature feature) throws CleartkEncoderException {
+		List<NameNumber> nameNumbers = featuresEncoder.encodeAll(Collections.singletonList(feature));
+		int[] result = new int[nameNumbers.size()];
+		int size = 0;
+		for (NameNumber nn : nameNumbers) {
+			int attrId = model.getAttributeId(nn.name);
+			if (attrId >= 0) {
+				result[size++] = attrId;
+			}
+		}
+		if (size == 0) {
+			return EMPTY_IDS;
+		}
+		if (size == result.length) {
+			return result;
+		}
+		int[] trimmed = new int[size];
+		System.arraycopy(result, 0, trimmed, 0, size);
+		return trimmed;
+	}
+
+	private static final int[] EMPTY_IDS = new int[0];
+}
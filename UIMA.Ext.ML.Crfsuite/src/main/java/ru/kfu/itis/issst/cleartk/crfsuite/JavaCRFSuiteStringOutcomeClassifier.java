@@ -0,0 +1,57 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import java.util.List;
+
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.encoder.features.FeaturesEncoder;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.encoder.outcome.OutcomeEncoder;
+import org.cleartk.classifier.jar.SequenceClassifier_ImplBase;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Alternative to {@link CRFSuiteStringOutcomeClassifier} that does not need
+ * the native CRFSuite library. It decodes sequences by
+ * {@link CrfSuiteViterbiDecoder} and is safe to use from several threads.
+ * Features are resolved to model attribute ids by
+ * {@link FeatureAttributeResolver}.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class JavaCRFSuiteStringOutcomeClassifier extends
+		SequenceClassifier_ImplBase<List<NameNumber>, String, String> {
+
+	// derived
+	private CrfSuiteViterbiDecoder decoder;
+	private FeatureAttributeResolver attributeResolver;
+
+	public JavaCRFSuiteStringOutcomeClassifier(CrfSuiteModel model,
+			FeaturesEncoder<List<NameNumber>> featuresEncoder,
+			OutcomeEncoder<String, String> outcomeEncoder) {
+		super(featuresEncoder, outcomeEncoder);
+		this.decoder = new CrfSuiteViterbiDecoder(model);
+		this.attributeResolver = new FeatureAttributeResolver(model, featuresEncoder);
+	}
+
+	@Override
+	public List<String> classify(List<List<Feature>> srcItemSeq) throws CleartkProcessingException {
+		int[][] itemSeq = new int[srcItemSeq.size()][];
+		int i = 0;
+		for (List<Feature> srcItem : srcItemSeq) {
+			itemSeq[i++] = attributeResolver.resolve(srcItem);
+		}
+		int[] labelIds = decoder.decode(itemSeq);
+		CrfSuiteModel model = decoder.getModel();
+		List<String> labels = Lists.newArrayListWithCapacity(labelIds.length);
+		for (int labelId : labelIds) {
+			labels.add(model.getLabel(labelId));
+		}
+		return labels;
+	}
+}
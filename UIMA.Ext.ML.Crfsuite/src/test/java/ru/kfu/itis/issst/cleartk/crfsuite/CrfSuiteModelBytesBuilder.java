@@ -0,0 +1,144 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Writes a minimal crf1d model file in the layout of CRFSuite so tests do not
+ * depend on the native trainer. Hash tables of string databases are left
+ * empty as {@link CrfSuiteModel} reads strings by their ids only.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class CrfSuiteModelBytesBuilder {
+
+	static final int FT_STATE = 0;
+	static final int FT_TRANS = 1;
+
+	private final List<String> labels = Lists.newArrayList();
+	private final List<String> attrs = Lists.newArrayList();
+	// type, src, dst
+	private final List<int[]> features = Lists.newArrayList();
+	private final List<Double> weights = Lists.newArrayList();
+	private int version = 100;
+
+	CrfSuiteModelBytesBuilder labels(String... labels) {
+		for (String l : labels) {
+			this.labels.add(l);
+		}
+		return this;
+	}
+
+	CrfSuiteModelBytesBuilder attributes(String... attrs) {
+		for (String a : attrs) {
+			this.attrs.add(a);
+		}
+		return this;
+	}
+
+	CrfSuiteModelBytesBuilder state(String attr, String label, double weight) {
+		return feature(FT_STATE, attrs.indexOf(attr), labels.indexOf(label), weight);
+	}
+
+	CrfSuiteModelBytesBuilder transition(String from, String to, double weight) {
+		return feature(FT_TRANS, labels.indexOf(from), labels.indexOf(to), weight);
+	}
+
+	CrfSuiteModelBytesBuilder feature(int type, int src, int dst, double weight) {
+		features.add(new int[] { type, src, dst });
+		weights.add(weight);
+		return this;
+	}
+
+	CrfSuiteModelBytesBuilder version(int version) {
+		this.version = version;
+		return this;
+	}
+
+	CrfSuiteModel build() {
+		return CrfSuiteModel.read(toBytes());
+	}
+
+	byte[] toBytes() {
+		byte[] labelDb = stringDatabase(labels);
+		byte[] attrDb = stringDatabase(attrs);
+		int featuresOffset = HEADER_SIZE;
+		int labelsOffset = featuresOffset + 12 + FEATURE_SIZE * features.size();
+		int attrsOffset = labelsOffset + labelDb.length;
+		int size = attrsOffset + attrDb.length;
+		ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put(ascii("lCRF"));
+		buf.putInt(size);
+		buf.put(ascii("FOMC"));
+		buf.putInt(version);
+		buf.putInt(features.size());
+		buf.putInt(labels.size());
+		buf.putInt(attrs.size());
+		buf.putInt(featuresOffset);
+		buf.putInt(labelsOffset);
+		buf.putInt(attrsOffset);
+		// offsets of label and attribute references are not used by the reader
+		buf.putInt(0);
+		buf.putInt(0);
+		buf.put(ascii("FEAT"));
+		buf.putInt(12 + FEATURE_SIZE * features.size());
+		buf.putInt(features.size());
+		for (int i = 0; i < features.size(); i++) {
+			int[] f = features.get(i);
+			buf.putInt(f[0]);
+			buf.putInt(f[1]);
+			buf.putInt(f[2]);
+			buf.putDouble(weights.get(i));
+		}
+		buf.put(labelDb);
+		buf.put(attrDb);
+		return buf.array();
+	}
+
+	private static byte[] stringDatabase(List<String> strings) {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		int[] recordOffsets = new int[strings.size()];
+		for (int id = 0; id < strings.size(); id++) {
+			recordOffsets[id] = CQDB_HEADER_SIZE + records.size();
+			byte[] str = strings.get(id).getBytes(Charsets.UTF_8);
+			ByteBuffer rec = ByteBuffer.allocate(8 + str.length + 1).order(ByteOrder.LITTLE_ENDIAN);
+			rec.putInt(id);
+			rec.putInt(str.length + 1);
+			rec.put(str);
+			records.write(rec.array(), 0, rec.capacity());
+		}
+		int bwdOffset = CQDB_HEADER_SIZE + records.size();
+		int size = bwdOffset + 4 * strings.size();
+		ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put(ascii("CQDB"));
+		buf.putInt(size);
+		buf.putInt(0);
+		buf.putInt(0x62445371);
+		buf.putInt(strings.size());
+		buf.putInt(bwdOffset);
+		buf.position(CQDB_HEADER_SIZE);
+		buf.put(records.toByteArray());
+		for (int off : recordOffsets) {
+			buf.putInt(off);
+		}
+		return buf.array();
+	}
+
+	private static byte[] ascii(String str) {
+		return str.getBytes(Charsets.US_ASCII);
+	}
+
+	private static final int HEADER_SIZE = 48;
+	private static final int FEATURE_SIZE = 20;
+	// chunk header and 256 hash table references
+	private static final int CQDB_HEADER_SIZE = 24 + 256 * 8;
+}
@@ -0,0 +1,107 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static ru.kfu.itis.issst.cleartk.crfsuite.CrfSuiteModelBytesBuilder.FT_STATE;
+import static ru.kfu.itis.issst.cleartk.crfsuite.CrfSuiteModelBytesBuilder.FT_TRANS;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CrfSuiteModelTest {
+
+	@Test
+	public void shouldReadLabelsAndAttributes() throws Exception {
+		byte[] modelBytes = newBuilder().toBytes();
+		CrfSuiteModel model = CrfSuiteModel.read(new ByteArrayInputStream(modelBytes));
+		assertEquals(3, model.getLabelCount());
+		assertEquals("NOUN", model.getLabel(0));
+		assertEquals("VERB", model.getLabel(1));
+		assertEquals("ADJ", model.getLabel(2));
+		assertEquals(4, model.getAttributeCount());
+		assertEquals(0, model.getAttributeId("w[0]=стали"));
+		assertEquals(1, model.getAttributeId("w[-1]=мы"));
+		assertEquals(2, model.getAttributeId("suffix=ли"));
+		assertEquals(3, model.getAttributeId("bias"));
+		assertEquals(-1, model.getAttributeId("w[0]=сталь"));
+		assertEquals(-1, model.getAttributeId(""));
+	}
+
+	@Test
+	public void shouldReadWeights() {
+		CrfSuiteModel model = newBuilder().build();
+		double[] scores = new double[6];
+		model.addStateScores(0, 1, scores, 0);
+		model.addStateScores(2, 1, scores, 0);
+		model.addStateScores(3, 2, scores, 3);
+		assertArrayEquals(new double[] { 0.5, 1.25, 0, 0.2, 0, 0 }, scores, 1e-9);
+		// attribute without features
+		model.addStateScores(1, 1, scores, 0);
+		assertArrayEquals(new double[] { 0.5, 1.25, 0, 0.2, 0, 0 }, scores, 1e-9);
+		assertEquals(-2.0, model.getTransitionWeight(2, 1), 1e-9);
+		assertEquals(0.75, model.getTransitionWeight(0, 1), 1e-9);
+		assertEquals(0.0, model.getTransitionWeight(1, 0), 1e-9);
+	}
+
+	@Test
+	public void shouldRejectBadMagic() {
+		byte[] modelBytes = newBuilder().toBytes();
+		modelBytes[0] = 'x';
+		assertIllegalModel(modelBytes);
+		modelBytes = newBuilder().toBytes();
+		// model type
+		modelBytes[8] = 'x';
+		assertIllegalModel(modelBytes);
+		assertIllegalModel(new byte[] { 'l', 'C', 'R', 'F' });
+	}
+
+	@Test
+	public void shouldRejectBadVersion() {
+		assertIllegalModel(newBuilder().version(101).toBytes());
+	}
+
+	@Test
+	public void shouldRejectOutOfRangeIds() {
+		// attribute id of a state feature
+		assertIllegalModel(newBuilder().feature(FT_STATE, 4, 0, 1).toBytes());
+		assertIllegalModel(newBuilder().feature(FT_STATE, -1, 0, 1).toBytes());
+		// label id of a state feature
+		assertIllegalModel(newBuilder().feature(FT_STATE, 0, 3, 1).toBytes());
+		// label ids of a transition feature
+		assertIllegalModel(newBuilder().feature(FT_TRANS, 3, 0, 1).toBytes());
+		assertIllegalModel(newBuilder().feature(FT_TRANS, 0, 3, 1).toBytes());
+		// feature type
+		assertIllegalModel(newBuilder().feature(2, 0, 0, 1).toBytes());
+	}
+
+	private static CrfSuiteModelBytesBuilder newBuilder() {
+		return new CrfSuiteModelBytesBuilder()
+				.labels("NOUN", "VERB", "ADJ")
+				.attributes("w[0]=стали", "w[-1]=мы", "suffix=ли", "bias")
+				.state("w[0]=стали", "VERB", 1.25)
+				.state("w[0]=стали", "NOUN", 0.5)
+				.state("bias", "NOUN", 0.1)
+				.transition("ADJ", "VERB", -2.0)
+				.transition("NOUN", "VERB", 0.5)
+				// weights of the same transition are summed up
+				.transition("NOUN", "VERB", 0.25);
+	}
+
+	private static void assertIllegalModel(byte[] modelBytes) {
+		try {
+			CrfSuiteModel.read(modelBytes);
+			fail("Model is read successfully");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CrfSuiteViterbiDecoderTest {
+
+	@Test
+	public void shouldFindTheBestPath() {
+		CrfSuiteModel model = new CrfSuiteModelBytesBuilder()
+				.labels("A", "B")
+				.attributes("x", "y")
+				.state("x", "A", 1.0).state("x", "B", 0.5)
+				.state("y", "A", 0.2).state("y", "B", 2.0)
+				.transition("A", "A", 0.3).transition("A", "B", -3.0)
+				.transition("B", "A", 0.5).transition("B", "B", 0.1)
+				.build();
+		CrfSuiteViterbiDecoder decoder = new CrfSuiteViterbiDecoder(model);
+		assertEquals(asList("A"), decoder.tag(items("x")));
+		// AA = 1.0 + 0.2 + 0.3 = 1.5, AB = 1.0 + 2.0 - 3.0 = 0.0
+		// BA = 0.5 + 0.2 + 0.5 = 1.2, BB = 0.5 + 2.0 + 0.1 = 2.6
+		assertEquals(asList("B", "B"), decoder.tag(items("x", "y")));
+		// AA = 1.5, AB = -2.3, BA = 2.0 + 1.0 + 0.5 = 3.5, BB = 2.6
+		assertEquals(asList("B", "A"), decoder.tag(items("y", "x")));
+		// BBA = 0.5 + 2.0 + 0.1 + 1.0 + 0.5 = 4.1 is the best of 8 paths
+		assertEquals(asList("B", "B", "A"), decoder.tag(items("x", "y", "x")));
+		assertArrayEquals(new int[] { 1, 1, 0 }, decoder.decode(new int[][] { { 0 }, { 1 }, { 0 } }));
+		// unknown attributes are ignored
+		List<List<String>> items = Lists.newArrayList();
+		items.add(asList("x", "z"));
+		items.add(asList("unknown", "y"));
+		assertEquals(asList("B", "B"), decoder.tag(items));
+		assertEquals(Collections.emptyList(), decoder.tag(Collections.<List<String>> emptyList()));
+	}
+
+	@Test
+	public void shouldPreferTheFirstLabelOnTies() {
+		CrfSuiteModel model = new CrfSuiteModelBytesBuilder()
+				.labels("A", "B", "C")
+				.attributes("x")
+				.state("x", "B", 1.0).state("x", "C", 1.0)
+				.build();
+		CrfSuiteViterbiDecoder decoder = new CrfSuiteViterbiDecoder(model);
+		assertEquals(asList("A", "A"), decoder.tag(items("z", "z")));
+		assertEquals(asList("B", "B"), decoder.tag(items("x", "x")));
+	}
+
+	@Test
+	public void shouldGiveTheSameLabelsAsExhaustiveSearch() {
+		Random rand = new Random(7);
+		String[] labels = { "NOUN", "VERB", "ADJ", "PREP" };
+		String[] attrs = new String[50];
+		for (int a = 0; a < attrs.length; a++) {
+			attrs[a] = "w[0]=слово" + a;
+		}
+		int labelCount = labels.length;
+		double[][] stateWeights = new double[attrs.length][labelCount];
+		double[][] transWeights = new double[labelCount][labelCount];
+		CrfSuiteModelBytesBuilder builder = new CrfSuiteModelBytesBuilder()
+				.labels(labels).attributes(attrs);
+		for (int a = 0; a < attrs.length; a++) {
+			for (int l = 0; l < labelCount; l++) {
+				if (rand.nextInt(3) == 0) {
+					stateWeights[a][l] = rand.nextGaussian();
+					builder.state(attrs[a], labels[l], stateWeights[a][l]);
+				}
+			}
+		}
+		for (int i = 0; i < labelCount; i++) {
+			for (int j = 0; j < labelCount; j++) {
+				transWeights[i][j] = rand.nextGaussian();
+				builder.transition(labels[i], labels[j], transWeights[i][j]);
+			}
+		}
+		CrfSuiteViterbiDecoder decoder = new CrfSuiteViterbiDecoder(builder.build());
+		for (int iter = 0; iter < 1000; iter++) {
+			int itemCount = 1 + rand.nextInt(5);
+			int[][] itemAttrIds = new int[itemCount][];
+			for (int t = 0; t < itemCount; t++) {
+				itemAttrIds[t] = new int[rand.nextInt(4)];
+				for (int k = 0; k < itemAttrIds[t].length; k++) {
+					itemAttrIds[t][k] = rand.nextInt(attrs.length);
+				}
+			}
+			// enumerate all label sequences
+			int[] expected = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			int[] path = new int[itemCount];
+			int pathCount = (int) Math.pow(labelCount, itemCount);
+			for (int code = 0; code < pathCount; code++) {
+				int c = code;
+				for (int t = itemCount - 1; t >= 0; t--) {
+					path[t] = c % labelCount;
+					c /= labelCount;
+				}
+				double score = 0;
+				for (int t = 0; t < itemCount; t++) {
+					for (int attrId : itemAttrIds[t]) {
+						score += stateWeights[attrId][path[t]];
+					}
+					if (t > 0) {
+						score += transWeights[path[t - 1]][path[t]];
+					}
+				}
+				if (score > bestScore + 1e-12) {
+					bestScore = score;
+					expected = path.clone();
+				}
+			}
+			assertArrayEquals(expected, decoder.decode(itemAttrIds));
+		}
+	}
+
+	private static List<List<String>> items(String... singleAttrs) {
+		List<List<String>> result = Lists.newArrayList();
+		for (String attr : singleAttrs) {
+			result.add(Collections.singletonList(attr));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.cleartk.crfsuite;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.encoder.CleartkEncoderException;
+import org.cleartk.classifier.encoder.FeatureEncoderUtil;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.encoder.features.StringEncoder;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class FeatureAttributeResolverTest {
+
+	private static final String ESCAPE_CHARS = ":\t";
+
+	private CountingFeaturesEncoder featuresEncoder;
+	private FeatureAttributeResolver resolver;
+
+	@Before
+	public void setUp() {
+		featuresEncoder = new CountingFeaturesEncoder();
+		featuresEncoder.addEncoder(new StringEncoder());
+		CrfSuiteModel model = new CrfSuiteModelBytesBuilder()
+				.labels("NOUN", "VERB")
+				.attributes("w_стали", "w-1_мы",
+						FeatureEncoderUtil.escape("w_a:b", ESCAPE_CHARS.toCharArray()),
+						"bias")
+				.state("w_стали", "VERB", 1.0)
+				.build();
+		resolver = new FeatureAttributeResolver(model, featuresEncoder);
+	}
+
+	@Test
+	public void shouldResolveEncodedFeatureNames() throws CleartkEncoderException {
+		assertArrayEquals(new int[] { 1, 0 }, resolver.resolve(asList(
+				new Feature("w-1", "мы"), new Feature("w", "стали"))));
+		// a feature without name
+		assertArrayEquals(new int[] { 3 }, resolver.resolve(asList(new Feature("bias"))));
+		// escaped characters
+		assertArrayEquals(new int[] { 2 }, resolver.resolve(asList(new Feature("w", "a:b"))));
+	}
+
+	@Test
+	public void shouldOmitUnknownAttributes() throws CleartkEncoderException {
+		assertArrayEquals(new int[] { 0 }, resolver.resolve(asList(
+				new Feature("w", "сталь"), new Feature("w", "стали"), new Feature("w+1", "мы"))));
+		assertArrayEquals(new int[0], resolver.resolve(asList(
+				new Feature("w", "сталь"), new Feature("w+1", "мы"))));
+		assertArrayEquals(new int[0], resolver.resolve(asList(new Feature("w", "a\tb"))));
+		assertArrayEquals(new int[0], resolver.resolve(Collections.<Feature> emptyList()));
+	}
+
+	@Test
+	public void shouldEncodeEachFeatureOnce() throws CleartkEncoderException {
+		List<Feature> item1 = asList(new Feature("w", "стали"), new Feature("w", "сталь"));
+		List<Feature> item2 = asList(new Feature("w", "сталь"), new Feature("w-1", "мы"),
+				new Feature("w", "стали"));
+		assertArrayEquals(new int[] { 0 }, resolver.resolve(item1));
+		assertEquals(2, featuresEncoder.encodeCount);
+		// only the new name-value pair is encoded
+		assertArrayEquals(new int[] { 1, 0 }, resolver.resolve(item2));
+		assertEquals(3, featuresEncoder.encodeCount);
+		assertArrayEquals(new int[] { 0 }, resolver.resolve(item1));
+		assertArrayEquals(new int[] { 1, 0 }, resolver.resolve(item2));
+		assertEquals(3, featuresEncoder.encodeCount);
+		// the same value with a different name is another attribute
+		assertArrayEquals(new int[0], resolver.resolve(asList(new Feature("w+1", "стали"))));
+		assertEquals(4, featuresEncoder.encodeCount);
+	}
+
+	/**
+	 * Counts features it encodes.
+	 */
+	private static class CountingFeaturesEncoder extends NameNumberFeaturesEncoder2 {
+		private static final long serialVersionUID = 1L;
+
+		int encodeCount;
+
+		CountingFeaturesEncoder() {
+			super(ESCAPE_CHARS);
+		}
+
+		@Override
+		public List<NameNumber> encodeAll(Iterable<Feature> features)
+				throws CleartkEncoderException {
+			encodeCount += Iterables.size(features);
+			return super.encodeAll(features);
+		}
+	}
+}
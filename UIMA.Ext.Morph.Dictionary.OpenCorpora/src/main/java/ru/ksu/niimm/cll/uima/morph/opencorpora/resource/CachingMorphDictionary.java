@@ -0,0 +1,173 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModel;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionary;
+import ru.kfu.itis.issst.uima.morph.model.Lemma;
+import ru.kfu.itis.issst.uima.morph.model.LemmaLinkType;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * {@link MorphDictionary} decorator that keeps results of
+ * {@link #getEntries(String)} in a size-bounded concurrent cache. Entries are
+ * evicted in approximately LRU order. Other methods are delegated as is.
+ * <p>
+ * Cached lists are immutable. Use
+ * {@link #countPredictorInvocations(WordformPredictor)} to wrap the predictor
+ * of the underlying dictionary to make it reflected in the statistics of this
+ * instance.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class CachingMorphDictionary implements MorphDictionary {
+
+	// config fields
+	private final MorphDictionary delegate;
+	// state fields
+	private final Cache<String, List<Wordform>> entriesCache;
+	private final AtomicLong predictorInvocationCounter = new AtomicLong();
+
+	public CachingMorphDictionary(MorphDictionary delegate, long maximumSize) {
+		this.delegate = delegate;
+		this.entriesCache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.concurrencyLevel(Math.max(4, Runtime.getRuntime().availableProcessors()))
+				.recordStats()
+				.build();
+	}
+
+	public MorphDictionary getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public List<Wordform> getEntries(final String str) {
+		try {
+			return entriesCache.get(str, new Callable<List<Wordform>>() {
+				@Override
+				public List<Wordform> call() throws Exception {
+					return ImmutableList.copyOf(delegate.getEntries(str));
+				}
+			});
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * @return a predictor that delegates to the given one and counts its
+	 *         invocations in this instance statistics
+	 */
+	public WordformPredictor countPredictorInvocations(final WordformPredictor predictor) {
+		return new WordformPredictor() {
+			@Override
+			public List<Wordform> predict(String str, WordformTSTSearchResult result) {
+				predictorInvocationCounter.incrementAndGet();
+				return predictor.predict(str, result);
+			}
+		};
+	}
+
+	/**
+	 * @return statistics of the entry cache, e.g., hit rate and eviction count
+	 */
+	public CacheStats getCacheStats() {
+		return entriesCache.stats();
+	}
+
+	public long getCacheSize() {
+		return entriesCache.size();
+	}
+
+	public long getPredictorInvocationCount() {
+		return predictorInvocationCounter.get();
+	}
+
+	public void invalidateCache() {
+		entriesCache.invalidateAll();
+	}
+
+	@Override
+	public String getVersion() {
+		return delegate.getVersion();
+	}
+
+	@Override
+	public String getRevision() {
+		return delegate.getRevision();
+	}
+
+	@Override
+	public GramModel getGramModel() {
+		return delegate.getGramModel();
+	}
+
+	@Override
+	public LemmaLinkType getLemmaLinkType(short id) {
+		return delegate.getLemmaLinkType(id);
+	}
+
+	@Override
+	public Lemma getLemma(int lemmaId) {
+		return delegate.getLemma(lemmaId);
+	}
+
+	@Override
+	public void addLemma(Lemma lemma) {
+		delegate.addLemma(lemma);
+	}
+
+	@Override
+	public int getLemmaMaxId() {
+		return delegate.getLemmaMaxId();
+	}
+
+	@Override
+	public Map<Integer, LemmaLinkType> getLemmaOutlinks(int lemmaId) {
+		return delegate.getLemmaOutlinks(lemmaId);
+	}
+
+	@Override
+	public Map<Integer, LemmaLinkType> getLemmaInlinks(int lemmaId) {
+		return delegate.getLemmaInlinks(lemmaId);
+	}
+
+	@Override
+	public boolean containsGramSet(BitSet tag) {
+		return delegate.containsGramSet(tag);
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getCacheStats();
+		return Objects.toStringHelper(this)
+				.add("size", getCacheSize())
+				.add("hitRate", stats.hitRate())
+				.add("hits", stats.hitCount())
+				.add("misses", stats.missCount())
+				.add("evictions", stats.evictionCount())
+				.add("predictorInvocations", getPredictorInvocationCount())
+				.toString();
+	}
+}
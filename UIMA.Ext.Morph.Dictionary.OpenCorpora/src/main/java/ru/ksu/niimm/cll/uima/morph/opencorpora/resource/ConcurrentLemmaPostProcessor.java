@@ -0,0 +1,16 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+/**
+ * Marks {@link LemmaPostProcessor} implementations whose <code>process</code>
+ * method can be invoked by several threads at once, i.e., it depends only on
+ * the given lemma and wordforms. Such post-processors are applied by worker
+ * threads of {@link ParallelLemmaProcessor}.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public interface ConcurrentLemmaPostProcessor extends LemmaPostProcessor {
+}
@@ -26,12 +26,20 @@ public class ConfigurableSerializedDictionaryResource implements MorphDictionary
 		GramModelHolder, SharedResourceObject {
 
 	public static final String PARAM_PREDICTOR_CLASS_NAME = "predictorClassName";
+	/**
+	 * Maximum number of {@link MorphDictionary#getEntries(String)} results to
+	 * keep in a {@link CachingMorphDictionary}. The cache is disabled if the
+	 * value is not positive.
+	 */
+	public static final String PARAM_LOOKUP_CACHE_SIZE = "lookupCacheSize";
 	private static final Logger log = LoggerFactory
 			.getLogger(ConfigurableSerializedDictionaryResource.class);
 
 	// config fields
 	@ConfigurationParameter(name = PARAM_PREDICTOR_CLASS_NAME)
 	private String wfPredictorClassName;
+	@ConfigurationParameter(name = PARAM_LOOKUP_CACHE_SIZE, defaultValue = "0")
+	private int lookupCacheSize;
 	// state fields
 	private MorphDictionary dict;
 
@@ -43,17 +51,24 @@ public class ConfigurableSerializedDictionaryResource implements MorphDictionary
 		ConfigurationParameterInitializer.initialize(this, dr);
 		try {
 			dict = DictionaryDeserializer.from(dr.getInputStream(), String.valueOf(dr.getUrl()));
+			CachingMorphDictionary cachingDict = makeCachingDictionary(dict, lookupCacheSize);
 			if (wfPredictorClassName != null) {
 				@SuppressWarnings("unchecked")
 				Class<? extends WordformPredictor> wfPredictorClass = (Class<? extends WordformPredictor>)
 						Class.forName(wfPredictorClassName);
-				WordformPredictor wfPredictor = makePredictor(wfPredictorClass);
-				((MorphDictionaryImpl) dict).setWfPredictor(wfPredictor);
+				WordformPredictor wfPredictor = makePredictor(wfPredictorClass, dict);
 				log.info("{} was set in deserialized MorphDictionary",
 						wfPredictor.getClass().getSimpleName());
+				if (cachingDict != null) {
+					wfPredictor = cachingDict.countPredictorInvocations(wfPredictor);
+				}
+				((MorphDictionaryImpl) dict).setWfPredictor(wfPredictor);
 			} else {
 				log.info("A wordform predictor has not been set in deserialized MorphDictionary");
 			}
+			if (cachingDict != null) {
+				dict = cachingDict;
+			}
 		} catch (Exception e) {
 			throw new ResourceInitializationException(e);
 		}
@@ -69,8 +84,20 @@ public class ConfigurableSerializedDictionaryResource implements MorphDictionary
 		return dict.getGramModel();
 	}
 
-	private WordformPredictor makePredictor(Class<? extends WordformPredictor> predictorClass)
-			throws Exception {
+	/**
+	 * @return a caching decorator of the given dictionary or null if
+	 *         cacheSize is not positive
+	 */
+	static CachingMorphDictionary makeCachingDictionary(MorphDictionary dict, int cacheSize) {
+		if (cacheSize <= 0) {
+			return null;
+		}
+		log.info("Lookup cache of size {} is enabled for MorphDictionary", cacheSize);
+		return new CachingMorphDictionary(dict, cacheSize);
+	}
+
+	static WordformPredictor makePredictor(Class<? extends WordformPredictor> predictorClass,
+			MorphDictionary dict) throws Exception {
 		Constructor<? extends WordformPredictor> constr = null;
 		// check constructor with the single parameter typed by MorphDictionary
 		try {
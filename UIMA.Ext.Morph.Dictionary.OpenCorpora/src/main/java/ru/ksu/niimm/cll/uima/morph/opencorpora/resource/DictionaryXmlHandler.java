@@ -5,6 +5,7 @@ package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
 
 import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
 import static com.google.common.collect.Sets.newHashSet;
+import static java.lang.System.currentTimeMillis;
 
 import java.util.Deque;
 import java.util.List;
@@ -303,10 +304,36 @@ class DictionaryXmlHandler extends DefaultHandler {
 	}
 
 	private class LemmataHandler extends NoOpHandler {
+		private long timeBefore;
+
 		LemmataHandler() {
 			super(ELEM_LEMMATA);
 		}
 
+		@Override
+		protected void startSelf(Attributes attrs) {
+			timeBefore = currentTimeMillis();
+			if (threadCount > 1) {
+				log.info("Lemmas will be processed by {} threads", threadCount);
+				lemmaProcessor = new ParallelLemmaProcessor(dict, lemmaPostProcessors,
+						threadCount, ParallelLemmaProcessor.DEFAULT_BATCH_SIZE);
+			}
+		}
+
+		@Override
+		protected void endSelf() {
+			if (lemmaProcessor != null) {
+				// lemma links can refer only to added lemmas
+				lemmaProcessor.finish();
+				acceptedLemmaCounter += lemmaProcessor.getAcceptedLemmaCount();
+				rejectedLemmaCounter += lemmaProcessor.getRejectedLemmaCount();
+				lemmaProcessor = null;
+			}
+			long time = Math.max(currentTimeMillis() - timeBefore, 1);
+			log.info("Lemmata are processed in {} ms, {} lemmas/s", time,
+					lemmasParsed * 1000L / time);
+		}
+
 		@Override
 		protected Map<String, ElementHandler> declareChildren() {
 			return toMap(newHashSet(new LemmaHandler()));
@@ -402,7 +429,9 @@ class DictionaryXmlHandler extends DefaultHandler {
 
 		@Override
 		protected void endSelf() {
-			if (postProcessLemma(builder, wordforms)) {
+			if (lemmaProcessor != null) {
+				lemmaProcessor.submit(builder, wordforms);
+			} else if (postProcessLemma(builder, wordforms)) {
 				Lemma lemma = builder.build();
 				dict.addLemma(lemma);
 				for (String wfStr : wordforms.keySet()) {
@@ -587,6 +616,7 @@ class DictionaryXmlHandler extends DefaultHandler {
 	// config fields
 	private List<LemmaPostProcessor> lemmaPostProcessors = Lists.newLinkedList();
 	private List<GramModelPostProcessor> gramModelProcessors = Lists.newLinkedList();
+	private int threadCount = 1;
 	// state fields
 	private MorphDictionaryImpl dict;
 	private Deque<String> elemStack = Lists.newLinkedList();
@@ -596,6 +626,8 @@ class DictionaryXmlHandler extends DefaultHandler {
 	private int rejectedLemmaCounter;
 	private ElementHandler rootHandler;
 	private Locator docLocator;
+	// is not null while lemmata are being processed by several threads
+	private ParallelLemmaProcessor lemmaProcessor;
 
 	DictionaryXmlHandler(MorphDictionaryImpl dict) {
 		this.dict = dict;
@@ -615,6 +647,27 @@ class DictionaryXmlHandler extends DefaultHandler {
 		gramModelProcessors.add(gmPP);
 	}
 
+	/**
+	 * @param threadCount
+	 *            if greater than 1 then lemmas are processed by
+	 *            {@link ParallelLemmaProcessor} with the given number of
+	 *            worker threads
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Stop threads of lemma processing if parsing has failed inside the
+	 * lemmata element. Does nothing after the successful parsing.
+	 */
+	void release() {
+		if (lemmaProcessor != null) {
+			lemmaProcessor.abort();
+			lemmaProcessor = null;
+		}
+	}
+
 	@Override
 	public void setDocumentLocator(Locator locator) {
 		super.setDocumentLocator(locator);
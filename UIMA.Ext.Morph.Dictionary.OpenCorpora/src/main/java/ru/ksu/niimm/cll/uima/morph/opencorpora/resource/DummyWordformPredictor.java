@@ -9,23 +9,37 @@ import ru.kfu.itis.issst.uima.morph.model.Wordform;
 
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Predicts wordforms of an unknown string by wordforms of the longest known
+ * suffix. Each predicted wordform refers to a pseudo-lemma that has an empty
+ * string, grammemes of the source lemma and a negative id. Pseudo-lemmas are
+ * registered in the dictionary, which keeps them apart from its own lemmas.
+ * <p>
+ * Instances are thread-safe and do not acquire locks when a pseudo-lemma has
+ * been registered already.
+ * </p>
+ */
 public class DummyWordformPredictor implements WordformPredictor{
     private MorphDictionary dict;
-    private int pseudoLemmaIdCounter = -1;
-    private Map<Lemma, Lemma> uniqPseudoLemmaMap = Maps.newHashMap();
-
-    private synchronized Lemma addPseudoLemma(Lemma l) {
-        if (uniqPseudoLemmaMap.containsKey(l)) {
-            return uniqPseudoLemmaMap.get(l);
-        } else {
-            l.setId(pseudoLemmaIdCounter--);
-            uniqPseudoLemmaMap.put(l, l);
-            dict.addLemma(l);
-            return l;
+    private final AtomicInteger pseudoLemmaIdCounter = new AtomicInteger(-1);
+    // Lemma#equals ignores ids
+    private final ConcurrentMap<Lemma, Lemma> uniqPseudoLemmaMap = Maps.newConcurrentMap();
+
+    private Lemma addPseudoLemma(Lemma l) {
+        Lemma result = uniqPseudoLemmaMap.get(l);
+        if (result != null) {
+            return result;
         }
+        l.setId(pseudoLemmaIdCounter.getAndDecrement());
+        // register the lemma before it is published to other threads.
+        // If a concurrent thread wins the race, the lemma remains unreferenced.
+        dict.addLemma(l);
+        result = uniqPseudoLemmaMap.putIfAbsent(l, l);
+        return result == null ? l : result;
     }
 
     public DummyWordformPredictor(MorphDictionary dict) {
@@ -18,7 +18,8 @@ import ru.kfu.itis.issst.uima.morph.model.Wordform;
  * @author Rinat Gareev (Kazan Federal University)
  * 
  */
-public class LemmaByGrammemFilter extends LexemePostProcessorBase {
+public class LemmaByGrammemFilter extends LexemePostProcessorBase implements
+		ConcurrentLemmaPostProcessor {
 
 	private Set<String> grammemsToReject;
 
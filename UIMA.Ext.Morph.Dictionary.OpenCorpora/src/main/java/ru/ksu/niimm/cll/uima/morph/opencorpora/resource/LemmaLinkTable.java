@@ -0,0 +1,283 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ru.kfu.itis.issst.uima.morph.model.LemmaLinkType;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Lemma links kept in two adjacency structures of CSR layout: outlinks of
+ * lemma <code>l</code> occupy the range
+ * <code>[outStart[l], outStart[l+1])</code> of {@link #outTargets} and
+ * {@link #outTypes}, inlinks are kept in the same way in {@link #inStart},
+ * {@link #inSources} and {@link #inTypes}. Targets (sources) of a lemma are
+ * sorted, so a link can be found by a binary search.
+ * <p>
+ * Added links are buffered in plain arrays until {@link #compact()} is
+ * invoked. As in {@link com.google.common.collect.Table#put}, a link added
+ * for an existing pair of lemmas replaces the previous one.
+ * </p>
+ * <p>
+ * Instances are not thread-safe while links are being added. After
+ * compaction they can be read by several threads.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class LemmaLinkTable implements Serializable {
+
+	private static final long serialVersionUID = 4195361262398462217L;
+	private static final int[] EMPTY_INTS = new int[0];
+	private static final LemmaLinkType[] EMPTY_TYPES = new LemmaLinkType[0];
+
+	// state fields
+	// compacted links
+	private int[] outStart = EMPTY_INTS;
+	private int[] outTargets = EMPTY_INTS;
+	private LemmaLinkType[] outTypes = EMPTY_TYPES;
+	private int[] inStart = EMPTY_INTS;
+	private int[] inSources = EMPTY_INTS;
+	private LemmaLinkType[] inTypes = EMPTY_TYPES;
+	// links that have been added after the last compaction
+	private int[] pendingSources = EMPTY_INTS;
+	private int[] pendingTargets = EMPTY_INTS;
+	private LemmaLinkType[] pendingTypes = EMPTY_TYPES;
+	private int pendingCount;
+
+	public void add(int from, int to, LemmaLinkType type) {
+		if (from < 0 || to < 0) {
+			throw new IllegalArgumentException(String.format(
+					"Illegal link %s -> %s", from, to));
+		}
+		if (type == null) {
+			throw new NullPointerException("type");
+		}
+		if (pendingCount == pendingSources.length) {
+			int newCapacity = Math.max(16, pendingCount + (pendingCount >> 1));
+			pendingSources = Arrays.copyOf(pendingSources, newCapacity);
+			pendingTargets = Arrays.copyOf(pendingTargets, newCapacity);
+			pendingTypes = Arrays.copyOf(pendingTypes, newCapacity);
+		}
+		pendingSources[pendingCount] = from;
+		pendingTargets[pendingCount] = to;
+		pendingTypes[pendingCount] = type;
+		pendingCount++;
+	}
+
+	/**
+	 * Merge added links into the compacted structures.
+	 */
+	public void compact() {
+		if (pendingCount == 0) {
+			return;
+		}
+		// collect all links: compacted ones precede pending ones,
+		// so the latter win on duplicates
+		int total = outTargets.length + pendingCount;
+		int[] sources = new int[total];
+		int[] targets = new int[total];
+		LemmaLinkType[] types = new LemmaLinkType[total];
+		int i = 0;
+		for (int from = 0; from < outStart.length - 1; from++) {
+			for (int l = outStart[from]; l < outStart[from + 1]; l++) {
+				sources[i] = from;
+				targets[i] = outTargets[l];
+				types[i] = outTypes[l];
+				i++;
+			}
+		}
+		System.arraycopy(pendingSources, 0, sources, i, pendingCount);
+		System.arraycopy(pendingTargets, 0, targets, i, pendingCount);
+		System.arraycopy(pendingTypes, 0, types, i, pendingCount);
+		pendingSources = EMPTY_INTS;
+		pendingTargets = EMPTY_INTS;
+		pendingTypes = EMPTY_TYPES;
+		pendingCount = 0;
+		//
+		int maxId = -1;
+		for (i = 0; i < total; i++) {
+			maxId = Math.max(maxId, Math.max(sources[i], targets[i]));
+		}
+		// outlinks
+		int[] outOrder = sortLinks(sources, targets, maxId);
+		int linkCount = outOrder.length;
+		outStart = new int[maxId + 2];
+		outTargets = new int[linkCount];
+		outTypes = new LemmaLinkType[linkCount];
+		for (i = 0; i < linkCount; i++) {
+			int link = outOrder[i];
+			outStart[sources[link] + 1]++;
+			outTargets[i] = targets[link];
+			outTypes[i] = types[link];
+		}
+		cumulate(outStart);
+		// inlinks
+		int[] inOrder = sortLinks(targets, sources, maxId);
+		inStart = new int[maxId + 2];
+		inSources = new int[linkCount];
+		inTypes = new LemmaLinkType[linkCount];
+		for (i = 0; i < linkCount; i++) {
+			int link = inOrder[i];
+			inStart[targets[link] + 1]++;
+			inSources[i] = sources[link];
+			inTypes[i] = types[link];
+		}
+		cumulate(inStart);
+	}
+
+	/**
+	 * @return number of links (after compaction)
+	 */
+	public int size() {
+		compact();
+		return outTargets.length;
+	}
+
+	public Map<Integer, LemmaLinkType> getOutlinks(int lemmaId) {
+		compact();
+		return linkMap(outStart, outTargets, outTypes, lemmaId);
+	}
+
+	public Map<Integer, LemmaLinkType> getInlinks(int lemmaId) {
+		compact();
+		return linkMap(inStart, inSources, inTypes, lemmaId);
+	}
+
+	private static Map<Integer, LemmaLinkType> linkMap(int[] start, int[] keys,
+			LemmaLinkType[] types, int lemmaId) {
+		if (lemmaId < 0 || lemmaId >= start.length - 1 || start[lemmaId] == start[lemmaId + 1]) {
+			return ImmutableMap.of();
+		}
+		return new LinkMap(keys, types, start[lemmaId], start[lemmaId + 1]);
+	}
+
+	/**
+	 * Sort link indexes by the primary key (counting sort) and then by the
+	 * secondary key, removing all but the last link of each key pair.
+	 */
+	private static int[] sortLinks(int[] primary, int[] secondary, int maxId) {
+		int total = primary.length;
+		int[] bucketStart = new int[maxId + 2];
+		for (int i = 0; i < total; i++) {
+			bucketStart[primary[i] + 1]++;
+		}
+		cumulate(bucketStart);
+		int[] bucketFill = Arrays.copyOf(bucketStart, maxId + 1);
+		// (secondary key << 32 | link index), the order of addition is kept
+		// in the lower bits, so the last duplicate comes last
+		long[] sorted = new long[total];
+		for (int i = 0; i < total; i++) {
+			sorted[bucketFill[primary[i]]++] = ((long) secondary[i] << 32) | i;
+		}
+		int[] result = new int[total];
+		int size = 0;
+		for (int b = 0; b <= maxId; b++) {
+			int from = bucketStart[b];
+			int to = bucketStart[b + 1];
+			Arrays.sort(sorted, from, to);
+			for (int i = from; i < to; i++) {
+				if (i + 1 < to && (sorted[i] >>> 32) == (sorted[i + 1] >>> 32)) {
+					// overridden by a later link
+					continue;
+				}
+				result[size++] = (int) sorted[i];
+			}
+		}
+		return size == total ? result : Arrays.copyOf(result, size);
+	}
+
+	private static void cumulate(int[] counts) {
+		for (int i = 1; i < counts.length; i++) {
+			counts[i] += counts[i - 1];
+		}
+	}
+
+	private static class LinkMap extends AbstractMap<Integer, LemmaLinkType> {
+		private final int[] keys;
+		private final LemmaLinkType[] types;
+		private final int from;
+		private final int to;
+
+		LinkMap(int[] keys, LemmaLinkType[] types, int from, int to) {
+			this.keys = keys;
+			this.types = types;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOf(key) >= 0;
+		}
+
+		@Override
+		public LemmaLinkType get(Object key) {
+			int i = indexOf(key);
+			return i >= 0 ? types[i] : null;
+		}
+
+		private int indexOf(Object key) {
+			if (!(key instanceof Integer)) {
+				return -1;
+			}
+			int i = Arrays.binarySearch(keys, from, to, (Integer) key);
+			return i >= 0 ? i : -1;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, LemmaLinkType>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, LemmaLinkType>>() {
+				@Override
+				public int size() {
+					return to - from;
+				}
+
+				@Override
+				public Iterator<Map.Entry<Integer, LemmaLinkType>> iterator() {
+					return new Iterator<Map.Entry<Integer, LemmaLinkType>>() {
+						private int cur = from;
+
+						@Override
+						public boolean hasNext() {
+							return cur < to;
+						}
+
+						@Override
+						public Map.Entry<Integer, LemmaLinkType> next() {
+							if (cur >= to) {
+								throw new NoSuchElementException();
+							}
+							Map.Entry<Integer, LemmaLinkType> result =
+									Maps.immutableEntry(keys[cur], types[cur]);
+							cur++;
+							return result;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+	}
+}
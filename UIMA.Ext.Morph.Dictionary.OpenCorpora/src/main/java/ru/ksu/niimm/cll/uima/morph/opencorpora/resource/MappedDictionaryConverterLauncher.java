@@ -0,0 +1,37 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import java.io.File;
+
+import ru.kfu.itis.issst.util.cli.FileValueValidator;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+/**
+ * Converts a Java-serialized dictionary into the format of
+ * {@link MappedMorphDictionary}.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MappedDictionaryConverterLauncher {
+
+	@Parameter(names = { "-i", "--input-file" }, required = true, validateValueWith = FileValueValidator.class)
+	private File serializedDictFile;
+	@Parameter(names = { "-o", "--output-file" }, required = true)
+	private File outputFile;
+
+	private MappedDictionaryConverterLauncher() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		MappedDictionaryConverterLauncher cfg = new MappedDictionaryConverterLauncher();
+		new JCommander(cfg, args);
+
+		MorphDictionaryImpl dict = DictionaryDeserializer.from(cfg.serializedDictFile);
+		MappedDictionaryWriter.write(dict, cfg.outputFile);
+	}
+}
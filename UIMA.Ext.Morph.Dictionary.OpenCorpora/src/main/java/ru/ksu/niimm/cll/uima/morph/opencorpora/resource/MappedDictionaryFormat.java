@@ -0,0 +1,60 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+/**
+ * Layout of a binary dictionary file that is read by
+ * {@link MappedMorphDictionary} and written by {@link MappedDictionaryWriter}.
+ * All numbers are big-endian.
+ * 
+ * <pre>
+ * header:      int magic, int format version, int[SECTION_COUNT] section offsets
+ * META:        UTF version, UTF revision
+ * GRAM_MODEL:  int length, java-serialized GramModel
+ * LINK_TYPES:  int count, (short id, UTF name)*
+ * GRAM_SETS:   int count, int words per set, long[count * words]
+ * TAGS:        int count, int[count] gram set indexes of complete tags
+ * LEMMAS:      int count, (int id, int gram set, int char offset, int char length)* sorted by id
+ * LINKS:       int count, (int from, int to, int type)* sorted by (from, to),
+ *              int[count] link indexes sorted by (to, from)
+ * WF_KEYS:     int count, (int char offset, int char length, int payload offset, int payload length)*
+ *              sorted by reversed wordform string
+ * WF_PAYLOADS: int count, (int lemma id, int gram set)*
+ * CHARS:       int count, char[count]
+ * </pre>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class MappedDictionaryFormat {
+
+	static final int MAGIC = 0x55584D44;
+	static final int FORMAT_VERSION = 1;
+
+	static final int SECTION_META = 0;
+	static final int SECTION_GRAM_MODEL = 1;
+	static final int SECTION_LINK_TYPES = 2;
+	static final int SECTION_GRAM_SETS = 3;
+	static final int SECTION_TAGS = 4;
+	static final int SECTION_LEMMAS = 5;
+	static final int SECTION_LINKS = 6;
+	static final int SECTION_WF_KEYS = 7;
+	static final int SECTION_WF_PAYLOADS = 8;
+	static final int SECTION_CHARS = 9;
+	static final int SECTION_COUNT = 10;
+
+	static final int HEADER_SIZE = 8 + 4 * SECTION_COUNT;
+
+	static final int LEMMA_RECORD_SIZE = 16;
+	static final int LINK_RECORD_SIZE = 12;
+	static final int WF_KEY_RECORD_SIZE = 16;
+	static final int WF_PAYLOAD_RECORD_SIZE = 8;
+
+	static int getGramSetWords(int grammemMaxNumId) {
+		return (grammemMaxNumId + 64) / 64;
+	}
+
+	private MappedDictionaryFormat() {
+	}
+}
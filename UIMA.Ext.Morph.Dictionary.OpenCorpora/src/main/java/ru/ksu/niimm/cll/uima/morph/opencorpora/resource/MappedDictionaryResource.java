@@ -0,0 +1,94 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static ru.ksu.niimm.cll.uima.morph.opencorpora.resource.ConfigurableSerializedDictionaryResource.makeCachingDictionary;
+import static ru.ksu.niimm.cll.uima.morph.opencorpora.resource.ConfigurableSerializedDictionaryResource.makePredictor;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uimafit.component.initialize.ConfigurationParameterInitializer;
+import org.uimafit.descriptor.ConfigurationParameter;
+
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModel;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModelHolder;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionary;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionaryHolder;
+
+/**
+ * {@link MorphDictionaryHolder} that maps a dictionary file written by
+ * {@link MappedDictionaryWriter}. The data resource URL must point to a local
+ * file.
+ * 
+ * @author Rinat Gareev
+ * 
+ */
+public class MappedDictionaryResource implements MorphDictionaryHolder, GramModelHolder,
+		SharedResourceObject {
+
+	public static final String PARAM_PREDICTOR_CLASS_NAME =
+			ConfigurableSerializedDictionaryResource.PARAM_PREDICTOR_CLASS_NAME;
+	public static final String PARAM_LOOKUP_CACHE_SIZE =
+			ConfigurableSerializedDictionaryResource.PARAM_LOOKUP_CACHE_SIZE;
+	private static final Logger log = LoggerFactory.getLogger(MappedDictionaryResource.class);
+
+	// config fields
+	@ConfigurationParameter(name = PARAM_PREDICTOR_CLASS_NAME)
+	private String wfPredictorClassName;
+	@ConfigurationParameter(name = PARAM_LOOKUP_CACHE_SIZE, defaultValue = "0")
+	private int lookupCacheSize;
+	// state fields
+	private MappedMorphDictionary mappedDict;
+	private MorphDictionary dict;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void load(DataResource dr) throws ResourceInitializationException {
+		ConfigurationParameterInitializer.initialize(this, dr);
+		File dictFile = FileUtils.toFile(dr.getUrl());
+		if (dictFile == null) {
+			throw new ResourceInitializationException(new IllegalArgumentException(
+					String.format("%s is not a local file URL", dr.getUrl())));
+		}
+		try {
+			mappedDict = MappedMorphDictionary.open(dictFile);
+			CachingMorphDictionary cachingDict = makeCachingDictionary(mappedDict, lookupCacheSize);
+			if (wfPredictorClassName != null) {
+				@SuppressWarnings("unchecked")
+				Class<? extends WordformPredictor> wfPredictorClass = (Class<? extends WordformPredictor>)
+						Class.forName(wfPredictorClassName);
+				WordformPredictor wfPredictor = makePredictor(wfPredictorClass, mappedDict);
+				log.info("{} was set in mapped MorphDictionary",
+						wfPredictor.getClass().getSimpleName());
+				if (cachingDict != null) {
+					wfPredictor = cachingDict.countPredictorInvocations(wfPredictor);
+				}
+				mappedDict.setWfPredictor(wfPredictor);
+			} else {
+				log.info("A wordform predictor has not been set in mapped MorphDictionary");
+			}
+			dict = cachingDict != null ? cachingDict : mappedDict;
+		} catch (Exception e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	@Override
+	public MorphDictionary getDictionary() {
+		return dict;
+	}
+
+	@Override
+	public GramModel getGramModel() {
+		return dict.getGramModel();
+	}
+}
@@ -0,0 +1,360 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static java.lang.System.currentTimeMillis;
+import static ru.ksu.niimm.cll.uima.morph.opencorpora.resource.MappedDictionaryFormat.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.kfu.itis.issst.uima.morph.model.Lemma;
+import ru.kfu.itis.issst.uima.morph.model.LemmaLinkType;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Writes a complete {@link MorphDictionaryImpl} into the binary format that
+ * is read by {@link MappedMorphDictionary}. See {@link MappedDictionaryFormat}
+ * for the file layout.
+ * <p>
+ * Pseudo-lemmas (i.e., lemmas with negative ids that are added by a
+ * {@link WordformPredictor}) are not written.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MappedDictionaryWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(MappedDictionaryWriter.class);
+	private static final int WRITING_BUFFER_SIZE = 8192 * 8;
+
+	public static void write(MorphDictionaryImpl dict, File outFile) throws IOException {
+		new MappedDictionaryWriter(dict).writeTo(outFile);
+	}
+
+	// config fields
+	private final MorphDictionaryImpl dict;
+	private final int gramSetWords;
+	// state fields
+	private final Map<BitSet, Integer> gramSetIndex = Maps.newLinkedHashMap();
+	private List<Lemma> lemmas;
+	private List<int[]> links;
+	private Integer[] linkInIndex;
+	private int wfKeyCount;
+	private int wfKeyCharCount;
+	private int wfPayloadCount;
+	private int lemmaCharCount;
+
+	private MappedDictionaryWriter(MorphDictionaryImpl dict) {
+		this.dict = dict;
+		this.gramSetWords = getGramSetWords(dict.getGramModel().getGrammemMaxNumId());
+	}
+
+	private void writeTo(File outFile) throws IOException {
+		log.info("About to write MorphDictionary into {}...", outFile);
+		long timeBefore = currentTimeMillis();
+		prepare();
+		// small sections are prepared in memory
+		byte[] metaBytes = toMetaBytes();
+		byte[] gramModelBytes = toGramModelBytes();
+		byte[] linkTypesBytes = toLinkTypesBytes();
+		long[] sectionSizes = new long[SECTION_COUNT];
+		sectionSizes[SECTION_META] = metaBytes.length;
+		sectionSizes[SECTION_GRAM_MODEL] = 4 + gramModelBytes.length;
+		sectionSizes[SECTION_LINK_TYPES] = linkTypesBytes.length;
+		sectionSizes[SECTION_GRAM_SETS] = 8 + 8L * gramSetIndex.size() * gramSetWords;
+		sectionSizes[SECTION_TAGS] = 4 + 4L * dict.getTagset().size();
+		sectionSizes[SECTION_LEMMAS] = 4 + (long) LEMMA_RECORD_SIZE * lemmas.size();
+		sectionSizes[SECTION_LINKS] = 4 + (long) (LINK_RECORD_SIZE + 4) * links.size();
+		sectionSizes[SECTION_WF_KEYS] = 4 + (long) WF_KEY_RECORD_SIZE * wfKeyCount;
+		sectionSizes[SECTION_WF_PAYLOADS] = 4 + (long) WF_PAYLOAD_RECORD_SIZE * wfPayloadCount;
+		sectionSizes[SECTION_CHARS] = 4 + 2L * (lemmaCharCount + wfKeyCharCount);
+		long[] sectionOffsets = new long[SECTION_COUNT];
+		long curOffset = HEADER_SIZE;
+		for (int s = 0; s < SECTION_COUNT; s++) {
+			sectionOffsets[s] = curOffset;
+			curOffset += sectionSizes[s];
+		}
+		if (curOffset > Integer.MAX_VALUE) {
+			throw new IllegalStateException(String.format(
+					"Dictionary size %s exceeds the limit of a mapped file", curOffset));
+		}
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				FileUtils.openOutputStream(outFile), WRITING_BUFFER_SIZE));
+		try {
+			// header
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			for (long so : sectionOffsets) {
+				out.writeInt((int) so);
+			}
+			// META, GRAM_MODEL, LINK_TYPES
+			out.write(metaBytes);
+			out.writeInt(gramModelBytes.length);
+			out.write(gramModelBytes);
+			out.write(linkTypesBytes);
+			// GRAM_SETS
+			out.writeInt(gramSetIndex.size());
+			out.writeInt(gramSetWords);
+			for (BitSet gs : gramSetIndex.keySet()) {
+				for (long word : toWords(gs)) {
+					out.writeLong(word);
+				}
+			}
+			// TAGS
+			out.writeInt(dict.getTagset().size());
+			for (BitSet tag : dict.getTagset()) {
+				out.writeInt(getGramSetIndex(tag));
+			}
+			// LEMMAS
+			out.writeInt(lemmas.size());
+			int charOffset = 0;
+			for (Lemma l : lemmas) {
+				out.writeInt(l.getId());
+				out.writeInt(getGramSetIndex(l.getGrammems()));
+				out.writeInt(charOffset);
+				out.writeInt(l.getString().length());
+				charOffset += l.getString().length();
+			}
+			// LINKS
+			out.writeInt(links.size());
+			for (int[] link : links) {
+				out.writeInt(link[0]);
+				out.writeInt(link[1]);
+				out.writeInt(link[2]);
+			}
+			for (Integer linkIdx : linkInIndex) {
+				out.writeInt(linkIdx);
+			}
+			// WF_KEYS
+			out.writeInt(wfKeyCount);
+			final int[] charOffsetHolder = { charOffset };
+			final int[] payloadOffsetHolder = { 0 };
+			visitWordforms(new IOWordformVisitor() {
+				@Override
+				protected void visitIO(CharSequence reversedKey, Iterable<Wordform> wordforms)
+						throws IOException {
+					int payloadLength = Iterables.size(wordforms);
+					out.writeInt(charOffsetHolder[0]);
+					out.writeInt(reversedKey.length());
+					out.writeInt(payloadOffsetHolder[0]);
+					out.writeInt(payloadLength);
+					charOffsetHolder[0] += reversedKey.length();
+					payloadOffsetHolder[0] += payloadLength;
+				}
+			});
+			// WF_PAYLOADS
+			out.writeInt(wfPayloadCount);
+			visitWordforms(new IOWordformVisitor() {
+				@Override
+				protected void visitIO(CharSequence reversedKey, Iterable<Wordform> wordforms)
+						throws IOException {
+					for (Wordform wf : wordforms) {
+						out.writeInt(wf.getLemmaId());
+						out.writeInt(getGramSetIndex(wf.getGrammems()));
+					}
+				}
+			});
+			// CHARS
+			out.writeInt(lemmaCharCount + wfKeyCharCount);
+			for (Lemma l : lemmas) {
+				out.writeChars(l.getString());
+			}
+			visitWordforms(new IOWordformVisitor() {
+				@Override
+				protected void visitIO(CharSequence reversedKey, Iterable<Wordform> wordforms)
+						throws IOException {
+					for (int i = 0; i < reversedKey.length(); i++) {
+						out.writeChar(reversedKey.charAt(i));
+					}
+				}
+			});
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+		if (outFile.length() != curOffset) {
+			throw new IllegalStateException(String.format(
+					"Size of the written file %s differs from expected %s",
+					outFile.length(), curOffset));
+		}
+		log.info("Writing of MorphDictionary finished in {} ms.\nOutput size: {} bytes",
+				currentTimeMillis() - timeBefore, curOffset);
+	}
+
+	private void prepare() {
+		// lemmas
+		lemmas = Lists.newArrayListWithExpectedSize(dict.getLemmas().size());
+		for (Lemma l : dict.getLemmas()) {
+			if (l.getId() < 0) {
+				// skip pseudo-lemmas
+				continue;
+			}
+			lemmas.add(l);
+			registerGramSet(l.getGrammems());
+			lemmaCharCount += l.getString().length();
+		}
+		Collections.sort(lemmas, new Comparator<Lemma>() {
+			@Override
+			public int compare(Lemma first, Lemma second) {
+				return compareInts(first.getId(), second.getId());
+			}
+		});
+		// links, ordered by source and target as lemmas are sorted by id and
+		// outlinks are sorted by target
+		links = Lists.newArrayList();
+		for (Lemma l : lemmas) {
+			for (Map.Entry<Integer, LemmaLinkType> link : dict.getLemmaOutlinks(l.getId()).entrySet()) {
+				links.add(new int[] { l.getId(), link.getKey(), link.getValue().getId() });
+			}
+		}
+		linkInIndex = new Integer[links.size()];
+		for (int i = 0; i < linkInIndex.length; i++) {
+			linkInIndex[i] = i;
+		}
+		Arrays.sort(linkInIndex, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				int[] firstLink = links.get(first);
+				int[] secondLink = links.get(second);
+				int result = compareInts(firstLink[1], secondLink[1]);
+				return result != 0 ? result : compareInts(firstLink[0], secondLink[0]);
+			}
+		});
+		// tags
+		for (BitSet tag : dict.getTagset()) {
+			registerGramSet(tag);
+		}
+		// wordforms
+		dict.visitWordforms(new WordformIndexVisitor() {
+			@Override
+			public void visit(CharSequence reversedKey, Iterable<Wordform> wordforms) {
+				wfKeyCount++;
+				wfKeyCharCount += reversedKey.length();
+				for (Wordform wf : wordforms) {
+					wfPayloadCount++;
+					registerGramSet(wf.getGrammems());
+				}
+			}
+		});
+		log.info("Gram sets: {}, lemmas: {}, lemma links: {}, wordform strings: {}, wordforms: {}",
+				new Object[] { gramSetIndex.size(), lemmas.size(), links.size(),
+						wfKeyCount, wfPayloadCount });
+	}
+
+	private byte[] toMetaBytes() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(Strings.nullToEmpty(dict.getVersion()));
+		out.writeUTF(Strings.nullToEmpty(dict.getRevision()));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private byte[] toGramModelBytes() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(dict.getGramModel());
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private byte[] toLinkTypesBytes() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(dict.getLemmaLinkTypes().size());
+		for (LemmaLinkType llt : dict.getLemmaLinkTypes()) {
+			out.writeShort(llt.getId());
+			out.writeUTF(llt.getName());
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private void registerGramSet(BitSet gs) {
+		if (!gramSetIndex.containsKey(gs)) {
+			gramSetIndex.put(gs, gramSetIndex.size());
+		}
+	}
+
+	private int getGramSetIndex(BitSet gs) {
+		Integer result = gramSetIndex.get(gs);
+		if (result == null) {
+			throw new IllegalStateException("Unregistered gram set: " + gs);
+		}
+		return result;
+	}
+
+	private long[] toWords(BitSet gs) {
+		long[] words = new long[gramSetWords];
+		for (int i = gs.nextSetBit(0); i >= 0; i = gs.nextSetBit(i + 1)) {
+			if (i >= gramSetWords * 64) {
+				throw new IllegalStateException(String.format(
+						"Gram set %s exceeds the grammeme max num id", gs));
+			}
+			words[i >>> 6] |= 1L << i;
+		}
+		return words;
+	}
+
+	private void visitWordforms(IOWordformVisitor visitor) throws IOException {
+		try {
+			dict.visitWordforms(visitor);
+		} catch (WriteFailure e) {
+			throw e.getCause();
+		}
+	}
+
+	private static int compareInts(int first, int second) {
+		return first < second ? -1 : (first == second ? 0 : 1);
+	}
+
+	private static abstract class IOWordformVisitor implements WordformIndexVisitor {
+		@Override
+		public final void visit(CharSequence reversedKey, Iterable<Wordform> wordforms) {
+			try {
+				visitIO(reversedKey, wordforms);
+			} catch (IOException e) {
+				throw new WriteFailure(e);
+			}
+		}
+
+		protected abstract void visitIO(CharSequence reversedKey, Iterable<Wordform> wordforms)
+				throws IOException;
+	}
+
+	private static class WriteFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		WriteFailure(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
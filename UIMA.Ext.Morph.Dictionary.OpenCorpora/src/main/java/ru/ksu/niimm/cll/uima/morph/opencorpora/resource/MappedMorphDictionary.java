@@ -0,0 +1,522 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static java.lang.System.currentTimeMillis;
+import static ru.ksu.niimm.cll.uima.morph.opencorpora.resource.MappedDictionaryFormat.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModel;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionary;
+import ru.kfu.itis.issst.uima.morph.model.Lemma;
+import ru.kfu.itis.issst.uima.morph.model.LemmaLinkType;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Read-only {@link MorphDictionary} implementation that is backed by a
+ * memory-mapped file written by {@link MappedDictionaryWriter}.
+ * <p>
+ * Wordforms, lemmas and their grammeme bitsets are read from the mapped pages
+ * on each request, so the heap holds only a grammatical model, lemma link
+ * types and a tagset. Several JVMs mapping the same file share its pages
+ * through the OS page cache. Only absolute reads are performed on the mapped
+ * buffer, so an instance can be shared by several threads.
+ * </p>
+ * <p>
+ * {@link #addLemma(Lemma)} is supported only to register pseudo-lemmas of a
+ * {@link WordformPredictor}. These are kept in a heap overlay.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MappedMorphDictionary implements MorphDictionary {
+
+	private static final Logger log = LoggerFactory.getLogger(MappedMorphDictionary.class);
+
+	public static MappedMorphDictionary open(File file) throws IOException {
+		if (!file.isFile()) {
+			throw new IllegalArgumentException(String.format(
+					"%s is not existing file", file));
+		}
+		log.info("About to map MorphDictionary from {}...", file);
+		long timeBefore = currentTimeMillis();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedMorphDictionary result;
+		try {
+			FileChannel fc = raf.getChannel();
+			// the mapping remains valid after the channel is closed
+			result = new MappedMorphDictionary(fc.map(MapMode.READ_ONLY, 0, fc.size()));
+		} finally {
+			IOUtils.closeQuietly(raf);
+		}
+		log.info("Mapping of MorphDictionary finished in {} ms", currentTimeMillis() - timeBefore);
+		return result;
+	}
+
+	// state fields
+	private final ByteBuffer buf;
+	private final String version;
+	private final String revision;
+	private final GramModel gramModel;
+	private final Map<Short, LemmaLinkType> lemmaLinkTypeMap;
+	// set of complete tags (lex + wordform) seen in stored wordforms
+	private final Set<BitSet> tagset;
+	// section offsets and sizes
+	private final int gramSetsOffset;
+	private final int gramSetWords;
+	private final int lemmasOffset;
+	private final int lemmaCount;
+	private final int linksOffset;
+	private final int linkCount;
+	private final int linkInIndexOffset;
+	private final int wfKeysOffset;
+	private final int wfKeyCount;
+	private final int wfPayloadsOffset;
+	private final int charsOffset;
+	// pseudo-lemmas
+	private final ConcurrentMap<Integer, Lemma> addedLemmaMap = Maps.newConcurrentMap();
+	private volatile WordformPredictor wfPredictor;
+
+	MappedMorphDictionary(ByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.getInt(0) != MAGIC) {
+			throw new IllegalStateException("The file is not a mapped dictionary");
+		}
+		if (buf.getInt(4) != FORMAT_VERSION) {
+			throw new IllegalStateException(String.format(
+					"Unsupported mapped dictionary format version: %s", buf.getInt(4)));
+		}
+		// META
+		DataInputStream metaIn = sectionStream(SECTION_META);
+		version = Strings.emptyToNull(metaIn.readUTF());
+		revision = Strings.emptyToNull(metaIn.readUTF());
+		// GRAM_MODEL
+		int gmOffset = sectionOffset(SECTION_GRAM_MODEL);
+		byte[] gmBytes = new byte[buf.getInt(gmOffset)];
+		ByteBuffer gmBuf = buf.duplicate();
+		gmBuf.position(gmOffset + 4);
+		gmBuf.get(gmBytes);
+		ObjectInputStream gmIn = new ObjectInputStream(new ByteArrayInputStream(gmBytes));
+		try {
+			gramModel = (GramModel) gmIn.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			IOUtils.closeQuietly(gmIn);
+		}
+		// LINK_TYPES
+		DataInputStream linkTypesIn = sectionStream(SECTION_LINK_TYPES);
+		int linkTypeCount = linkTypesIn.readInt();
+		ImmutableMap.Builder<Short, LemmaLinkType> linkTypesBuilder = ImmutableMap.builder();
+		for (int i = 0; i < linkTypeCount; i++) {
+			short id = linkTypesIn.readShort();
+			linkTypesBuilder.put(id, new LemmaLinkType(id, linkTypesIn.readUTF()));
+		}
+		lemmaLinkTypeMap = linkTypesBuilder.build();
+		// GRAM_SETS
+		gramSetsOffset = sectionOffset(SECTION_GRAM_SETS) + 8;
+		gramSetWords = buf.getInt(gramSetsOffset - 4);
+		// TAGS
+		int tagsOffset = sectionOffset(SECTION_TAGS);
+		int tagCount = buf.getInt(tagsOffset);
+		ImmutableSet.Builder<BitSet> tagsetBuilder = ImmutableSet.builder();
+		for (int i = 0; i < tagCount; i++) {
+			tagsetBuilder.add(readGramSet(buf.getInt(tagsOffset + 4 + 4 * i)));
+		}
+		tagset = tagsetBuilder.build();
+		// LEMMAS
+		lemmasOffset = sectionOffset(SECTION_LEMMAS) + 4;
+		lemmaCount = buf.getInt(lemmasOffset - 4);
+		// LINKS
+		linksOffset = sectionOffset(SECTION_LINKS) + 4;
+		linkCount = buf.getInt(linksOffset - 4);
+		linkInIndexOffset = linksOffset + LINK_RECORD_SIZE * linkCount;
+		// WORDFORMS
+		wfKeysOffset = sectionOffset(SECTION_WF_KEYS) + 4;
+		wfKeyCount = buf.getInt(wfKeysOffset - 4);
+		wfPayloadsOffset = sectionOffset(SECTION_WF_PAYLOADS) + 4;
+		charsOffset = sectionOffset(SECTION_CHARS) + 4;
+		log.info("Mapped dictionary has {} lemmas and {} wordform strings", lemmaCount, wfKeyCount);
+	}
+
+	public void setWfPredictor(WordformPredictor wfPredictor) {
+		this.wfPredictor = wfPredictor;
+	}
+
+	@Override
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public String getRevision() {
+		return revision;
+	}
+
+	@Override
+	public GramModel getGramModel() {
+		return gramModel;
+	}
+
+	@Override
+	public List<Wordform> getEntries(String str) {
+		if (str.isEmpty()) {
+			return ImmutableList.of();
+		}
+		int strLength = str.length();
+		int keyIdx = lowerBound(str, strLength);
+		int matchLength = 0;
+		if (keyIdx < wfKeyCount) {
+			matchLength = commonPrefixLength(keyIdx, str);
+		}
+		if (keyIdx > 0) {
+			matchLength = Math.max(matchLength, commonPrefixLength(keyIdx - 1, str));
+		}
+		if (matchLength == strLength && keyIdx < wfKeyCount && keyLength(keyIdx) == strLength) {
+			// exact match
+			int payloadOffset = keyPayloadOffset(keyIdx);
+			int payloadEnd = payloadOffset + keyPayloadLength(keyIdx);
+			List<Wordform> result = Lists.newArrayListWithCapacity(payloadEnd - payloadOffset);
+			for (int p = payloadOffset; p < payloadEnd; p++) {
+				result.add(readWordform(p));
+			}
+			return result;
+		}
+		WordformPredictor wfPredictor = this.wfPredictor;
+		if (wfPredictor == null) {
+			return ImmutableList.of();
+		}
+		Iterable<Wordform> similarWordforms;
+		if (matchLength == 0) {
+			similarWordforms = ImmutableList.of();
+		} else {
+			// all entries that share the longest matched suffix
+			int fromKey = lowerBound(str, matchLength);
+			int toKey = upperBound(str, matchLength);
+			int payloadEnd = keyPayloadOffset(toKey - 1) + keyPayloadLength(toKey - 1);
+			similarWordforms = new PayloadRange(keyPayloadOffset(fromKey), payloadEnd);
+		}
+		return ImmutableList.copyOf(wfPredictor.predict(str,
+				new WordformTSTSearchResult(false, similarWordforms)));
+	}
+
+	@Override
+	public LemmaLinkType getLemmaLinkType(short id) {
+		return lemmaLinkTypeMap.get(id);
+	}
+
+	@Override
+	public Lemma getLemma(int lemmaId) {
+		int lemmaIdx = findLemma(lemmaId);
+		if (lemmaIdx >= 0) {
+			int recOffset = lemmasOffset + LEMMA_RECORD_SIZE * lemmaIdx;
+			Lemma result = new Lemma(
+					readString(buf.getInt(recOffset + 8), buf.getInt(recOffset + 12)),
+					readGramSet(buf.getInt(recOffset + 4)));
+			result.setId(lemmaId);
+			return result;
+		}
+		Lemma result = addedLemmaMap.get(lemmaId);
+		if (result == null) {
+			throw new IllegalStateException(String.format(
+					"No lemma with id = %s", lemmaId));
+		}
+		return result;
+	}
+
+	@Override
+	public void addLemma(Lemma lemma) {
+		if (findLemma(lemma.getId()) >= 0 || addedLemmaMap.putIfAbsent(lemma.getId(), lemma) != null) {
+			throw new IllegalStateException(String.format(
+					"Duplicate lemma id - %s", lemma.getId()));
+		}
+	}
+
+	@Override
+	public int getLemmaMaxId() {
+		int max = Integer.MIN_VALUE;
+		if (lemmaCount > 0) {
+			max = lemmaId(lemmaCount - 1);
+		}
+		for (Integer curId : addedLemmaMap.keySet()) {
+			if (curId > max) {
+				max = curId;
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public Map<Integer, LemmaLinkType> getLemmaOutlinks(int lemmaId) {
+		// find the first link with 'from' == lemmaId
+		int low = 0;
+		int high = linkCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (linkFrom(mid) < lemmaId) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		Map<Integer, LemmaLinkType> result = Maps.newLinkedHashMap();
+		for (int l = low; l < linkCount && linkFrom(l) == lemmaId; l++) {
+			result.put(linkTo(l), linkType(l));
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	@Override
+	public Map<Integer, LemmaLinkType> getLemmaInlinks(int lemmaId) {
+		// find the first link with 'to' == lemmaId in the in-index
+		int low = 0;
+		int high = linkCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (linkTo(linkInIndex(mid)) < lemmaId) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		Map<Integer, LemmaLinkType> result = Maps.newLinkedHashMap();
+		for (int i = low; i < linkCount; i++) {
+			int l = linkInIndex(i);
+			if (linkTo(l) != lemmaId) {
+				break;
+			}
+			result.put(linkFrom(l), linkType(l));
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	@Override
+	public boolean containsGramSet(BitSet tag) {
+		return tagset.contains(tag);
+	}
+
+	private int sectionOffset(int section) {
+		return buf.getInt(8 + 4 * section);
+	}
+
+	private DataInputStream sectionStream(int section) {
+		int offset = sectionOffset(section);
+		int end = section + 1 < SECTION_COUNT ? sectionOffset(section + 1) : buf.capacity();
+		byte[] bytes = new byte[end - offset];
+		ByteBuffer sectionBuf = buf.duplicate();
+		sectionBuf.position(offset);
+		sectionBuf.get(bytes);
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	private BitSet readGramSet(int gramSetIdx) {
+		int offset = gramSetsOffset + 8 * gramSetWords * gramSetIdx;
+		BitSet result = new BitSet(64 * gramSetWords);
+		for (int w = 0; w < gramSetWords; w++) {
+			long word = buf.getLong(offset + 8 * w);
+			while (word != 0) {
+				result.set(64 * w + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return result;
+	}
+
+	private String readString(int charOffset, int length) {
+		char[] chars = new char[length];
+		int offset = charsOffset + 2 * charOffset;
+		for (int i = 0; i < length; i++) {
+			chars[i] = buf.getChar(offset + 2 * i);
+		}
+		return new String(chars);
+	}
+
+	private Wordform readWordform(int payloadIdx) {
+		int offset = wfPayloadsOffset + WF_PAYLOAD_RECORD_SIZE * payloadIdx;
+		return new Wordform(buf.getInt(offset), readGramSet(buf.getInt(offset + 4)));
+	}
+
+	// lemma records
+
+	private int lemmaId(int lemmaIdx) {
+		return buf.getInt(lemmasOffset + LEMMA_RECORD_SIZE * lemmaIdx);
+	}
+
+	private int findLemma(int lemmaId) {
+		int low = 0;
+		int high = lemmaCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = lemmaId(mid);
+			if (midId < lemmaId) {
+				low = mid + 1;
+			} else if (midId > lemmaId) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	// link records
+
+	private int linkFrom(int linkIdx) {
+		return buf.getInt(linksOffset + LINK_RECORD_SIZE * linkIdx);
+	}
+
+	private int linkTo(int linkIdx) {
+		return buf.getInt(linksOffset + LINK_RECORD_SIZE * linkIdx + 4);
+	}
+
+	private LemmaLinkType linkType(int linkIdx) {
+		return lemmaLinkTypeMap.get((short) buf.getInt(linksOffset + LINK_RECORD_SIZE * linkIdx + 8));
+	}
+
+	private int linkInIndex(int i) {
+		return buf.getInt(linkInIndexOffset + 4 * i);
+	}
+
+	// wordform key records
+
+	private int keyCharOffset(int keyIdx) {
+		return buf.getInt(wfKeysOffset + WF_KEY_RECORD_SIZE * keyIdx);
+	}
+
+	private int keyLength(int keyIdx) {
+		return buf.getInt(wfKeysOffset + WF_KEY_RECORD_SIZE * keyIdx + 4);
+	}
+
+	private int keyPayloadOffset(int keyIdx) {
+		return buf.getInt(wfKeysOffset + WF_KEY_RECORD_SIZE * keyIdx + 8);
+	}
+
+	private int keyPayloadLength(int keyIdx) {
+		return buf.getInt(wfKeysOffset + WF_KEY_RECORD_SIZE * keyIdx + 12);
+	}
+
+	/**
+	 * Compare a key with the reversed prefix of the given string.
+	 * 
+	 * @return 0 if the key starts with the reversed prefix of the length
+	 *         prefixLength, otherwise - the sign of their lexicographic
+	 *         comparison.
+	 */
+	private int compareKey(int keyIdx, String str, int prefixLength) {
+		int keyOffset = charsOffset + 2 * keyCharOffset(keyIdx);
+		int keyLength = keyLength(keyIdx);
+		int strLast = str.length() - 1;
+		int n = Math.min(keyLength, prefixLength);
+		for (int i = 0; i < n; i++) {
+			int charComp = buf.getChar(keyOffset + 2 * i) - str.charAt(strLast - i);
+			if (charComp != 0) {
+				return charComp;
+			}
+		}
+		return keyLength < prefixLength ? -1 : 0;
+	}
+
+	private int commonPrefixLength(int keyIdx, String str) {
+		int keyOffset = charsOffset + 2 * keyCharOffset(keyIdx);
+		int n = Math.min(keyLength(keyIdx), str.length());
+		int strLast = str.length() - 1;
+		int i = 0;
+		while (i < n && buf.getChar(keyOffset + 2 * i) == str.charAt(strLast - i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return index of the first key that is not less than the reversed prefix
+	 */
+	private int lowerBound(String str, int prefixLength) {
+		int low = 0;
+		int high = wfKeyCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareKey(mid, str, prefixLength) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return index of the first key that is greater than the reversed prefix
+	 *         and does not start with it
+	 */
+	private int upperBound(String str, int prefixLength) {
+		int low = 0;
+		int high = wfKeyCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareKey(mid, str, prefixLength) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Lazy view on a contiguous range of wordform payloads.
+	 */
+	private class PayloadRange implements Iterable<Wordform> {
+		private final int from;
+		private final int to;
+
+		PayloadRange(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Iterator<Wordform> iterator() {
+			return new AbstractIterator<Wordform>() {
+				private int cur = from;
+
+				@Override
+				protected Wordform computeNext() {
+					if (cur >= to) {
+						return endOfData();
+					}
+					return readWordform(cur++);
+				}
+			};
+		}
+	}
+}
@@ -4,11 +4,12 @@
 package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
 
 import static com.google.common.collect.ImmutableMap.copyOf;
-import static com.google.common.collect.Tables.unmodifiableTable;
+import static java.lang.System.currentTimeMillis;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.event.EventListenerSupport;
 import org.slf4j.Logger;
@@ -24,8 +25,6 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
 
 /**
  * @author Rinat Gareev (Kazan Federal University)
@@ -33,7 +32,7 @@ import com.google.common.collect.TreeBasedTable;
  */
 public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 
-	private static final long serialVersionUID = -5575575933753079145L;
+	private static final long serialVersionUID = 4602351878212497213L;
 	private static final Logger log = LoggerFactory.getLogger(MorphDictionaryImpl.class);
 
 	// meta fields
@@ -42,15 +41,22 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 	//
 	private GramModel gramModel;
 	//
-	private Map<Integer, Lemma> lemmaMap = Maps.newHashMap();
+	// dictionary lemmas indexed by their ids
+	private Lemma[] lemmas = new Lemma[0];
+	private int lemmaCount;
+	private int lemmaMaxId = Integer.MIN_VALUE;
+	// pseudo-lemmas (with negative ids) registered by a wordform predictor
+	private transient ConcurrentMap<Integer, Lemma> pseudoLemmaMap = Maps.newConcurrentMap();
 	private Map<Short, LemmaLinkType> lemmaLinkTypeMap = Maps.newHashMap();
-	// <from, to, type>
-	private Table<Integer, Integer, LemmaLinkType> lemmaLinkTable = TreeBasedTable.create();
+	private LemmaLinkTable lemmaLinkTable = new LemmaLinkTable();
 
-	private Map<BitSet, BitSet> uniqWordformGrammemsMap = Maps.newHashMap();
-	private Map<BitSet, BitSet> uniqLemmaGrammemsMap = Maps.newHashMap();
+	// can be accessed by several threads while the dictionary is being built
+	private ConcurrentMap<BitSet, BitSet> uniqWordformGrammemsMap = Maps.newConcurrentMap();
+	private ConcurrentMap<BitSet, BitSet> uniqLemmaGrammemsMap = Maps.newConcurrentMap();
 
-	private WordformTST wfByString = new WordformTST();
+	private WordformIndex wfByString = new WordformTST();
+	// is not null while a compact wordform index is being built
+	private transient WordformDAWGBuilder wfDAWGBuilder;
 	// set of complete tags (lex + wordform) seen in stored wordforms
 	private Set<BitSet> tagset = Sets.newHashSet();
 
@@ -88,8 +94,32 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 		this.wfPredictor = wfPredictor;
 	}
 
+	/**
+	 * Make this dictionary store wordforms in a {@link WordformDAWG} instead of
+	 * {@link WordformTST}. The index is built on {@link #complete()}, so
+	 * wordform lookups are not available before it. This method must be
+	 * invoked before any wordform is added.
+	 */
+	public void useCompactWordformIndex() {
+		if (complete) {
+			throw new IllegalStateException("Dictionary is complete");
+		}
+		if (wfDAWGBuilder != null) {
+			return;
+		}
+		if (wfByString instanceof WordformTST && ((WordformTST) wfByString).isEmpty()) {
+			wfByString = null;
+			wfDAWGBuilder = new WordformDAWGBuilder();
+		} else {
+			throw new IllegalStateException("Wordforms have been added already");
+		}
+	}
+
 	@Override
 	public List<Wordform> getEntries(String str) {
+		if (wfByString == null) {
+			throw new IllegalStateException("Compact wordform index is not built yet");
+		}
 		WordformTSTSearchResult result = wfByString.getLongestPrefixMatch(str);
 		if (result.isMatchExact())
 			return Lists.newArrayList(result);
@@ -117,22 +147,53 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 		return revision;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Lemmas with negative ids are treated as pseudo-lemmas of a wordform
+	 * predictor. They are kept in a separate concurrent map without locking
+	 * and are not serialized.
+	 * </p>
+	 */
 	@Override
-	public synchronized void addLemma(Lemma l) {
-		l = l.cloneWithGrammems(internLemmaGrammems(l.getGrammems()));
-		if (lemmaMap.put(l.getId(), l) != null) {
+	public void addLemma(Lemma l) {
+		if (l.getId() < 0) {
+			if (pseudoLemmaMap.putIfAbsent(l.getId(), l) != null) {
+				throw new IllegalStateException(String.format(
+						"Duplicate lemma id - %s", l.getId()));
+			}
+		} else {
+			addDictionaryLemma(l);
+		}
+	}
+
+	private synchronized void addDictionaryLemma(Lemma l) {
+		int id = l.getId();
+		if (hasLemma(id)) {
 			throw new IllegalStateException(String.format(
-					"Duplicate lemma id - %s", l.getId()));
+					"Duplicate lemma id - %s", id));
+		}
+		if (id >= lemmas.length) {
+			lemmas = Arrays.copyOf(lemmas, Math.max(id + 1, lemmas.length + (lemmas.length >> 1)));
+		}
+		lemmas[id] = l.cloneWithGrammems(internLemmaGrammems(l.getGrammems()));
+		lemmaCount++;
+		if (id > lemmaMaxId) {
+			lemmaMaxId = id;
 		}
 	}
 
+	private boolean hasLemma(int id) {
+		return id >= 0 && id < lemmas.length && lemmas[id] != null;
+	}
+
 	@Override
 	public int getLemmaMaxId() {
-		int max = Integer.MIN_VALUE;
-		for (Integer curId : lemmaMap.keySet()) {
-			if (curId == null) {
-				continue;
-			}
+		int max = lemmaMaxId;
+		if (max >= 0) {
+			return max;
+		}
+		for (Integer curId : pseudoLemmaMap.keySet()) {
 			if (curId > max) {
 				max = curId;
 			}
@@ -150,11 +211,11 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 	private transient int invalidLinkCounter = 0;
 
 	public void addLemmaLink(int from, int to, short linkTypeId) {
-		if (!lemmaMap.containsKey(from)) {
+		if (!hasLemma(from)) {
 			invalidLinkCounter++;
 			return;
 		}
-		if (!lemmaMap.containsKey(to)) {
+		if (!hasLemma(to)) {
 			invalidLinkCounter++;
 			return;
 		}
@@ -162,7 +223,7 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 		if (linkType == null) {
 			noLemmaLinkType(linkTypeId);
 		}
-		lemmaLinkTable.put(from, to, linkType);
+		lemmaLinkTable.add(from, to, linkType);
 	}
 
 	/**
@@ -175,7 +236,12 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 
 	@Override
 	public Lemma getLemma(int lemmaId) {
-		Lemma result = lemmaMap.get(lemmaId);
+		Lemma result;
+		if (lemmaId < 0) {
+			result = pseudoLemmaMap.get(lemmaId);
+		} else {
+			result = lemmaId < lemmas.length ? lemmas[lemmaId] : null;
+		}
 		if (result == null) {
 			throw new IllegalStateException(String.format(
 					"No lemma with id = %s", lemmaId));
@@ -190,17 +256,28 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 
 	@Override
 	public Map<Integer, LemmaLinkType> getLemmaOutlinks(int lemmaId) {
-		return lemmaLinkTable.row(lemmaId);
+		return lemmaLinkTable.getOutlinks(lemmaId);
 	}
 
 	@Override
 	public Map<Integer, LemmaLinkType> getLemmaInlinks(int lemmaId) {
-		return lemmaLinkTable.column(lemmaId);
+		return lemmaLinkTable.getInlinks(lemmaId);
 	}
 
 	public void addWordform(String text, Wordform wf) {
-		wf = wf.cloneWithGrammems(internWordformGrammems(wf.getGrammems()));
-		wfByString.put(text, wf);
+		addInternedWordform(text, wf.cloneWithGrammems(internWordformGrammems(wf.getGrammems())));
+	}
+
+	/**
+	 * Add a wordform whose grammeme bitset has been obtained from
+	 * {@link #internWordformGrammems(BitSet)}.
+	 */
+	void addInternedWordform(String text, Wordform wf) {
+		if (wfDAWGBuilder != null) {
+			wfDAWGBuilder.put(text, wf);
+		} else {
+			((WordformTST) wfByString).put(text, wf);
+		}
 		// add complete tag
 		BitSet tag = wf.getGrammems();
 		tag.or(getLemma(wf.getLemmaId()).getGrammems());
@@ -224,11 +301,50 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 		log.info("Unique wordform grammem bitsets count: {}", uniqWordformGrammemsMap.size());
 		log.info("Unique lemma grammem bitsets count: {}", uniqLemmaGrammemsMap.size());
 		log.info("Unique tag bitset count: {}", tagset.size());
+		if (wfDAWGBuilder != null) {
+			log.info("Building compact wordform index from {} entries...",
+					wfDAWGBuilder.getEntryCount());
+			long timeBefore = currentTimeMillis();
+			WordformDAWG dawg = wfDAWGBuilder.build();
+			wfDAWGBuilder = null;
+			log.info("Compact wordform index is built in {} ms. States: {}, transitions: {}, "
+					+ "pooled wordforms: {}",
+					new Object[] { currentTimeMillis() - timeBefore, dawg.getStateCount(),
+							dawg.getTransitionCount(), dawg.getWordformPoolSize() });
+			wfByString = dawg;
+		}
 		makeUnmodifiable();
 		//		uniqGrammemsMap = null;
 		complete = true;
 	}
 
+	// accessors for dictionary writers
+
+	Collection<Lemma> getLemmas() {
+		List<Lemma> result = Lists.newArrayListWithCapacity(lemmaCount);
+		for (Lemma l : lemmas) {
+			if (l != null) {
+				result.add(l);
+			}
+		}
+		return result;
+	}
+
+	Collection<LemmaLinkType> getLemmaLinkTypes() {
+		return lemmaLinkTypeMap.values();
+	}
+
+	Set<BitSet> getTagset() {
+		return tagset;
+	}
+
+	void visitWordforms(WordformIndexVisitor visitor) {
+		if (wfByString == null) {
+			throw new IllegalStateException("Compact wordform index is not built yet");
+		}
+		wfByString.visit(visitor);
+	}
+
 	void setVersion(String version) {
 		this.version = version;
 	}
@@ -249,33 +365,35 @@ public class MorphDictionaryImpl implements Serializable, MorphDictionary {
 	}
 
 	private void makeUnmodifiable() {
-		//	lemmaMap = unmodifiableMap(lemmaMap);
 		// ??? tagset
+		if (lemmaCount > 0 && lemmaMaxId + 1 < lemmas.length) {
+			lemmas = Arrays.copyOf(lemmas, lemmaMaxId + 1);
+		}
 		lemmaLinkTypeMap = copyOf(lemmaLinkTypeMap);
-		lemmaLinkTable = unmodifiableTable(lemmaLinkTable);
+		lemmaLinkTable.compact();
 	}
 
 	private void readObject(java.io.ObjectInputStream in)
 			throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
+		pseudoLemmaMap = Maps.newConcurrentMap();
 		complete = true;
 	}
 
-	private BitSet internWordformGrammems(BitSet grammems) {
-		if (uniqWordformGrammemsMap.containsKey(grammems)) {
-			return uniqWordformGrammemsMap.get(grammems);
-		} else {
-			uniqWordformGrammemsMap.put(grammems, grammems);
-			return grammems;
-		}
+	/**
+	 * @return the canonical instance of the given wordform grammeme bitset.
+	 *         This method is thread-safe.
+	 */
+	BitSet internWordformGrammems(BitSet grammems) {
+		return intern(uniqWordformGrammemsMap, grammems);
 	}
 
 	private BitSet internLemmaGrammems(BitSet grammems) {
-		if (uniqLemmaGrammemsMap.containsKey(grammems)) {
-			return uniqLemmaGrammemsMap.get(grammems);
-		} else {
-			uniqLemmaGrammemsMap.put(grammems, grammems);
-			return grammems;
-		}
+		return intern(uniqLemmaGrammemsMap, grammems);
+	}
+
+	private static BitSet intern(ConcurrentMap<BitSet, BitSet> uniqMap, BitSet grammems) {
+		BitSet result = uniqMap.putIfAbsent(grammems, grammems);
+		return result == null ? grammems : result;
 	}
 }
@@ -15,7 +15,8 @@ import ru.kfu.itis.issst.uima.morph.model.Wordform;
  * @author Rinat Gareev (Kazan Federal University)
  * 
  */
-public class OddLemmaFilter extends LexemePostProcessorBase {
+public class OddLemmaFilter extends LexemePostProcessorBase implements
+		ConcurrentLemmaPostProcessor {
 
 	@Override
 	public boolean process(MorphDictionary dict, Lemma.Builder lemma,
@@ -0,0 +1,323 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.kfu.itis.issst.uima.morph.model.Lemma;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+
+/**
+ * Adds parsed lemmas to a {@link MorphDictionaryImpl} through a three-stage
+ * pipeline:
+ * <ol>
+ * <li>the XML parsing thread collects lemmas into batches and submits them
+ * by {@link #submit(Lemma.Builder, Multimap)};</li>
+ * <li>worker threads apply the leading {@link ConcurrentLemmaPostProcessor}s
+ * and, if there are no other post-processors, build lemmas and intern
+ * grammeme bitsets of their wordforms;</li>
+ * <li>a single writer thread takes processed batches in the document order,
+ * applies the rest of post-processors and adds lemmas and wordforms to the
+ * dictionary.</li>
+ * </ol>
+ * So the dictionary content (including the order of wordforms) is the same
+ * as after the sequential processing. The number of batches in flight is
+ * bounded, so the parsing thread is blocked when workers or the writer fall
+ * behind.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class ParallelLemmaProcessor {
+
+	static final int DEFAULT_BATCH_SIZE = 256;
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelLemmaProcessor.class);
+
+	// config fields
+	private final MorphDictionaryImpl dict;
+	private final List<LemmaPostProcessor> concurrentPostProcessors;
+	private final List<LemmaPostProcessor> sequentialPostProcessors;
+	private final int batchSize;
+	// state fields
+	private final ExecutorService workers;
+	private final BlockingQueue<Future<List<LemmaEntry>>> batchQueue;
+	private final Thread writer;
+	private List<LemmaEntry> curBatch;
+	private volatile Throwable writerFailure;
+	private volatile boolean finished;
+	// writer stats
+	private int acceptedLemmaCounter;
+	private int rejectedLemmaCounter;
+
+	/**
+	 * @param postProcessors
+	 *            lemma post-processors in their order of application. The
+	 *            longest prefix of {@link ConcurrentLemmaPostProcessor}s is
+	 *            applied by workers.
+	 */
+	ParallelLemmaProcessor(MorphDictionaryImpl dict, List<LemmaPostProcessor> postProcessors,
+			int threadCount, int batchSize) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("threadCount = " + threadCount);
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize = " + batchSize);
+		}
+		this.dict = dict;
+		int concurrentCount = 0;
+		while (concurrentCount < postProcessors.size()
+				&& postProcessors.get(concurrentCount) instanceof ConcurrentLemmaPostProcessor) {
+			concurrentCount++;
+		}
+		this.concurrentPostProcessors = ImmutableList.copyOf(
+				postProcessors.subList(0, concurrentCount));
+		this.sequentialPostProcessors = ImmutableList.copyOf(
+				postProcessors.subList(concurrentCount, postProcessors.size()));
+		if (!sequentialPostProcessors.isEmpty()) {
+			log.info("Lemma post-processors that will be applied sequentially: {}",
+					sequentialPostProcessors);
+		}
+		this.batchSize = batchSize;
+		this.workers = Executors.newFixedThreadPool(threadCount,
+				new NamedThreadFactory("lemma-worker"));
+		this.batchQueue = new ArrayBlockingQueue<Future<List<LemmaEntry>>>(threadCount * 4);
+		this.writer = new NamedThreadFactory("lemma-writer").newThread(new Runnable() {
+			@Override
+			public void run() {
+				runWriter();
+			}
+		});
+		writer.start();
+	}
+
+	void submit(Lemma.Builder builder, Multimap<String, Wordform> wordforms) {
+		if (finished) {
+			throw new IllegalStateException("Processor is finished");
+		}
+		if (curBatch == null) {
+			curBatch = Lists.newArrayListWithCapacity(batchSize);
+		}
+		curBatch.add(new LemmaEntry(builder, wordforms));
+		if (curBatch.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Wait until all submitted lemmas are added to the dictionary and release
+	 * threads.
+	 */
+	void finish() {
+		if (finished) {
+			return;
+		}
+		try {
+			flush();
+			enqueue(END_OF_BATCHES);
+			writer.join();
+		} catch (InterruptedException e) {
+			writer.interrupt();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} finally {
+			finished = true;
+			workers.shutdownNow();
+		}
+		checkWriter();
+	}
+
+	/**
+	 * Discard lemmas that are not added yet and release threads. Used when
+	 * parsing has failed.
+	 */
+	void abort() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		workers.shutdownNow();
+		writer.interrupt();
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	int getAcceptedLemmaCount() {
+		return acceptedLemmaCounter;
+	}
+
+	int getRejectedLemmaCount() {
+		return rejectedLemmaCounter;
+	}
+
+	private void flush() {
+		if (curBatch == null || curBatch.isEmpty()) {
+			return;
+		}
+		final List<LemmaEntry> batch = curBatch;
+		curBatch = null;
+		Future<List<LemmaEntry>> batchFuture = workers.submit(new Callable<List<LemmaEntry>>() {
+			@Override
+			public List<LemmaEntry> call() throws Exception {
+				for (LemmaEntry e : batch) {
+					process(e, concurrentPostProcessors);
+					if (sequentialPostProcessors.isEmpty()) {
+						e.prepare();
+					}
+				}
+				return batch;
+			}
+		});
+		try {
+			enqueue(batchFuture);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void enqueue(Future<List<LemmaEntry>> batchFuture) throws InterruptedException {
+		while (!batchQueue.offer(batchFuture, 100, TimeUnit.MILLISECONDS)) {
+			checkWriter();
+		}
+	}
+
+	private void checkWriter() {
+		Throwable failure = writerFailure;
+		if (failure != null) {
+			workers.shutdownNow();
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			throw new IllegalStateException(failure);
+		}
+	}
+
+	private void runWriter() {
+		try {
+			while (true) {
+				Future<List<LemmaEntry>> batchFuture = batchQueue.take();
+				if (batchFuture == END_OF_BATCHES) {
+					break;
+				}
+				List<LemmaEntry> batch;
+				try {
+					batch = batchFuture.get();
+				} catch (ExecutionException e) {
+					throw e.getCause();
+				}
+				for (LemmaEntry e : batch) {
+					process(e, sequentialPostProcessors);
+					if (e.rejected) {
+						rejectedLemmaCounter++;
+						continue;
+					}
+					e.prepare();
+					dict.addLemma(e.lemma);
+					for (int i = 0; i < e.wfStrings.size(); i++) {
+						dict.addInternedWordform(e.wfStrings.get(i), e.wfs.get(i));
+					}
+					acceptedLemmaCounter++;
+				}
+			}
+		} catch (InterruptedException e) {
+			// aborted
+		} catch (Throwable e) {
+			log.error("Lemma writer failed", e);
+			writerFailure = e;
+		}
+	}
+
+	private void process(LemmaEntry e, List<LemmaPostProcessor> postProcessors) {
+		if (e.rejected || e.lemma != null) {
+			return;
+		}
+		for (LemmaPostProcessor pp : postProcessors) {
+			if (!pp.process(dict, e.builder, e.wordforms)) {
+				e.rejected = true;
+				return;
+			}
+		}
+	}
+
+	private class LemmaEntry {
+		private Lemma.Builder builder;
+		private Multimap<String, Wordform> wordforms;
+		private boolean rejected;
+		// prepared
+		private Lemma lemma;
+		private List<String> wfStrings;
+		private List<Wordform> wfs;
+
+		LemmaEntry(Lemma.Builder builder, Multimap<String, Wordform> wordforms) {
+			this.builder = builder;
+			this.wordforms = wordforms;
+		}
+
+		void prepare() {
+			if (rejected || lemma != null) {
+				return;
+			}
+			lemma = builder.build();
+			wfStrings = Lists.newArrayListWithCapacity(wordforms.size());
+			wfs = Lists.newArrayListWithCapacity(wordforms.size());
+			for (String wfStr : wordforms.keySet()) {
+				for (Wordform wf : wordforms.get(wfStr)) {
+					wfStrings.add(wfStr);
+					wfs.add(wf.cloneWithGrammems(dict.internWordformGrammems(wf.getGrammems())));
+				}
+			}
+			builder = null;
+			wordforms = null;
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread result = new Thread(r, prefix + "-" + counter.incrementAndGet());
+			result.setDaemon(true);
+			return result;
+		}
+	}
+
+	private static final Future<List<LemmaEntry>> END_OF_BATCHES =
+			new FutureTask<List<LemmaEntry>>(new Callable<List<LemmaEntry>>() {
+				@Override
+				public List<LemmaEntry> call() throws Exception {
+					return null;
+				}
+			});
+}
@@ -0,0 +1,206 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Iterator;
+
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Minimal acyclic automaton over reversed wordform strings. Use
+ * {@link WordformDAWGBuilder} to create instances.
+ * <p>
+ * States and transitions are stored in primitive arrays. Transitions of a
+ * state occupy a contiguous range of {@link #transChars} and
+ * {@link #transTargets} that is sorted by char. A final state refers to a
+ * payload that is a contiguous range of the wordform pool. Equal payloads of
+ * different keys are stored once.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class WordformDAWG implements WordformIndex, Serializable {
+
+	private static final long serialVersionUID = -2104541985765208134L;
+
+	private final int rootState;
+	// state => index of its first transition; has length = stateCount + 1
+	private final int[] stateTransStart;
+	// state => payload index or -1
+	private final int[] statePayload;
+	private final char[] transChars;
+	private final int[] transTargets;
+	// payload => index of its first wordform in the pool; has length = payloadCount + 1
+	private final int[] payloadStart;
+	// wordform pool
+	private final int[] poolLemmaIds;
+	private final int[] poolGramSets;
+	private final BitSet[] gramSets;
+
+	WordformDAWG(int rootState, int[] stateTransStart, int[] statePayload,
+			char[] transChars, int[] transTargets,
+			int[] payloadStart, int[] poolLemmaIds, int[] poolGramSets, BitSet[] gramSets) {
+		this.rootState = rootState;
+		this.stateTransStart = stateTransStart;
+		this.statePayload = statePayload;
+		this.transChars = transChars;
+		this.transTargets = transTargets;
+		this.payloadStart = payloadStart;
+		this.poolLemmaIds = poolLemmaIds;
+		this.poolGramSets = poolGramSets;
+		this.gramSets = gramSets;
+	}
+
+	public int getStateCount() {
+		return statePayload.length;
+	}
+
+	public int getTransitionCount() {
+		return transChars.length;
+	}
+
+	public int getWordformPoolSize() {
+		return poolLemmaIds.length;
+	}
+
+	@Override
+	public WordformTSTSearchResult getLongestPrefixMatch(String key) {
+		int state = rootState;
+		int matchLength = 0;
+		for (int i = key.length() - 1; i >= 0; i--) {
+			int trans = findTransition(state, key.charAt(i));
+			if (trans < 0) {
+				break;
+			}
+			state = transTargets[trans];
+			matchLength++;
+		}
+		if (matchLength == 0) {
+			return new WordformTSTSearchResult(false, ImmutableList.<Wordform> of());
+		}
+		if (matchLength == key.length() && statePayload[state] >= 0) {
+			return new WordformTSTSearchResult(true, new PayloadIterable(statePayload[state]));
+		}
+		return new WordformTSTSearchResult(false, new SubtreeIterable(state));
+	}
+
+	@Override
+	public void visit(WordformIndexVisitor visitor) {
+		visit(rootState, new StringBuilder(), visitor);
+	}
+
+	private void visit(int state, StringBuilder reversedKey, WordformIndexVisitor visitor) {
+		if (state != rootState && statePayload[state] >= 0) {
+			visitor.visit(reversedKey, new PayloadIterable(statePayload[state]));
+		}
+		for (int t = stateTransStart[state]; t < stateTransStart[state + 1]; t++) {
+			reversedKey.append(transChars[t]);
+			visit(transTargets[t], reversedKey, visitor);
+			reversedKey.setLength(reversedKey.length() - 1);
+		}
+	}
+
+	private int findTransition(int state, char ch) {
+		int low = stateTransStart[state];
+		int high = stateTransStart[state + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char midChar = transChars[mid];
+			if (midChar < ch) {
+				low = mid + 1;
+			} else if (midChar > ch) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private Wordform getPoolWordform(int poolIdx) {
+		return new Wordform(poolLemmaIds[poolIdx], gramSets[poolGramSets[poolIdx]]);
+	}
+
+	private class PayloadIterable implements Iterable<Wordform> {
+		private final int payload;
+
+		PayloadIterable(int payload) {
+			this.payload = payload;
+		}
+
+		@Override
+		public Iterator<Wordform> iterator() {
+			return new AbstractIterator<Wordform>() {
+				private int cur = payloadStart[payload];
+
+				@Override
+				protected Wordform computeNext() {
+					if (cur >= payloadStart[payload + 1]) {
+						return endOfData();
+					}
+					return getPoolWordform(cur++);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Iterates over payloads of all keys that pass through the given state.
+	 */
+	private class SubtreeIterable implements Iterable<Wordform> {
+		private final int subtreeRoot;
+
+		SubtreeIterable(int subtreeRoot) {
+			this.subtreeRoot = subtreeRoot;
+		}
+
+		@Override
+		public Iterator<Wordform> iterator() {
+			return new AbstractIterator<Wordform>() {
+				private int[] stateStack = new int[16];
+				private int stackSize = 0;
+				private int cur = 0;
+				private int curEnd = 0;
+
+				{
+					stateStack[stackSize++] = subtreeRoot;
+				}
+
+				@Override
+				protected Wordform computeNext() {
+					while (cur >= curEnd) {
+						if (stackSize == 0) {
+							return endOfData();
+						}
+						int state = stateStack[--stackSize];
+						for (int t = stateTransStart[state + 1] - 1; t >= stateTransStart[state]; t--) {
+							push(transTargets[t]);
+						}
+						int payload = statePayload[state];
+						if (payload >= 0) {
+							cur = payloadStart[payload];
+							curEnd = payloadStart[payload + 1];
+						}
+					}
+					return getPoolWordform(cur++);
+				}
+
+				private void push(int state) {
+					if (stackSize == stateStack.length) {
+						int[] newStack = new int[stateStack.length * 2];
+						System.arraycopy(stateStack, 0, newStack, 0, stackSize);
+						stateStack = newStack;
+					}
+					stateStack[stackSize++] = state;
+				}
+			};
+		}
+	}
+}
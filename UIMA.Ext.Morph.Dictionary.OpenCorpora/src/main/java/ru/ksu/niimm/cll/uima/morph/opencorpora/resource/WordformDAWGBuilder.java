@@ -0,0 +1,406 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Accumulates wordform entries in primitive arrays and builds a
+ * {@link WordformDAWG} from them.
+ * <p>
+ * Entries are sorted by reversed keys, then the automaton is built by the
+ * incremental algorithm for sorted input (Daciuk et al., 2000). Two states are
+ * merged only if they have equal transitions and equal payloads. Entries of the
+ * same key keep their insertion order.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class WordformDAWGBuilder {
+
+	// state fields
+	// reversed key chars of all entries
+	private char[] keyChars = new char[1024];
+	private int keyCharsSize;
+	// entry => key offset in keyChars; has length = entryCount + 1
+	private int[] keyStart = new int[257];
+	private int[] entryLemmaIds = new int[256];
+	private int[] entryGramSets = new int[256];
+	private int entryCount;
+	private Map<BitSet, Integer> gramSetIds = Maps.newHashMap();
+	private List<BitSet> gramSets = Lists.newArrayList();
+	private boolean built;
+
+	public void put(String key, Wordform wf) {
+		if (built) {
+			throw new IllegalStateException("DAWG has been built already");
+		}
+		if (key == null) {
+			throw new NullPointerException("key");
+		}
+		if (key.length() == 0) {
+			throw new IllegalArgumentException("key of zero length");
+		}
+		if (entryCount == entryLemmaIds.length) {
+			entryLemmaIds = Arrays.copyOf(entryLemmaIds, entryCount * 2);
+			entryGramSets = Arrays.copyOf(entryGramSets, entryCount * 2);
+			keyStart = Arrays.copyOf(keyStart, entryCount * 2 + 1);
+		}
+		ensureKeyCharsCapacity(keyCharsSize + key.length());
+		for (int i = key.length() - 1; i >= 0; i--) {
+			keyChars[keyCharsSize++] = key.charAt(i);
+		}
+		entryLemmaIds[entryCount] = wf.getLemmaId();
+		entryGramSets[entryCount] = internGramSet(wf.getGrammems());
+		entryCount++;
+		keyStart[entryCount] = keyCharsSize;
+	}
+
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Build the automaton. The builder can not be used after this method
+	 * invocation.
+	 */
+	public WordformDAWG build() {
+		if (built) {
+			throw new IllegalStateException("DAWG has been built already");
+		}
+		built = true;
+		int[] order = sortEntries();
+		// payload pool
+		int[] poolLemmaIds = new int[entryCount];
+		int[] poolGramSets = new int[entryCount];
+		int poolSize = 0;
+		IntArray payloadStart = new IntArray(1024);
+		payloadStart.add(0);
+		Map<PayloadKey, Integer> payloadIds = Maps.newHashMap();
+		// automaton
+		AutomatonBuilder automaton = new AutomatonBuilder();
+		int groupStart = 0;
+		while (groupStart < entryCount) {
+			int groupEnd = groupStart + 1;
+			while (groupEnd < entryCount && compareKeys(order[groupStart], order[groupEnd]) == 0) {
+				groupEnd++;
+			}
+			// collect payload of the key
+			int[] payloadLemmaIds = new int[groupEnd - groupStart];
+			int[] payloadGramSets = new int[groupEnd - groupStart];
+			for (int i = groupStart; i < groupEnd; i++) {
+				payloadLemmaIds[i - groupStart] = entryLemmaIds[order[i]];
+				payloadGramSets[i - groupStart] = entryGramSets[order[i]];
+			}
+			PayloadKey payloadKey = new PayloadKey(payloadLemmaIds, payloadGramSets);
+			Integer payloadId = payloadIds.get(payloadKey);
+			if (payloadId == null) {
+				payloadId = payloadIds.size();
+				payloadIds.put(payloadKey, payloadId);
+				System.arraycopy(payloadLemmaIds, 0, poolLemmaIds, poolSize, payloadLemmaIds.length);
+				System.arraycopy(payloadGramSets, 0, poolGramSets, poolSize, payloadGramSets.length);
+				poolSize += payloadLemmaIds.length;
+				payloadStart.add(poolSize);
+			}
+			int entry = order[groupStart];
+			automaton.add(keyChars, keyStart[entry], keyStart[entry + 1], payloadId);
+			groupStart = groupEnd;
+		}
+		// release memory
+		keyChars = null;
+		keyStart = null;
+		entryLemmaIds = null;
+		entryGramSets = null;
+		gramSetIds = null;
+		payloadIds = null;
+		int rootState = automaton.finish();
+		return new WordformDAWG(rootState,
+				automaton.stateTransStart.toArray(),
+				automaton.statePayload.toArray(),
+				Arrays.copyOf(automaton.transChars, automaton.transCount),
+				automaton.transTargets.toArray(),
+				payloadStart.toArray(),
+				Arrays.copyOf(poolLemmaIds, poolSize),
+				Arrays.copyOf(poolGramSets, poolSize),
+				gramSets.toArray(new BitSet[gramSets.size()]));
+	}
+
+	private int internGramSet(BitSet gramSet) {
+		Integer id = gramSetIds.get(gramSet);
+		if (id == null) {
+			id = gramSets.size();
+			gramSets.add(gramSet);
+			gramSetIds.put(gramSet, id);
+		}
+		return id;
+	}
+
+	private void ensureKeyCharsCapacity(int capacity) {
+		if (capacity > keyChars.length) {
+			keyChars = Arrays.copyOf(keyChars, Math.max(capacity, keyChars.length * 2));
+		}
+	}
+
+	/**
+	 * @return entry indexes sorted by reversed keys. The sort is stable.
+	 */
+	private int[] sortEntries() {
+		int[] order = new int[entryCount];
+		for (int i = 0; i < entryCount; i++) {
+			order[i] = i;
+		}
+		mergeSort(order, new int[entryCount], 0, entryCount);
+		return order;
+	}
+
+	private void mergeSort(int[] arr, int[] buf, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(arr, buf, from, mid);
+		mergeSort(arr, buf, mid, to);
+		if (compareKeys(arr[mid - 1], arr[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(arr, from, buf, from, to - from);
+		int left = from;
+		int right = mid;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < mid && compareKeys(buf[left], buf[right]) <= 0)) {
+				arr[i] = buf[left++];
+			} else {
+				arr[i] = buf[right++];
+			}
+		}
+	}
+
+	private int compareKeys(int first, int second) {
+		int firstOff = keyStart[first];
+		int firstLength = keyStart[first + 1] - firstOff;
+		int secondOff = keyStart[second];
+		int secondLength = keyStart[second + 1] - secondOff;
+		int minLength = Math.min(firstLength, secondLength);
+		for (int i = 0; i < minLength; i++) {
+			char firstChar = keyChars[firstOff + i];
+			char secondChar = keyChars[secondOff + i];
+			if (firstChar != secondChar) {
+				return firstChar - secondChar;
+			}
+		}
+		return firstLength - secondLength;
+	}
+
+	/**
+	 * Incremental construction of a minimal automaton from sorted keys.
+	 */
+	private static class AutomatonBuilder {
+		// frozen states
+		private IntArray stateTransStart = new IntArray(1024);
+		private IntArray statePayload = new IntArray(1024);
+		private char[] transChars = new char[1024];
+		private IntArray transTargets = new IntArray(1024);
+		private int transCount;
+		private Map<StateSignature, Integer> register = Maps.newHashMap();
+		// path of not frozen states for the last added key
+		private List<PathState> path = Lists.newArrayList();
+		private int pathLength;
+		private char[] lastKey = new char[64];
+		private int lastKeyLength;
+
+		AutomatonBuilder() {
+			stateTransStart.add(0);
+			path.add(new PathState());
+			pathLength = 1;
+		}
+
+		void add(char[] chars, int from, int to, int payloadId) {
+			int keyLength = to - from;
+			int prefixLength = 0;
+			int minLength = Math.min(keyLength, lastKeyLength);
+			while (prefixLength < minLength && lastKey[prefixLength] == chars[from + prefixLength]) {
+				prefixLength++;
+			}
+			freezePath(prefixLength);
+			for (int i = prefixLength; i < keyLength; i++) {
+				path.get(pathLength - 1).addTransition(chars[from + i]);
+				if (pathLength == path.size()) {
+					path.add(new PathState());
+				} else {
+					path.get(pathLength).reset();
+				}
+				pathLength++;
+			}
+			path.get(pathLength - 1).payload = payloadId;
+			// remember the key
+			if (lastKey.length < keyLength) {
+				lastKey = new char[Math.max(keyLength, lastKey.length * 2)];
+			}
+			System.arraycopy(chars, from, lastKey, 0, keyLength);
+			lastKeyLength = keyLength;
+		}
+
+		/**
+		 * @return the root state
+		 */
+		int finish() {
+			freezePath(0);
+			return freeze(path.get(0));
+		}
+
+		/**
+		 * Freeze path states that are deeper than the given one.
+		 */
+		private void freezePath(int depth) {
+			while (pathLength - 1 > depth) {
+				int stateId = freeze(path.get(pathLength - 1));
+				pathLength--;
+				path.get(pathLength - 1).setLastTarget(stateId);
+			}
+		}
+
+		private int freeze(PathState ps) {
+			StateSignature sig = new StateSignature(ps.payload,
+					Arrays.copyOf(ps.chars, ps.size), Arrays.copyOf(ps.targets, ps.size));
+			Integer stateId = register.get(sig);
+			if (stateId != null) {
+				return stateId;
+			}
+			stateId = statePayload.size();
+			register.put(sig, stateId);
+			statePayload.add(ps.payload);
+			if (transCount + ps.size > transChars.length) {
+				transChars = Arrays.copyOf(transChars,
+						Math.max(transCount + ps.size, transChars.length * 2));
+			}
+			System.arraycopy(ps.chars, 0, transChars, transCount, ps.size);
+			for (int i = 0; i < ps.size; i++) {
+				transTargets.add(ps.targets[i]);
+			}
+			transCount += ps.size;
+			stateTransStart.add(transCount);
+			return stateId;
+		}
+	}
+
+	private static class PathState {
+		private char[] chars = new char[4];
+		private int[] targets = new int[4];
+		private int size;
+		private int payload = -1;
+
+		void addTransition(char ch) {
+			if (size == chars.length) {
+				chars = Arrays.copyOf(chars, size * 2);
+				targets = Arrays.copyOf(targets, size * 2);
+			}
+			chars[size] = ch;
+			targets[size] = -1;
+			size++;
+		}
+
+		void setLastTarget(int target) {
+			targets[size - 1] = target;
+		}
+
+		void reset() {
+			size = 0;
+			payload = -1;
+		}
+	}
+
+	private static class StateSignature {
+		private final int payload;
+		private final char[] chars;
+		private final int[] targets;
+		private final int hash;
+
+		StateSignature(int payload, char[] chars, int[] targets) {
+			this.payload = payload;
+			this.chars = chars;
+			this.targets = targets;
+			this.hash = 31 * (31 * payload + Arrays.hashCode(chars)) + Arrays.hashCode(targets);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof StateSignature)) {
+				return false;
+			}
+			StateSignature that = (StateSignature) obj;
+			return this.hash == that.hash && this.payload == that.payload
+					&& Arrays.equals(this.chars, that.chars)
+					&& Arrays.equals(this.targets, that.targets);
+		}
+	}
+
+	private static class PayloadKey {
+		private final int[] lemmaIds;
+		private final int[] gramSets;
+		private final int hash;
+
+		PayloadKey(int[] lemmaIds, int[] gramSets) {
+			this.lemmaIds = lemmaIds;
+			this.gramSets = gramSets;
+			this.hash = 31 * Arrays.hashCode(lemmaIds) + Arrays.hashCode(gramSets);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PayloadKey)) {
+				return false;
+			}
+			PayloadKey that = (PayloadKey) obj;
+			return this.hash == that.hash
+					&& Arrays.equals(this.lemmaIds, that.lemmaIds)
+					&& Arrays.equals(this.gramSets, that.gramSets);
+		}
+	}
+
+	private static class IntArray {
+		private int[] arr;
+		private int size;
+
+		IntArray(int initialCapacity) {
+			arr = new int[initialCapacity];
+		}
+
+		void add(int val) {
+			if (size == arr.length) {
+				arr = Arrays.copyOf(arr, size * 2);
+			}
+			arr[size++] = val;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(arr, size);
+		}
+	}
+}
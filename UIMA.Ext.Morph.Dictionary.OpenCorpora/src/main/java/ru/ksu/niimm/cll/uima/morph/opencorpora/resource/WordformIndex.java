@@ -0,0 +1,29 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+/**
+ * Index of wordform strings that supports lookups by the longest common
+ * suffix.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public interface WordformIndex {
+
+	/**
+	 * @param key
+	 *            wordform string
+	 * @return an exact match result if the index contains the given key;
+	 *         otherwise - a non-exact result with entries of all keys that
+	 *         share the longest suffix with the given one.
+	 */
+	WordformTSTSearchResult getLongestPrefixMatch(String key);
+
+	/**
+	 * Visit all entries of this index in ascending order of their reversed
+	 * keys.
+	 */
+	void visit(WordformIndexVisitor visitor);
+}
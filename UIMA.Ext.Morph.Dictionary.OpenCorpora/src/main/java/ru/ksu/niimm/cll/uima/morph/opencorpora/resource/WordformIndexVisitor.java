@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+/**
+ * Callback for an ordered traversal of a wordform index.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public interface WordformIndexVisitor {
+
+	/**
+	 * @param reversedKey
+	 *            wordform string in reversed char order. Its content is valid
+	 *            only during this invocation.
+	 * @param wordforms
+	 *            non-empty wordform entries of the key
+	 */
+	void visit(CharSequence reversedKey, Iterable<Wordform> wordforms);
+}
@@ -11,7 +11,7 @@ import java.util.Deque;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-public class WordformTST implements Serializable {
+public class WordformTST implements WordformIndex, Serializable {
 	private static final long serialVersionUID = 6643426248422366315L;
 	
 	private Node rootNode;
@@ -24,6 +24,10 @@ public class WordformTST implements Serializable {
         getOrCreateNode(key).addData(wf);
     }
 
+    public boolean isEmpty() {
+        return rootNode == null;
+    }
+
     private Node getOrCreateNode(String key) throws NullPointerException, IllegalArgumentException {
         if (key == null)
             throw new NullPointerException("attempt to get or create node with null key");
@@ -86,6 +90,7 @@ public class WordformTST implements Serializable {
         }
     }
 
+    @Override
     public WordformTSTSearchResult getLongestPrefixMatch(String key) {
         getNodeLongestPrefixMatchResult nodeLongestPrefixMatchResult = getNodeLongestPrefixMatch(key);
         if (nodeLongestPrefixMatchResult == null)
@@ -101,6 +106,23 @@ public class WordformTST implements Serializable {
         }
     }
 
+    @Override
+    public void visit(WordformIndexVisitor visitor) {
+        visit(rootNode, new StringBuilder(), visitor);
+    }
+
+    private static void visit(Node node, StringBuilder reversedKey, WordformIndexVisitor visitor) {
+        if (node == null)
+            return;
+        visit(node.getLoKid(), reversedKey, visitor);
+        reversedKey.append(node.splitchar);
+        if (node.data != null && node.data.length > 0)
+            visitor.visit(reversedKey, node);
+        visit(node.getEqKid(), reversedKey, visitor);
+        reversedKey.setLength(reversedKey.length() - 1);
+        visit(node.getHiKid(), reversedKey, visitor);
+    }
+
     public static class Node implements Serializable, Iterable<Wordform> {
 		private static final long serialVersionUID = 4788009136446395268L;
 
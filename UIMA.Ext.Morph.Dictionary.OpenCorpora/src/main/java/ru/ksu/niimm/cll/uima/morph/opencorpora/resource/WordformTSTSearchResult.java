@@ -10,18 +10,39 @@ import java.util.Iterator;
 public class WordformTSTSearchResult implements Iterable<Wordform>{
     private boolean isMatchExact;
     private WordformTST.Node resultNode;
+    private Iterable<Wordform> wordforms;
 
     public WordformTSTSearchResult(boolean matchExact, WordformTST.Node resultNode) {
         isMatchExact = matchExact;
         this.resultNode = resultNode;
     }
 
+    /**
+     * Constructor for wordform indexes that are not backed by
+     * {@link WordformTST} nodes.
+     * 
+     * @param matchExact
+     * @param wordforms
+     *            wordforms of the exact match or wordforms of all entries that
+     *            share the longest matched suffix
+     */
+    public WordformTSTSearchResult(boolean matchExact, Iterable<Wordform> wordforms) {
+        if (wordforms == null) {
+            throw new NullPointerException("wordforms");
+        }
+        isMatchExact = matchExact;
+        this.wordforms = wordforms;
+    }
+
     public boolean isMatchExact() {
         return isMatchExact;
     }
 
     @Override
     public Iterator<Wordform> iterator() {
+	    if (wordforms != null) {
+		    return wordforms.iterator();
+	    }
 	    if (isMatchExact) {
 		    return resultNode.iterator();
 	    } else {
@@ -31,6 +31,8 @@ public class XmlDictionaryParser {
 	private MorphDictionaryImpl dict;
 	private DictionaryExtension ext;
 	private InputStream in;
+	private boolean compactWordformIndex;
+	private int threadCount = 1;
 
 	public XmlDictionaryParser(MorphDictionaryImpl dict, DictionaryExtension ext, InputStream in) {
 		this.dict = dict;
@@ -38,7 +40,29 @@ public class XmlDictionaryParser {
 		this.in = in;
 	}
 
+	/**
+	 * @param compactWordformIndex
+	 *            if true then parsed wordforms are stored in a
+	 *            {@link WordformDAWG}
+	 */
+	public void setCompactWordformIndex(boolean compactWordformIndex) {
+		this.compactWordformIndex = compactWordformIndex;
+	}
+
+	/**
+	 * @param threadCount
+	 *            number of threads to process parsed lemmas. Lemma
+	 *            post-processors are applied concurrently only if they
+	 *            implement {@link ConcurrentLemmaPostProcessor}.
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
 	public void run() throws SAXException, IOException {
+		if (compactWordformIndex) {
+			dict.useCompactWordformIndex();
+		}
 		SAXParser xmlParser;
 		try {
 			xmlParser = SAXParserFactory.newInstance().newSAXParser();
@@ -49,6 +73,7 @@ public class XmlDictionaryParser {
 		XMLReader xmlReader = xmlParser.getXMLReader();
 
 		DictionaryXmlHandler dictHandler = new DictionaryXmlHandler(dict);
+		dictHandler.setThreadCount(threadCount);
 		if (ext.getLexemePostprocessors() != null) {
 			for (LemmaPostProcessor lpp : ext.getLexemePostprocessors()) {
 				dictHandler.addLemmaPostProcessor(lpp);
@@ -64,7 +89,11 @@ public class XmlDictionaryParser {
 		InputSource xmlSource = new InputSource(in);
 		log.info("About to parse xml dictionary file");
 		long timeBefore = currentTimeMillis();
-		xmlReader.parse(xmlSource);
+		try {
+			xmlReader.parse(xmlSource);
+		} finally {
+			dictHandler.release();
+		}
 		log.info("Parsing finished in {} ms", currentTimeMillis() - timeBefore);
 	}
 
@@ -10,6 +10,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -34,8 +37,15 @@ public class XmlDictionaryParserLauncher {
 	private File dictXmlFile;
 	@Parameter(names = { "--dict-extension-class" }, required = false, converter = ClassConverter.class)
 	private Class<? extends DictionaryExtension> dictExtensionClass = DefaultDictionaryExtension.class;
-	@Parameter(names = { "-o", "--output-file" }, required = true)
+	@Parameter(names = { "-o", "--output-file" }, required = false)
 	private File outputFile;
+	@Parameter(names = { "--mapped-output-file" }, required = false)
+	private File mappedOutputFile;
+	@Parameter(names = { "--compact-wordform-index" }, required = false)
+	private boolean compactWordformIndex;
+	@Parameter(names = { "--threads" }, required = false,
+			description = "Number of threads to process lemmas")
+	private int threadCount = Runtime.getRuntime().availableProcessors();
 
 	private XmlDictionaryParserLauncher() {
 	}
@@ -43,19 +53,49 @@ public class XmlDictionaryParserLauncher {
 	public static void main(String[] args) throws Exception {
 		XmlDictionaryParserLauncher cfg = new XmlDictionaryParserLauncher();
 		new JCommander(cfg, args);
+		if (cfg.outputFile == null && cfg.mappedOutputFile == null) {
+			throw new IllegalArgumentException(
+					"Either --output-file or --mapped-output-file must be specified");
+		}
 
+		long timeBefore = currentTimeMillis();
 		MorphDictionaryImpl dict = new MorphDictionaryImpl();
 		DictionaryExtension ext = cfg.dictExtensionClass.newInstance();
 		FileInputStream fis = FileUtils.openInputStream(cfg.dictXmlFile);
 		try {
-			new XmlDictionaryParser(dict, ext, fis).run();
+			XmlDictionaryParser parser = new XmlDictionaryParser(dict, ext, fis);
+			parser.setCompactWordformIndex(cfg.compactWordformIndex);
+			parser.setThreadCount(cfg.threadCount);
+			parser.run();
 		} finally {
 			IOUtils.closeQuietly(fis);
 		}
 
+		if (cfg.outputFile != null) {
+			serialize(dict, cfg.outputFile);
+		}
+		if (cfg.mappedOutputFile != null) {
+			MappedDictionaryWriter.write(dict, cfg.mappedOutputFile);
+		}
+		log.info("Dictionary of {} lemmas is compiled in {} ms. Peak heap usage: {} MB",
+				new Object[] { dict.getLemmas().size(),
+						currentTimeMillis() - timeBefore, getPeakHeapUsage() / (1024 * 1024) });
+	}
+
+	private static long getPeakHeapUsage() {
+		long result = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				result += pool.getPeakUsage().getUsed();
+			}
+		}
+		return result;
+	}
+
+	private static void serialize(MorphDictionaryImpl dict, File outputFile) throws Exception {
 		log.info("Preparing to serialization...");
 		long timeBefore = currentTimeMillis();
-		OutputStream fout = new BufferedOutputStream(FileUtils.openOutputStream(cfg.outputFile),
+		OutputStream fout = new BufferedOutputStream(FileUtils.openOutputStream(outputFile),
 				8192 * 8);
 		ObjectOutputStream out = new ObjectOutputStream(fout);
 		try {
@@ -65,6 +105,6 @@ public class XmlDictionaryParserLauncher {
 			out.close();
 		}
 		log.info("Serialization finished in {} ms.\nOutput size: {} bytes",
-				currentTimeMillis() - timeBefore, cfg.outputFile.length());
+				currentTimeMillis() - timeBefore, outputFile.length());
 	}
 }
@@ -17,7 +17,8 @@ import com.google.common.collect.Multimap;
  * @author Rinat Gareev
  * 
  */
-public class YoLemmaPostProcessor extends LexemePostProcessorBase {
+public class YoLemmaPostProcessor extends LexemePostProcessorBase implements
+		ConcurrentLemmaPostProcessor {
 
 	private static final String YO_CHARS = "ёЁ";
 	private static final String YO_REPLACEMENTS = "еЕ";
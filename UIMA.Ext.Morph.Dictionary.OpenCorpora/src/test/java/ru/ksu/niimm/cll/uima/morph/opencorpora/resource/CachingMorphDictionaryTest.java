@@ -0,0 +1,86 @@
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.cache.CacheStats;
+
+public class CachingMorphDictionaryTest {
+
+	private static MorphDictionaryImpl dict;
+
+	@BeforeClass
+	public static void parseDictionary() throws Exception {
+		dict = new MorphDictionaryImpl();
+		FileInputStream fis = FileUtils.openInputStream(
+				new File("test-data/dict.opcorpora.test.xml"));
+		try {
+			XmlDictionaryParser parser = new XmlDictionaryParser(dict,
+					new DictionaryExtensionBase(), fis);
+			parser.run();
+		} finally {
+			IOUtils.closeQuietly(fis);
+		}
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		dict.setWfPredictor(null);
+		CachingMorphDictionary cachingDict = new CachingMorphDictionary(dict, 100);
+		List<Wordform> first = cachingDict.getEntries("вворотил");
+		assertTrue(first.size() > 0);
+		assertEquals(dict.getEntries("вворотил"), first);
+		assertSame(first, cachingDict.getEntries("вворотил"));
+		cachingDict.getEntries("вворотил");
+		cachingDict.getEntries("вворотила");
+		CacheStats stats = cachingDict.getCacheStats();
+		assertEquals(2, stats.hitCount());
+		assertEquals(2, stats.missCount());
+		assertEquals(2, cachingDict.getCacheSize());
+		cachingDict.invalidateCache();
+		assertEquals(0, cachingDict.getCacheSize());
+	}
+
+	@Test
+	public void testPredictorInvocations() {
+		CachingMorphDictionary cachingDict = new CachingMorphDictionary(dict, 100);
+		dict.setWfPredictor(cachingDict.countPredictorInvocations(
+				new DummyWordformPredictor(dict)));
+		try {
+			List<Wordform> predicted = cachingDict.getEntries("переворотила");
+			assertTrue(predicted.size() > 0);
+			assertEquals(predicted, cachingDict.getEntries("переворотила"));
+			assertEquals(1, cachingDict.getPredictorInvocationCount());
+			// exact match does not invoke the predictor
+			cachingDict.getEntries("вворотил");
+			assertEquals(1, cachingDict.getPredictorInvocationCount());
+		} finally {
+			dict.setWfPredictor(null);
+		}
+	}
+
+	@Test
+	public void testEviction() {
+		dict.setWfPredictor(null);
+		CachingMorphDictionary cachingDict = new CachingMorphDictionary(dict, 2);
+		String[] keys = { "вворотил", "вворотила", "вворотили", "вворотило", "вворотим" };
+		for (String key : keys) {
+			assertEquals(dict.getEntries(key), cachingDict.getEntries(key));
+		}
+		assertTrue(cachingDict.getCacheSize() <= 2);
+		assertEquals(keys.length - cachingDict.getCacheSize(),
+				cachingDict.getCacheStats().evictionCount());
+	}
+}
@@ -0,0 +1,63 @@
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import ru.kfu.itis.issst.uima.morph.model.LemmaLinkType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class LemmaLinkTableTest {
+
+	private static final LemmaLinkType ADJF_ADJS = new LemmaLinkType((short) 1, "ADJF-ADJS");
+	private static final LemmaLinkType ADJF_COMP = new LemmaLinkType((short) 2, "ADJF-COMP");
+	private static final LemmaLinkType INFN_VERB = new LemmaLinkType((short) 3, "INFN-VERB");
+
+	@Test
+	public void testLinks() {
+		LemmaLinkTable table = new LemmaLinkTable();
+		table.add(5, 7, ADJF_ADJS);
+		table.add(5, 2, ADJF_COMP);
+		table.add(1, 7, INFN_VERB);
+		table.add(5, 7, INFN_VERB);
+		assertEquals(3, table.size());
+
+		Map<Integer, LemmaLinkType> outlinks = table.getOutlinks(5);
+		assertEquals(ImmutableMap.of(2, ADJF_COMP, 7, INFN_VERB), outlinks);
+		assertEquals(ImmutableList.of(2, 7), ImmutableList.copyOf(outlinks.keySet()));
+		assertEquals(INFN_VERB, outlinks.get(7));
+		assertNull(outlinks.get(1));
+		assertFalse(outlinks.containsKey("7"));
+
+		Map<Integer, LemmaLinkType> inlinks = table.getInlinks(7);
+		assertEquals(ImmutableList.of(1, 5), ImmutableList.copyOf(inlinks.keySet()));
+		assertEquals(INFN_VERB, inlinks.get(1));
+
+		assertTrue(table.getOutlinks(7).isEmpty());
+		assertTrue(table.getOutlinks(100).isEmpty());
+		assertTrue(table.getInlinks(-1).isEmpty());
+	}
+
+	@Test
+	public void testAddAfterCompaction() {
+		LemmaLinkTable table = new LemmaLinkTable();
+		table.add(1, 2, ADJF_ADJS);
+		table.compact();
+		table.add(1, 2, ADJF_COMP);
+		table.add(10, 1, INFN_VERB);
+		assertEquals(ImmutableMap.of(2, ADJF_COMP), table.getOutlinks(1));
+		assertEquals(ImmutableMap.of(10, INFN_VERB), table.getInlinks(1));
+		table = (LemmaLinkTable) SerializationUtils.deserialize(SerializationUtils.serialize(table));
+		assertEquals(2, table.size());
+		assertEquals(ImmutableList.of(1), ImmutableList.copyOf(table.getOutlinks(10).keySet()));
+		assertEquals(INFN_VERB.getName(), table.getOutlinks(10).get(1).getName());
+	}
+}
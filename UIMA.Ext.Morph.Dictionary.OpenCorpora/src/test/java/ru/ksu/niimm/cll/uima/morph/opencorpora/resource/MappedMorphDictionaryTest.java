@@ -0,0 +1,91 @@
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionary;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+public class MappedMorphDictionaryTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	MorphDictionaryImpl srcDict;
+	MappedMorphDictionary dict;
+
+	@Before
+	public void setUp() throws Exception {
+		FileInputStream fis = FileUtils.openInputStream(
+				new File("test-data/dict.opcorpora.test.xml"));
+		try {
+			srcDict = XmlDictionaryParser.parse(fis);
+		} finally {
+			IOUtils.closeQuietly(fis);
+		}
+		File mappedFile = tempFolder.newFile("dict.opcorpora.bin");
+		MappedDictionaryWriter.write(srcDict, mappedFile);
+		dict = MappedMorphDictionary.open(mappedFile);
+		srcDict.setWfPredictor(new DummyWordformPredictor(srcDict));
+		dict.setWfPredictor(new DummyWordformPredictor(dict));
+	}
+
+	@Test
+	public void testMeta() {
+		assertEquals(srcDict.getVersion(), dict.getVersion());
+		assertEquals(srcDict.getRevision(), dict.getRevision());
+		assertEquals(srcDict.getGramModel().getGrammemMaxNumId(),
+				dict.getGramModel().getGrammemMaxNumId());
+		assertEquals(srcDict.getLemmaMaxId(), dict.getLemmaMaxId());
+	}
+
+	@Test
+	public void testGetEntries() {
+		for (String wf : new String[] { "гаджимуратович", "село", "а",
+				"вворотила", "водохранилищной" }) {
+			assertEquals(wf, ImmutableSet.copyOf(srcDict.getEntries(wf)),
+					ImmutableSet.copyOf(dict.getEntries(wf)));
+		}
+		assertEquals(3, dict.getEntries("а").size());
+		Wordform wf = dict.getEntries("вворотила").get(0);
+		assertEquals(srcDict.getLemma(wf.getLemmaId()), dict.getLemma(wf.getLemmaId()));
+		assertEquals(srcDict.getLemma(wf.getLemmaId()).getString(),
+				dict.getLemma(wf.getLemmaId()).getString());
+		assertTrue(dict.containsGramSet(Wordform.getAllGramBits(wf, dict)));
+	}
+
+	@Test
+	public void testPrediction() {
+		for (String wf : new String[] { "вворотишься", "переворотила", "мыркающий", "тирлимпомпони" }) {
+			assertEquals(wf, toGramSets(srcDict, srcDict.getEntries(wf)),
+					toGramSets(dict, dict.getEntries(wf)));
+		}
+		assertFalse(dict.getEntries("переворотила").isEmpty());
+		assertTrue(dict.getLemmaMaxId() > 0);
+	}
+
+	private static Set<BitSet> toGramSets(MorphDictionary dict, List<Wordform> wfs) {
+		Set<BitSet> result = Sets.newHashSet();
+		for (Wordform wf : wfs) {
+			result.add(Wordform.getAllGramBits(wf, dict));
+		}
+		return result;
+	}
+}
@@ -6,6 +6,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -13,8 +18,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModel;
+import ru.kfu.itis.issst.uima.morph.model.Lemma;
 import ru.kfu.itis.issst.uima.morph.model.Wordform;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 public class MorphDictionaryImplTest {
 
 	MorphDictionaryImpl dict;
@@ -59,4 +68,38 @@ public class MorphDictionaryImplTest {
 				.get(plurGramIdx));
 	}
 
+	@Test
+	public void testConcurrentPrediction() throws Exception {
+		final String[] oovWords = { "мыркающий", "переворотила", "вворотишься", "мыркающего" };
+		int lemmaCountBefore = dict.getLemmas().size();
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		List<Future<List<Wordform>>> futures = Lists.newArrayList();
+		try {
+			for (int i = 0; i < 64; i++) {
+				final String word = oovWords[i % oovWords.length];
+				futures.add(exec.submit(new Callable<List<Wordform>>() {
+					@Override
+					public List<Wordform> call() throws Exception {
+						return dict.getEntries(word);
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				List<Wordform> wfs = futures.get(i).get();
+				assertFalse(wfs.isEmpty());
+				// the same word gets the same pseudo-lemmas in every thread
+				assertEquals(Sets.newHashSet(futures.get(i % oovWords.length).get()),
+						Sets.newHashSet(wfs));
+				for (Wordform wf : wfs) {
+					assertTrue(wf.getLemmaId() < 0);
+					Lemma lemma = dict.getLemma(wf.getLemmaId());
+					assertEquals(wf.getLemmaId(), lemma.getId());
+				}
+			}
+		} finally {
+			exec.shutdown();
+		}
+		// pseudo-lemmas are kept apart from dictionary lemmas
+		assertEquals(lemmaCountBefore, dict.getLemmas().size());
+	}
 }
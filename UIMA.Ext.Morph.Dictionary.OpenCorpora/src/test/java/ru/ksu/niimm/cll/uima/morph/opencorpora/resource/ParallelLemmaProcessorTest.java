@@ -0,0 +1,141 @@
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionary;
+import ru.kfu.itis.issst.uima.morph.model.Lemma;
+import ru.kfu.itis.issst.uima.morph.model.Lemma.Builder;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+public class ParallelLemmaProcessorTest {
+
+	@Test
+	public void testConcurrentPostProcessors() throws Exception {
+		assertSameContent(
+				parse(1, YoLemmaPostProcessor.INSTANCE, new LemmaByGrammemFilter("Surn")),
+				parse(3, YoLemmaPostProcessor.INSTANCE, new LemmaByGrammemFilter("Surn")));
+	}
+
+	@Test
+	public void testSequentialPostProcessors() throws Exception {
+		// the second one is not concurrent, so it must see lemmas in the document order
+		final List<Integer> seqLemmaIds = Lists.newArrayList();
+		LemmaPostProcessor seqPostProcessor = new LexemePostProcessorBase() {
+			@Override
+			public boolean process(MorphDictionary dict, Builder lemmaBuilder,
+					Multimap<String, Wordform> wfMap) {
+				seqLemmaIds.add(lemmaBuilder.getLemmaId());
+				return lemmaBuilder.getLemmaId() % 2 == 0;
+			}
+		};
+		MorphDictionaryImpl expected = parse(1, YoLemmaPostProcessor.INSTANCE, seqPostProcessor);
+		List<Integer> expectedLemmaIds = Lists.newArrayList(seqLemmaIds);
+		seqLemmaIds.clear();
+		MorphDictionaryImpl actual = parse(4, YoLemmaPostProcessor.INSTANCE, seqPostProcessor);
+		assertEquals(expectedLemmaIds, seqLemmaIds);
+		assertSameContent(expected, actual);
+	}
+
+	@Test
+	public void testParsingFailure() throws Exception {
+		String xml = FileUtils.readFileToString(
+				new File("test-data/dict.opcorpora.test.xml"), "utf-8");
+		// cut the document in the middle of lemmata
+		int lemmataEnd = xml.indexOf("</lemmata>");
+		xml = xml.substring(0, xml.lastIndexOf("<lemma ", lemmataEnd) + 3);
+		XmlDictionaryParser parser = new XmlDictionaryParser(new MorphDictionaryImpl(),
+				new DictionaryExtensionBase(), new ByteArrayInputStream(xml.getBytes("utf-8")));
+		parser.setThreadCount(3);
+		try {
+			parser.run();
+			fail("A truncated dictionary must not be parsed");
+		} catch (SAXException e) {
+			// expected
+		}
+		// threads of lemma processing must be stopped
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!getLemmaThreads().isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(Lists.newArrayList(), getLemmaThreads());
+	}
+
+	private static List<String> getLemmaThreads() {
+		List<String> result = Lists.newArrayList();
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.isAlive() && t.getName().startsWith("lemma-")) {
+				result.add(t.getName());
+			}
+		}
+		return result;
+	}
+
+	private static void assertSameContent(MorphDictionaryImpl expected, MorphDictionaryImpl actual) {
+		assertTrue(expected.getLemmas().size() > 0);
+		assertEquals(lemmaDescriptions(expected), lemmaDescriptions(actual));
+		assertEquals(wordformDescriptions(expected), wordformDescriptions(actual));
+	}
+
+	private static Map<Integer, String> lemmaDescriptions(MorphDictionaryImpl dict) {
+		Map<Integer, String> result = Maps.newTreeMap();
+		for (Lemma l : dict.getLemmas()) {
+			result.put(l.getId(),
+					l.getString() + dict.getGramModel().toGramSet(l.getGrammems()));
+		}
+		return result;
+	}
+
+	private static List<String> wordformDescriptions(final MorphDictionaryImpl dict) {
+		final List<String> result = Lists.newArrayList();
+		dict.visitWordforms(new WordformIndexVisitor() {
+			@Override
+			public void visit(CharSequence reversedKey, Iterable<Wordform> wordforms) {
+				for (Wordform wf : wordforms) {
+					result.add(reversedKey + "/" + wf.getLemmaId()
+							+ dict.getGramModel().toGramSet(wf.getGrammems()));
+				}
+			}
+		});
+		return result;
+	}
+
+	private static MorphDictionaryImpl parse(int threadCount,
+			LemmaPostProcessor... postProcessors) throws Exception {
+		MorphDictionaryImpl dict = new MorphDictionaryImpl();
+		FileInputStream fis = FileUtils.openInputStream(
+				new File("test-data/dict.opcorpora.test.xml"));
+		try {
+			final List<LemmaPostProcessor> ppList = Arrays.asList(postProcessors);
+			XmlDictionaryParser parser = new XmlDictionaryParser(dict,
+					new DictionaryExtensionBase() {
+						@Override
+						public List<LemmaPostProcessor> getLexemePostprocessors() {
+							return ppList;
+						}
+					}, fis);
+			parser.setThreadCount(threadCount);
+			parser.run();
+		} finally {
+			IOUtils.closeQuietly(fis);
+		}
+		return dict;
+	}
+}
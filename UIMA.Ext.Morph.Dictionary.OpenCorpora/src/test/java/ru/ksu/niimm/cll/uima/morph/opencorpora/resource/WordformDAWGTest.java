@@ -0,0 +1,146 @@
+package ru.ksu.niimm.cll.uima.morph.opencorpora.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import ru.kfu.itis.issst.uima.morph.model.Lemma;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+
+public class WordformDAWGTest {
+
+	@Test
+	public void testLongestPrefixMatch() {
+		WordformDAWGBuilder builder = new WordformDAWGBuilder();
+		WordformTST tst = new WordformTST();
+		String[] keys = { "стола", "стол", "вола", "пола", "стула", "стола", "мыла" };
+		for (int i = 0; i < keys.length; i++) {
+			Wordform wf = new Wordform(i, bits(i % 3));
+			builder.put(keys[i], wf);
+			tst.put(keys[i], wf);
+		}
+		WordformDAWG dawg = builder.build();
+		for (String key : new String[] { "стола", "стол", "вола", "пола", "мыла",
+				"ола", "а", "кола", "штола", "сто", "ы", "столы" }) {
+			WordformTSTSearchResult expected = tst.getLongestPrefixMatch(key);
+			WordformTSTSearchResult actual = dawg.getLongestPrefixMatch(key);
+			assertEquals(key, expected.isMatchExact(), actual.isMatchExact());
+			if (expected.isMatchExact()) {
+				assertEquals(key, ImmutableList.copyOf(expected), ImmutableList.copyOf(actual));
+			} else {
+				assertEquals(key, ImmutableSet.copyOf(expected), ImmutableSet.copyOf(actual));
+			}
+		}
+		assertEquals(ImmutableList.of(new Wordform(0, bits(0)), new Wordform(5, bits(2))),
+				ImmutableList.copyOf(dawg.getLongestPrefixMatch("стола")));
+		assertFalse(dawg.getLongestPrefixMatch("ы").iterator().hasNext());
+	}
+
+	@Test
+	public void testMinimization() {
+		WordformDAWGBuilder builder = new WordformDAWGBuilder();
+		builder.put("вола", new Wordform(1, bits(1)));
+		builder.put("пола", new Wordform(1, bits(1)));
+		builder.put("кола", new Wordform(2, bits(1)));
+		WordformDAWG dawg = builder.build();
+		// root, 'а', 'ла', 'ола', a shared final state for 'вола' and 'пола'
+		// and a final state for 'кола'
+		assertEquals(6, dawg.getStateCount());
+		assertEquals(2, dawg.getWordformPoolSize());
+		assertTrue(dawg.getLongestPrefixMatch("пола").isMatchExact());
+		assertEquals(ImmutableSet.of(new Wordform(1, bits(1)), new Wordform(2, bits(1))),
+				ImmutableSet.copyOf(dawg.getLongestPrefixMatch("сола")));
+	}
+
+	@Test
+	public void testCompactDictionary() throws Exception {
+		MorphDictionaryImpl tstDict = parse(false);
+		MorphDictionaryImpl dawgDict = parse(true);
+		dawgDict = (MorphDictionaryImpl) SerializationUtils.deserialize(
+				SerializationUtils.serialize(dawgDict));
+		tstDict.setWfPredictor(new DummyWordformPredictor(tstDict));
+		dawgDict.setWfPredictor(new DummyWordformPredictor(dawgDict));
+
+		final List<String> tstKeys = Lists.newArrayList();
+		tstDict.visitWordforms(new WordformIndexVisitor() {
+			@Override
+			public void visit(CharSequence reversedKey, Iterable<Wordform> wordforms) {
+				tstKeys.add(new StringBuilder(reversedKey).reverse().toString());
+			}
+		});
+		final List<String> dawgKeys = Lists.newArrayList();
+		dawgDict.visitWordforms(new WordformIndexVisitor() {
+			@Override
+			public void visit(CharSequence reversedKey, Iterable<Wordform> wordforms) {
+				dawgKeys.add(new StringBuilder(reversedKey).reverse().toString());
+			}
+		});
+		assertEquals(tstKeys, dawgKeys);
+		for (String key : tstKeys) {
+			assertEquals(key, toGramSets(tstDict, tstDict.getEntries(key)),
+					toGramSets(dawgDict, dawgDict.getEntries(key)));
+		}
+		for (String key : new String[] { "вворотишься", "переворотила", "мыркающий" }) {
+			assertTrue(dawgDict.getEntries(key).size() > 0);
+			assertEquals(key, toGramSets(tstDict, tstDict.getEntries(key)),
+					toGramSets(dawgDict, dawgDict.getEntries(key)));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUseCompactIndexAfterWordforms() {
+		MorphDictionaryImpl dict = new MorphDictionaryImpl();
+		Lemma lemma = new Lemma("стол", new BitSet());
+		lemma.setId(1);
+		dict.addLemma(lemma);
+		dict.addWordform("стол", new Wordform(1, new BitSet()));
+		dict.useCompactWordformIndex();
+	}
+
+	private static MorphDictionaryImpl parse(boolean compact) throws Exception {
+		MorphDictionaryImpl dict = new MorphDictionaryImpl();
+		FileInputStream fis = FileUtils.openInputStream(
+				new File("test-data/dict.opcorpora.test.xml"));
+		try {
+			XmlDictionaryParser parser = new XmlDictionaryParser(dict,
+					new DictionaryExtensionBase(), fis);
+			parser.setCompactWordformIndex(compact);
+			parser.run();
+		} finally {
+			IOUtils.closeQuietly(fis);
+		}
+		return dict;
+	}
+
+	private static Multiset<List<String>> toGramSets(MorphDictionaryImpl dict, List<Wordform> wfs) {
+		Multiset<List<String>> result = HashMultiset.create();
+		for (Wordform wf : wfs) {
+			result.add(dict.getGramModel().toGramSet(Wordform.getAllGramBits(wf, dict)));
+		}
+		return result;
+	}
+
+	private static BitSet bits(int... indexes) {
+		BitSet result = new BitSet();
+		for (int i : indexes) {
+			result.set(i);
+		}
+		return result;
+	}
+}
@@ -25,7 +25,7 @@ import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.InvalidXMLException;
 
 import ru.kfu.itis.cll.uima.util.CorpusUtils.PartitionType;
-import ru.kfu.itis.cll.uima.wfstore.SharedDefaultWordformStore;
+import ru.kfu.itis.cll.uima.wfstore.SharedWordformStore;
 import ru.kfu.itis.issst.uima.morph.model.MorphConstants;
 import ru.ksu.niimm.cll.uima.morph.lab.AnalysisTaskBase;
 import ru.ksu.niimm.cll.uima.morph.lab.CorpusPreprocessingTask;
@@ -153,10 +153,10 @@ public class BaselineLab extends LabLauncherBase {
 					SuffixExaminingPosTagger.PARAM_USE_DEBUG_GRAMMEMS, false);
 			// bind dictionary and wfStore resources
 			ExternalResourceDescription freqWfStoreDesc = createExternalResourceDescription(
-					SharedDefaultWordformStore.class,
+					SharedWordformStore.class,
 					getFreqModelFile(modelDir));
 			ExternalResourceDescription suffixWfStoreDesc = createExternalResourceDescription(
-					SharedDefaultWordformStore.class,
+					SharedWordformStore.class,
 					getSuffixModelFile(modelDir));
 			AnalysisEngineDescription xmiWriterDesc = createXmiWriterDesc(outputDir);
 			try {
@@ -21,7 +21,7 @@ import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.InvalidXMLException;
 
 import ru.kfu.itis.cll.uima.util.CorpusUtils.PartitionType;
-import ru.kfu.itis.cll.uima.wfstore.SharedDefaultWordformStore;
+import ru.kfu.itis.cll.uima.wfstore.SharedWordformStore;
 import ru.kfu.itis.issst.uima.morph.commons.GramModelBasedTagMapper;
 import ru.kfu.itis.issst.uima.morph.commons.TagAssembler;
 import ru.kfu.itis.issst.uima.morph.model.MorphConstants;
@@ -195,7 +195,7 @@ public class DictionaryAwareBaselineLab extends LabLauncherBase {
 					DictionaryAwareBaselineTagger.PARAM_NUM_GRAMMEME, MorphConstants.NUMR);
 			// bind dictionary and wfStore resources
 			ExternalResourceDescription dabWfStoreDesc = createExternalResourceDescription(
-					SharedDefaultWordformStore.class,
+					SharedWordformStore.class,
 					getDABModelFile(modelDir));
 			AnalysisEngineDescription xmiWriterDesc = createXmiWriterDesc(outputDir);
 			try {
@@ -29,6 +29,7 @@ import ru.ksu.niimm.cll.uima.morph.lab.FeatureExtractionTaskBase;
 import ru.ksu.niimm.cll.uima.morph.lab.LabLauncherBase;
 
 import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -62,6 +63,11 @@ public class TieredPosTaggerLab extends LabLauncherBase {
 		lab.run();
 	}
 
+	// the number of tiers that are trained concurrently,
+	// it is not a discriminator as it does not affect models
+	@Parameter(names = "--training-threads", required = false)
+	private int trainingThreads = 1;
+
 	private TieredPosTaggerLab() {
 	}
 
@@ -141,7 +147,7 @@ public class TieredPosTaggerLab extends LabLauncherBase {
 				addTrainParam(trainerArgs, "c2", c2);
 				//
 				TieredPosSequenceAnnotatorFactory.trainModels(trainingBaseDir, modelBaseDir,
-						trainerArgs.toArray(new String[trainerArgs.size()]));
+						trainerArgs.toArray(new String[trainerArgs.size()]), trainingThreads);
 			}
 		};
 		// -----------------------------------------------------------------
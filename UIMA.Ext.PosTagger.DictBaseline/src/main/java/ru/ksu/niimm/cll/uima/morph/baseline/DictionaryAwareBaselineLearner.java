@@ -27,7 +27,8 @@ import org.uimafit.util.JCasUtil;
 
 import ru.kfu.cll.uima.tokenizer.fstype.NUM;
 import ru.kfu.itis.cll.uima.cas.FSUtils;
-import ru.kfu.itis.cll.uima.wfstore.DefaultWordformStoreBuilder;
+import ru.kfu.itis.cll.uima.wfstore.CompactWordformStoreBuilder;
+import ru.kfu.itis.cll.uima.wfstore.ShardedWordformStoreBuilder;
 import ru.kfu.itis.cll.uima.wfstore.WordformStore;
 import ru.kfu.itis.cll.uima.wfstore.WordformStoreBuilder;
 import ru.kfu.itis.issst.uima.morph.dictionary.WordUtils;
@@ -44,12 +45,16 @@ import com.google.common.base.Joiner;
 public class DictionaryAwareBaselineLearner extends DictionaryAwareBaselineAnnotator {
 
 	public static final String PARAM_MODEL_OUTPUT_FILE = "modelOutputFile";
+	public static final String PARAM_WFSTORE_MEMORY_BUDGET = "wfStoreMemoryBudget";
 
 	// config fields
 	@ConfigurationParameter(name = PARAM_MODEL_OUTPUT_FILE, mandatory = true)
 	private File modelOutputFile;
 	@ConfigurationParameter(name = PARAM_TARGET_POS_CATEGORIES, mandatory = true)
 	private String[] targetPosCategories;
+	// heap for wordform counts in MB, the rest is spilled to disk; 0 keeps all counts in the heap
+	@ConfigurationParameter(name = PARAM_WFSTORE_MEMORY_BUDGET, defaultValue = "0")
+	private int wfStoreMemoryBudget;
 	// derived
 	private File modelDir;
 	// state fields
@@ -77,7 +82,12 @@ public class DictionaryAwareBaselineLearner extends DictionaryAwareBaselineAnnot
 		//
 		posTrimmer = new PosTrimmer(gramModel, targetPosCategories);
 		//
-		wfStoreBuilder = new DefaultWordformStoreBuilder<BitSet>();
+		if (wfStoreMemoryBudget > 0) {
+			wfStoreBuilder = new ShardedWordformStoreBuilder<BitSet>(
+					wfStoreMemoryBudget * 1024L * 1024L);
+		} else {
+			wfStoreBuilder = new CompactWordformStoreBuilder<BitSet>();
+		}
 	}
 
 	@Override
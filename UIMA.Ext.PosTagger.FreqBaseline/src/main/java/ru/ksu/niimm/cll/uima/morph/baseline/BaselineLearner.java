@@ -15,7 +15,8 @@ import org.uimafit.descriptor.ConfigurationParameter;
 import org.uimafit.descriptor.OperationalProperties;
 import org.uimafit.util.JCasUtil;
 
-import ru.kfu.itis.cll.uima.wfstore.DefaultWordformStoreBuilder;
+import ru.kfu.itis.cll.uima.wfstore.CompactWordformStoreBuilder;
+import ru.kfu.itis.cll.uima.wfstore.ShardedWordformStoreBuilder;
 import ru.kfu.itis.cll.uima.wfstore.WordformStore;
 import ru.kfu.itis.cll.uima.wfstore.WordformStoreBuilder;
 import ru.kfu.itis.issst.uima.postagger.MorphCasUtils;
@@ -28,10 +29,14 @@ import ru.kfu.itis.issst.uima.postagger.MorphCasUtils;
 public class BaselineLearner extends BaselineAnnotator {
 
 	public static final String PARAM_MODEL_OUTPUT_FILE = "modelOutputFile";
+	public static final String PARAM_WFSTORE_MEMORY_BUDGET = "wfStoreMemoryBudget";
 
 	// config fields
 	@ConfigurationParameter(name = PARAM_MODEL_OUTPUT_FILE, mandatory = true)
 	private File modelOutputFile;
+	// heap for wordform counts in MB, the rest is spilled to disk; 0 keeps all counts in the heap
+	@ConfigurationParameter(name = PARAM_WFSTORE_MEMORY_BUDGET, defaultValue = "0")
+	private int wfStoreMemoryBudget;
 	// derived
 	private File modelDir;
 	// state fields
@@ -46,7 +51,12 @@ public class BaselineLearner extends BaselineAnnotator {
 			modelDir = new File(".");
 		}
 		//
-		wfStoreBuilder = new DefaultWordformStoreBuilder<String>();
+		if (wfStoreMemoryBudget > 0) {
+			wfStoreBuilder = new ShardedWordformStoreBuilder<String>(
+					wfStoreMemoryBudget * 1024L * 1024L);
+		} else {
+			wfStoreBuilder = new CompactWordformStoreBuilder<String>();
+		}
 	}
 
 	@Override
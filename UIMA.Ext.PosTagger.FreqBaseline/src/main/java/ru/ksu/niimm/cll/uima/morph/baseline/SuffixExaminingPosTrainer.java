@@ -15,7 +15,8 @@ import org.uimafit.descriptor.ConfigurationParameter;
 import org.uimafit.descriptor.OperationalProperties;
 import org.uimafit.util.JCasUtil;
 
-import ru.kfu.itis.cll.uima.wfstore.DefaultWordformStoreBuilder;
+import ru.kfu.itis.cll.uima.wfstore.CompactWordformStoreBuilder;
+import ru.kfu.itis.cll.uima.wfstore.ShardedWordformStoreBuilder;
 import ru.kfu.itis.cll.uima.wfstore.WordformStore;
 import ru.kfu.itis.cll.uima.wfstore.WordformStoreBuilder;
 import ru.kfu.itis.issst.uima.morph.dictionary.WordUtils;
@@ -29,10 +30,14 @@ import ru.kfu.itis.issst.uima.postagger.MorphCasUtils;
 public class SuffixExaminingPosTrainer extends SuffixExaminingPosAnnotator {
 
 	public static final String PARAM_WFSTORE_FILE = "wfStoreFile";
+	public static final String PARAM_WFSTORE_MEMORY_BUDGET = "wfStoreMemoryBudget";
 
 	// config fields
 	@ConfigurationParameter(name = PARAM_WFSTORE_FILE, mandatory = true)
 	private File wsFile;
+	// heap for wordform counts in MB, the rest is spilled to disk; 0 keeps all counts in the heap
+	@ConfigurationParameter(name = PARAM_WFSTORE_MEMORY_BUDGET, defaultValue = "0")
+	private int wfStoreMemoryBudget;
 	// state fields
 	private WordformStoreBuilder<String> wsBuilder;
 	private int wordsExamined;
@@ -44,7 +49,12 @@ public class SuffixExaminingPosTrainer extends SuffixExaminingPosAnnotator {
 		if (suffixLength <= 0) {
 			throw new IllegalStateException("PARAM_SUFFIX_LENGTH is not specified");
 		}
-		wsBuilder = new DefaultWordformStoreBuilder<String>();
+		if (wfStoreMemoryBudget > 0) {
+			wsBuilder = new ShardedWordformStoreBuilder<String>(
+					wfStoreMemoryBudget * 1024L * 1024L);
+		} else {
+			wsBuilder = new CompactWordformStoreBuilder<String>();
+		}
 	}
 
 	@Override
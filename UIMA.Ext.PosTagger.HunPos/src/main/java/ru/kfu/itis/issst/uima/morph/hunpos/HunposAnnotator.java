@@ -6,8 +6,7 @@ package ru.kfu.itis.issst.uima.morph.hunpos;
 import static ru.kfu.itis.issst.uima.morph.commons.TagUtils.postProcessExternalTag;
 
 import java.io.File;
-import java.util.Collection;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.List;
 
 import org.annolab.tt4j.TokenHandler;
 import org.apache.uima.UimaContext;
@@ -25,8 +24,15 @@ import ru.kfu.cll.uima.segmentation.fstype.Sentence;
 import ru.kfu.cll.uima.tokenizer.fstype.NUM;
 import ru.kfu.cll.uima.tokenizer.fstype.Token;
 import ru.kfu.cll.uima.tokenizer.fstype.W;
+import ru.kfu.itis.issst.uima.morph.commons.TaggerProcessPool;
+
+import com.google.common.collect.Lists;
 
 /**
+ * Tags sentences of a document in a single request to a pool of hunpos-tagger
+ * processes. Annotator instances with the same model and lexicon share the
+ * pool, each instance adds the configured number of processes to it.
+ * 
  * @author Rinat Gareev (Kazan Federal University)
  * 
  */
@@ -34,96 +40,87 @@ public class HunposAnnotator extends JCasAnnotator_ImplBase {
 
 	public static final String PARAM_HUNPOS_MODEL_NAME = "hunposModelName";
 	public static final String PARAM_LEXICON_FILE = "lexiconFile";
+	public static final String PARAM_PROCESS_COUNT = "processCount";
 	// config
 	@ConfigurationParameter(name = PARAM_HUNPOS_MODEL_NAME, mandatory = true)
 	private String hpModelName;
 	@ConfigurationParameter(name = PARAM_LEXICON_FILE)
 	private File lexiconFile;
-	// monitors
-	private final Object casMon = new Object();
+	@ConfigurationParameter(name = PARAM_PROCESS_COUNT, defaultValue = "1", mandatory = false)
+	private int processCount;
 	// state fields
-	private HunposWrapper<Token> hunposTagger;
+	private TaggerProcessPool hunposPool;
+	private final TokenAdapter tokenAdapter = new TokenAdapter();
 
 	@Override
 	public void initialize(UimaContext ctx) throws ResourceInitializationException {
 		super.initialize(ctx);
-
-		hunposTagger = new HunposWrapper<Token>();
-		hunposTagger.setModelName(hpModelName);
-		if (lexiconFile != null) {
-			hunposTagger.setLexiconFile(lexiconFile);
-		}
-		hunposTagger.setTokenAdapter(new TokenAdapter());
+		File modelFile = new File(hpModelName);
+		hunposPool = TaggerProcessPool.getShared(
+				HunposDialect.getPoolKey(modelFile, lexiconFile),
+				new HunposDialect(modelFile, lexiconFile),
+				processCount);
 	}
 
 	@Override
 	public void process(final JCas jCas) throws AnalysisEngineProcessException {
+		List<List<Token>> sentences = Lists.newArrayList();
+		int tokenCount = 0;
 		for (Sentence sent : JCasUtil.select(jCas, Sentence.class)) {
-			process(jCas, sent);
+			List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sent);
+			sentences.add(tokens);
+			tokenCount += tokens.size();
 		}
-	}
-
-	private void process(final JCas jCas, Sentence sent) throws AnalysisEngineProcessException {
-		Collection<Token> tokens = JCasUtil.selectCovered(Token.class, sent);
-		final Word[] words = new Word[tokens.size()];
+		final Word[] words = new Word[tokenCount];
+		// the handler is invoked in this thread
+		TokenHandler<Token> tokenHandler = new TokenHandler<Token>() {
+			private int count;
 
-		final AtomicInteger count = new AtomicInteger(0);
-		hunposTagger.setTokenHandler(new TokenHandler<Token>() {
 			@Override
 			public void token(Token token, String pos, String lemma) {
-				// should be synchronized on the same object with TokenAdapter#getText (see below)
-				synchronized (casMon) {
-					// do not create Wordform on punctuation and special tokens
-					if (pos != null && (token instanceof W || token instanceof NUM)) {
-						pos = pos.intern();
-						Word w = new Word(jCas, token.getBegin(), token.getEnd());
-						w.setToken(token);
-
-						Wordform wf = new Wordform(jCas);
-						wf.setWord(w);
-						if (lemma != null) {
-							wf.setLemma(lemma);
-						}
-						// null tags comes as a 'null' string instances
-						wf.setPos(postProcessExternalTag(pos));
-
-						FSArray wfArr = new FSArray(jCas, 1);
-						wfArr.set(0, wf);
-						w.setWordforms(wfArr);
-
-						if (words[count.get()] != null) {
-							throw new IllegalStateException();
-						}
-						words[count.get()] = w;
+				// do not create Wordform on punctuation and special tokens
+				if (pos != null && (token instanceof W || token instanceof NUM)) {
+					pos = pos.intern();
+					Word w = new Word(jCas, token.getBegin(), token.getEnd());
+					w.setToken(token);
+
+					Wordform wf = new Wordform(jCas);
+					wf.setWord(w);
+					if (lemma != null) {
+						wf.setLemma(lemma);
 					}
-					//
-					count.getAndIncrement();
+					// null tags comes as a 'null' string instances
+					wf.setPos(postProcessExternalTag(pos));
+
+					FSArray wfArr = new FSArray(jCas, 1);
+					wfArr.set(0, wf);
+					w.setWordforms(wfArr);
+
+					words[count] = w;
 				}
+				//
+				count++;
 			}
-		});
+		};
 		// 
 		try {
-			hunposTagger.process(tokens);
-
-			// save annotations
-			for (Word w : words) {
-				if (w != null) {
-					w.addToIndexes();
-				}
-			}
+			hunposPool.process(sentences, tokenAdapter, tokenHandler);
 		} catch (Exception e) {
 			throw new AnalysisEngineProcessException(e);
-		} finally {
-			// just to clear reference to current CAS
-			hunposTagger.setTokenHandler(null);
+		}
+		// save annotations
+		for (Word w : words) {
+			if (w != null) {
+				w.addToIndexes();
+			}
 		}
 	}
 
 	@Override
 	public void destroy() {
-		if (hunposTagger != null) {
-			hunposTagger.destroy();
-			hunposTagger = null;
+		if (hunposPool != null) {
+			hunposPool.release();
+			hunposPool = null;
 		}
 		super.destroy();
 	}
@@ -136,12 +133,10 @@ public class HunposAnnotator extends JCasAnnotator_ImplBase {
 		super.finalize();
 	}
 
-	private class TokenAdapter implements org.annolab.tt4j.TokenAdapter<Token> {
+	private static class TokenAdapter implements org.annolab.tt4j.TokenAdapter<Token> {
 		@Override
 		public String getText(Token t) {
-			synchronized (casMon) {
-				return t.getCoveredText();
-			}
+			return t.getCoveredText();
 		}
 	}
-}
\ No newline at end of file
+}
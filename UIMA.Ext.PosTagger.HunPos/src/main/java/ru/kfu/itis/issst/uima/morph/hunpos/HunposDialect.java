@@ -0,0 +1,89 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.morph.hunpos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.annolab.tt4j.ExecutableResolver;
+import org.annolab.tt4j.PlatformDetector;
+
+import ru.kfu.itis.issst.uima.morph.commons.TaggerProcessDialect;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Talks to hunpos-tag: sentences are separated by empty lines, a sentinel is
+ * sent as a sentence of a single token.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class HunposDialect extends TaggerProcessDialect {
+
+	static final String TAGGER_IS_READY_MESSAGE = "tagger compiled";
+
+	static String getPoolKey(File modelFile, File lexiconFile) {
+		return "hunpos:" + modelFile.getAbsolutePath() + ":"
+				+ (lexiconFile == null ? "" : lexiconFile.getAbsolutePath());
+	}
+
+	// config fields
+	private final File modelFile;
+	private final File lexiconFile;
+	private final ExecutableResolver exeResolver;
+
+	HunposDialect(File modelFile, File lexiconFile) {
+		if (!modelFile.isFile()) {
+			throw new IllegalStateException(String.format(
+					"%s is not existing file", modelFile));
+		}
+		this.modelFile = modelFile;
+		this.lexiconFile = lexiconFile;
+		exeResolver = DefaultHunposExecutableResolver.taggerResolver();
+		exeResolver.setPlatformDetector(new PlatformDetector());
+	}
+
+	@Override
+	public List<String> getCommand() throws IOException {
+		List<String> cmd = Lists.newArrayList();
+		cmd.add(exeResolver.getExecutable());
+		if (lexiconFile != null) {
+			cmd.add("-m");
+			cmd.add(lexiconFile.getPath());
+		}
+		cmd.add(modelFile.getAbsolutePath());
+		return cmd;
+	}
+
+	@Override
+	public String getReadyMessage() {
+		return TAGGER_IS_READY_MESSAGE;
+	}
+
+	@Override
+	public void writeSentinel(Writer out, String sentinel) throws IOException {
+		out.write(sentinel);
+		writeLF(out);
+		writeSentenceEnd(out);
+	}
+
+	@Override
+	public void writeSentenceEnd(Writer out) throws IOException {
+		// print empty line to make sentence end
+		writeLF(out);
+	}
+
+	private static void writeLF(Writer out) throws IOException {
+		// \r\n (CRLF) does not work for Windows build of Hunpos
+		out.write('\n');
+	}
+
+	@Override
+	public void destroy() {
+		exeResolver.destroy();
+	}
+}
@@ -4,10 +4,11 @@
 package ru.kfu.itis.issst.uima.postagger.opennlp;
 
 import static ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionaryUtils.toGramBits;
-import static ru.kfu.itis.issst.uima.morph.model.Wordform.allGramBitsFunction;
+import static ru.kfu.itis.issst.uima.morph.model.Wordform.getAllGramBits;
 
 import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 
 import opennlp.tools.util.SequenceValidator;
 
@@ -18,7 +19,6 @@ import org.uimafit.descriptor.ExternalResource;
 import org.uimafit.factory.initializable.Initializable;
 
 import ru.kfu.cll.uima.tokenizer.fstype.Token;
-import ru.kfu.itis.cll.uima.util.BitUtils;
 import ru.kfu.itis.issst.uima.morph.commons.AgreementPredicates;
 import ru.kfu.itis.issst.uima.morph.commons.GramModelBasedTagMapper;
 import ru.kfu.itis.issst.uima.morph.commons.PunctuationUtils;
@@ -32,10 +32,22 @@ import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionaryHolder;
 import ru.kfu.itis.issst.uima.morph.model.MorphConstants;
 import ru.kfu.itis.issst.uima.morph.model.Wordform;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
+ * Checks that an outcome tag is compatible with dictionary entries of a
+ * token.
+ * <p>
+ * As {@link opennlp.tools.util.BeamSearch} asks about every outcome at every
+ * position of a sentence, all outcome-dependent data (a parsed tag and its
+ * grammeme mask) is computed once per outcome and cached, and dictionary
+ * entries of a token are looked up once per sentence. Containment checks are
+ * done on <code>long</code> word masks of grammeme bits.
+ * </p>
+ * <p>
+ * Instances are not thread-safe as the caches are not.
+ * </p>
+ * 
  * @author Rinat Gareev (Kazan Federal University)
  * 
  */
@@ -50,36 +62,46 @@ public class DictionaryGrammemeLevelTokenSequenceValidator
 	private MorphDictionary morphDictionary;
 	private GramModel gramModel;
 	// 
-	private List<BitSet> skipMasks;
+	private long[][] skipMasks;
 	private TwoTagPredicate agreementPredicate;
 	private int adjfId;
 	private int nounId;
+	private int maskLength;
+	// outcome => parsed outcome
+	private final Map<String, OutcomeInfo> outcomeCache = Maps.newHashMap();
+	// per-sentence cache of dictionary entries
+	private Token[] cachedSequence;
+	private TokenEntries[] cachedTokenEntries;
 
 	@Override
 	public void initialize(UimaContext ctx) throws ResourceInitializationException {
 		ExternalResourceInitializer.initialize(ctx, this);
-		morphDictionary = morphDictionaryHolder.getDictionary();
+		init(morphDictionaryHolder.getDictionary());
+	}
+
+	void init(MorphDictionary morphDictionary) {
+		this.morphDictionary = morphDictionary;
 		gramModel = morphDictionary.getGramModel();
+		maskLength = (gramModel.getGrammemMaxNumId() >> 6) + 1;
 		// TODO this is application-specific tunings. Refactor them out
-		skipMasks = Lists.newLinkedList();
+		skipMasks = new long[3][];
 		{
 			BitSet mask = new BitSet();
 			mask.set(gramModel.getGrammemNumId(MorphConstants.Abbr));
-			skipMasks.add(mask);
+			skipMasks[0] = toMask(mask);
 		}
 		{
 			BitSet mask = new BitSet();
 			// mask.set(gramModel.getGrammemNumId(RNCMorphConstants.RNC_INIT));
 			// FIXME eliminate this hard-coding, derive skipMask, etc. from the configuration
 			mask.set(gramModel.getGrammemNumId("RNC_INIT"));
-			skipMasks.add(mask);
+			skipMasks[1] = toMask(mask);
 		}
 		{
 			BitSet mask = new BitSet();
 			mask.set(gramModel.getGrammemNumId(MorphConstants.Prnt));
-			skipMasks.add(mask);
+			skipMasks[2] = toMask(mask);
 		}
-		skipMasks = ImmutableList.copyOf(skipMasks);
 		//
 		agreementPredicate = TwoTagPredicateConjunction.and(
 				AgreementPredicates.numberAgreement(gramModel),
@@ -98,43 +120,137 @@ public class DictionaryGrammemeLevelTokenSequenceValidator
 		if (!PunctuationTokenSequenceValidator.checkForPunctuationTag(curToken, outcome)) {
 			return false;
 		}
+		OutcomeInfo oi = getOutcomeInfo(outcome);
 		// do not validate punctuation tags as it is done before
-		if (PunctuationUtils.isPunctuationTag(outcome)) {
+		if (oi.punctuation) {
 			return true;
 		}
-		outcome = TagUtils.postProcessExternalTag(outcome);
 		// dictionary look-up 
-		String tokenStr = curToken.getCoveredText();
-		tokenStr = WordUtils.normalizeToDictionaryForm(tokenStr);
-		List<Wordform> dictEntries = morphDictionary.getEntries(tokenStr);
-		if (dictEntries == null || dictEntries.isEmpty()) {
-			return !TagUtils.isClosedClassTag(outcome);
+		TokenEntries dictEntries = getTokenEntries(inputSequence, i);
+		if (dictEntries.masks.length == 0) {
+			return !oi.closedClass;
 		}
 		// dictEntries is not empty so null-tag is not valid in most cases
-		if (outcome == null) {
+		if (oi.tag == null) {
 			return false;
 		}
-		// parse tag
-		// TODO do not rely on the specific implementation of TagMapper
-		Iterable<String> candidateGrams = GramModelBasedTagMapper.parseTag(outcome);
-		BitSet candidateBS = toGramBits(gramModel, candidateGrams);
-		for (BitSet sm : skipMasks) {
-			if (BitUtils.contains(candidateBS, sm)) {
-				return true;
-			}
+		long[] candidate = oi.getMask();
+		if (oi.skip) {
+			return true;
 		}
 		// check containment
-		List<BitSet> dictBSes = Lists.transform(dictEntries, allGramBitsFunction(morphDictionary));
-		for (BitSet de : dictBSes) {
-			if (BitUtils.contains(de, candidateBS)) {
+		for (int e = 0; e < dictEntries.masks.length; e++) {
+			long[] de = dictEntries.masks[e];
+			if (contains(de, candidate)) {
 				return true;
 			}
 			// check nominalization
-			if (candidateBS.get(nounId) && de.get(adjfId)
-					&& agreementPredicate.apply(candidateBS, de)) {
+			if (oi.noun && dictEntries.bits[e].get(adjfId)
+					&& agreementPredicate.apply(oi.bits, dictEntries.bits[e])) {
 				return true;
 			}
 		}
 		return false;
 	}
+
+	private OutcomeInfo getOutcomeInfo(String outcome) {
+		// a map does not allow null keys
+		String key = String.valueOf(outcome);
+		OutcomeInfo result = outcomeCache.get(key);
+		if (result == null) {
+			result = new OutcomeInfo(outcome);
+			outcomeCache.put(key, result);
+		}
+		return result;
+	}
+
+	private TokenEntries getTokenEntries(Token[] inputSequence, int i) {
+		if (inputSequence != cachedSequence) {
+			cachedSequence = inputSequence;
+			cachedTokenEntries = new TokenEntries[inputSequence.length];
+		}
+		TokenEntries result = cachedTokenEntries[i];
+		if (result == null) {
+			String tokenStr = inputSequence[i].getCoveredText();
+			tokenStr = WordUtils.normalizeToDictionaryForm(tokenStr);
+			List<Wordform> dictEntries = morphDictionary.getEntries(tokenStr);
+			result = new TokenEntries(dictEntries);
+			cachedTokenEntries[i] = result;
+		}
+		return result;
+	}
+
+	private long[] toMask(BitSet bits) {
+		long[] result = new long[maskLength];
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			result[i >> 6] |= 1L << i;
+		}
+		return result;
+	}
+
+	/**
+	 * @return true only if arg contains all bits from filter
+	 */
+	private static boolean contains(long[] arg, long[] filter) {
+		for (int w = 0; w < filter.length; w++) {
+			if ((arg[w] & filter[w]) != filter[w]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private class OutcomeInfo {
+		// post-processed tag
+		private final String tag;
+		private final boolean punctuation;
+		private final boolean closedClass;
+		// derived lazily as an unknown grammeme is reported only for tokens
+		// with dictionary entries
+		private long[] mask;
+		private BitSet bits;
+		private boolean skip;
+		private boolean noun;
+
+		OutcomeInfo(String outcome) {
+			punctuation = PunctuationUtils.isPunctuationTag(outcome);
+			tag = TagUtils.postProcessExternalTag(outcome);
+			closedClass = TagUtils.isClosedClassTag(tag);
+		}
+
+		long[] getMask() {
+			if (mask == null) {
+				// parse tag
+				// TODO do not rely on the specific implementation of TagMapper
+				Iterable<String> candidateGrams = GramModelBasedTagMapper.parseTag(tag);
+				BitSet candidateBS = toGramBits(gramModel, candidateGrams);
+				long[] candidate = toMask(candidateBS);
+				bits = candidateBS;
+				noun = candidateBS.get(nounId);
+				for (long[] sm : skipMasks) {
+					if (contains(candidate, sm)) {
+						skip = true;
+						break;
+					}
+				}
+				mask = candidate;
+			}
+			return mask;
+		}
+	}
+
+	private class TokenEntries {
+		private final BitSet[] bits;
+		private final long[][] masks;
+
+		TokenEntries(List<Wordform> dictEntries) {
+			int size = dictEntries == null ? 0 : dictEntries.size();
+			bits = new BitSet[size];
+			masks = new long[size][];
+			for (int e = 0; e < size; e++) {
+				bits[e] = getAllGramBits(dictEntries.get(e), morphDictionary);
+				masks[e] = toMask(bits[e]);
+			}
+		}
+	}
 }
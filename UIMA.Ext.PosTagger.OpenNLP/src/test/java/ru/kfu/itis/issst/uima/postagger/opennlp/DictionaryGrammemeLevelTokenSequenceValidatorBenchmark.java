@@ -0,0 +1,73 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.postagger.opennlp;
+
+import static java.lang.System.nanoTime;
+import static ru.kfu.itis.issst.uima.morph.commons.DictionaryLoader4Tests.dict;
+
+import java.util.List;
+
+import ru.kfu.cll.uima.tokenizer.fstype.Token;
+import ru.kfu.itis.issst.uima.postagger.opennlp.DictionaryGrammemeLevelTokenSequenceValidatorTest.UncachedValidator;
+
+/**
+ * Times {@link DictionaryGrammemeLevelTokenSequenceValidator} against the
+ * straightforward validation it replaced, as a beam search invokes them: every
+ * outcome at every position of the sentence of
+ * {@link DictionaryGrammemeLevelTokenSequenceValidatorTest}.
+ * <p>
+ * Usage: <code>DictionaryGrammemeLevelTokenSequenceValidatorBenchmark [iterations]</code>
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class DictionaryGrammemeLevelTokenSequenceValidatorBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		Token[] sequence = DictionaryGrammemeLevelTokenSequenceValidatorTest.tokenize();
+		List<String> outcomes = DictionaryGrammemeLevelTokenSequenceValidatorTest
+				.getOutcomes(sequence);
+		DictionaryGrammemeLevelTokenSequenceValidator validator =
+				new DictionaryGrammemeLevelTokenSequenceValidator();
+		validator.init(dict);
+		UncachedValidator uncached = new UncachedValidator();
+		long uncachedTime = 0;
+		long cachedTime = 0;
+		int uncachedResult = 0;
+		int cachedResult = 0;
+		for (int iter = 0; iter < iterations; iter++) {
+			// a new sentence array invalidates the per-sentence cache
+			Token[] iterSequence = sequence.clone();
+			long timeBefore = nanoTime();
+			for (int i = 0; i < iterSequence.length; i++) {
+				for (String outcome : outcomes) {
+					if (uncached.validSequence(i, iterSequence, outcome)) {
+						uncachedResult++;
+					}
+				}
+			}
+			long timeBetween = nanoTime();
+			for (int i = 0; i < iterSequence.length; i++) {
+				for (String outcome : outcomes) {
+					if (validator.validSequence(i, iterSequence, null, outcome)) {
+						cachedResult++;
+					}
+				}
+			}
+			cachedTime += nanoTime() - timeBetween;
+			uncachedTime += timeBetween - timeBefore;
+		}
+		if (uncachedResult != cachedResult) {
+			throw new IllegalStateException(String.format(
+					"Different counts of valid outcomes: uncached %s, cached %s",
+					uncachedResult, cachedResult));
+		}
+		System.out.println(String.format(
+				"%s tokens x %s outcomes: uncached %.2f ms, cached %.2f ms per sentence",
+				sequence.length, outcomes.size(),
+				uncachedTime / 1e6 / iterations, cachedTime / 1e6 / iterations));
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.postagger.opennlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static ru.kfu.itis.issst.uima.morph.commons.DictionaryLoader4Tests.dict;
+import static ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionaryUtils.toGramBits;
+import static ru.kfu.itis.issst.uima.morph.model.Wordform.allGramBitsFunction;
+import static ru.kfu.itis.issst.uima.morph.model.Wordform.getAllGramBits;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.uimafit.factory.TypeSystemDescriptionFactory;
+
+import ru.kfu.cll.uima.tokenizer.fstype.CW;
+import ru.kfu.cll.uima.tokenizer.fstype.NUM;
+import ru.kfu.cll.uima.tokenizer.fstype.PM;
+import ru.kfu.cll.uima.tokenizer.fstype.SW;
+import ru.kfu.cll.uima.tokenizer.fstype.Token;
+import ru.kfu.itis.cll.uima.util.BitUtils;
+import ru.kfu.itis.issst.uima.morph.commons.AgreementPredicates;
+import ru.kfu.itis.issst.uima.morph.commons.DictionaryLoader4Tests;
+import ru.kfu.itis.issst.uima.morph.commons.GramModelBasedTagMapper;
+import ru.kfu.itis.issst.uima.morph.commons.PunctuationUtils;
+import ru.kfu.itis.issst.uima.morph.commons.TagUtils;
+import ru.kfu.itis.issst.uima.morph.commons.TwoTagPredicate;
+import ru.kfu.itis.issst.uima.morph.commons.TwoTagPredicateConjunction;
+import ru.kfu.itis.issst.uima.morph.dictionary.WordUtils;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModel;
+import ru.kfu.itis.issst.uima.morph.model.MorphConstants;
+import ru.kfu.itis.issst.uima.morph.model.Wordform;
+import ru.kfu.itis.issst.uima.postagger.PosTaggerAPI;
+import ru.kfu.itis.issst.uima.tokenizer.TokenizerAPI;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Compares the cached validation with the straightforward one it replaced:
+ * results must be the same for every outcome at every position. See
+ * {@link DictionaryGrammemeLevelTokenSequenceValidatorBenchmark} for the time
+ * of both.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class DictionaryGrammemeLevelTokenSequenceValidatorTest {
+
+	@BeforeClass
+	public static void loadDictionary() {
+		DictionaryLoader4Tests.init();
+	}
+
+	private static final String testTxt = "Компьютерная игра в жанре стали , мы видели её"
+			+ " в 2013 г. на выставке и купили хорошую сталь мозявки ; Tales of Legendia .";
+	private static final Pattern tokenPattern = Pattern.compile("\\p{L}+\\.?|\\d+|\\S");
+
+	@Test
+	public void shouldGiveTheSameResultsAsUncachedValidation() throws Exception {
+		Token[] sequence = tokenize();
+		List<String> outcomes = getOutcomes(sequence);
+		DictionaryGrammemeLevelTokenSequenceValidator validator =
+				new DictionaryGrammemeLevelTokenSequenceValidator();
+		validator.init(dict);
+		UncachedValidator uncached = new UncachedValidator();
+		int validCount = 0;
+		for (int i = 0; i < sequence.length; i++) {
+			for (String outcome : outcomes) {
+				boolean expected = uncached.validSequence(i, sequence, outcome);
+				assertEquals(String.format("%s as %s", sequence[i].getCoveredText(), outcome),
+						expected, validator.validSequence(i, sequence, null, outcome));
+				if (expected) {
+					validCount++;
+				}
+			}
+		}
+		// both valid and invalid outcomes are checked
+		assertTrue(validCount > sequence.length);
+		assertTrue(validCount < sequence.length * outcomes.size());
+		// the same results on a repeated pass with warmed caches
+		for (int i = sequence.length - 1; i >= 0; i--) {
+			for (String outcome : outcomes) {
+				assertEquals(uncached.validSequence(i, sequence, outcome),
+						validator.validSequence(i, sequence, null, outcome));
+			}
+		}
+	}
+
+	static Token[] tokenize() throws Exception {
+		TypeSystemDescription tsd = TypeSystemDescriptionFactory.createTypeSystemDescription(
+				TokenizerAPI.TYPESYSTEM_TOKENIZER,
+				PosTaggerAPI.TYPESYSTEM_POSTAGGER);
+		CAS cas = CasCreationUtils.createCas(tsd, null, null);
+		cas.setDocumentText(testTxt);
+		JCas jCas = cas.getJCas();
+		List<Token> result = Lists.newArrayList();
+		Matcher m = tokenPattern.matcher(testTxt);
+		while (m.find()) {
+			String str = m.group();
+			Token token;
+			if (Character.isDigit(str.charAt(0))) {
+				token = new NUM(jCas, m.start(), m.end());
+			} else if (!Character.isLetter(str.charAt(0))) {
+				token = new PM(jCas, m.start(), m.end());
+			} else if (Character.isUpperCase(str.charAt(0))) {
+				token = new CW(jCas, m.start(), m.end());
+			} else {
+				token = new SW(jCas, m.start(), m.end());
+			}
+			result.add(token);
+		}
+		return result.toArray(new Token[result.size()]);
+	}
+
+	/**
+	 * @return tags of dictionary entries of the given tokens, their PoS and
+	 *         nominalized adjective tags, punctuation and null tags
+	 */
+	static List<String> getOutcomes(Token[] sequence) {
+		GramModel gm = dict.getGramModel();
+		Joiner tagJoiner = Joiner.on(GramModelBasedTagMapper.targetGramDelim);
+		Set<String> result = Sets.newLinkedHashSet();
+		for (Token token : sequence) {
+			String tokenStr = WordUtils.normalizeToDictionaryForm(token.getCoveredText());
+			List<Wordform> entries = dict.getEntries(tokenStr);
+			if (entries == null) {
+				continue;
+			}
+			for (Wordform wf : entries) {
+				BitSet bits = getAllGramBits(wf, dict);
+				List<String> grams = gm.toGramSet(bits);
+				result.add(tagJoiner.join(grams));
+				String pos = gm.getPos(bits);
+				if (pos != null) {
+					result.add(pos);
+				}
+				if (grams.contains(MorphConstants.ADJF)) {
+					List<String> nounGrams = Lists.newArrayList(grams);
+					nounGrams.set(nounGrams.indexOf(MorphConstants.ADJF), MorphConstants.NOUN);
+					result.add(tagJoiner.join(nounGrams));
+				}
+			}
+		}
+		result.add(MorphConstants.NOUN + GramModelBasedTagMapper.targetGramDelim
+				+ MorphConstants.Abbr);
+		result.add(MorphConstants.NOUN + GramModelBasedTagMapper.targetGramDelim
+				+ MorphConstants.Prnt);
+		result.addAll(ImmutableList.of(",", ";", ".", "null"));
+		result.add(PunctuationUtils.OTHER_PUNCTUATION_TAG);
+		result.add(null);
+		return Lists.newArrayList(result);
+	}
+
+	/**
+	 * Validation that parses the outcome and looks up the token entries on
+	 * each invocation.
+	 */
+	static class UncachedValidator {
+		private final GramModel gramModel = dict.getGramModel();
+		private final List<BitSet> skipMasks = Lists.newArrayList();
+		private final TwoTagPredicate agreementPredicate = TwoTagPredicateConjunction.and(
+				AgreementPredicates.numberAgreement(gramModel),
+				AgreementPredicates.genderAgreement(gramModel),
+				AgreementPredicates.caseAgreement(gramModel));
+		private final int adjfId = gramModel.getGrammemNumId(MorphConstants.ADJF);
+		private final int nounId = gramModel.getGrammemNumId(MorphConstants.NOUN);
+
+		UncachedValidator() {
+			for (String skipGram : new String[] { MorphConstants.Abbr, "RNC_INIT",
+					MorphConstants.Prnt }) {
+				BitSet mask = new BitSet();
+				mask.set(gramModel.getGrammemNumId(skipGram));
+				skipMasks.add(mask);
+			}
+		}
+
+		boolean validSequence(int i, Token[] inputSequence, String outcome) {
+			Token curToken = inputSequence[i];
+			if (!PunctuationTokenSequenceValidator.checkForPunctuationTag(curToken, outcome)) {
+				return false;
+			}
+			if (PunctuationUtils.isPunctuationTag(outcome)) {
+				return true;
+			}
+			outcome = TagUtils.postProcessExternalTag(outcome);
+			String tokenStr = curToken.getCoveredText();
+			tokenStr = WordUtils.normalizeToDictionaryForm(tokenStr);
+			List<Wordform> dictEntries = dict.getEntries(tokenStr);
+			if (dictEntries == null || dictEntries.isEmpty()) {
+				return !TagUtils.isClosedClassTag(outcome);
+			}
+			if (outcome == null) {
+				return false;
+			}
+			Iterable<String> candidateGrams = GramModelBasedTagMapper.parseTag(outcome);
+			BitSet candidateBS = toGramBits(gramModel, candidateGrams);
+			for (BitSet sm : skipMasks) {
+				if (BitUtils.contains(candidateBS, sm)) {
+					return true;
+				}
+			}
+			List<BitSet> dictBSes = Lists.transform(dictEntries, allGramBitsFunction(dict));
+			for (BitSet de : dictBSes) {
+				if (BitUtils.contains(de, candidateBS)) {
+					return true;
+				}
+				if (candidateBS.get(nounId) && de.get(adjfId)
+						&& agreementPredicate.apply(candidateBS, de)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import static ru.kfu.itis.issst.uima.postagger.PosTaggerAPI.DEFAULT_REUSE_EXISTING_WORD_ANNOTATIONS;
+import static ru.kfu.itis.issst.uima.postagger.PosTaggerAPI.PARAM_REUSE_EXISTING_WORD_ANNOTATIONS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.SequenceClassifier;
+import org.opencorpora.cas.Word;
+import org.opencorpora.cas.Wordform;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.descriptor.ExternalResource;
+import org.uimafit.util.JCasUtil;
+
+import ru.kfu.cll.uima.segmentation.fstype.Sentence;
+import ru.kfu.cll.uima.tokenizer.fstype.Token;
+import ru.kfu.itis.issst.cleartk.Disposable;
+import ru.kfu.itis.issst.cleartk.GenericJarClassifierFactory;
+import ru.kfu.itis.issst.cleartk.JarSequenceClassifierFactory;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionary;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionaryHolder;
+import ru.kfu.itis.issst.uima.postagger.MorphCasUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tags all PoS-tiers in a single pass over a CAS. The result is the same as
+ * of the chain of {@link TieredPosSequenceAnnotator}s (one per tier) with the
+ * same models, but sentence tokens, their words and the tier-independent
+ * token features are obtained once and shared by classifiers of all tiers.
+ * Tiers of a sentence are tagged one after another, as features of a tier
+ * depend on grammemes assigned by the previous ones.
+ * <p>
+ * This annotator can not be used to write training data, see
+ * {@link TieredPosSequenceAnnotator} for this.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MultiTierPosSequenceAnnotator extends JCasAnnotator_ImplBase {
+
+	public static final String RESOURCE_MORPH_DICTIONARY =
+			TieredPosSequenceAnnotator.RESOURCE_MORPH_DICTIONARY;
+	public static final String PARAM_POS_TIERS = TieredPosSequenceAnnotator.PARAM_POS_TIERS;
+	public static final String PARAM_CLASSIFIER_JAR_PATHS = "classifierJarPaths";
+	public static final String PARAM_ADDITIONAL_SEARCH_PATHS =
+			GenericJarClassifierFactory.PARAM_ADDITIONAL_SEARCH_PATHS;
+	public static final String PARAM_LEFT_CONTEXT_SIZE =
+			TieredPosSequenceAnnotator.PARAM_LEFT_CONTEXT_SIZE;
+	public static final String PARAM_RIGHT_CONTEXT_SIZE =
+			TieredPosSequenceAnnotator.PARAM_RIGHT_CONTEXT_SIZE;
+	public static final String PARAM_GEN_DICTIONARY_FEATURES =
+			TieredPosSequenceAnnotator.PARAM_GEN_DICTIONARY_FEATURES;
+	public static final String PARAM_GEN_PUNCTUATION_FEATURES =
+			TieredPosSequenceAnnotator.PARAM_GEN_PUNCTUATION_FEATURES;
+	// config fields
+	@ExternalResource(key = RESOURCE_MORPH_DICTIONARY, mandatory = true)
+	private MorphDictionaryHolder morphDictHolder;
+	@ConfigurationParameter(name = PARAM_POS_TIERS, mandatory = true)
+	private List<String> pPosTiers;
+	/**
+	 * classifier jar path for each tier, in the order of tiers
+	 */
+	@ConfigurationParameter(name = PARAM_CLASSIFIER_JAR_PATHS, mandatory = true)
+	private String[] classifierJarPaths;
+	@ConfigurationParameter(name = PARAM_ADDITIONAL_SEARCH_PATHS, mandatory = false)
+	private String[] additionalSearchPaths;
+	// feature extraction parameters
+	@ConfigurationParameter(name = PARAM_LEFT_CONTEXT_SIZE, defaultValue = "2")
+	private int leftContextSize = -1;
+	@ConfigurationParameter(name = PARAM_RIGHT_CONTEXT_SIZE, defaultValue = "2")
+	private int rightContextSize = -1;
+	@ConfigurationParameter(name = PARAM_GEN_DICTIONARY_FEATURES, defaultValue = "true")
+	private boolean generateDictionaryFeatures;
+	@ConfigurationParameter(name = PARAM_GEN_PUNCTUATION_FEATURES, defaultValue = "false")
+	private boolean generatePunctuationFeatures;
+	@ConfigurationParameter(name = PARAM_REUSE_EXISTING_WORD_ANNOTATIONS,
+			defaultValue = DEFAULT_REUSE_EXISTING_WORD_ANNOTATIONS)
+	private boolean reuseExistingWordAnnotations;
+	// derived
+	private TokenFeatureCache tokenFeatureCache;
+	private List<TierFeatureExtractor> featureExtractors;
+	private List<SequenceClassifier<String>> classifiers;
+	// per-CAS
+	private Map<Token, Word> token2WordIndex;
+
+	@Override
+	public void initialize(UimaContext ctx) throws ResourceInitializationException {
+		super.initialize(ctx);
+		if (generatePunctuationFeatures) {
+			throw new UnsupportedOperationException("generatePunctuationFeatures == true");
+		}
+		List<Set<String>> posTiers = TieredPosSequenceAnnotator.parsePosTiers(pPosTiers);
+		if (classifierJarPaths.length != posTiers.size()) {
+			throw new IllegalStateException(String.format(
+					"There are %s PoS-tiers but %s classifier jar paths",
+					posTiers.size(), classifierJarPaths.length));
+		}
+		MorphDictionary morphDictionary = morphDictHolder.getDictionary();
+		TieredPosSequenceAnnotator.checkDictGrammems(morphDictionary.getGramModel());
+		tokenFeatureCache = new TokenFeatureCache();
+		featureExtractors = Lists.newArrayListWithCapacity(posTiers.size());
+		classifiers = Lists.newArrayListWithCapacity(posTiers.size());
+		for (int i = 0; i < posTiers.size(); i++) {
+			featureExtractors.add(new TierFeatureExtractor(morphDictionary, posTiers, i,
+					leftContextSize, rightContextSize, generateDictionaryFeatures,
+					tokenFeatureCache));
+			JarSequenceClassifierFactory<String> classifierFactory =
+					new JarSequenceClassifierFactory<String>();
+			classifierFactory.setClassifierJarPath(classifierJarPaths[i]);
+			classifierFactory.setAdditionalSearchPaths(additionalSearchPaths);
+			try {
+				classifiers.add(classifierFactory.createClassifier());
+			} catch (IOException e) {
+				throw new ResourceInitializationException(e);
+			}
+		}
+	}
+
+	@Override
+	public void process(JCas jCas) throws AnalysisEngineProcessException {
+		TieredPosSequenceAnnotator.prepareWords(jCas, reuseExistingWordAnnotations);
+		token2WordIndex = MorphCasUtils.getToken2WordIndex(jCas);
+		try {
+			for (Sentence sent : JCasUtil.select(jCas, Sentence.class)) {
+				process(jCas, sent);
+			}
+		} finally {
+			token2WordIndex.clear();
+			tokenFeatureCache.clear();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (classifiers != null) {
+			for (SequenceClassifier<String> classifier : classifiers) {
+				if (classifier instanceof Disposable) {
+					((Disposable) classifier).dispose();
+				}
+			}
+			classifiers = null;
+		}
+		super.destroy();
+	}
+
+	private void process(JCas jCas, Sentence sent) throws AnalysisEngineProcessException {
+		List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sent);
+		List<Wordform> wfSeq = Lists.newArrayListWithCapacity(tokens.size());
+		for (Token token : tokens) {
+			Word word = token2WordIndex.get(token);
+			if (word == null) {
+				wfSeq.add(null);
+			} else {
+				wfSeq.add(MorphCasUtils.requireOnlyWordform(word));
+			}
+		}
+		for (int tier = 0; tier < classifiers.size(); tier++) {
+			TierFeatureExtractor featureExtractor = featureExtractors.get(tier);
+			List<List<Feature>> sentSeq = Lists.newArrayListWithCapacity(tokens.size());
+			for (Token token : tokens) {
+				sentSeq.add(featureExtractor.extract(jCas, token, sent));
+			}
+			List<String> labelSeq = classifiers.get(tier).classify(sentSeq);
+			if (labelSeq.size() != wfSeq.size()) {
+				throw new IllegalStateException();
+			}
+			TieredPosSequenceAnnotator.applyLabels(jCas, wfSeq, labelSeq, getLogger());
+		}
+	}
+}
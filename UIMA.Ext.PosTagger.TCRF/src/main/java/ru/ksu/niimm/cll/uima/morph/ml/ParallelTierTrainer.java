@@ -0,0 +1,197 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Trains models of PoS-tiers concurrently. Training directories of tiers are
+ * independent, so each tier is trained by {@link TierTrainer} in a separate
+ * JVM, and at most 'parallelism' JVMs run at the same time. A child JVM gets
+ * the classpath and the command line options (e.g., -Xmx and
+ * java.library.path) of the current one, except debugging and agent options.
+ * Keep in mind that the memory limit applies to each child.
+ * <p>
+ * Output of a trainer is written to the log line by line with the tier name
+ * prefix. When all tiers are trained the wall time and the peak memory of each
+ * one are logged. If training of a tier fails then trainers of other tiers are
+ * destroyed.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class ParallelTierTrainer {
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelTierTrainer.class);
+
+	// config fields
+	private final int parallelism;
+	// name of the class with the main method of a child JVM
+	private final String trainerClassName;
+	// state fields
+	private final Set<Process> runningProcesses =
+			Collections.newSetFromMap(new ConcurrentHashMap<Process, Boolean>());
+	private volatile boolean stopped;
+
+	ParallelTierTrainer(int parallelism) {
+		this(parallelism, TierTrainer.class.getName());
+	}
+
+	/**
+	 * @param trainerClassName
+	 *            class that is launched in a child JVM with the same arguments
+	 *            and output as {@link TierTrainer}
+	 */
+	ParallelTierTrainer(int parallelism, String trainerClassName) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism = " + parallelism);
+		}
+		this.parallelism = parallelism;
+		this.trainerClassName = trainerClassName;
+	}
+
+	/**
+	 * @param tierDirs
+	 *            map of a tier name to its training and model directories
+	 * @param trainerArgs
+	 *            CRFSuite trainer arguments that are the same for all tiers
+	 * @return reports of tiers in the order of the given map
+	 */
+	List<TierReport> train(Map<String, File[]> tierDirs, final String[] trainerArgs)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(parallelism, tierDirs.size()));
+		// results are taken in the order of completion to fail as soon as any tier fails
+		CompletionService<TierReport> completionService =
+				new ExecutorCompletionService<TierReport>(executor);
+		Map<Future<TierReport>, String> futureTiers = Maps.newHashMap();
+		try {
+			for (Map.Entry<String, File[]> e : tierDirs.entrySet()) {
+				final String tier = e.getKey();
+				final File trainingDir = e.getValue()[0];
+				final File modelDir = e.getValue()[1];
+				futureTiers.put(completionService.submit(new Callable<TierReport>() {
+					@Override
+					public TierReport call() throws Exception {
+						return trainTier(tier, trainingDir, modelDir, trainerArgs);
+					}
+				}), tier);
+			}
+			executor.shutdown();
+			Map<String, TierReport> tierReports = Maps.newHashMap();
+			for (int i = 0; i < futureTiers.size(); i++) {
+				Future<TierReport> future = completionService.take();
+				try {
+					TierReport r = future.get();
+					tierReports.put(r.tier, r);
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException(String.format(
+							"Training of tier '%s' failed", futureTiers.get(future)),
+							ex.getCause());
+				}
+			}
+			List<TierReport> reports = Lists.newArrayList();
+			for (String tier : tierDirs.keySet()) {
+				reports.add(tierReports.get(tier));
+			}
+			TierReport.log(reports);
+			return reports;
+		} finally {
+			stopped = true;
+			executor.shutdownNow();
+			for (Process p : runningProcesses) {
+				p.destroy();
+			}
+		}
+	}
+
+	private TierReport trainTier(String tier, File trainingDir, File modelDir,
+			String[] trainerArgs) throws IOException, InterruptedException {
+		List<String> cmd = Lists.newArrayList();
+		cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (!isExcludedJvmArgument(jvmArg)) {
+				cmd.add(jvmArg);
+			}
+		}
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(trainerClassName);
+		cmd.add(trainingDir.getPath());
+		cmd.add(modelDir.getPath());
+		for (String arg : trainerArgs) {
+			cmd.add(arg);
+		}
+		log.info("Start training of tier '{}'", tier);
+		long startTime = System.currentTimeMillis();
+		Process proc = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+		runningProcesses.add(proc);
+		long peakMemory = -1;
+		try {
+			// the process may be started after other ones have been destroyed
+			if (stopped) {
+				throw new IllegalStateException(String.format(
+						"Training of tier '%s' is cancelled", tier));
+			}
+			IOUtils.closeQuietly(proc.getOutputStream());
+			BufferedReader out = new BufferedReader(
+					new InputStreamReader(proc.getInputStream()));
+			try {
+				String line;
+				while ((line = out.readLine()) != null) {
+					if (line.startsWith(TierTrainer.PEAK_MEMORY_PREFIX)) {
+						peakMemory = Long.parseLong(
+								line.substring(TierTrainer.PEAK_MEMORY_PREFIX.length()));
+					} else {
+						log.info("[{}] {}", tier, line);
+					}
+				}
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+			int exitCode = proc.waitFor();
+			if (exitCode != 0) {
+				throw new IllegalStateException(String.format(
+						"Trainer of tier '%s' exited with code %s", tier, exitCode));
+			}
+		} finally {
+			proc.destroy();
+			runningProcesses.remove(proc);
+		}
+		TierReport result = new TierReport(tier,
+				System.currentTimeMillis() - startTime, peakMemory);
+		log.info("Finished training of tier '{}'", tier);
+		return result;
+	}
+
+	private static boolean isExcludedJvmArgument(String arg) {
+		return arg.startsWith("-agentlib:") || arg.startsWith("-agentpath:")
+				|| arg.startsWith("-javaagent:") || arg.startsWith("-Xrunjdwp")
+				|| arg.equals("-Xdebug");
+	}
+}
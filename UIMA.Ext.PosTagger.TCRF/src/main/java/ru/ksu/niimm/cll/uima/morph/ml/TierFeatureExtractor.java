@@ -0,0 +1,121 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.uima.jcas.JCas;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor;
+import org.cleartk.classifier.feature.extractor.CleartkExtractor.Context;
+import org.cleartk.classifier.feature.extractor.CleartkExtractorException;
+import org.cleartk.classifier.feature.extractor.simple.CombinedExtractor;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+
+import ru.kfu.cll.uima.segmentation.fstype.Sentence;
+import ru.kfu.cll.uima.tokenizer.fstype.Token;
+import ru.kfu.itis.issst.uima.ml.DictionaryPossibleTagFeatureExtractor;
+import ru.kfu.itis.issst.uima.ml.GrammemeExtractor;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModel;
+import ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionary;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Extracts token features for a classifier of the given PoS-tier. Features of
+ * previous tiers are extracted from grammemes of token wordforms, so they must
+ * be assigned before an invocation of {@link #extract(JCas, Token, Sentence)}.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class TierFeatureExtractor {
+
+	// config fields
+	private final Set<String> currentPosTier;
+	private final Set<String> prevTierPosCategories;
+	// features
+	private final SimpleFeatureExtractor tokenFeatureExtractor;
+	private final SimpleFeatureExtractor dictFeatureExtractor;
+	private final SimpleFeatureExtractor posExtractor;
+	private final CleartkExtractor contextFeatureExtractor;
+
+	/**
+	 * @param tokenFeatureCache
+	 *            source of tier-independent token features. It can be shared
+	 *            by extractors of different tiers.
+	 */
+	TierFeatureExtractor(MorphDictionary morphDictionary, List<Set<String>> posTiers,
+			int currentTier, int leftContextSize, int rightContextSize,
+			boolean generateDictionaryFeatures, TokenFeatureCache tokenFeatureCache) {
+		if (currentTier < 0 || currentTier >= posTiers.size()) {
+			throw new IllegalStateException(String.format(
+					"Illegal current tier param value: %s", currentTier));
+		}
+		Set<String> prevTierPosCategories = Sets.newHashSet();
+		for (int i = 0; i < currentTier; i++) {
+			prevTierPosCategories.addAll(posTiers.get(i));
+		}
+		this.prevTierPosCategories = ImmutableSet.copyOf(prevTierPosCategories);
+		this.currentPosTier = ImmutableSet.copyOf(posTiers.get(currentTier));
+		GramModel gramModel = morphDictionary.getGramModel();
+
+		tokenFeatureExtractor = tokenFeatureCache.getTokenFeatureExtractor();
+
+		List<SimpleFeatureExtractor> gramExtractors = Lists.newArrayList();
+		List<SimpleFeatureExtractor> contextFeatureExtractors = Lists.newArrayList(
+				tokenFeatureCache.getContextTokenFeatureExtractor());
+		for (String posCat : this.prevTierPosCategories) {
+			GrammemeExtractor gramExtractor = new GrammemeExtractor(gramModel, posCat);
+			gramExtractors.add(gramExtractor);
+			contextFeatureExtractors.add(gramExtractor);
+		}
+		// TODO introduce difference between Null and NotApplicable values
+		posExtractor = new CombinedExtractor(gramExtractors.toArray(FE_ARRAY));
+		if (generateDictionaryFeatures) {
+			dictFeatureExtractor = new DictionaryPossibleTagFeatureExtractor(
+					currentPosTier, this.prevTierPosCategories, morphDictionary);
+		} else {
+			dictFeatureExtractor = null;
+		}
+
+		if (leftContextSize < 0 || rightContextSize < 0) {
+			throw new IllegalStateException("context size < 0");
+		}
+		if (leftContextSize == 0 && rightContextSize == 0) {
+			throw new IllegalStateException("left & right context sizes == 0");
+		}
+		List<Context> contexts = Lists.newArrayList();
+		if (leftContextSize > 0) {
+			contexts.add(new CleartkExtractor.Preceding(leftContextSize));
+		}
+		if (rightContextSize > 0) {
+			contexts.add(new CleartkExtractor.Following(rightContextSize));
+		}
+		contextFeatureExtractor = new CleartkExtractor(Token.class,
+				new CombinedExtractor(contextFeatureExtractors.toArray(FE_ARRAY)),
+				contexts.toArray(new Context[contexts.size()]));
+	}
+
+	Set<String> getCurrentPosTier() {
+		return currentPosTier;
+	}
+
+	List<Feature> extract(JCas jCas, Token token, Sentence sent)
+			throws CleartkExtractorException {
+		List<Feature> tokFeatures = Lists.newArrayList();
+		tokFeatures.addAll(tokenFeatureExtractor.extract(jCas, token));
+		tokFeatures.addAll(posExtractor.extract(jCas, token));
+		if (dictFeatureExtractor != null) {
+			tokFeatures.addAll(dictFeatureExtractor.extract(jCas, token));
+		}
+		tokFeatures.addAll(contextFeatureExtractor.extractWithin(jCas, token, sent));
+		return tokFeatures;
+	}
+
+	private static final SimpleFeatureExtractor[] FE_ARRAY = new SimpleFeatureExtractor[0];
+}
@@ -0,0 +1,40 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wall time and peak memory of training of a PoS-tier.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class TierReport {
+
+	private static final Logger log = LoggerFactory.getLogger(TierReport.class);
+
+	final String tier;
+	final long wallTime;
+	// in bytes, negative if unknown
+	final long peakMemory;
+
+	TierReport(String tier, long wallTime, long peakMemory) {
+		this.tier = tier;
+		this.wallTime = wallTime;
+		this.peakMemory = peakMemory;
+	}
+
+	static void log(List<TierReport> reports) {
+		for (TierReport r : reports) {
+			String peakMemoryStr = r.peakMemory < 0 ? "unknown"
+					: (r.peakMemory / (1024 * 1024)) + " MB";
+			log.info("Tier '{}' is trained in {} s, peak memory is {}", new Object[] {
+					r.tier, r.wallTime / 1000, peakMemoryStr });
+		}
+	}
+}
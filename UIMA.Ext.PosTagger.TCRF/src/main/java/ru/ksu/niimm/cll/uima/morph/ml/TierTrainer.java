@@ -0,0 +1,126 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+
+import ru.kfu.itis.issst.cleartk.crfsuite.CRFSuiteStringOutcomeClassifierBuilder;
+
+/**
+ * Trains and packages a CRFSuite model of a single PoS-tier.
+ * {@link ParallelTierTrainer} launches it as a separate JVM with the following
+ * arguments:
+ * 
+ * <pre>
+ * &lt;training dir&gt; &lt;model dir&gt; [trainer args...]
+ * </pre>
+ * 
+ * and reads the peak memory usage from the last line of its output.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class TierTrainer {
+
+	static final String PEAK_MEMORY_PREFIX = "TierTrainer.peakMemory=";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: <training dir> <model dir> [trainer args...]");
+			System.exit(1);
+		}
+		File trainingDir = new File(args[0]);
+		File modelDir = new File(args[1]);
+		train(trainingDir, modelDir, Arrays.copyOfRange(args, 2, args.length));
+		System.out.println(PEAK_MEMORY_PREFIX + getPeakMemory());
+	}
+
+	/**
+	 * Train a tier in this JVM.
+	 * 
+	 * @return report of the tier. Its peak memory is the peak usage of JVM
+	 *         heap memory pools during the training, as the peak resident set
+	 *         size of a process can not be reset between tiers. It does not
+	 *         include memory of the native CRFSuite trainer.
+	 */
+	static TierReport trainAndReport(String tier, File trainingDir, File modelDir,
+			String[] trainerArgs) throws Exception {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+		long startTime = System.currentTimeMillis();
+		train(trainingDir, modelDir, trainerArgs);
+		return new TierReport(tier, System.currentTimeMillis() - startTime, getPeakHeapMemory());
+	}
+
+	static void train(File trainingDir, File modelDir, String[] trainerArgs) throws Exception {
+		// TODO The following lines contain a few hacks to avoid
+		// extensive training file duplicates reproduction
+		JarClassifierBuilder<?> _classifierBuilder = JarClassifierBuilder
+				.fromTrainingDirectory(trainingDir);
+		CRFSuiteStringOutcomeClassifierBuilder classifierBuilder =
+				(CRFSuiteStringOutcomeClassifierBuilder) _classifierBuilder;
+		// invoke implementation-specific method (i.e., it is not declared in the interface)
+		classifierBuilder.trainClassifier(modelDir, trainingDir, trainerArgs);
+		classifierBuilder.packageClassifier(modelDir);
+	}
+
+	/**
+	 * @return peak resident set size of this process if the platform reports
+	 *         it (e.g., Linux), otherwise the sum of peak usages of JVM heap
+	 *         memory pools. The latter does not include memory of the native
+	 *         CRFSuite trainer.
+	 */
+	private static long getPeakMemory() {
+		File procStatus = new File("/proc/self/status");
+		if (procStatus.isFile()) {
+			BufferedReader reader = null;
+			try {
+				reader = new BufferedReader(new InputStreamReader(
+						new FileInputStream(procStatus), "utf-8"));
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("VmHWM:")) {
+						// the value is in kB
+						String kbStr = line.substring("VmHWM:".length()).replace("kB", "").trim();
+						return Long.parseLong(kbStr) * 1024;
+					}
+				}
+			} catch (IOException e) {
+				// fall through
+			} catch (NumberFormatException e) {
+				// fall through
+			} finally {
+				IOUtils.closeQuietly(reader);
+			}
+		}
+		return getPeakHeapMemory();
+	}
+
+	private static long getPeakHeapMemory() {
+		long result = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				result += pool.getPeakUsage().getUsed();
+			}
+		}
+		return result;
+	}
+
+	private TierTrainer() {
+	}
+}
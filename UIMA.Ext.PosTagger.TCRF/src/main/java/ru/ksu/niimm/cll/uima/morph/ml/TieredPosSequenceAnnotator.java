@@ -5,8 +5,6 @@ package ru.ksu.niimm.cll.uima.morph.ml;
 
 import static ru.kfu.itis.cll.uima.cas.AnnotationUtils.toPrettyString;
 import static ru.kfu.itis.cll.uima.util.DocumentUtils.getDocumentUri;
-import static ru.kfu.itis.issst.uima.ml.DefaultFeatureExtractors.contextTokenExtractors;
-import static ru.kfu.itis.issst.uima.ml.DefaultFeatureExtractors.currentTokenExtractors;
 import static ru.kfu.itis.issst.uima.morph.dictionary.resource.MorphDictionaryUtils.toGramBits;
 import static ru.kfu.itis.issst.uima.postagger.PosTaggerAPI.DEFAULT_REUSE_EXISTING_WORD_ANNOTATIONS;
 import static ru.kfu.itis.issst.uima.postagger.PosTaggerAPI.PARAM_REUSE_EXISTING_WORD_ANNOTATIONS;
@@ -26,15 +24,13 @@ import org.cleartk.classifier.CleartkProcessingException;
 import org.cleartk.classifier.CleartkSequenceAnnotator;
 import org.cleartk.classifier.Feature;
 import org.cleartk.classifier.Instances;
-import org.cleartk.classifier.feature.extractor.CleartkExtractor;
-import org.cleartk.classifier.feature.extractor.CleartkExtractor.Context;
 import org.cleartk.classifier.feature.extractor.CleartkExtractorException;
-import org.cleartk.classifier.feature.extractor.simple.CombinedExtractor;
 import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
 import org.opencorpora.cas.Word;
 import org.opencorpora.cas.Wordform;
 import org.uimafit.descriptor.ConfigurationParameter;
 import org.uimafit.descriptor.ExternalResource;
+import org.uimafit.util.ExtendedLogger;
 import org.uimafit.util.JCasUtil;
 
 import ru.kfu.cll.uima.segmentation.fstype.Sentence;
@@ -43,8 +39,6 @@ import ru.kfu.cll.uima.tokenizer.fstype.Token;
 import ru.kfu.cll.uima.tokenizer.fstype.W;
 import ru.kfu.itis.cll.uima.cas.FSUtils;
 import ru.kfu.itis.issst.cleartk.Disposable;
-import ru.kfu.itis.issst.uima.ml.DictionaryPossibleTagFeatureExtractor;
-import ru.kfu.itis.issst.uima.ml.GrammemeExtractor;
 import ru.kfu.itis.issst.uima.ml.WordAnnotator;
 import ru.kfu.itis.issst.uima.morph.commons.PunctuationUtils;
 import ru.kfu.itis.issst.uima.morph.dictionary.resource.GramModel;
@@ -58,7 +52,6 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 /**
  * @author Rinat Gareev (Kazan Federal University)
@@ -95,16 +88,12 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 	// derived
 	private MorphDictionary morphDictionary;
 	private GramModel gramModel;
-	private Set<String> currentPosTier;
 	// TODO make bit masks immutable
 	private BitSet currentTierMask;
 	private List<Set<String>> posTiers;
-	private Set<String> prevTierPosCategories;
 	// features
-	private SimpleFeatureExtractor tokenFeatureExtractor;
-	private SimpleFeatureExtractor dictFeatureExtractor;
-	private SimpleFeatureExtractor posExtractor;
-	private CleartkExtractor contextFeatureExtractor;
+	private TokenFeatureCache tokenFeatureCache;
+	private TierFeatureExtractor featureExtractor;
 	// per-CAS
 	private SimpleFeatureExtractor adjacentPunctuationFeatureExtractor;
 	//
@@ -118,65 +107,23 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 			throw new IllegalStateException(String.format(
 					"Illegal current tier param value: %s", currentTier));
 		}
-		parsePosTiersParameter();
+		posTiers = parsePosTiers(pPosTiers);
 		morphDictionary = morphDictHolder.getDictionary();
 		gramModel = morphDictionary.getGramModel();
-		this.currentTierMask = makeBitMask(currentPosTier);
 		// check grammems
-		checkDictGrammems();
+		checkDictGrammems(gramModel);
 
-		tokenFeatureExtractor = new CombinedExtractor(currentTokenExtractors().toArray(
-				new SimpleFeatureExtractor[0]));
-
-		List<SimpleFeatureExtractor> gramExtractors = Lists.newArrayList();
-		List<SimpleFeatureExtractor> contextFeatureExtractors = contextTokenExtractors();
-		for (String posCat : prevTierPosCategories) {
-			GrammemeExtractor gramExtractor = new GrammemeExtractor(gramModel, posCat);
-			gramExtractors.add(gramExtractor);
-			contextFeatureExtractors.add(gramExtractor);
-		}
-		// TODO introduce difference between Null and NotApplicable values
-		posExtractor = new CombinedExtractor(gramExtractors.toArray(FE_ARRAY));
-		if (generateDictionaryFeatures) {
-			dictFeatureExtractor = new DictionaryPossibleTagFeatureExtractor(
-					currentPosTier, prevTierPosCategories, morphDictionary);
-		}
-
-		if (leftContextSize < 0 || rightContextSize < 0) {
-			throw new IllegalStateException("context size < 0");
-		}
-		if (leftContextSize == 0 && rightContextSize == 0) {
-			throw new IllegalStateException("left & right context sizes == 0");
-		}
-		List<Context> contexts = Lists.newArrayList();
-		if (leftContextSize > 0) {
-			contexts.add(new CleartkExtractor.Preceding(leftContextSize));
-		}
-		if (rightContextSize > 0) {
-			contexts.add(new CleartkExtractor.Following(rightContextSize));
-		}
-		contextFeatureExtractor = new CleartkExtractor(Token.class,
-				new CombinedExtractor(contextFeatureExtractors.toArray(FE_ARRAY)),
-				contexts.toArray(new Context[contexts.size()]));
+		tokenFeatureCache = new TokenFeatureCache();
+		featureExtractor = new TierFeatureExtractor(morphDictionary, posTiers, currentTier,
+				leftContextSize, rightContextSize, generateDictionaryFeatures,
+				tokenFeatureCache);
+		this.currentTierMask = makeBitMask(featureExtractor.getCurrentPosTier());
 	}
 
 	@Override
 	public void process(JCas jCas) throws AnalysisEngineProcessException {
 		if (!isTraining() && currentTier == 0) {
-			if (reuseExistingWordAnnotations) {
-				// clean wordforms to avoid erroneous feature extraction or output assignment
-				cleanWordforms(jCas);
-			} else {
-				// ensure that there are no existing annotations
-				// // otherwise things may go irregularly
-				if (JCasUtil.exists(jCas, Word.class)) {
-					throw new IllegalStateException(String.format(
-							"CAS '%s' has Word annotations before this annotator",
-							getDocumentUri(jCas)));
-				}
-				// make Word annotations
-				WordAnnotator.makeWords(jCas);
-			}
+			prepareWords(jCas, reuseExistingWordAnnotations);
 		}
 		token2WordIndex = MorphCasUtils.getToken2WordIndex(jCas);
 		try {
@@ -190,6 +137,7 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 		} finally {
 			adjacentPunctuationFeatureExtractor = null;
 			token2WordIndex.clear();
+			tokenFeatureCache.clear();
 		}
 	}
 
@@ -252,6 +200,19 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 		if (labelSeq.size() != wfSeq.size()) {
 			throw new IllegalStateException();
 		}
+		applyLabels(jCas, wfSeq, labelSeq, getLogger());
+	}
+
+	/**
+	 * Add grammemes of predicted labels to the corresponding wordforms.
+	 * 
+	 * @param wfSeq
+	 *            wordforms of sentence tokens, null for non-word tokens
+	 * @param labelSeq
+	 *            classifier output for the same tokens
+	 */
+	static void applyLabels(JCas jCas, List<Wordform> wfSeq, List<String> labelSeq,
+			ExtendedLogger log) {
 		if (!(labelSeq instanceof RandomAccess)) {
 			labelSeq = new ArrayList<String>(labelSeq);
 		}
@@ -264,13 +225,13 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 			Wordform wf = wfSeq.get(i);
 			if (wf == null) {
 				if (!label.equals(PunctuationUtils.OTHER_PUNCTUATION_TAG)) {
-					getLogger().warn(String.format(
+					log.warn(String.format(
 							"Classifier predicted the gram value for a non-word token: %s",
 							label));
 				}
 				// else - punctuation tag for punctuation token - OK
 			} else if (label.equals(PunctuationUtils.OTHER_PUNCTUATION_TAG)) {
-				getLogger().warn("Classifier predicted the punctuation tag for a word token");
+				log.warn("Classifier predicted the punctuation tag for a word token");
 			} else {
 				Iterable<String> newGrams = targetGramSplitter.split(label);
 				MorphCasUtils.addGrammemes(jCas, wf, newGrams);
@@ -280,13 +241,7 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 
 	private List<Feature> extractFeatures(JCas jCas, Token token, Sentence sent)
 			throws CleartkExtractorException {
-		List<Feature> tokFeatures = Lists.newLinkedList();
-		tokFeatures.addAll(tokenFeatureExtractor.extract(jCas, token));
-		tokFeatures.addAll(posExtractor.extract(jCas, token));
-		if (dictFeatureExtractor != null) {
-			tokFeatures.addAll(dictFeatureExtractor.extract(jCas, token));
-		}
-		tokFeatures.addAll(contextFeatureExtractor.extractWithin(jCas, token, sent));
+		List<Feature> tokFeatures = featureExtractor.extract(jCas, token, sent);
 		if (generatePunctuationFeatures) {
 			tokFeatures.addAll(adjacentPunctuationFeatureExtractor.extract(jCas, token));
 		}
@@ -306,8 +261,8 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 	private static final Joiner targetGramJoiner = Joiner.on(targetGramDelim);
 	private static final Splitter targetGramSplitter = Splitter.on(targetGramDelim);
 
-	private void parsePosTiersParameter() {
-		posTiers = Lists.newArrayList();
+	static List<Set<String>> parsePosTiers(List<String> pPosTiers) {
+		List<Set<String>> posTiers = Lists.newArrayList();
 		for (String pPosTier : pPosTiers) {
 			Set<String> posCats = ImmutableSet.copyOf(posCatSplitter.split(pPosTier));
 			if (posCats.isEmpty()) {
@@ -315,14 +270,7 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 			}
 			posTiers.add(posCats);
 		}
-		posTiers = ImmutableList.copyOf(posTiers);
-		//
-		prevTierPosCategories = Sets.newHashSet();
-		for (int i = 0; i < currentTier; i++) {
-			prevTierPosCategories.addAll(posTiers.get(i));
-		}
-		prevTierPosCategories = ImmutableSet.copyOf(prevTierPosCategories);
-		currentPosTier = ImmutableSet.copyOf(posTiers.get(currentTier));
+		return ImmutableList.copyOf(posTiers);
 	}
 
 	/**
@@ -342,7 +290,7 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 		return result;
 	}
 
-	private void checkDictGrammems() {
+	static void checkDictGrammems(GramModel gramModel) {
 		for (int grId = 0; grId < gramModel.getGrammemMaxNumId(); grId++) {
 			Grammeme gr = gramModel.getGrammem(grId);
 			if (gr != null && gr.getId().contains(targetGramDelim)) {
@@ -354,9 +302,28 @@ public class TieredPosSequenceAnnotator extends CleartkSequenceAnnotator<String>
 	}
 
 	static final Splitter posCatSplitter = Splitter.on('&').trimResults();
-	private static final SimpleFeatureExtractor[] FE_ARRAY = new SimpleFeatureExtractor[0];
 
-	private void cleanWordforms(JCas jCas) {
+	/**
+	 * Prepare Word annotations before tagging of the first tier.
+	 */
+	static void prepareWords(JCas jCas, boolean reuseExistingWordAnnotations) {
+		if (reuseExistingWordAnnotations) {
+			// clean wordforms to avoid erroneous feature extraction or output assignment
+			cleanWordforms(jCas);
+		} else {
+			// ensure that there are no existing annotations
+			// // otherwise things may go irregularly
+			if (JCasUtil.exists(jCas, Word.class)) {
+				throw new IllegalStateException(String.format(
+						"CAS '%s' has Word annotations before this annotator",
+						getDocumentUri(jCas)));
+			}
+			// make Word annotations
+			WordAnnotator.makeWords(jCas);
+		}
+	}
+
+	private static void cleanWordforms(JCas jCas) {
 		for (Word w : JCasUtil.select(jCas, Word.class)) {
 			Wordform wf = new Wordform(jCas);
 			wf.setWord(w);
@@ -35,7 +35,6 @@ import ru.kfu.itis.cll.uima.io.IoUtils;
 import ru.kfu.itis.cll.uima.util.PipelineDescriptorUtils;
 import ru.kfu.itis.issst.cleartk.GenericJarClassifierFactory;
 import ru.kfu.itis.issst.cleartk.JarSequenceClassifierFactory;
-import ru.kfu.itis.issst.cleartk.crfsuite.CRFSuiteStringOutcomeClassifierBuilder;
 import ru.kfu.itis.issst.cleartk.crfsuite.CRFSuiteStringOutcomeDataWriterFactory;
 import ru.kfu.itis.issst.uima.morph.commons.GramModelBasedTagMapper;
 import ru.kfu.itis.issst.uima.morph.commons.TagAssembler;
@@ -136,25 +135,50 @@ public class TieredPosSequenceAnnotatorFactory {
 
 	public static void trainModels(File trDataBaseDir, File modelBaseDir, String[] trainerArgs)
 			throws Exception {
+		trainModels(trDataBaseDir, modelBaseDir, trainerArgs, 1);
+	}
+
+	/**
+	 * Train models of all tiers whose training data are in the specified
+	 * directory.
+	 * 
+	 * @param trDataBaseDir
+	 * @param modelBaseDir
+	 * @param trainerArgs
+	 * @param parallelism
+	 *            if it is greater than 1 then tiers are trained concurrently in
+	 *            separate JVMs, at most this number at once (see
+	 *            {@link ParallelTierTrainer}), otherwise they are trained one
+	 *            by one in this JVM. In both cases the wall time and the peak
+	 *            memory of each tier are logged.
+	 * @throws Exception
+	 */
+	public static void trainModels(File trDataBaseDir, File modelBaseDir, String[] trainerArgs,
+			int parallelism)
+			throws Exception {
 		// read and copy config file to output directory
 		File configPropsFile = new File(trDataBaseDir, CONFIG_PROPS_FILENAME);
 		FileUtils.copyFile(configPropsFile, new File(modelBaseDir, CONFIG_PROPS_FILENAME));
 		Properties configProps = IoUtils.readProperties(configPropsFile);
 		List<String> posTiers = getTiersList(configProps);
 		//
+		if (parallelism > 1) {
+			Map<String, File[]> tierDirs = Maps.newLinkedHashMap();
+			for (String posTier : posTiers) {
+				tierDirs.put(posTier, new File[] {
+						getTierDir(trDataBaseDir, posTier),
+						getTierDir(modelBaseDir, posTier) });
+			}
+			new ParallelTierTrainer(parallelism).train(tierDirs, trainerArgs);
+			return;
+		}
+		List<TierReport> reports = Lists.newArrayList();
 		for (String posTier : posTiers) {
 			File trainingDir = getTierDir(trDataBaseDir, posTier);
 			File modelDir = getTierDir(modelBaseDir, posTier);
-			// TODO The following lines contain a few hacks to avoid
-			// extensive training file duplicates reproduction
-			JarClassifierBuilder<?> _classifierBuilder = JarClassifierBuilder
-					.fromTrainingDirectory(trainingDir);
-			CRFSuiteStringOutcomeClassifierBuilder classifierBuilder =
-					(CRFSuiteStringOutcomeClassifierBuilder) _classifierBuilder;
-			// invoke implementation-specific method (i.e., it is not declared in the interface)
-			classifierBuilder.trainClassifier(modelDir, trainingDir, trainerArgs);
-			classifierBuilder.packageClassifier(modelDir);
+			reports.add(TierTrainer.trainAndReport(posTier, trainingDir, modelDir, trainerArgs));
 		}
+		TierReport.log(reports);
 	}
 
 	/**
@@ -179,14 +203,22 @@ public class TieredPosSequenceAnnotatorFactory {
 	 *            a base model directory that contains model directories for
 	 *            each tier
 	 * @param reuseExistingWordAnnotations
+	 * @param fused
+	 *            if true then all tiers are tagged by a single
+	 *            {@link MultiTierPosSequenceAnnotator}, otherwise there is a
+	 *            {@link TieredPosSequenceAnnotator} delegate for each tier
 	 * @return descriptor instance
 	 * @throws ResourceInitializationException
 	 * @throws SAXException
 	 */
 	public static AnalysisEngineDescription createTaggerDescription(
 			File modelBaseDir,
-			boolean reuseExistingWordAnnotations)
+			boolean reuseExistingWordAnnotations,
+			boolean fused)
 			throws ResourceInitializationException, IOException {
+		if (fused) {
+			return createFusedTaggerDescription(modelBaseDir, reuseExistingWordAnnotations);
+		}
 		List<AnalysisEngineDescription> aeDescriptions = Lists.newArrayList();
 		// list of all annotator names
 		List<String> aeNames = Lists.newArrayList();
@@ -294,11 +326,92 @@ public class TieredPosSequenceAnnotatorFactory {
 		return aggrDesc;
 	}
 
+	/**
+	 * The same as {@link #createTaggerDescription(File, boolean, boolean)}
+	 * with a {@link TieredPosSequenceAnnotator} delegate for each tier.
+	 */
+	public static AnalysisEngineDescription createTaggerDescription(
+			File modelBaseDir,
+			boolean reuseExistingWordAnnotations)
+			throws ResourceInitializationException, IOException {
+		return createTaggerDescription(modelBaseDir, reuseExistingWordAnnotations, false);
+	}
+
 	public static AnalysisEngineDescription createTaggerDescription(File modelBaseDir)
 			throws ResourceInitializationException, IOException {
 		return createTaggerDescription(modelBaseDir, false);
 	}
 
+	private static AnalysisEngineDescription createFusedTaggerDescription(
+			File modelBaseDir,
+			boolean reuseExistingWordAnnotations)
+			throws ResourceInitializationException, IOException {
+		TypeSystemDescription tsDesc = PosTaggerAPI.getTypeSystemDescription();
+		//
+		File configPropsFile = new File(modelBaseDir, CONFIG_PROPS_FILENAME);
+		Properties configProps = IoUtils.readProperties(configPropsFile);
+		List<String> posTiers = getTiersList(configProps);
+		Map<String, Object> annotatorParams = getAnnotatorParameters(configProps);
+		// model jar paths relative to modelBaseDir
+		String[] jarRelativePaths = new String[posTiers.size()];
+		for (int i = 0; i < posTiers.size(); i++) {
+			File modelDir = getTierDir(modelBaseDir, posTiers.get(i));
+			jarRelativePaths[i] = relativize(modelBaseDir,
+					JarClassifierBuilder.getModelJarFile(modelDir));
+		}
+		List<Object> finalParams = Lists.newArrayList(
+				PARAM_REUSE_EXISTING_WORD_ANNOTATIONS,
+				reuseExistingWordAnnotations,
+				MultiTierPosSequenceAnnotator.PARAM_POS_TIERS, posTiers,
+				MultiTierPosSequenceAnnotator.PARAM_CLASSIFIER_JAR_PATHS, jarRelativePaths);
+		for (String paramName : annotatorParams.keySet()) {
+			finalParams.add(paramName);
+			finalParams.add(annotatorParams.get(paramName));
+		}
+		AnalysisEngineDescription taggerDesc = createPrimitiveDescription(
+				MultiTierPosSequenceAnnotator.class, tsDesc,
+				finalParams.toArray());
+		String taggerName = "tagger";
+		AnalysisEngineDescription aggrDesc = AnalysisEngineFactory.createAggregateDescription(
+				Lists.newArrayList(taggerDesc, TagAssembler.createDescription()),
+				Lists.newArrayList(taggerName, "tag-assembler"),
+				null, null, null, null);
+		// add parameter overrides
+		{
+			Map<String, String> taggerDelegateREWParamsMap = Maps.newLinkedHashMap();
+			taggerDelegateREWParamsMap.put(taggerName, PARAM_REUSE_EXISTING_WORD_ANNOTATIONS);
+			PipelineDescriptorUtils.createOverrideParameterDeclaration(
+					PosTaggerAPI.createReuseExistingWordAnnotationParameterDeclaration(),
+					aggrDesc,
+					taggerDelegateREWParamsMap);
+			Map<String, String> taggerDelegateASPParamsMap = Maps.newLinkedHashMap();
+			taggerDelegateASPParamsMap.put(taggerName,
+					MultiTierPosSequenceAnnotator.PARAM_ADDITIONAL_SEARCH_PATHS);
+			try {
+				PipelineDescriptorUtils.createOverrideParameterDeclaration(
+						ConfigurationParameterFactory.createPrimitiveParameter(
+								ReflectionUtil.getField(
+										MultiTierPosSequenceAnnotator.class,
+										"additionalSearchPaths")),
+						aggrDesc,
+						taggerDelegateASPParamsMap);
+			} catch (NoSuchFieldException e) {
+				// must never happen
+				throw new RuntimeException(e);
+			}
+		}
+		// bind MorphDictionaryHolder resource to the tagger delegate
+		bindExternalResource(aggrDesc,
+				taggerName + "/" + MultiTierPosSequenceAnnotator.RESOURCE_MORPH_DICTIONARY,
+				PosTaggerAPI.MORPH_DICTIONARY_RESOURCE_NAME);
+		// bind GramModelHolder resource to tagAssembler
+		bindExternalResource(aggrDesc,
+				"tag-assembler/" + GramModelBasedTagMapper.RESOURCE_GRAM_MODEL,
+				PosTaggerAPI.MORPH_DICTIONARY_RESOURCE_NAME);
+		//
+		return aggrDesc;
+	}
+
 	private static File getTierDir(File baseDir, String posTier) {
 		// TODO escape chars that are not safe for filename
 		posTier = posTier.replace("&", "_and_");
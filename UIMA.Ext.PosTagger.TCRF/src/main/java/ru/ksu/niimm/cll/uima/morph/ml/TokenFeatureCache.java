@@ -0,0 +1,86 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import static ru.kfu.itis.issst.uima.ml.DefaultFeatureExtractors.contextTokenExtractors;
+import static ru.kfu.itis.issst.uima.ml.DefaultFeatureExtractors.currentTokenExtractors;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.feature.extractor.CleartkExtractorException;
+import org.cleartk.classifier.feature.extractor.simple.CombinedExtractor;
+import org.cleartk.classifier.feature.extractor.simple.SimpleFeatureExtractor;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Memoizes tier-independent token features, i.e., the ones that depend only on
+ * a token text. A token is usually asked for these features several times: as
+ * a focus token and as a context of its neighbours, and once more for each
+ * tier when tiers are tagged by a single annotator.
+ * <p>
+ * Features are cached by the identity of a token annotation, so
+ * {@link #clear()} must be invoked after each CAS. Instances are not
+ * thread-safe.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class TokenFeatureCache {
+
+	private final SimpleFeatureExtractor tokenFeatureExtractor;
+	private final SimpleFeatureExtractor contextTokenFeatureExtractor;
+
+	TokenFeatureCache() {
+		tokenFeatureExtractor = new CachingExtractor(currentTokenExtractors());
+		contextTokenFeatureExtractor = new CachingExtractor(contextTokenExtractors());
+	}
+
+	/**
+	 * @return extractor of features of a focus token
+	 */
+	SimpleFeatureExtractor getTokenFeatureExtractor() {
+		return tokenFeatureExtractor;
+	}
+
+	/**
+	 * @return extractor of features of a context token
+	 */
+	SimpleFeatureExtractor getContextTokenFeatureExtractor() {
+		return contextTokenFeatureExtractor;
+	}
+
+	void clear() {
+		((CachingExtractor) tokenFeatureExtractor).cache.clear();
+		((CachingExtractor) contextTokenFeatureExtractor).cache.clear();
+	}
+
+	private static class CachingExtractor implements SimpleFeatureExtractor {
+		private final SimpleFeatureExtractor delegate;
+		private final Map<Annotation, List<Feature>> cache =
+				new IdentityHashMap<Annotation, List<Feature>>();
+
+		CachingExtractor(List<SimpleFeatureExtractor> delegates) {
+			this.delegate = new CombinedExtractor(
+					delegates.toArray(new SimpleFeatureExtractor[delegates.size()]));
+		}
+
+		@Override
+		public List<Feature> extract(JCas view, Annotation focusAnnotation)
+				throws CleartkExtractorException {
+			List<Feature> result = cache.get(focusAnnotation);
+			if (result == null) {
+				result = ImmutableList.copyOf(delegate.extract(view, focusAnnotation));
+				cache.put(focusAnnotation, result);
+			}
+			return result;
+		}
+	}
+}
@@ -47,6 +47,9 @@ public class TrainTCRF {
 	private int c2 = 1;
 	@Parameter(names = "--optimization-max-iterations")
 	private int optMaxIterations = 200;
+	// number of tiers that are trained concurrently
+	@Parameter(names = "--training-threads")
+	private int trainingThreads = 1;
 
 	private TrainTCRF() {
 	}
@@ -67,7 +70,7 @@ public class TrainTCRF {
 		addTrainParam(trainerArgs, "c2", c2);
 		//
 		TieredPosSequenceAnnotatorFactory.trainModels(trainingBaseDir, modelBaseDir,
-				trainerArgs.toArray(new String[trainerArgs.size()]));
+				trainerArgs.toArray(new String[trainerArgs.size()]), trainingThreads);
 	}
 
 	private void addTrainParam(List<String> params, String name, int value) {
@@ -0,0 +1,242 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.uimafit.factory.ExternalResourceFactory.createExternalResourceDescription;
+import static ru.kfu.itis.cll.uima.util.PipelineDescriptorUtils.getResourceManagerConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ExternalResourceDescription;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.cleartk.classifier.CleartkProcessingException;
+import org.cleartk.classifier.Feature;
+import org.cleartk.classifier.SequenceClassifier;
+import org.cleartk.classifier.encoder.features.NameNumber;
+import org.cleartk.classifier.jar.JarClassifierBuilder;
+import org.cleartk.classifier.jar.JarStreams;
+import org.cleartk.classifier.jar.SequenceClassifier_ImplBase;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencorpora.cas.Word;
+import org.opencorpora.cas.Wordform;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ConfigurationParameterFactory;
+import org.uimafit.util.JCasUtil;
+
+import ru.kfu.itis.cll.uima.cas.FSUtils;
+import ru.kfu.itis.cll.uima.io.IoUtils;
+import ru.kfu.itis.cll.uima.util.PipelineDescriptorUtils;
+import ru.kfu.itis.issst.cleartk.GenericJarClassifierFactory;
+import ru.kfu.itis.issst.uima.morph.commons.TestUtils;
+import ru.kfu.itis.issst.uima.postagger.MorphCasUtils;
+import ru.kfu.itis.issst.uima.postagger.PosTaggerAPI;
+import ru.kfu.itis.issst.uima.segmentation.SentenceSplitterAPI;
+import ru.kfu.itis.issst.uima.tokenizer.TokenizerAPI;
+import ru.ksu.niimm.cll.uima.morph.opencorpora.resource.CachedSerializedDictionaryResource;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Checks that the fused tagger gives the same tags as the chain of
+ * {@link TieredPosSequenceAnnotator}s. Models of tiers are faked by
+ * {@link HashingClassifierBuilder}, so a difference in features passed to a
+ * classifier of any tier shows up as a difference in tags.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class MultiTierPosSequenceAnnotatorTest {
+
+	private static final File modelBaseDir = new File("target/tcrf-test/model");
+	// tier => its labels
+	private static final Map<String, String[]> tierLabels = ImmutableMap.of(
+			"POST", new String[] { "NOUN", "VERB", "ADJF", "PREP", "CONJ", "null" },
+			"NMbr&GNdr", new String[] { "sing&masc", "sing&femn", "sing&neut", "plur", "null" },
+			"CAse", new String[] { "nomn", "gent", "datv", "accs", "ablt", "loct", "null" });
+	private static final String[] texts = {
+			"Мама мыла раму, а папа читал газету.",
+			"В 1998 году в городе было 15 новых школ! Их построили быстро.",
+			"Стали стали крепче. Мы стали (почти) сталью — «стальными людьми»...",
+			"Ok",
+	};
+
+	private static AnalysisEngine fusedEngine;
+	private static AnalysisEngine chainEngine;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		FileUtils.deleteQuietly(modelBaseDir);
+		Properties configProps = new Properties();
+		int tierIndex = 0;
+		for (String posTier : tierLabels.keySet()) {
+			configProps.setProperty("tier." + tierIndex, posTier);
+			tierIndex++;
+			File modelDir = new File(modelBaseDir, posTier.replace("&", "_and_"));
+			HashingClassifierBuilder builder = new HashingClassifierBuilder();
+			builder.saveToTrainingDirectory(modelDir);
+			FileUtils.writeLines(new File(modelDir, HashingClassifierBuilder.LABELS_FILENAME),
+					"utf-8", Lists.newArrayList(tierLabels.get(posTier)));
+			builder.packageClassifier(modelDir);
+		}
+		// non-default values to check that both taggers get them
+		configProps.setProperty("annotatorParam." + TieredPosSequenceAnnotator.PARAM_LEFT_CONTEXT_SIZE,
+				"1");
+		configProps.setProperty("annotatorParam." + TieredPosSequenceAnnotator.PARAM_RIGHT_CONTEXT_SIZE,
+				"1");
+		IoUtils.write(configProps, new File(modelBaseDir, "config.props"));
+		//
+		fusedEngine = AnalysisEngineFactory.createAggregate(createPipelineDescription(true));
+		chainEngine = AnalysisEngineFactory.createAggregate(createPipelineDescription(false));
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		if (fusedEngine != null) {
+			fusedEngine.destroy();
+		}
+		if (chainEngine != null) {
+			chainEngine.destroy();
+		}
+	}
+
+	@Test
+	public void fusedTaggerShouldGiveTheSameTags() throws Exception {
+		Set<String> allTags = Sets.newHashSet();
+		for (String text : texts) {
+			List<String> expected = tag(chainEngine, text);
+			assertEquals(text, expected, tag(fusedEngine, text));
+			allTags.addAll(expected);
+		}
+		// the fake models must not be trivial
+		assertTrue(allTags.toString(), allTags.size() > 10);
+	}
+
+	private static List<String> tag(AnalysisEngine engine, String text) throws Exception {
+		JCas jCas = engine.newJCas();
+		jCas.setDocumentText(text);
+		engine.process(jCas);
+		List<String> result = Lists.newArrayList();
+		for (Word word : JCasUtil.select(jCas, Word.class)) {
+			Wordform wf = MorphCasUtils.requireOnlyWordform(word);
+			List<String> grammemes = Lists.newArrayList(FSUtils.toList(wf.getGrammems()));
+			Collections.sort(grammemes);
+			result.add(word.getCoveredText() + "/" + wf.getPos() + "/" + grammemes);
+		}
+		return result;
+	}
+
+	private static AnalysisEngineDescription createPipelineDescription(boolean fused)
+			throws Exception {
+		AnalysisEngineDescription taggerDesc = TieredPosSequenceAnnotatorFactory
+				.createTaggerDescription(modelBaseDir, false, fused);
+		ConfigurationParameterFactory.setParameter(taggerDesc,
+				GenericJarClassifierFactory.PARAM_ADDITIONAL_SEARCH_PATHS,
+				new String[] { modelBaseDir.getPath() });
+		List<MetaDataObject> aeDescs = Lists.newArrayList();
+		aeDescs.add(TokenizerAPI.getAEImport());
+		aeDescs.add(SentenceSplitterAPI.getAEImport());
+		aeDescs.add(taggerDesc);
+		AnalysisEngineDescription aggrDesc = PipelineDescriptorUtils.createAggregateDescription(
+				aeDescs, Lists.newArrayList("tokenizer", "sentence-splitter", "pos-tagger"));
+		// add MorphDictionaryHolder resource with the required name
+		File dictFile = new File(System.getProperty(TestUtils.SYSPROP_DICTIONARY_HOME),
+				TestUtils.FILENAME_SERIALIZED_DICTIONARY);
+		ExternalResourceDescription morphDictDesc = createExternalResourceDescription(
+				CachedSerializedDictionaryResource.class, dictFile.toURI().toURL().toString());
+		morphDictDesc.setName(PosTaggerAPI.MORPH_DICTIONARY_RESOURCE_NAME);
+		getResourceManagerConfiguration(aggrDesc).addExternalResource(morphDictDesc);
+		return aggrDesc;
+	}
+
+	/**
+	 * Builds classifiers that choose a label of an item by hash codes of its
+	 * features and the label of the previous item. Labels are read from the
+	 * file {@value #LABELS_FILENAME} of a training directory.
+	 */
+	public static class HashingClassifierBuilder extends
+			JarClassifierBuilder<SequenceClassifier<String>> {
+
+		static final String LABELS_FILENAME = "labels.txt";
+
+		private List<String> labels;
+
+		@Override
+		public File getTrainingDataFile(File dir) {
+			return new File(dir, "training-data.txt");
+		}
+
+		@Override
+		public void trainClassifier(File dir, String... args) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		protected void packageClassifier(File dir, JarOutputStream modelStream) throws IOException {
+			super.packageClassifier(dir, modelStream);
+			JarStreams.putNextJarEntry(modelStream, LABELS_FILENAME, new File(dir, LABELS_FILENAME));
+		}
+
+		@Override
+		protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+			super.unpackageClassifier(modelStream);
+			JarStreams.getNextJarEntry(modelStream, LABELS_FILENAME);
+			labels = IOUtils.readLines(modelStream, Charsets.UTF_8.name());
+		}
+
+		@Override
+		protected SequenceClassifier<String> newClassifier() {
+			return new HashingClassifier(labels);
+		}
+	}
+
+	private static class HashingClassifier extends
+			SequenceClassifier_ImplBase<List<NameNumber>, String, String> {
+
+		private final List<String> labels;
+
+		HashingClassifier(List<String> labels) {
+			super(null, null);
+			this.labels = labels;
+		}
+
+		@Override
+		public List<String> classify(List<List<Feature>> itemSeq)
+				throws CleartkProcessingException {
+			List<String> result = Lists.newArrayListWithCapacity(itemSeq.size());
+			String prevLabel = "<S>";
+			for (List<Feature> item : itemSeq) {
+				// the order of features of an item is not significant
+				List<String> featureStrings = Lists.newArrayListWithCapacity(item.size());
+				for (Feature f : item) {
+					featureStrings.add(f.getName() + "=" + f.getValue());
+				}
+				Collections.sort(featureStrings);
+				int hash = (featureStrings.hashCode() * 31 + prevLabel.hashCode()) & Integer.MAX_VALUE;
+				prevLabel = labels.get(hash % labels.size());
+				result.add(prevLabel);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * 
+ */
+package ru.ksu.niimm.cll.uima.morph.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Runs {@link ParallelTierTrainer} with {@link FakeTierTrainer} as a child
+ * main.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class ParallelTierTrainerTest {
+
+	private static final File baseDir = new File("target/ParallelTierTrainerTest");
+	private static final String MODE_FILENAME = "mode";
+	private static final String ARGS_FILENAME = "args.txt";
+	private static final String COUNTER_FILENAME = "counter.txt";
+	private static final long PEAK_MEMORY = 12345;
+
+	@Before
+	public void setUp() {
+		FileUtils.deleteQuietly(baseDir);
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(baseDir);
+	}
+
+	@Test
+	public void testTrain() throws Exception {
+		Map<String, File[]> tierDirs = Maps.newLinkedHashMap();
+		addTier(tierDirs, "POST", "ok");
+		addTier(tierDirs, "CAse", "ok");
+		addTier(tierDirs, "NMbr", "ok");
+		List<TierReport> reports = newTrainer(2).train(tierDirs, new String[] { "-a", "l2sgd" });
+		assertEquals(3, reports.size());
+		int i = 0;
+		for (Map.Entry<String, File[]> e : tierDirs.entrySet()) {
+			TierReport r = reports.get(i++);
+			assertEquals(e.getKey(), r.tier);
+			assertEquals(PEAK_MEMORY, r.peakMemory);
+			assertTrue(r.wallTime >= 0);
+			File trainingDir = e.getValue()[0];
+			File modelDir = e.getValue()[1];
+			assertEquals(Arrays.asList(trainingDir.getPath(), modelDir.getPath(), "-a", "l2sgd"),
+					FileUtils.readLines(new File(modelDir, ARGS_FILENAME), "utf-8"));
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		Map<String, File[]> tierDirs = Maps.newLinkedHashMap();
+		File slowModelDir = addTier(tierDirs, "POST", "slow");
+		addTier(tierDirs, "CAse", "fail");
+		long startTime = System.currentTimeMillis();
+		try {
+			newTrainer(2).train(tierDirs, new String[0]);
+			fail("Failure of a tier must be propagated");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("'CAse'"));
+			assertTrue(String.valueOf(e.getCause()),
+					e.getCause().getMessage().contains("exited with code 3"));
+		}
+		// the failure must not wait for the slow tier
+		assertTrue(System.currentTimeMillis() - startTime < FakeTierTrainer.SLOW_TIME / 2);
+		// the slow trainer must be destroyed, so its counter stops;
+		// Process.destroy() does not wait for the exit
+		Thread.sleep(500);
+		File counterFile = new File(slowModelDir, COUNTER_FILENAME);
+		String counter = readCounter(counterFile);
+		Thread.sleep(1000);
+		assertEquals(counter, readCounter(counterFile));
+	}
+
+	private static String readCounter(File counterFile) throws Exception {
+		return counterFile.isFile() ? FileUtils.readFileToString(counterFile, "utf-8") : null;
+	}
+
+	private static ParallelTierTrainer newTrainer(int parallelism) {
+		return new ParallelTierTrainer(parallelism, FakeTierTrainer.class.getName());
+	}
+
+	/**
+	 * @return model directory of the tier
+	 */
+	private static File addTier(Map<String, File[]> tierDirs, String tier, String mode)
+			throws Exception {
+		File trainingDir = new File(baseDir, "training/" + tier);
+		File modelDir = new File(baseDir, "model/" + tier);
+		FileUtils.write(new File(trainingDir, MODE_FILENAME), mode, "utf-8");
+		FileUtils.forceMkdir(modelDir);
+		tierDirs.put(tier, new File[] { trainingDir, modelDir });
+		return modelDir;
+	}
+
+	/**
+	 * Writes its arguments into the model directory and behaves as specified
+	 * in the file {@value ParallelTierTrainerTest#MODE_FILENAME} of the
+	 * training directory:
+	 * <dl>
+	 * <dt>ok
+	 * <dd>prints a line and the peak memory, exits normally
+	 * <dt>fail
+	 * <dd>exits with code 3
+	 * <dt>slow
+	 * <dd>writes an incremented counter into the model directory every 100 ms
+	 * during {@value #SLOW_TIME} ms
+	 * </dl>
+	 */
+	public static class FakeTierTrainer {
+
+		static final long SLOW_TIME = 60000;
+
+		public static void main(String[] args) throws Exception {
+			File trainingDir = new File(args[0]);
+			File modelDir = new File(args[1]);
+			FileUtils.writeLines(new File(modelDir, ARGS_FILENAME), "utf-8",
+					Lists.newArrayList(args));
+			String mode = FileUtils.readFileToString(new File(trainingDir, MODE_FILENAME),
+					"utf-8");
+			if ("fail".equals(mode)) {
+				System.exit(3);
+			} else if ("slow".equals(mode)) {
+				long startTime = System.currentTimeMillis();
+				int counter = 0;
+				while (System.currentTimeMillis() - startTime < SLOW_TIME) {
+					FileUtils.write(new File(modelDir, COUNTER_FILENAME),
+							String.valueOf(counter++), "utf-8");
+					Thread.sleep(100);
+				}
+			} else {
+				System.out.println("Training...");
+				System.out.println(TierTrainer.PEAK_MEMORY_PREFIX + PEAK_MEMORY);
+			}
+		}
+	}
+}
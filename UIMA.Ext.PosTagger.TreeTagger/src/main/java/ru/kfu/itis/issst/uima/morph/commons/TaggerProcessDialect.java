@@ -0,0 +1,59 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.morph.commons;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Describes how to start an external tagger and how to talk to it through
+ * its standard streams. A tagger must read tokens one per line and output
+ * lines of tab-separated fields, where the first field is a token, the second
+ * one is a tag and the optional third one is a lemma.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public abstract class TaggerProcessDialect {
+
+	/**
+	 * @return command line of a tagger process
+	 */
+	public abstract List<String> getCommand() throws IOException;
+
+	public String getEncoding() {
+		return "utf-8";
+	}
+
+	/**
+	 * @return a line of the tagger error stream that means the tagger is
+	 *         ready to accept input, or null if the tagger is ready right
+	 *         after start
+	 */
+	public String getReadyMessage() {
+		return null;
+	}
+
+	/**
+	 * Write a marker that the tagger must echo as the first field of an
+	 * output line.
+	 */
+	public abstract void writeSentinel(Writer out, String sentinel) throws IOException;
+
+	public abstract void writeSentenceEnd(Writer out) throws IOException;
+
+	/**
+	 * Write input that forces the tagger to output everything that precedes
+	 * it. Output for this input is skipped. Does nothing by default.
+	 */
+	public void writeFlushPadding(Writer out) throws IOException {
+	}
+
+	/**
+	 * Release resources (e.g., temporary files) when the pool is destroyed.
+	 */
+	public void destroy() {
+	}
+}
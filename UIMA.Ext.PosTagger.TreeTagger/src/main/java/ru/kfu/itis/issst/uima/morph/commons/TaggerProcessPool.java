@@ -0,0 +1,470 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.morph.commons;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.annolab.tt4j.TokenAdapter;
+import org.annolab.tt4j.TokenHandler;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Pool of long-lived external tagger processes.
+ * <p>
+ * Each process has permanent threads: an input writer, an output reader and
+ * an error stream reader. A request (a list of sentences) is framed by start
+ * and end sentinels, so the reader can find the response in the output
+ * stream without knowing anything about tagger buffering. A caller thread
+ * takes an idle process (starting a new one if the pool is not full), hands
+ * the request over and waits for the response without polling. Token
+ * adapters and handlers are invoked in the caller thread.
+ * </p>
+ * <p>
+ * If a process dies, the request fails, the process is discarded and the
+ * request is retried once on a newly started process.
+ * </p>
+ * <p>
+ * Instances are thread-safe. Use {@link #getShared(String, TaggerProcessDialect, int)}
+ * to share a pool between several annotator instances.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class TaggerProcessPool {
+
+	private static final Logger log = LoggerFactory.getLogger(TaggerProcessPool.class);
+
+	private static final Map<String, TaggerProcessPool> sharedPools = Maps.newHashMap();
+
+	/**
+	 * Get the pool registered under the given key or create it with the given
+	 * dialect. If the pool already exists the given dialect is not used and is
+	 * destroyed. Each invocation adds <code>processCount</code> to the maximum
+	 * number of processes of the pool and must be paired with
+	 * {@link #release()}.
+	 */
+	public static TaggerProcessPool getShared(String key, TaggerProcessDialect dialect,
+			int processCount) {
+		synchronized (sharedPools) {
+			TaggerProcessPool pool = sharedPools.get(key);
+			if (pool == null) {
+				pool = new TaggerProcessPool(dialect, 0);
+				pool.sharedKey = key;
+				sharedPools.put(key, pool);
+			} else {
+				dialect.destroy();
+			}
+			pool.refCount++;
+			pool.addCapacity(processCount);
+			return pool;
+		}
+	}
+
+	static final String START_SENTINEL = "<uima-ext-start-of-request/>";
+	static final String END_SENTINEL = "<uima-ext-end-of-request/>";
+	private static final long TAGGER_READY_MAX_TIMEOUT = 60000;
+	private static final int MAX_ATTEMPTS = 2;
+
+	// config fields
+	private final TaggerProcessDialect dialect;
+	// state fields
+	private final Semaphore permits = new Semaphore(0);
+	private final BlockingQueue<TaggerProcess> idleProcesses =
+			new LinkedBlockingQueue<TaggerProcess>();
+	private final AtomicInteger processCounter = new AtomicInteger();
+	private volatile boolean destroyed;
+	// shared pool state, guarded by sharedPools
+	private String sharedKey;
+	private int refCount;
+
+	public TaggerProcessPool(TaggerProcessDialect dialect, int maxProcesses) {
+		this.dialect = dialect;
+		addCapacity(maxProcesses);
+	}
+
+	public void addCapacity(int processCount) {
+		if (processCount < 0) {
+			throw new IllegalArgumentException("processCount = " + processCount);
+		}
+		permits.release(processCount);
+	}
+
+	/**
+	 * Tag the given sentences in a single request and report the results to
+	 * the handler in the order of tokens.
+	 */
+	public <TT> void process(List<? extends Collection<TT>> sentences,
+			TokenAdapter<TT> tokenAdapter, TokenHandler<TT> tokenHandler)
+			throws IOException, InterruptedException {
+		List<List<String>> sentenceTexts = Lists.newArrayListWithCapacity(sentences.size());
+		int tokenCount = 0;
+		for (Collection<TT> sent : sentences) {
+			List<String> texts = Lists.newArrayListWithCapacity(sent.size());
+			for (TT token : sent) {
+				texts.add(checkTokenText(tokenAdapter.getText(token)));
+			}
+			sentenceTexts.add(texts);
+			tokenCount += texts.size();
+		}
+		if (tokenCount == 0) {
+			return;
+		}
+		List<String[]> rows = execute(sentenceTexts, tokenCount);
+		Iterator<String[]> rowIter = rows.iterator();
+		for (Collection<TT> sent : sentences) {
+			for (TT token : sent) {
+				String[] fields = rowIter.next();
+				String tag = fields.length > 1 ? fields[1] : null;
+				String lemma = fields.length > 2 && !fields[2].isEmpty() ? fields[2] : null;
+				tokenHandler.token(token, tag, lemma);
+			}
+		}
+	}
+
+	private List<String[]> execute(List<List<String>> sentences, int tokenCount)
+			throws IOException, InterruptedException {
+		for (int attempt = 1;; attempt++) {
+			if (destroyed) {
+				throw new IllegalStateException("The pool is destroyed");
+			}
+			permits.acquire();
+			TaggerProcess process = null;
+			try {
+				process = idleProcesses.poll();
+				if (process == null) {
+					process = new TaggerProcess(processCounter.incrementAndGet());
+				}
+				Request req = new Request(sentences, tokenCount);
+				process.submit(req);
+				return req.await();
+			} catch (TaggerProcessException e) {
+				if (attempt >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				log.warn("Tagger process failed, retrying the request on a new process", e);
+			} finally {
+				if (process != null) {
+					if (process.isAlive() && !destroyed) {
+						idleProcesses.add(process);
+					} else {
+						process.destroy();
+					}
+				}
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Decrement the reference count of a shared pool and destroy it when the
+	 * count reaches zero. For a not shared pool it is the same as
+	 * {@link #destroy()}.
+	 */
+	public void release() {
+		synchronized (sharedPools) {
+			if (sharedKey != null && --refCount > 0) {
+				return;
+			}
+			if (sharedKey != null) {
+				sharedPools.remove(sharedKey);
+			}
+		}
+		destroy();
+	}
+
+	public void destroy() {
+		if (destroyed) {
+			return;
+		}
+		destroyed = true;
+		TaggerProcess process;
+		while ((process = idleProcesses.poll()) != null) {
+			process.destroy();
+		}
+		dialect.destroy();
+	}
+
+	private static String checkTokenText(String text) {
+		if (text.isEmpty() || text.indexOf('\t') >= 0 || text.indexOf('\n') >= 0
+				|| text.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException(String.format(
+					"Token '%s' contains illegal characters", text));
+		}
+		return text;
+	}
+
+	private static class Request {
+		private final List<List<String>> sentences;
+		private final int tokenCount;
+		private final List<String[]> rows;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Throwable failure;
+
+		Request(List<List<String>> sentences, int tokenCount) {
+			this.sentences = sentences;
+			this.tokenCount = tokenCount;
+			this.rows = new ArrayList<String[]>(tokenCount);
+		}
+
+		synchronized void complete() {
+			done.countDown();
+		}
+
+		synchronized void fail(Throwable cause) {
+			if (done.getCount() > 0) {
+				failure = cause;
+				done.countDown();
+			}
+		}
+
+		List<String[]> await() throws InterruptedException, TaggerProcessException {
+			done.await();
+			if (failure != null) {
+				throw new TaggerProcessException(failure);
+			}
+			return rows;
+		}
+	}
+
+	private static class TaggerProcessException extends IOException {
+		private static final long serialVersionUID = -2617592283402404391L;
+
+		TaggerProcessException(String message) {
+			super(message);
+		}
+
+		TaggerProcessException(Throwable cause) {
+			super(cause);
+		}
+	}
+
+	private class TaggerProcess {
+		private final String name;
+		private final Process process;
+		private final Writer input;
+		private final BufferedReader output;
+		private final BufferedReader errors;
+		// requests to write and requests to read the response of
+		private final BlockingQueue<Request> writeQueue = new LinkedBlockingQueue<Request>();
+		private final BlockingQueue<Request> readQueue = new LinkedBlockingQueue<Request>();
+		private final CountDownLatch ready = new CountDownLatch(1);
+		// the request which response is being read
+		private volatile Request currentRequest;
+		private final Thread writerThread;
+		private final Thread readerThread;
+		private final Thread errorThread;
+		private volatile boolean alive = true;
+
+		TaggerProcess(int index) throws IOException, InterruptedException {
+			List<String> cmd = dialect.getCommand();
+			name = "tagger-" + index;
+			log.info("Starting {}:\n{}", name, Joiner.on(' ').join(cmd));
+			process = new ProcessBuilder(cmd).start();
+			String encoding = dialect.getEncoding();
+			input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), encoding));
+			output = new BufferedReader(new InputStreamReader(process.getInputStream(), encoding));
+			errors = new BufferedReader(new InputStreamReader(process.getErrorStream(), encoding));
+			if (dialect.getReadyMessage() == null) {
+				ready.countDown();
+			}
+			writerThread = startThread("writer", new Runnable() {
+				@Override
+				public void run() {
+					runWriter();
+				}
+			});
+			readerThread = startThread("reader", new Runnable() {
+				@Override
+				public void run() {
+					runReader();
+				}
+			});
+			errorThread = startThread("stderr", new Runnable() {
+				@Override
+				public void run() {
+					runErrorReader();
+				}
+			});
+			if (!ready.await(TAGGER_READY_MAX_TIMEOUT, TimeUnit.MILLISECONDS) || !alive) {
+				destroy();
+				throw new TaggerProcessException(String.format(
+						"%s was not initialized properly. Check log messages", name));
+			}
+		}
+
+		private Thread startThread(String suffix, Runnable r) {
+			Thread result = new Thread(r, name + "-" + suffix);
+			result.setDaemon(true);
+			result.start();
+			return result;
+		}
+
+		boolean isAlive() {
+			return alive;
+		}
+
+		void submit(Request req) throws TaggerProcessException {
+			if (!alive) {
+				throw new TaggerProcessException(name + " is dead");
+			}
+			readQueue.add(req);
+			writeQueue.add(req);
+			if (!alive) {
+				// the reader could miss the request
+				failPending(new IllegalStateException(name + " is dead"));
+			}
+		}
+
+		private void runWriter() {
+			try {
+				while (true) {
+					Request req = writeQueue.take();
+					dialect.writeSentinel(input, START_SENTINEL);
+					for (List<String> sent : req.sentences) {
+						for (String token : sent) {
+							input.write(token);
+							input.write('\n');
+						}
+						dialect.writeSentenceEnd(input);
+					}
+					dialect.writeSentinel(input, END_SENTINEL);
+					dialect.writeFlushPadding(input);
+					input.flush();
+				}
+			} catch (InterruptedException e) {
+				// the process is destroyed
+			} catch (Throwable e) {
+				onDeath(e);
+			}
+		}
+
+		private void runReader() {
+			try {
+				while (true) {
+					Request req = readQueue.take();
+					currentRequest = req;
+					// skip lines preceding the response, e.g. for the flush padding
+					String[] fields;
+					do {
+						fields = readFields();
+					} while (fields == null || !START_SENTINEL.equals(fields[0]));
+					while (true) {
+						fields = readFields();
+						if (fields == null) {
+							// sentence end
+							continue;
+						}
+						if (END_SENTINEL.equals(fields[0])) {
+							break;
+						}
+						req.rows.add(fields);
+					}
+					if (req.rows.size() != req.tokenCount) {
+						req.fail(new IllegalStateException(String.format(
+								"%s returned %s tokens instead of %s",
+								name, req.rows.size(), req.tokenCount)));
+					} else {
+						req.complete();
+					}
+					currentRequest = null;
+				}
+			} catch (InterruptedException e) {
+				// the process is destroyed
+			} catch (Throwable e) {
+				onDeath(e);
+			}
+		}
+
+		/**
+		 * @return fields of the next output line or null if it is empty
+		 */
+		private String[] readFields() throws IOException {
+			String line = output.readLine();
+			if (line == null) {
+				throw new IOException(String.format("Unexpected death of %s", name));
+			}
+			if (line.isEmpty()) {
+				return null;
+			}
+			return line.split("\t");
+		}
+
+		private void runErrorReader() {
+			String readyMessage = dialect.getReadyMessage();
+			try {
+				String line;
+				while ((line = errors.readLine()) != null) {
+					if (ready.getCount() > 0) {
+						log.info("{}: {}", name, line);
+						if (line.equalsIgnoreCase(readyMessage)) {
+							ready.countDown();
+						}
+					} else {
+						log.debug("{}: {}", name, line);
+					}
+				}
+			} catch (IOException e) {
+				// the process is destroyed
+			}
+			onDeath(new IOException(String.format("%s closed its error stream", name)));
+		}
+
+		private void onDeath(Throwable cause) {
+			if (!alive) {
+				return;
+			}
+			alive = false;
+			if (!destroyed) {
+				log.error(String.format("%s died", name), cause);
+			}
+			ready.countDown();
+			failPending(cause);
+		}
+
+		private void failPending(Throwable cause) {
+			Request req = currentRequest;
+			if (req != null) {
+				req.fail(cause);
+			}
+			while ((req = readQueue.poll()) != null) {
+				req.fail(cause);
+			}
+		}
+
+		void destroy() {
+			alive = false;
+			process.destroy();
+			writerThread.interrupt();
+			readerThread.interrupt();
+			IOUtils.closeQuietly(input);
+			IOUtils.closeQuietly(output);
+			IOUtils.closeQuietly(errors);
+			failPending(new IllegalStateException(name + " is destroyed"));
+			log.debug("Stopped {}", name);
+		}
+	}
+}
@@ -6,11 +6,10 @@ package ru.kfu.itis.issst.uima.morph.treetagger;
 import static ru.kfu.itis.issst.uima.morph.commons.TagUtils.postProcessExternalTag;
 
 import java.io.IOException;
-import java.util.Collection;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Collections;
+import java.util.List;
 
 import org.annolab.tt4j.TokenHandler;
-import org.annolab.tt4j.TreeTaggerWrapper;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
@@ -25,97 +24,101 @@ import org.uimafit.util.JCasUtil;
 import ru.kfu.cll.uima.tokenizer.fstype.NUM;
 import ru.kfu.cll.uima.tokenizer.fstype.Token;
 import ru.kfu.cll.uima.tokenizer.fstype.W;
+import ru.kfu.itis.issst.uima.morph.commons.TaggerProcessPool;
+
+import com.google.common.collect.Lists;
 
 /**
+ * Tags tokens of a document in a single request to a pool of TreeTagger
+ * processes. Annotator instances with the same model share the pool, each
+ * instance adds the configured number of processes to it.
+ * 
  * @author Rinat Gareev (Kazan Federal University)
  * 
  */
 public class MorphTagger extends JCasAnnotator_ImplBase {
 
 	public static final String PARAM_TREETAGGER_MODEL_NAME = "treeTaggerModelName";
+	public static final String PARAM_PROCESS_COUNT = "processCount";
 	// config
 	@ConfigurationParameter(name = PARAM_TREETAGGER_MODEL_NAME, mandatory = true)
 	private String ttModelName;
-	// monitors
-	private final Object casMon = new Object();
+	@ConfigurationParameter(name = PARAM_PROCESS_COUNT, defaultValue = "1", mandatory = false)
+	private int processCount;
 	// state fields
-	private TreeTaggerWrapper<Token> treeTagger;
+	private TaggerProcessPool treeTaggerPool;
+	private final TokenAdapter tokenAdapter = new TokenAdapter();
 
 	@Override
 	public void initialize(UimaContext ctx) throws ResourceInitializationException {
 		super.initialize(ctx);
 
-		treeTagger = new TreeTaggerWrapper<Token>();
-		treeTagger.setAdapter(new TokenAdapter());
+		TreeTaggerDialect dialect;
 		try {
-			treeTagger.setModel(ttModelName);
+			dialect = new TreeTaggerDialect(ttModelName);
 		} catch (IOException e) {
 			throw new ResourceInitializationException(e);
 		}
+		treeTaggerPool = TaggerProcessPool.getShared(
+				"treetagger:" + ttModelName, dialect, processCount);
 	}
 
 	@Override
 	public void process(final JCas jCas) throws AnalysisEngineProcessException {
-		Collection<Token> tokens = JCasUtil.select(jCas, Token.class);
+		List<Token> tokens = Lists.newArrayList(JCasUtil.select(jCas, Token.class));
 		final Word[] words = new Word[tokens.size()];
 
-		final AtomicInteger count = new AtomicInteger(0);
-		treeTagger.setHandler(new TokenHandler<Token>() {
+		// the handler is invoked in this thread
+		TokenHandler<Token> tokenHandler = new TokenHandler<Token>() {
+			private int count;
+
 			@Override
 			public void token(Token token, String pos, String lemma) {
-				// should be synchronized on the same object with TokenAdapter#getText (see below)
-				synchronized (casMon) {
-					// do not create Wordform on punctuation and special tokens
-					// TODO MTE Rus TreeTagger also outputs tag 'SENT' for sentence end?
-					if (pos != null && (token instanceof W || token instanceof NUM)) {
-						pos = pos.intern();
-						Word w = new Word(jCas, token.getBegin(), token.getEnd());
-						w.setToken(token);
-
-						Wordform wf = new Wordform(jCas);
-						if (lemma != null) {
-							wf.setLemma(lemma);
-						}
-						wf.setPos(postProcessExternalTag(pos));
-
-						wf.setWord(w);
-						FSArray wfArr = new FSArray(jCas, 1);
-						wfArr.set(0, wf);
-						w.setWordforms(wfArr);
-
-						if (words[count.get()] != null) {
-							throw new IllegalStateException();
-						}
-						words[count.get()] = w;
+				// do not create Wordform on punctuation and special tokens
+				// TODO MTE Rus TreeTagger also outputs tag 'SENT' for sentence end?
+				if (pos != null && (token instanceof W || token instanceof NUM)) {
+					pos = pos.intern();
+					Word w = new Word(jCas, token.getBegin(), token.getEnd());
+					w.setToken(token);
+
+					Wordform wf = new Wordform(jCas);
+					if (lemma != null) {
+						wf.setLemma(lemma);
 					}
-					//
-					count.getAndIncrement();
+					wf.setPos(postProcessExternalTag(pos));
+
+					wf.setWord(w);
+					FSArray wfArr = new FSArray(jCas, 1);
+					wfArr.set(0, wf);
+					w.setWordforms(wfArr);
+
+					words[count] = w;
 				}
+				//
+				count++;
 			}
-		});
+		};
 		// 
 		try {
-			treeTagger.process(tokens);
-
-			// save annotations
-			for (Word w : words) {
-				if (w != null) {
-					w.addToIndexes();
-				}
-			}
-			// just to clear reference to current CAS
-			treeTagger.setHandler(null);
+			treeTaggerPool.process(Collections.singletonList(tokens), tokenAdapter, tokenHandler);
 		} catch (Exception e) {
 			throw new AnalysisEngineProcessException(e);
 		}
+		// save annotations
+		for (Word w : words) {
+			if (w != null) {
+				w.addToIndexes();
+			}
+		}
 	}
 
 	@Override
 	public void destroy() {
 		super.destroy();
-		if (treeTagger != null) {
-			getLogger().info("Cleaning up TreeTagger process");
-			treeTagger.destroy();
+		if (treeTaggerPool != null) {
+			getLogger().info("Releasing TreeTagger processes");
+			treeTaggerPool.release();
+			treeTaggerPool = null;
 		}
 	}
 
@@ -127,12 +130,10 @@ public class MorphTagger extends JCasAnnotator_ImplBase {
 		super.finalize();
 	}
 
-	private class TokenAdapter implements org.annolab.tt4j.TokenAdapter<Token> {
+	private static class TokenAdapter implements org.annolab.tt4j.TokenAdapter<Token> {
 		@Override
 		public String getText(Token t) {
-			synchronized (casMon) {
-				return t.getCoveredText();
-			}
+			return t.getCoveredText();
 		}
 	}
 }
\ No newline at end of file
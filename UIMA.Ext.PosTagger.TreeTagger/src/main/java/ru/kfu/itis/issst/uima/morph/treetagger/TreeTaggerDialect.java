@@ -0,0 +1,95 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.morph.treetagger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.annolab.tt4j.DefaultExecutableResolver;
+import org.annolab.tt4j.DefaultModelResolver;
+import org.annolab.tt4j.ExecutableResolver;
+import org.annolab.tt4j.Model;
+import org.annolab.tt4j.PlatformDetector;
+
+import ru.kfu.itis.issst.uima.morph.commons.TaggerProcessDialect;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Talks to TreeTagger in the same way as {@link org.annolab.tt4j.TreeTaggerWrapper}:
+ * sentinels are SGML tags that are echoed by the '-sgml' mode, and each
+ * request is followed by dummy tokens that push the request end through the
+ * TreeTagger look-ahead buffer.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class TreeTaggerDialect extends TaggerProcessDialect {
+
+	private static final int FLUSH_PADDING_SIZE = 10;
+
+	// config fields
+	private final ExecutableResolver exeResolver;
+	private final Model model;
+
+	/**
+	 * @param modelName
+	 *            model name in the format of {@link DefaultModelResolver},
+	 *            e.g. 'path/to/model.par:UTF-8'
+	 */
+	TreeTaggerDialect(String modelName) throws IOException {
+		PlatformDetector platformDetector = new PlatformDetector();
+		exeResolver = new DefaultExecutableResolver();
+		exeResolver.setPlatformDetector(platformDetector);
+		DefaultModelResolver modelResolver = new DefaultModelResolver();
+		modelResolver.setPlatformDetector(platformDetector);
+		model = modelResolver.getModel(modelName);
+	}
+
+	@Override
+	public List<String> getCommand() throws IOException {
+		List<String> cmd = Lists.newArrayList();
+		cmd.add(exeResolver.getExecutable());
+		cmd.add("-quiet");
+		cmd.add("-no-unknown");
+		cmd.add("-sgml");
+		cmd.add("-token");
+		cmd.add("-lemma");
+		cmd.add(model.getFile().getAbsolutePath());
+		return cmd;
+	}
+
+	@Override
+	public String getEncoding() {
+		return model.getEncoding();
+	}
+
+	@Override
+	public void writeSentinel(Writer out, String sentinel) throws IOException {
+		out.write(sentinel);
+		out.write('\n');
+	}
+
+	@Override
+	public void writeSentenceEnd(Writer out) throws IOException {
+		// TreeTagger does not need sentence boundaries
+	}
+
+	@Override
+	public void writeFlushPadding(Writer out) throws IOException {
+		for (int i = 0; i < FLUSH_PADDING_SIZE; i++) {
+			out.write(".\n");
+		}
+	}
+
+	@Override
+	public void destroy() {
+		try {
+			model.destroy();
+		} finally {
+			exeResolver.destroy();
+		}
+	}
+}
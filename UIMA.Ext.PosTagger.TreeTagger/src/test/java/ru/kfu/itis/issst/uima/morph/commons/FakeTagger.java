@@ -0,0 +1,51 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.morph.commons;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Tagger process for tests. Outputs each input token with the tag that is the
+ * upper-cased token and the lemma that is the lower-cased token. Output is
+ * flushed only at empty lines like a tagger with an output buffer would do.
+ * <p>
+ * The token 'die' kills the process if the file given as the first argument
+ * exists (the file is deleted), the token 'always-die' always kills it.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class FakeTagger {
+
+	static final String READY_MESSAGE = "fake tagger is ready";
+
+	public static void main(String[] args) throws Exception {
+		File dieFlagFile = new File(args[0]);
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "utf-8"));
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, "utf-8"));
+		System.err.println("Loading...");
+		System.err.println(READY_MESSAGE);
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.isEmpty()) {
+				out.print('\n');
+				out.flush();
+				continue;
+			}
+			if (line.equals("always-die") || (line.equals("die") && dieFlagFile.delete())) {
+				System.exit(1);
+			}
+			out.print(line + "\t" + line.toUpperCase() + "\t" + line.toLowerCase() + "\n");
+		}
+		out.flush();
+	}
+
+	private FakeTagger() {
+	}
+}
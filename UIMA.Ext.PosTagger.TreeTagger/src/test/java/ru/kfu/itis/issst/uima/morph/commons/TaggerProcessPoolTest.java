@@ -0,0 +1,249 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.morph.commons;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.annolab.tt4j.TokenAdapter;
+import org.annolab.tt4j.TokenHandler;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class TaggerProcessPoolTest {
+
+	private File dieFlagFile;
+	private FakeTaggerDialect dialect;
+	private TaggerProcessPool pool;
+
+	@Before
+	public void setUp() throws IOException {
+		dieFlagFile = File.createTempFile("fake-tagger-", ".die");
+		FileUtils.deleteQuietly(dieFlagFile);
+		dialect = new FakeTaggerDialect(dieFlagFile);
+	}
+
+	@After
+	public void tearDown() {
+		if (pool != null) {
+			pool.destroy();
+		}
+		FileUtils.deleteQuietly(dieFlagFile);
+	}
+
+	@Test
+	public void shouldTagSentencesOfRequest() throws Exception {
+		pool = new TaggerProcessPool(dialect, 1);
+		List<List<String>> sentences = Lists.newArrayList();
+		sentences.add(asList("Мама", "мыла", "раму"));
+		sentences.add(Lists.<String> newArrayList());
+		sentences.add(asList("Ok"));
+		assertEquals(asList("Мама/МАМА/мама", "мыла/МЫЛА/мыла", "раму/РАМУ/раму", "Ok/OK/ok"),
+				tag(sentences));
+		// the same process is used for the next request
+		assertEquals(asList("x/X/x"), tag(sentence("x")));
+		assertEquals(1, dialect.startCount.get());
+		// a request without tokens does not start a process
+		pool.process(Lists.<List<String>> newArrayList(), new StringAdapter(),
+				new TokenHandler<String>() {
+					@Override
+					public void token(String token, String pos, String lemma) {
+						fail();
+					}
+				});
+	}
+
+	@Test
+	public void shouldServeConcurrentRequests() throws Exception {
+		pool = new TaggerProcessPool(dialect, 2);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<String>>> futures = Lists.newArrayList();
+			for (int r = 0; r < 40; r++) {
+				final List<List<String>> sentences = Lists.newArrayList();
+				for (int s = 0; s <= r % 3; s++) {
+					List<String> sent = Lists.newArrayList();
+					for (int t = 0; t <= r % 5; t++) {
+						sent.add("w" + r + "_" + s + "_" + t);
+					}
+					sentences.add(sent);
+				}
+				futures.add(executor.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() throws Exception {
+						return tag(sentences);
+					}
+				}));
+			}
+			for (int r = 0; r < futures.size(); r++) {
+				List<String> expected = Lists.newArrayList();
+				for (int s = 0; s <= r % 3; s++) {
+					for (int t = 0; t <= r % 5; t++) {
+						String token = "w" + r + "_" + s + "_" + t;
+						expected.add(token + "/" + token.toUpperCase() + "/" + token);
+					}
+				}
+				assertEquals(expected, futures.get(r).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(dialect.startCount.get() <= 2);
+	}
+
+	@Test
+	public void shouldRetryOnNewProcessAfterDeath() throws Exception {
+		pool = new TaggerProcessPool(dialect, 1);
+		assertEquals(asList("a/A/a"), tag(sentence("a")));
+		// the running process dies on this request
+		FileUtils.touch(dieFlagFile);
+		assertEquals(asList("b/B/b", "die/DIE/die"), tag(sentence("b", "die")));
+		assertEquals(2, dialect.startCount.get());
+		// the new process is kept
+		assertEquals(asList("c/C/c"), tag(sentence("c")));
+		assertEquals(2, dialect.startCount.get());
+	}
+
+	@Test
+	public void shouldFailAfterSecondDeath() throws Exception {
+		pool = new TaggerProcessPool(dialect, 1);
+		try {
+			tag(sentence("a", "always-die"));
+			fail("Death of the tagger is not reported");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(2, dialect.startCount.get());
+		// the pool is usable after the failure
+		assertEquals(asList("a/A/a"), tag(sentence("a")));
+		assertEquals(3, dialect.startCount.get());
+	}
+
+	@Test
+	public void shouldRejectIllegalTokens() throws Exception {
+		pool = new TaggerProcessPool(dialect, 1);
+		for (String token : new String[] { "", "a\tb", "a\nb", "a\rb" }) {
+			try {
+				tag(sentence(token));
+				fail("Illegal token is accepted");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(0, dialect.startCount.get());
+	}
+
+	@Test
+	public void shouldDestroyDialectsOfSharedPool() throws Exception {
+		String key = "fake:" + dieFlagFile.getPath();
+		TaggerProcessPool shared1 = TaggerProcessPool.getShared(key, dialect, 1);
+		FakeTaggerDialect dialect2 = new FakeTaggerDialect(dieFlagFile);
+		TaggerProcessPool shared2 = TaggerProcessPool.getShared(key, dialect2, 1);
+		assertSame(shared1, shared2);
+		// the dialect of the existing pool is used
+		assertEquals(1, dialect2.destroyCount.get());
+		assertEquals(0, dialect.destroyCount.get());
+		shared1.release();
+		assertEquals(0, dialect.destroyCount.get());
+		shared2.release();
+		assertEquals(1, dialect.destroyCount.get());
+		// a released pool is not returned any more
+		FakeTaggerDialect dialect3 = new FakeTaggerDialect(dieFlagFile);
+		TaggerProcessPool shared3 = TaggerProcessPool.getShared(key, dialect3, 1);
+		assertNotSame(shared1, shared3);
+		assertEquals(0, dialect3.destroyCount.get());
+		shared3.release();
+		assertEquals(1, dialect3.destroyCount.get());
+	}
+
+	private List<String> tag(List<? extends Collection<String>> sentences)
+			throws IOException, InterruptedException {
+		final List<String> result = Lists.newArrayList();
+		pool.process(sentences, new StringAdapter(), new TokenHandler<String>() {
+			@Override
+			public void token(String token, String pos, String lemma) {
+				result.add(token + "/" + pos + "/" + lemma);
+			}
+		});
+		return result;
+	}
+
+	private static List<List<String>> sentence(String... tokens) {
+		List<List<String>> result = Lists.newArrayList();
+		result.add(asList(tokens));
+		return result;
+	}
+
+	private static class StringAdapter implements TokenAdapter<String> {
+		@Override
+		public String getText(String token) {
+			return token;
+		}
+	}
+
+	private static class FakeTaggerDialect extends TaggerProcessDialect {
+		private final File dieFlagFile;
+		final AtomicInteger startCount = new AtomicInteger();
+		final AtomicInteger destroyCount = new AtomicInteger();
+
+		FakeTaggerDialect(File dieFlagFile) {
+			this.dieFlagFile = dieFlagFile;
+		}
+
+		@Override
+		public List<String> getCommand() {
+			startCount.incrementAndGet();
+			File javaExe = new File(new File(System.getProperty("java.home"), "bin"), "java");
+			return asList(javaExe.getPath(),
+					"-cp", System.getProperty("java.class.path"),
+					FakeTagger.class.getName(),
+					dieFlagFile.getPath());
+		}
+
+		@Override
+		public String getReadyMessage() {
+			return FakeTagger.READY_MESSAGE;
+		}
+
+		@Override
+		public void writeSentinel(Writer out, String sentinel) throws IOException {
+			out.write(sentinel);
+			out.write('\n');
+			writeSentenceEnd(out);
+		}
+
+		@Override
+		public void writeSentenceEnd(Writer out) throws IOException {
+			out.write('\n');
+		}
+
+		@Override
+		public void destroy() {
+			destroyCount.incrementAndGet();
+		}
+	}
+}
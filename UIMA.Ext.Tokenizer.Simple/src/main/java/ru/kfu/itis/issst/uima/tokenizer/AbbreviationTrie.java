@@ -0,0 +1,128 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.tokenizer;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Immutable set of abbreviation strings that can be matched against a
+ * sequence of text regions without creating strings.
+ * <p>
+ * Trie nodes are numbered; children of node <code>n</code> are kept in the
+ * range <code>[childStart[n], childStart[n+1])</code> of {@link #childChars}
+ * and {@link #childNodes}, sorted by character.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class AbbreviationTrie {
+
+	static final int ROOT = 0;
+	static final int NO_NODE = -1;
+
+	// config fields
+	private final int[] childStart;
+	private final char[] childChars;
+	private final int[] childNodes;
+	private final boolean[] terminal;
+
+	AbbreviationTrie(Set<String> abbreviations) {
+		// strings are inserted in the sorted order,
+		// so children of each node are created in the order of their characters
+		ImmutableSortedSet<String> sorted = ImmutableSortedSet.copyOf(abbreviations);
+		int maxNodes = 1;
+		for (String abbr : sorted) {
+			maxNodes += abbr.length();
+		}
+		// build a trie with plain per-node arrays first
+		char[][] nodeChildChars = new char[maxNodes][];
+		int[][] nodeChildren = new int[maxNodes][];
+		boolean[] nodeTerminal = new boolean[maxNodes];
+		int nodeCount = 1;
+		for (String abbr : sorted) {
+			int node = ROOT;
+			for (int i = 0; i < abbr.length(); i++) {
+				char ch = abbr.charAt(i);
+				char[] chars = nodeChildChars[node];
+				int childIdx = chars == null ? -1 : indexOf(chars, ch);
+				if (childIdx < 0) {
+					int child = nodeCount++;
+					nodeChildChars[node] = append(chars, ch);
+					nodeChildren[node] = append(nodeChildren[node], child);
+					node = child;
+				} else {
+					node = nodeChildren[node][childIdx];
+				}
+			}
+			nodeTerminal[node] = true;
+		}
+		// flatten
+		childStart = new int[nodeCount + 1];
+		childChars = new char[nodeCount - 1];
+		childNodes = new int[nodeCount - 1];
+		terminal = Arrays.copyOf(nodeTerminal, nodeCount);
+		int pos = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			childStart[node] = pos;
+			if (nodeChildChars[node] != null) {
+				// children are appended in the order of sorted strings
+				for (int i = 0; i < nodeChildChars[node].length; i++) {
+					childChars[pos] = nodeChildChars[node][i];
+					childNodes[pos] = nodeChildren[node][i];
+					pos++;
+				}
+			}
+		}
+		childStart[nodeCount] = pos;
+	}
+
+	/**
+	 * @return the node reached from the given node by the characters of the
+	 *         given text region or {@link #NO_NODE}
+	 */
+	int walk(int node, CharSequence text, int begin, int end) {
+		for (int i = begin; i < end && node != NO_NODE; i++) {
+			node = child(node, text.charAt(i));
+		}
+		return node;
+	}
+
+	boolean isTerminal(int node) {
+		return node != NO_NODE && terminal[node];
+	}
+
+	boolean contains(CharSequence str) {
+		return isTerminal(walk(ROOT, str, 0, str.length()));
+	}
+
+	private int child(int node, char ch) {
+		int idx = Arrays.binarySearch(childChars, childStart[node], childStart[node + 1], ch);
+		return idx >= 0 ? childNodes[idx] : NO_NODE;
+	}
+
+	private static int indexOf(char[] arr, char ch) {
+		for (int i = 0; i < arr.length; i++) {
+			if (arr[i] == ch) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static char[] append(char[] arr, char ch) {
+		char[] result = arr == null ? new char[1] : Arrays.copyOf(arr, arr.length + 1);
+		result[result.length - 1] = ch;
+		return result;
+	}
+
+	private static int[] append(int[] arr, int val) {
+		int[] result = arr == null ? new int[1] : Arrays.copyOf(arr, arr.length + 1);
+		result[result.length - 1] = val;
+		return result;
+	}
+}
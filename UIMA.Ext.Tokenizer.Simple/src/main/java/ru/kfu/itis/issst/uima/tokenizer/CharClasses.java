@@ -0,0 +1,134 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.tokenizer;
+
+/**
+ * Precomputed character classes of {@link InitialTokenizer} for the whole
+ * BMP (i.e., for every <code>char</code> value).
+ * <p>
+ * A class is determined by the first matching rule in the following order:
+ * {@link #WORD} and {@link #NUM} by Unicode general categories,
+ * {@link #BREAK} for line breaks, {@link #SPACE} for whitespace (see
+ * {@link Character#isWhitespace(char)}), {@link #PUNCTUATION} by Unicode
+ * general categories, {@link #SPECIAL} for the rest.
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+final class CharClasses {
+
+	static final int WORD = 0;
+	static final int NUM = 1;
+	static final int BREAK = 2;
+	static final int SPACE = 3;
+	static final int PUNCTUATION = 4;
+	static final int SPECIAL = 5;
+
+	static final int CLASS_COUNT = 6;
+
+	/**
+	 * Token continuation matrix: a token started by a character of class
+	 * <code>c</code> is continued by a character of class <code>d</code> iff
+	 * the bit <code>d</code> of <code>CONTINUATION[c]</code> is set. Note that
+	 * a space token also absorbs following line breaks.
+	 */
+	private static final int[] CONTINUATION = {
+			1 << WORD,
+			1 << NUM,
+			1 << BREAK,
+			1 << SPACE | 1 << BREAK,
+			0,
+			0 };
+
+	private static final byte[] TABLE = new byte[Character.MAX_VALUE + 1];
+
+	static {
+		long wordCategories = categoryMask(
+				Character.UPPERCASE_LETTER,
+				Character.LOWERCASE_LETTER,
+				Character.TITLECASE_LETTER,
+				Character.MODIFIER_LETTER,
+				Character.OTHER_LETTER,
+				Character.NON_SPACING_MARK,
+				Character.ENCLOSING_MARK,
+				Character.COMBINING_SPACING_MARK,
+				Character.PRIVATE_USE,
+				Character.SURROGATE,
+				Character.MODIFIER_SYMBOL);
+		long numCategories = categoryMask(
+				Character.DECIMAL_DIGIT_NUMBER,
+				Character.LETTER_NUMBER,
+				Character.OTHER_NUMBER);
+		long punctuationCategories = categoryMask(
+				Character.DASH_PUNCTUATION,
+				Character.START_PUNCTUATION,
+				Character.END_PUNCTUATION,
+				Character.OTHER_PUNCTUATION,
+				Character.INITIAL_QUOTE_PUNCTUATION,
+				Character.FINAL_QUOTE_PUNCTUATION,
+				Character.CONNECTOR_PUNCTUATION);
+		for (int i = 0; i < TABLE.length; i++) {
+			char ch = (char) i;
+			long catBit = 1L << Character.getType(ch);
+			int cls;
+			if ((wordCategories & catBit) != 0) {
+				cls = WORD;
+			} else if ((numCategories & catBit) != 0) {
+				cls = NUM;
+			} else if (ch == '\n' || ch == '\r') {
+				cls = BREAK;
+			} else if (Character.isWhitespace(ch)) {
+				cls = SPACE;
+			} else if ((punctuationCategories & catBit) != 0) {
+				cls = PUNCTUATION;
+			} else {
+				cls = SPECIAL;
+			}
+			TABLE[i] = (byte) cls;
+		}
+	}
+
+	static int of(char ch) {
+		return TABLE[ch];
+	}
+
+	/**
+	 * @return true if a token of the given class is continued by a character
+	 *         of the given class
+	 */
+	static boolean continues(int tokenClass, int charClass) {
+		return (CONTINUATION[tokenClass] & (1 << charClass)) != 0;
+	}
+
+	/**
+	 * @param text
+	 *            a text to tokenize
+	 * @param begin
+	 *            start offset of a token
+	 * @param end
+	 *            end offset of the text region to tokenize
+	 * @return end offset of the token that starts at the given offset
+	 */
+	static int tokenEnd(CharSequence text, int begin, int end) {
+		int tokenClass = TABLE[text.charAt(begin)];
+		int continuation = CONTINUATION[tokenClass];
+		int i = begin + 1;
+		while (i < end && (continuation & (1 << TABLE[text.charAt(i)])) != 0) {
+			i++;
+		}
+		return i;
+	}
+
+	private static long categoryMask(byte... categories) {
+		long result = 0;
+		for (byte cat : categories) {
+			result |= 1L << cat;
+		}
+		return result;
+	}
+
+	private CharClasses() {
+	}
+}
@@ -3,18 +3,16 @@
  */
 package ru.kfu.itis.issst.uima.tokenizer;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
 import org.apache.uima.cas.Type;
 import org.apache.uima.cas.text.AnnotationFS;
-import org.apache.uima.cas.text.AnnotationIndex;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
@@ -29,13 +27,21 @@ import ru.kfu.cll.uima.tokenizer.fstype.TokenBase;
 import ru.kfu.cll.uima.tokenizer.fstype.W;
 import ru.kfu.cll.uima.tokenizer.fstype.WhiteSpace;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
+ * Merges sequences of tokens that are not separated by whitespace, e.g.,
+ * abbreviations like "г.", hyphenated words and numbers with an internal
+ * punctuation mark.
+ * <p>
+ * Tokens are scanned in a single pass. Tokens of a current whitespace-free
+ * sequence are kept in reusable buffers along with their offsets, and
+ * character checks are made over the document text, so no strings are
+ * created. Index updates are deferred until the scan is finished.
+ * </p>
+ * 
  * @author Rinat Gareev (Kazan Federal University)
  * 
  */
@@ -46,10 +52,24 @@ public class PostTokenizer extends JCasAnnotator_ImplBase {
 		return AnalysisEngineFactory.createPrimitiveDescription(PostTokenizer.class);
 	}
 
+	private static final int INITIAL_BUFFER_SIZE = 16;
+
+	// TODO use external dictionary
+	private static final AbbreviationTrie abbreviations = new AbbreviationTrie(
+			ImmutableSet.of("г."));
+
+	// state fields
+	// buffers of a current whitespace-free token sequence
+	private Token[] seqTokens = new Token[INITIAL_BUFFER_SIZE];
+	private int[] seqBegins = new int[INITIAL_BUFFER_SIZE];
+	private int[] seqEnds = new int[INITIAL_BUFFER_SIZE];
+	private int seqSize;
 	// per-CAS state
-	private Map<AnnotationFS, Collection<? extends AnnotationFS>> mergedMap;
+	private String text;
 	private Type wordType;
 	private Type numType;
+	private List<AnnotationFS> createdAnnos = Lists.newArrayList();
+	private List<Token> mergedTokens = Lists.newArrayList();
 
 	/**
 	 * {@inheritDoc}
@@ -57,154 +77,169 @@ public class PostTokenizer extends JCasAnnotator_ImplBase {
 	@Override
 	public void process(JCas jCas) throws AnalysisEngineProcessException {
 		CAS cas = jCas.getCas();
-		mergedMap = Maps.newHashMap();
+		text = jCas.getDocumentText();
 		wordType = jCas.getCasType(W.type);
 		numType = jCas.getCasType(NUM.type);
 		try {
-			AnnotationIndex<Annotation> tokenBases = jCas.getAnnotationIndex(TokenBase.typeIndexID);
-			// sequence of tokens that does not contain whitespace
-			List<Token> curTokenSeq = Lists.newLinkedList();
-			for (Annotation tokenBase : tokenBases) {
+			FSIterator<Annotation> tokenBaseIter = jCas.getAnnotationIndex(TokenBase.typeIndexID)
+					.iterator();
+			while (tokenBaseIter.hasNext()) {
+				Annotation tokenBase = tokenBaseIter.next();
 				if (tokenBase instanceof WhiteSpace) {
-					handle(cas, ImmutableList.copyOf(curTokenSeq));
-					curTokenSeq.clear();
+					handle(cas, 0, seqSize);
+					seqSize = 0;
 				} else {
 					// it's Token
-					curTokenSeq.add((Token) tokenBase);
+					append((Token) tokenBase);
 				}
 			}
 			// handle last seq
-			handle(cas, ImmutableList.copyOf(curTokenSeq));
-			curTokenSeq.clear();
+			handle(cas, 0, seqSize);
 			// index/unindex
-			Set<String> mergedTokenStrings = Sets.newHashSet();
-			for (Map.Entry<AnnotationFS, Collection<? extends AnnotationFS>> entry : mergedMap
-					.entrySet()) {
-				jCas.addFsToIndexes(entry.getKey());
-				mergedTokenStrings.add(entry.getKey().getCoveredText());
-				for (AnnotationFS anno : entry.getValue()) {
-					jCas.removeFsFromIndexes(anno);
+			for (Token tkn : mergedTokens) {
+				jCas.removeFsFromIndexes(tkn);
+			}
+			for (AnnotationFS anno : createdAnnos) {
+				jCas.addFsToIndexes(anno);
+			}
+			if (getLogger().isDebugEnabled()) {
+				Set<String> mergedTokenStrings = Sets.newHashSet();
+				for (AnnotationFS anno : createdAnnos) {
+					mergedTokenStrings.add(anno.getCoveredText());
 				}
+				getLogger().debug("Merged tokens: " + mergedTokenStrings);
 			}
-			getLogger().debug("Merged tokens: " + mergedTokenStrings);
 		} finally {
-			mergedMap.clear();
+			// do not hold references to FSs of the processed CAS
+			Arrays.fill(seqTokens, null);
+			seqSize = 0;
+			createdAnnos.clear();
+			mergedTokens.clear();
+			text = null;
+		}
+	}
+
+	private void append(Token tkn) {
+		if (seqSize == seqTokens.length) {
+			int newCapacity = seqSize * 2;
+			seqTokens = Arrays.copyOf(seqTokens, newCapacity);
+			seqBegins = Arrays.copyOf(seqBegins, newCapacity);
+			seqEnds = Arrays.copyOf(seqEnds, newCapacity);
 		}
+		seqTokens[seqSize] = tkn;
+		seqBegins[seqSize] = tkn.getBegin();
+		seqEnds[seqSize] = tkn.getEnd();
+		seqSize++;
 	}
 
-	private boolean handle(CAS cas, List<Token> tokens) {
-		if (tokens.size() <= 1) {
+	/**
+	 * Handle the buffered tokens in the range [from, to).
+	 */
+	private boolean handle(CAS cas, int from, int to) {
+		int size = to - from;
+		if (size <= 1) {
 			return false;
-		} else if (tokens.size() == 2) {
+		} else if (size == 2) {
 			// check abbreviation dictionary
-			if (isWord(tokens.get(0)) && isDot(tokens.get(1))
-					&& isAbbreviation(getCoveredText(tokens))) {
-				makeAnnotation(cas, tokens.get(0).getType(), tokens);
+			if (isWord(from) && isDot(from + 1) && isAbbreviation(from, to)) {
+				makeAnnotation(cas, seqTokens[from].getType(), from, to);
 				return true;
 			}
-			if (!hasPMOrSpecial(tokens)) {
-				makeAnnotation(cas,
-						isWord(tokens.get(0)) ? tokens.get(0).getType() : wordType,
-						tokens);
+			if (!hasPMOrSpecial(from, to)) {
+				makeAnnotation(cas, isWord(from) ? seqTokens[from].getType() : wordType, from, to);
 			}
-		} else if (tokens.size() == 3) {
-			Token t0 = tokens.get(0);
-			Token t1 = tokens.get(1);
-			Token t2 = tokens.get(2);
-			if (isPossibleInnerPM(t1) && hasWord(t0, t2)) {
-				makeAnnotation(cas, isWord(t0) ? t0.getType() : wordType, tokens);
+		} else if (size == 3) {
+			int t0 = from;
+			int t1 = from + 1;
+			int t2 = from + 2;
+			if (isPossibleInnerPM(t1) && (isWord(t0) || isWord(t2))) {
+				makeAnnotation(cas, isWord(t0) ? seqTokens[t0].getType() : wordType, from, to);
 				return true;
 			}
 			// TODO may be RANGE is better as target type, e.g. "12-14" 
 			if (isNumInternalPM(t1) && isNum(t0) && isNum(t2)) {
-				makeAnnotation(cas, numType, tokens);
+				makeAnnotation(cas, numType, from, to);
 			}
 		} else {
 			// tokens size >= 4
-			LinkedList<Token> cleaned = Lists.newLinkedList(tokens);
-			while (!cleaned.isEmpty() && isPMOrSpecial(cleaned.getFirst())) {
-				cleaned.removeFirst();
+			int cleanedFrom = from;
+			int cleanedTo = to;
+			while (cleanedFrom < cleanedTo && isPMOrSpecial(cleanedFrom)) {
+				cleanedFrom++;
 			}
-			while (!cleaned.isEmpty() && isPMOrSpecial(cleaned.getLast())) {
-				cleaned.removeLast();
+			while (cleanedFrom < cleanedTo && isPMOrSpecial(cleanedTo - 1)) {
+				cleanedTo--;
 			}
 			// to avoid infinite recursion
-			if (tokens.size() != cleaned.size()) {
-				return handle(cas, cleaned);
+			if (cleanedTo - cleanedFrom != size) {
+				return handle(cas, cleanedFrom, cleanedTo);
 			}
 		}
 		return false;
 	}
 
-	private static final Set<String> abbreviations = ImmutableSet.of("г.");
-
-	// TODO use external dictionary
-	private boolean isAbbreviation(String str) {
-		return abbreviations.contains(str);
+	/**
+	 * @return true if the concatenated text of tokens in the range [from, to)
+	 *         is an abbreviation
+	 */
+	private boolean isAbbreviation(int from, int to) {
+		int node = AbbreviationTrie.ROOT;
+		for (int i = from; i < to && node != AbbreviationTrie.NO_NODE; i++) {
+			node = abbreviations.walk(node, text, seqBegins[i], seqEnds[i]);
+		}
+		return abbreviations.isTerminal(node);
 	}
 
-	private static final Set<String> POSSIBLE_INNER_PM = ImmutableSet.of("'", "-", "`");
-
-	private boolean isPossibleInnerPM(Token tkn) {
-		return POSSIBLE_INNER_PM.contains(tkn.getCoveredText());
+	private boolean isPossibleInnerPM(int i) {
+		if (!isSingleChar(i)) {
+			return false;
+		}
+		char ch = text.charAt(seqBegins[i]);
+		return ch == '\'' || ch == '-' || ch == '`';
 	}
 
-	private boolean isPMOrSpecial(Token tkn) {
+	private boolean isPMOrSpecial(int i) {
+		Token tkn = seqTokens[i];
 		return tkn instanceof PM || tkn instanceof SPECIAL;
 	}
 
-	private boolean hasWord(Token... tkns) {
-		for (Token tkn : tkns) {
-			if (isWord(tkn)) {
-				return true;
-			}
-		}
-		return false;
-	}
-
-	private boolean hasPMOrSpecial(Iterable<Token> tkns) {
-		for (Token tkn : tkns) {
-			if (isPMOrSpecial(tkn)) {
+	private boolean hasPMOrSpecial(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (isPMOrSpecial(i)) {
 				return true;
 			}
 		}
 		return false;
 	}
 
-	@SuppressWarnings("unused")
-	private boolean isHyphen(Token tkn) {
-		return "-".equals(tkn.getCoveredText());
+	private boolean isDot(int i) {
+		return isSingleChar(i) && text.charAt(seqBegins[i]) == '.';
 	}
 
-	private boolean isDot(Token tkn) {
-		return ".".equals(tkn.getCoveredText());
+	private boolean isNumInternalPM(int i) {
+		if (!isSingleChar(i)) {
+			return false;
+		}
+		char ch = text.charAt(seqBegins[i]);
+		return ch == ',' || ch == '.' || ch == '-';
 	}
 
-	private static final Set<String> NUM_INTERNAL_PM = ImmutableSet.of(",", ".", "-");
-
-	private boolean isNumInternalPM(Token tkn) {
-		return NUM_INTERNAL_PM.contains((tkn.getCoveredText()));
+	private boolean isSingleChar(int i) {
+		return seqEnds[i] - seqBegins[i] == 1;
 	}
 
-	private boolean isWord(Token tkn) {
-		return tkn instanceof W;
+	private boolean isWord(int i) {
+		return seqTokens[i] instanceof W;
 	}
 
-	private boolean isNum(Token tkn) {
-		return tkn instanceof NUM;
+	private boolean isNum(int i) {
+		return seqTokens[i] instanceof NUM;
 	}
 
-	private String getCoveredText(Iterable<? extends AnnotationFS> iter) {
-		StringBuilder sb = new StringBuilder();
-		for (AnnotationFS anno : iter) {
-			sb.append(anno.getCoveredText());
+	private void makeAnnotation(CAS cas, Type targetType, int from, int to) {
+		createdAnnos.add(cas.createAnnotation(targetType, seqBegins[from], seqEnds[to - 1]));
+		for (int i = from; i < to; i++) {
+			mergedTokens.add(seqTokens[i]);
 		}
-		return sb.toString();
-	}
-
-	private void makeAnnotation(CAS cas, Type targetType, List<? extends AnnotationFS> rangeAnnos) {
-		int begin = rangeAnnos.get(0).getBegin();
-		int end = rangeAnnos.get(rangeAnnos.size() - 1).getEnd();
-		mergedMap.put(cas.createAnnotation(targetType, begin, end), rangeAnnos);
 	}
-}
\ No newline at end of file
+}
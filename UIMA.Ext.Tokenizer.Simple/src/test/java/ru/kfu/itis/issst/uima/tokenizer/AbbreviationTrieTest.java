@@ -0,0 +1,62 @@
+package ru.kfu.itis.issst.uima.tokenizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class AbbreviationTrieTest {
+
+	private AbbreviationTrie trie = new AbbreviationTrie(ImmutableSet.of(
+			"г.", "гг.", "т.е.", "см.", "ул.", "с.", "стр."));
+
+	@Test
+	public void testContains() {
+		assertTrue(trie.contains("г."));
+		assertTrue(trie.contains("гг."));
+		assertTrue(trie.contains("т.е."));
+		assertTrue(trie.contains("с."));
+		assertTrue(trie.contains("см."));
+		assertTrue(trie.contains("стр."));
+		assertFalse(trie.contains(""));
+		assertFalse(trie.contains("г"));
+		assertFalse(trie.contains("т."));
+		assertFalse(trie.contains("ст."));
+		assertFalse(trie.contains("г.г."));
+		assertFalse(trie.contains("Г."));
+	}
+
+	@Test
+	public void testWalkOverRegions() {
+		String text = "в 1999 г. и т.е. ул";
+		// "г" + "."
+		int node = trie.walk(AbbreviationTrie.ROOT, text, 7, 8);
+		assertFalse(trie.isTerminal(node));
+		node = trie.walk(node, text, 8, 9);
+		assertTrue(trie.isTerminal(node));
+		// "т" + "." + "е" + "."
+		node = AbbreviationTrie.ROOT;
+		for (int i = 12; i < 16; i++) {
+			node = trie.walk(node, text, i, i + 1);
+		}
+		assertTrue(trie.isTerminal(node));
+		// "ул" without a dot
+		node = trie.walk(AbbreviationTrie.ROOT, text, 17, 19);
+		assertFalse(trie.isTerminal(node));
+		// a dead end stays a dead end
+		node = trie.walk(AbbreviationTrie.ROOT, text, 0, 2);
+		assertEquals(AbbreviationTrie.NO_NODE, node);
+		assertEquals(AbbreviationTrie.NO_NODE, trie.walk(node, text, 7, 9));
+		assertFalse(trie.isTerminal(node));
+	}
+
+	@Test
+	public void testEmpty() {
+		AbbreviationTrie empty = new AbbreviationTrie(ImmutableSet.<String> of());
+		assertFalse(empty.contains("г."));
+		assertFalse(empty.contains(""));
+	}
+}
@@ -0,0 +1,57 @@
+package ru.kfu.itis.issst.uima.tokenizer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class CharClassesTest {
+
+	@Test
+	public void testClassTable() {
+		for (int i = 0; i <= Character.MAX_VALUE; i++) {
+			char ch = (char) i;
+			assertEquals("Char " + i, ReferenceSegmenter.classOf(ch), CharClasses.of(ch));
+		}
+	}
+
+	@Test
+	public void testSegmentation() {
+		assertSameSegmentation("");
+		assertSameSegmentation("Мама мыла раму.");
+		assertSameSegmentation("В 2013г. ВВП вырос на 1,3% (по данным Росстата)!\r\n\n  Да...");
+		assertSameSegmentation("e-mail: test@example.com;\t    X²́й");
+		assertSameSegmentation(" \n \n\r");
+		Random rnd = new Random(42);
+		char[] alphabet = " \t\n\r.,;:!?-«»()aZяЖ09½ ́$@#".toCharArray();
+		for (int n = 0; n < 1000; n++) {
+			StringBuilder sb = new StringBuilder();
+			int len = rnd.nextInt(40);
+			for (int i = 0; i < len; i++) {
+				sb.append(rnd.nextBoolean()
+						? alphabet[rnd.nextInt(alphabet.length)]
+						: (char) rnd.nextInt(Character.MAX_VALUE + 1));
+			}
+			assertSameSegmentation(sb.toString());
+		}
+	}
+
+	private static void assertSameSegmentation(String str) {
+		List<String> expected = Lists.newArrayList();
+		for (int[] token : ReferenceSegmenter.segment(str)) {
+			expected.add(token[0] + ":" + token[1] + ":" + token[2]);
+		}
+		List<String> actual = Lists.newArrayList();
+		int begin = 0;
+		while (begin < str.length()) {
+			int end = CharClasses.tokenEnd(str, begin, str.length());
+			actual.add(begin + ":" + end + ":" + CharClasses.of(str.charAt(begin)));
+			begin = end;
+		}
+		assertEquals(str, expected, actual);
+	}
+}
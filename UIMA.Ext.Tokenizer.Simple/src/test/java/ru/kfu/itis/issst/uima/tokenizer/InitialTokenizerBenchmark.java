@@ -0,0 +1,127 @@
+package ru.kfu.itis.issst.uima.tokenizer;
+
+import static java.lang.System.nanoTime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the segmentation speed of {@link CharClasses} with the former
+ * state-list implementation ({@link ReferenceSegmenter}) on a corpus of plain
+ * text files and checks that both produce the same tokens. The UIMA
+ * annotation creation, which is the same for both, is not measured.
+ * <p>
+ * Usage: <code>InitialTokenizerBenchmark &lt;corpus file or dir&gt; [iterations]</code>
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class InitialTokenizerBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: <corpus file or dir> [iterations]");
+			return;
+		}
+		List<String> texts = readCorpus(new File(args[0]));
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		long charCount = 0;
+		for (String text : texts) {
+			charCount += text.length();
+		}
+		System.out.println(String.format("Texts: %s, chars: %s", texts.size(), charCount));
+		// parity check
+		long tokenCount = 0;
+		for (String text : texts) {
+			tokenCount += checkParity(text);
+		}
+		System.out.println(String.format("Parity check passed, tokens: %s", tokenCount));
+		// warm-up
+		for (int i = 0; i < 3; i++) {
+			runReference(texts);
+			runTableDriven(texts);
+		}
+		long refTime = 0;
+		long tableTime = 0;
+		for (int i = 0; i < iterations; i++) {
+			long timeBefore = nanoTime();
+			runReference(texts);
+			refTime += nanoTime() - timeBefore;
+			timeBefore = nanoTime();
+			runTableDriven(texts);
+			tableTime += nanoTime() - timeBefore;
+		}
+		report("State-list", refTime, iterations, charCount);
+		report("Table-driven", tableTime, iterations, charCount);
+	}
+
+	private static int checkParity(String text) {
+		List<int[]> expected = ReferenceSegmenter.segment(text);
+		int begin = 0;
+		for (int[] expectedToken : expected) {
+			int end = CharClasses.tokenEnd(text, begin, text.length());
+			int tokenClass = CharClasses.of(text.charAt(begin));
+			if (expectedToken[0] != begin || expectedToken[1] != end
+					|| expectedToken[2] != tokenClass) {
+				throw new IllegalStateException(String.format(
+						"Token mismatch at %s: expected [%s, %s) of class %s, actual [%s, %s) of class %s",
+						begin, expectedToken[0], expectedToken[1], expectedToken[2],
+						begin, end, tokenClass));
+			}
+			begin = end;
+		}
+		if (begin != text.length()) {
+			throw new IllegalStateException("Unexpected tokens after offset " + begin);
+		}
+		return expected.size();
+	}
+
+	private static long runReference(List<String> texts) {
+		long result = 0;
+		for (String text : texts) {
+			// the former implementation copied a span text
+			result += ReferenceSegmenter.segment(new String(text)).size();
+		}
+		return result;
+	}
+
+	private static long runTableDriven(List<String> texts) {
+		long result = 0;
+		for (String text : texts) {
+			int begin = 0;
+			int end = text.length();
+			while (begin < end) {
+				begin = CharClasses.tokenEnd(text, begin, end);
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private static void report(String name, long totalNanos, int iterations, long charCount) {
+		double msPerIteration = totalNanos / 1e6 / iterations;
+		System.out.println(String.format("%s: %.1f ms per iteration, %.1f Mchars/s",
+				name, msPerIteration, charCount / msPerIteration / 1000));
+	}
+
+	private static List<String> readCorpus(File src) throws IOException {
+		Collection<File> files;
+		if (src.isDirectory()) {
+			files = FileUtils.listFiles(src, new String[] { "txt" }, true);
+		} else {
+			files = Lists.newArrayList(src);
+		}
+		List<String> result = Lists.newArrayListWithCapacity(files.size());
+		for (File f : files) {
+			result.add(FileUtils.readFileToString(f, "utf-8"));
+		}
+		return result;
+	}
+}
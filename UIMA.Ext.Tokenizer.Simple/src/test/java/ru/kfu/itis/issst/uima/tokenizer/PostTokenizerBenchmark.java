@@ -0,0 +1,81 @@
+package ru.kfu.itis.issst.uima.tokenizer;
+
+import static java.lang.System.nanoTime;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the throughput of {@link PostTokenizer} on a corpus of plain text
+ * files. Initial tokenization is made before the measured section.
+ * <p>
+ * Usage: <code>PostTokenizerBenchmark &lt;corpus file or dir&gt; [iterations]</code>
+ * </p>
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+public class PostTokenizerBenchmark {
+
+	public static void main(String[] args) throws IOException, UIMAException {
+		if (args.length < 1) {
+			System.err.println("Usage: <corpus file or dir> [iterations]");
+			return;
+		}
+		List<String> texts = readCorpus(new File(args[0]));
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		AnalysisEngine initialTokenizer = createPrimitive(InitialTokenizer.createDescription());
+		AnalysisEngine postTokenizer = createPrimitive(PostTokenizer.class,
+				TokenizerAPI.getTypeSystemDescription());
+		JCas jCas = initialTokenizer.newJCas();
+		// warm-up
+		for (int i = 0; i < 3; i++) {
+			run(texts, jCas, initialTokenizer, postTokenizer);
+		}
+		long totalTime = 0;
+		for (int i = 0; i < iterations; i++) {
+			totalTime += run(texts, jCas, initialTokenizer, postTokenizer);
+		}
+		double msPerIteration = totalTime / 1e6 / iterations;
+		System.out.println(String.format("Texts: %s, %.1f ms per iteration, %.1f docs/s",
+				texts.size(), msPerIteration, texts.size() * 1000 / msPerIteration));
+	}
+
+	private static long run(List<String> texts, JCas jCas,
+			AnalysisEngine initialTokenizer, AnalysisEngine postTokenizer) throws UIMAException {
+		long result = 0;
+		for (String text : texts) {
+			jCas.reset();
+			jCas.setDocumentText(text);
+			initialTokenizer.process(jCas);
+			long timeBefore = nanoTime();
+			postTokenizer.process(jCas);
+			result += nanoTime() - timeBefore;
+		}
+		return result;
+	}
+
+	private static List<String> readCorpus(File src) throws IOException {
+		Collection<File> files;
+		if (src.isDirectory()) {
+			files = FileUtils.listFiles(src, new String[] { "txt" }, true);
+		} else {
+			files = Lists.newArrayList(src);
+		}
+		List<String> result = Lists.newArrayListWithCapacity(files.size());
+		for (File f : files) {
+			result.add(FileUtils.readFileToString(f, "utf-8"));
+		}
+		return result;
+	}
+}
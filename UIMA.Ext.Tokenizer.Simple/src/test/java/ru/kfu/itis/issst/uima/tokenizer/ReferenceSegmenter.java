@@ -0,0 +1,178 @@
+/**
+ * 
+ */
+package ru.kfu.itis.issst.uima.tokenizer;
+
+import java.util.BitSet;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * The former state-list based segmentation of {@link InitialTokenizer}. It is
+ * kept as a reference for parity checks of {@link CharClasses}.
+ * 
+ * @author Rinat Gareev (Kazan Federal University)
+ * 
+ */
+class ReferenceSegmenter {
+
+	/**
+	 * @return list of tokens, each token is a triple of begin, end and
+	 *         {@link CharClasses} constant
+	 */
+	static List<int[]> segment(String str) {
+		List<int[]> result = Lists.newArrayList();
+		State state = START;
+		int lastStateStart = 0;
+		int i = 0;
+		while (i < str.length()) {
+			char curCh = str.charAt(i);
+			if (!state.contain(curCh)) {
+				if (i - lastStateStart > 0) {
+					result.add(new int[] { lastStateStart, i, state.charClass });
+				}
+				// change state
+				lastStateStart = i;
+				state = getStateStartingWith(curCh);
+			}
+			i++;
+		}
+		if (state != START) {
+			result.add(new int[] { lastStateStart, str.length(), state.charClass });
+		}
+		return result;
+	}
+
+	static int classOf(char ch) {
+		return getStateStartingWith(ch).charClass;
+	}
+
+	private static State getStateStartingWith(char ch) {
+		for (State candidateState : states) {
+			if (candidateState.startsWith(ch)) {
+				return candidateState;
+			}
+		}
+		throw new IllegalStateException(String.format(
+				"Can't determine state for character '%s'", ch));
+	}
+
+	private static abstract class State {
+		final int charClass;
+
+		State(int charClass) {
+			this.charClass = charClass;
+		}
+
+		abstract boolean contain(char ch);
+
+		abstract boolean startsWith(char ch);
+	}
+
+	private static class CharacterCategoryState extends State {
+		private BitSet categories = new BitSet();
+		private boolean sticking;
+
+		CharacterCategoryState(int charClass, boolean sticking, byte... categories) {
+			super(charClass);
+			this.sticking = sticking;
+			for (byte curCat : categories) {
+				this.categories.set(curCat);
+			}
+		}
+
+		@Override
+		boolean startsWith(char ch) {
+			return categories.get(Character.getType(ch));
+		}
+
+		@Override
+		boolean contain(char ch) {
+			return sticking && startsWith(ch);
+		}
+	}
+
+	private static final State WORD = new CharacterCategoryState(CharClasses.WORD, true,
+			Character.UPPERCASE_LETTER,
+			Character.LOWERCASE_LETTER,
+			Character.TITLECASE_LETTER,
+			Character.MODIFIER_LETTER,
+			Character.OTHER_LETTER,
+			Character.NON_SPACING_MARK,
+			Character.ENCLOSING_MARK,
+			Character.COMBINING_SPACING_MARK,
+			Character.PRIVATE_USE,
+			Character.SURROGATE,
+			Character.MODIFIER_SYMBOL);
+
+	private static final State NUM = new CharacterCategoryState(CharClasses.NUM, true,
+			Character.DECIMAL_DIGIT_NUMBER,
+			Character.LETTER_NUMBER,
+			Character.OTHER_NUMBER);
+
+	private static final State BREAK = new State(CharClasses.BREAK) {
+		@Override
+		boolean startsWith(char ch) {
+			return ch == '\n' || ch == '\r';
+		}
+
+		@Override
+		boolean contain(char ch) {
+			return startsWith(ch);
+		}
+	};
+
+	private static final State SPACE = new State(CharClasses.SPACE) {
+		@Override
+		boolean startsWith(char ch) {
+			return Character.isWhitespace(ch);
+		}
+
+		@Override
+		boolean contain(char ch) {
+			return startsWith(ch);
+		}
+	};
+
+	private static final State PUNCTUATION = new CharacterCategoryState(
+			CharClasses.PUNCTUATION, false,
+			Character.DASH_PUNCTUATION,
+			Character.START_PUNCTUATION,
+			Character.END_PUNCTUATION,
+			Character.OTHER_PUNCTUATION,
+			Character.INITIAL_QUOTE_PUNCTUATION,
+			Character.FINAL_QUOTE_PUNCTUATION,
+			Character.CONNECTOR_PUNCTUATION);
+
+	private static final State START = new State(-1) {
+		@Override
+		boolean contain(char ch) {
+			return false;
+		}
+
+		@Override
+		boolean startsWith(char ch) {
+			return false;
+		}
+	};
+
+	private static final State SPECIAL = new State(CharClasses.SPECIAL) {
+		@Override
+		boolean contain(char ch) {
+			return false;
+		}
+
+		@Override
+		boolean startsWith(char ch) {
+			return true;
+		}
+	};
+
+	private static final List<State> states = ImmutableList.of(
+			WORD, NUM, BREAK, SPACE, PUNCTUATION, SPECIAL);
+
+	private ReferenceSegmenter() {
+	}
+}